@@ -217,6 +217,21 @@ public final class PolyglotCompilerOptions {
     @Option(help = "Manually set the number of compiler threads", category = OptionCategory.EXPERT)
     public static final OptionKey<Integer> CompilerThreads = new OptionKey<>(0);
 
+    @Option(help = "Start compiler threads on demand as the compilation queue backlog grows. The number of compiler threads an engine may cause to be started is bounded by CompilerThreads, or by half of the available processors if not set.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Boolean> DynamicCompilerThreads = new OptionKey<>(false);
+
+    @Option(help = "Number of queued compilation requests per compiler thread before another compiler thread is started (only used with DynamicCompilerThreads).", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> CompilerThreadBacklog = new OptionKey<>(16);
+
+    @Option(help = "Time in milliseconds an idle compiler thread waits for new compilation requests before terminating. Compiler threads are started again when new requests are submitted (only used with DynamicCompilerThreads, 0 keeps idle threads alive).", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> CompilerIdleDelay = new OptionKey<>(10000);
+
+    @Option(help = "Order queued compilations of the same tier by the current hotness of their call targets instead of first-in-first-out, and drop requests whose call targets were collected or cooled off.", category = OptionCategory.EXPERT)
+    public static final OptionKey<Boolean> TraversingCompilationQueue = new OptionKey<>(false);
+
+    @Option(help = "Time in milliseconds after which the traversing compilation queue drops a request whose call target was not executed since it was queued (0 disables dropping).", category = OptionCategory.EXPERT)
+    public static final OptionKey<Integer> TraversingQueueStaleTimeout = new OptionKey<>(10000);
+
     @Option(help = "Minimum number of invocations or loop iterations needed to compile a guest language root.",
                     category = OptionCategory.EXPERT)
     public static final OptionKey<Integer> CompilationThreshold = new OptionKey<>(1000);
@@ -25,9 +25,18 @@
 package org.graalvm.compiler.truffle.runtime;
 
 import java.lang.ref.WeakReference;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RunnableFuture;
@@ -48,12 +57,26 @@ import org.graalvm.compiler.truffle.options.PolyglotCompilerOptions;
  * (first-in-first-out).
  *
  * Note that all the compilation requests are second tier when the multi-tier option is turned off.
+ *
+ * With {@link PolyglotCompilerOptions#TraversingCompilationQueue} enabled, requests of the same
+ * tier are instead ordered by the hotness of their call targets at the time a compiler thread
+ * takes the next request, see {@link TraversingBlockingQueue}.
+ *
+ * By default the number of compiler threads is fixed. With
+ * {@link PolyglotCompilerOptions#DynamicCompilerThreads} enabled, the queue starts with a single
+ * compiler thread and starts additional threads whenever the backlog exceeds
+ * {@link PolyglotCompilerOptions#CompilerThreadBacklog} requests per thread, up to the budget of the
+ * engine submitting the request. Idle compiler threads then terminate after
+ * {@link PolyglotCompilerOptions#CompilerIdleDelay} milliseconds. Fixed compiler threads are kept
+ * alive for the lifetime of the queue.
  */
 public class BackgroundCompileQueue {
 
     private final AtomicLong idCounter;
     private volatile ExecutorService compilationExecutorService;
     private boolean shutdown = false;
+    private boolean dynamicCompilerThreads;
+    private int compilerThreadBacklog;
 
     public BackgroundCompileQueue() {
         this.idCounter = new AtomicLong();
@@ -81,16 +104,70 @@ public class BackgroundCompileQueue {
                 }
             }
             threads = Math.max(1, threads);
+            int maximumThreads = threads;
+            long idleDelay = 0;
+            if (callTarget.getOptionValue(PolyglotCompilerOptions.DynamicCompilerThreads)) {
+                this.dynamicCompilerThreads = true;
+                this.compilerThreadBacklog = Math.max(1, callTarget.getOptionValue(PolyglotCompilerOptions.CompilerThreadBacklog));
+                threads = 1;
+                maximumThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+                idleDelay = Math.max(0, callTarget.getOptionValue(PolyglotCompilerOptions.CompilerIdleDelay));
+            }
+
+            BlockingQueue<Runnable> queue;
+            if (callTarget.getOptionValue(PolyglotCompilerOptions.TraversingCompilationQueue)) {
+                long staleTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(0, callTarget.getOptionValue(PolyglotCompilerOptions.TraversingQueueStaleTimeout)));
+                queue = new TraversingBlockingQueue(staleTimeout);
+            } else {
+                queue = new PriorityBlockingQueue<>();
+            }
 
             ThreadFactory factory = newThreadFactory("TruffleCompilerThread", callTarget);
 
-            return compilationExecutorService = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
-                            new PriorityBlockingQueue<>(), factory) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, maximumThreads, idleDelay, TimeUnit.MILLISECONDS,
+                            queue, factory) {
                 @Override
                 protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
                     return new RequestFutureTask<>((RequestImpl<T>) callable);
                 }
+
+                @Override
+                protected void afterExecute(Runnable r, Throwable t) {
+                    shrinkCompilerThreads(this);
+                }
             };
+            if (idleDelay > 0) {
+                executor.allowCoreThreadTimeOut(true);
+            }
+            return compilationExecutorService = executor;
+        }
+    }
+
+    /**
+     * Returns the number of compiler threads compilations of {@code callTarget}'s engine may cause
+     * to be started when {@link PolyglotCompilerOptions#DynamicCompilerThreads} is enabled.
+     */
+    private static int getCompilerThreadBudget(OptimizedCallTarget callTarget) {
+        int threads = callTarget.getOptionValue(PolyglotCompilerOptions.CompilerThreads);
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors() / 2;
+        }
+        return Math.max(1, threads);
+    }
+
+    private void growCompilerThreads(ThreadPoolExecutor executor, OptimizedCallTarget callTarget) {
+        int backlog = executor.getQueue().size();
+        int threads = Math.min(Math.min(getCompilerThreadBudget(callTarget), executor.getMaximumPoolSize()), 1 + backlog / compilerThreadBacklog);
+        if (threads > executor.getCorePoolSize()) {
+            // starts new threads for the queued requests
+            executor.setCorePoolSize(threads);
+        }
+    }
+
+    private void shrinkCompilerThreads(ThreadPoolExecutor executor) {
+        if (dynamicCompilerThreads && executor.getCorePoolSize() > 1 && executor.getQueue().isEmpty()) {
+            // surplus idle threads terminate, the remaining ones after the idle delay
+            executor.setCorePoolSize(1);
         }
     }
 
@@ -102,7 +179,11 @@ public class BackgroundCompileQueue {
     public CancellableCompileTask submitTask(Priority priority, OptimizedCallTarget target, Request request) {
         CancellableCompileTask cancellable = new CancellableCompileTask(priority == Priority.LAST_TIER);
         RequestImpl<Void> requestImpl = new RequestImpl<>(nextId(), priority, target, cancellable, request);
-        cancellable.setFuture(getExecutorService(target).submit(requestImpl));
+        ExecutorService executor = getExecutorService(target);
+        cancellable.setFuture(executor.submit(requestImpl));
+        if (dynamicCompilerThreads) {
+            growCompilerThreads((ThreadPoolExecutor) executor, target);
+        }
         return cancellable;
     }
 
@@ -164,6 +245,8 @@ public class BackgroundCompileQueue {
         private final TruffleCompilationTask task;
         private final WeakReference<OptimizedCallTarget> targetRef;
         private final Request request;
+        private final long queueTime;
+        private final long queueHotness;
 
         RequestImpl(long id, Priority priority, OptimizedCallTarget callTarget, TruffleCompilationTask task, Request request) {
             this.id = id;
@@ -171,6 +254,51 @@ public class BackgroundCompileQueue {
             this.targetRef = new WeakReference<>(callTarget);
             this.task = task;
             this.request = request;
+            this.queueTime = System.nanoTime();
+            this.queueHotness = hotness(callTarget);
+        }
+
+        /**
+         * The number of calls and loop iterations observed for {@code target}. The call count keeps
+         * increasing in first tier compiled code, the call and loop count only in the interpreter.
+         */
+        private static long hotness(OptimizedCallTarget target) {
+            return (long) target.getCallCount() + target.getCallAndLoopCount();
+        }
+
+        /**
+         * Computes the weight of this request at time {@code now}: the current hotness of the call
+         * target scaled by the rate (per millisecond) at which it grew since the request was
+         * queued. Returns {@code -1} if the call target was collected.
+         */
+        double weight(long now) {
+            OptimizedCallTarget target = targetRef.get();
+            if (target == null) {
+                return -1;
+            }
+            long hotness = hotness(target);
+            long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(now - queueTime));
+            double rate = Math.max(0, hotness - queueHotness) / (double) elapsedMillis;
+            return hotness * (1 + rate);
+        }
+
+        /**
+         * Returns {@code true} if this request no longer needs to be compiled, either because it
+         * was cancelled, its call target was collected or the call target was not executed since
+         * it was queued at least {@code staleTimeout} nanoseconds ago.
+         */
+        boolean isStale(long now, long staleTimeout) {
+            if (task.isCancelled()) {
+                return true;
+            }
+            if (priority == Priority.INITIALIZATION) {
+                return false;
+            }
+            OptimizedCallTarget target = targetRef.get();
+            if (target == null) {
+                return true;
+            }
+            return staleTimeout > 0 && now - queueTime > staleTimeout && hotness(target) <= queueHotness;
         }
 
         @Override
@@ -214,6 +342,179 @@ public class BackgroundCompileQueue {
         }
     }
 
+    /**
+     * A compilation queue that selects the next request by traversing all queued requests when a
+     * compiler thread takes one. Requests of a lower {@link Priority} value are preferred, within
+     * the same priority the request with the highest {@linkplain RequestImpl#weight(long) weight}
+     * is selected. Requests that are {@linkplain RequestImpl#isStale(long, long) stale} are
+     * cancelled and handed out first, as they complete without compiling and this releases the
+     * compilation task of their call target.
+     * <p>
+     * The weights change while requests are queued, so they cannot be kept ordered in a heap and
+     * taking a request is linear in the number of queued requests. Every traversal removes all
+     * stale requests it encounters, which bounds the queue by the number of call targets that
+     * reached their compilation threshold and were executed within
+     * {@link PolyglotCompilerOptions#TraversingQueueStaleTimeout}. Traversing even thousands of
+     * requests costs far less than the compilation it selects.
+     */
+    private static final class TraversingBlockingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+        private final BlockingQueue<Runnable> entries = new LinkedBlockingQueue<>();
+        /* Stale requests removed from entries, which are handed out before any other request. */
+        private final Queue<Runnable> dropped = new ConcurrentLinkedQueue<>();
+        private final long staleTimeout;
+
+        TraversingBlockingQueue(long staleTimeout) {
+            this.staleTimeout = staleTimeout;
+        }
+
+        private Runnable takeMax() {
+            while (true) {
+                Runnable stale = dropped.poll();
+                if (stale != null) {
+                    return stale;
+                }
+                long now = System.nanoTime();
+                RequestFutureTask<?> max = null;
+                double maxWeight = 0;
+                for (Runnable entry : entries) {
+                    if (!(entry instanceof RequestFutureTask<?>)) {
+                        if (entries.remove(entry)) {
+                            return entry;
+                        }
+                        continue;
+                    }
+                    RequestFutureTask<?> candidate = (RequestFutureTask<?>) entry;
+                    RequestImpl<?> request = candidate.request;
+                    if (request.isStale(now, staleTimeout)) {
+                        if (entries.remove(candidate)) {
+                            OptimizedCallTarget target = request.targetRef.get();
+                            if (target != null && !request.task.isCancelled() && !target.cancelInstalledTask(null, "Call target cooled off in the compilation queue.")) {
+                                ((CancellableCompileTask) request.task).cancel();
+                            }
+                            dropped.add(candidate);
+                        }
+                        continue;
+                    }
+                    double weight = request.weight(now);
+                    if (max == null || request.priority.value < max.request.priority.value ||
+                                    (request.priority == max.request.priority && weight > maxWeight)) {
+                        max = candidate;
+                        maxWeight = weight;
+                    }
+                }
+                if (!dropped.isEmpty()) {
+                    // hand out the stale requests first, max is selected again afterwards
+                    continue;
+                }
+                if (max == null || entries.remove(max)) {
+                    return max;
+                }
+                // another compiler thread took the selected request, select again
+            }
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            Runnable max = takeMax();
+            if (max != null) {
+                return max;
+            }
+            return entries.take();
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            Runnable max = takeMax();
+            if (max != null) {
+                return max;
+            }
+            return entries.poll(timeout, unit);
+        }
+
+        @Override
+        public Runnable poll() {
+            return takeMax();
+        }
+
+        @Override
+        public Runnable peek() {
+            Runnable stale = dropped.peek();
+            return stale != null ? stale : entries.peek();
+        }
+
+        @Override
+        public boolean offer(Runnable e) {
+            return entries.offer(e);
+        }
+
+        @Override
+        public boolean offer(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+            return entries.offer(e, timeout, unit);
+        }
+
+        @Override
+        public void put(Runnable e) throws InterruptedException {
+            entries.put(e);
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return entries.remainingCapacity();
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return dropped.remove(o) || entries.remove(o);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            int count = 0;
+            Runnable stale;
+            while (count < maxElements && (stale = dropped.poll()) != null) {
+                c.add(stale);
+                count++;
+            }
+            return count + entries.drainTo(c, maxElements - count);
+        }
+
+        @Override
+        public Iterator<Runnable> iterator() {
+            List<Runnable> snapshot = new ArrayList<>(dropped);
+            snapshot.addAll(entries);
+            Iterator<Runnable> iterator = snapshot.iterator();
+            return new Iterator<Runnable>() {
+                private Runnable last;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Runnable next() {
+                    return last = iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    TraversingBlockingQueue.this.remove(last);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return dropped.size() + entries.size();
+        }
+    }
+
     private static final class TruffleCompilerThreadFactory implements ThreadFactory {
         private final String namePrefix;
 
@@ -35,9 +35,11 @@ public final class CancellableCompileTask implements TruffleCompilationTask {
     private volatile Future<?> future;
     private volatile boolean cancelled;
     private final boolean lastTierCompilation;
+    private final long queueTime;
 
     public CancellableCompileTask(boolean lastTierCompilation) {
         this.lastTierCompilation = lastTierCompilation;
+        this.queueTime = System.nanoTime();
     }
 
     // This cannot be done in the constructor because the CancellableCompileTask needs to be
@@ -74,6 +76,14 @@ public final class CancellableCompileTask implements TruffleCompilationTask {
         return cancelled;
     }
 
+    /**
+     * Returns the {@link System#nanoTime()} at which this task was submitted to the compilation
+     * queue.
+     */
+    public long getQueueTime() {
+        return queueTime;
+    }
+
     @Override
     public boolean isLastTier() {
         return lastTierCompilation;
@@ -733,6 +733,8 @@ public abstract class GraalTruffleRuntime implements TruffleRuntime, TruffleComp
                 if (callTarget != null) {
                     try {
                         if (!task.isCancelled()) {
+                            long queueTime = System.nanoTime() - ((CancellableCompileTask) task).getQueueTime();
+                            getListener().onCompilationPolled(callTarget, queueTime, getCompilationQueueSize());
                             doCompile(callTarget, task);
                         }
                     } finally {
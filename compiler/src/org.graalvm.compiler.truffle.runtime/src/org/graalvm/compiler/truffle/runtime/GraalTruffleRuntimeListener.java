@@ -39,7 +39,7 @@ import com.oracle.truffle.api.nodes.Node;
  * described using the following deterministic automata: * <code>
  * <pre>
  * ( (split | (queue . unqueue))*
- *    . queue . started
+ *    . queue . polled . started
  *    . (truffleTierFinished . graalTierFinished . success)
  *      | ([truffleTierFinished] . [graalTierFinished] . failed)
  *    . invalidate )*
@@ -92,6 +92,17 @@ public interface GraalTruffleRuntimeListener {
     default void onCompilationDequeued(OptimizedCallTarget target, Object source, CharSequence reason) {
     }
 
+    /**
+     * Notifies this object when a compiler thread took the compilation request for {@code target}
+     * from the compilation queue.
+     *
+     * @param target the call target about to be compiled
+     * @param queueTime the time in nanoseconds the request spent in the compilation queue
+     * @param queueSize the number of requests remaining in the compilation queue
+     */
+    default void onCompilationPolled(OptimizedCallTarget target, long queueTime, int queueSize) {
+    }
+
     /**
      * Notifies this object when compilation of {@code target} is about to start.
      *
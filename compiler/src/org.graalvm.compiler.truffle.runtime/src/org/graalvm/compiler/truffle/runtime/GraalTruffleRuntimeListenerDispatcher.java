@@ -75,6 +75,13 @@ final class GraalTruffleRuntimeListenerDispatcher extends CopyOnWriteArrayList<G
         }
     }
 
+    @Override
+    public void onCompilationPolled(OptimizedCallTarget target, long queueTime, int queueSize) {
+        for (GraalTruffleRuntimeListener l : this) {
+            l.onCompilationPolled(target, queueTime, queueSize);
+        }
+    }
+
     @Override
     public void onCompilationFailed(OptimizedCallTarget target, String reason, boolean bailout, boolean permanent) {
         for (GraalTruffleRuntimeListener l : this) {
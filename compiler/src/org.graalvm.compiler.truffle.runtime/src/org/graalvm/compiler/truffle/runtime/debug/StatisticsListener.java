@@ -72,6 +72,8 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
 
     private final LongSummaryStatistics timeToQueue = new LongSummaryStatistics();
     private final LongSummaryStatistics timeToCompilation = new LongSummaryStatistics();
+    private final LongSummaryStatistics timeInQueue = new LongSummaryStatistics();
+    private final IntSummaryStatistics queueSize = new IntSummaryStatistics();
 
     private final IntSummaryStatistics nodeCount = new IntSummaryStatistics();
     private final IntSummaryStatistics nodeCountTrivial = new IntSummaryStatistics();
@@ -147,6 +149,12 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
         dequeues++;
     }
 
+    @Override
+    public synchronized void onCompilationPolled(OptimizedCallTarget target, long queueTime, int size) {
+        timeInQueue.accept(queueTime);
+        queueSize.accept(size);
+    }
+
     @Override
     public synchronized void onCompilationInvalidated(OptimizedCallTarget target, Object source, CharSequence reason) {
         invalidations++;
@@ -265,6 +273,8 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
             printStatistic(out, "Remaining Compilation Queue", rt.getCompilationQueueSize());
             printStatisticTime(out, "Time to queue", timeToQueue);
             printStatisticTime(out, "Time to compilation", timeToCompilation);
+            printStatisticTime(out, "Time in compilation queue", timeInQueue);
+            printStatistic(out, "Compilation queue size after poll", queueSize);
 
             printStatisticTime(out, "Compilation time", compilationTime);
             printStatisticTime(out, "  Truffle Tier", compilationTimeTruffleTier);
@@ -510,6 +520,14 @@ public final class StatisticsListener extends AbstractGraalTruffleRuntimeListene
             }
         }
 
+        @Override
+        public void onCompilationPolled(OptimizedCallTarget target, long queueTime, int queueSize) {
+            StatisticsListener listener = target.engine.statisticsListener;
+            if (listener != null) {
+                listener.onCompilationPolled(target, queueTime, queueSize);
+            }
+        }
+
         @Override
         public void onCompilationSplit(OptimizedDirectCallNode callNode) {
             StatisticsListener listener = callNode.getCallTarget().engine.statisticsListener;
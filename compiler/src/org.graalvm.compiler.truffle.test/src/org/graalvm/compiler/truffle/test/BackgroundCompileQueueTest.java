@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package org.graalvm.compiler.truffle.test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.compiler.truffle.common.TruffleCompilationTask;
+import org.graalvm.compiler.truffle.runtime.BackgroundCompileQueue;
+import org.graalvm.compiler.truffle.runtime.CancellableCompileTask;
+import org.graalvm.compiler.truffle.runtime.OptimizedCallTarget;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.nodes.RootNode;
+
+public class BackgroundCompileQueueTest extends TestWithPolyglotOptions {
+
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    public void testIdleDynamicCompilerThreadsTerminate() throws Exception {
+        setupContext("engine.DynamicCompilerThreads", "true", "engine.CompilerIdleDelay", "10");
+        OptimizedCallTarget target = (OptimizedCallTarget) Truffle.getRuntime().createCallTarget(RootNode.createConstantNode(42));
+        TestCompileQueue queue = new TestCompileQueue();
+        try {
+            submitAndAwait(queue, target);
+            Assert.assertTrue(queue.getStartedThreads() > 0);
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (queue.getLiveThreads() > 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    Assert.fail("Idle compiler threads were not terminated.");
+                }
+                Thread.sleep(10);
+            }
+            // threads are started again for new requests
+            submitAndAwait(queue, target);
+        } finally {
+            queue.shutdownAndAwaitTermination(TIMEOUT);
+        }
+    }
+
+    @Test
+    public void testFixedCompilerThreadsStayAlive() throws Exception {
+        setupContext("engine.CompilerThreads", "1", "engine.CompilerIdleDelay", "10");
+        OptimizedCallTarget target = (OptimizedCallTarget) Truffle.getRuntime().createCallTarget(RootNode.createConstantNode(42));
+        TestCompileQueue queue = new TestCompileQueue();
+        try {
+            submitAndAwait(queue, target);
+            Thread.sleep(200);
+            Assert.assertEquals(1, queue.getStartedThreads());
+            Assert.assertEquals(1, queue.getLiveThreads());
+        } finally {
+            queue.shutdownAndAwaitTermination(TIMEOUT);
+        }
+    }
+
+    @Test
+    public void testTraversingQueueOrdersByHotness() throws Exception {
+        setupContext("engine.CompilerThreads", "1", "engine.TraversingCompilationQueue", "true");
+        OptimizedCallTarget cold = createTarget();
+        OptimizedCallTarget lukewarm = createTarget();
+        OptimizedCallTarget hot = createTarget();
+        callTarget(lukewarm, 10);
+        callTarget(hot, 100);
+        TestCompileQueue queue = new TestCompileQueue();
+        CountDownLatch release = new CountDownLatch(1);
+        List<OptimizedCallTarget> executed = Collections.synchronizedList(new ArrayList<>());
+        try {
+            // occupies the only compiler thread until all other requests are queued
+            CancellableCompileTask blocking = submitBlocking(queue, release);
+            List<CancellableCompileTask> tasks = new ArrayList<>();
+            for (OptimizedCallTarget target : Arrays.asList(cold, lukewarm, hot)) {
+                tasks.add(submitRecording(queue, BackgroundCompileQueue.Priority.LAST_TIER, target, executed));
+            }
+            // a lower priority value is preferred over hotness
+            tasks.add(submitRecording(queue, BackgroundCompileQueue.Priority.FIRST_TIER, cold, executed));
+            release.countDown();
+            blocking.awaitCompletion(TIMEOUT, TimeUnit.MILLISECONDS);
+            for (CancellableCompileTask task : tasks) {
+                task.awaitCompletion(TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            Assert.assertEquals(Arrays.asList(cold, hot, lukewarm, cold), executed);
+        } finally {
+            queue.shutdownAndAwaitTermination(TIMEOUT);
+        }
+    }
+
+    @Test
+    public void testTraversingQueueDropsStaleRequests() throws Exception {
+        setupContext("engine.CompilerThreads", "1", "engine.TraversingCompilationQueue", "true", "engine.TraversingQueueStaleTimeout", "1");
+        OptimizedCallTarget stale1 = createTarget();
+        OptimizedCallTarget stale2 = createTarget();
+        OptimizedCallTarget executing = createTarget();
+        TestCompileQueue queue = new TestCompileQueue();
+        CountDownLatch release = new CountDownLatch(1);
+        List<OptimizedCallTarget> executed = Collections.synchronizedList(new ArrayList<>());
+        try {
+            CancellableCompileTask blocking = submitBlocking(queue, release);
+            CancellableCompileTask staleTask1 = submitRecording(queue, BackgroundCompileQueue.Priority.LAST_TIER, stale1, executed);
+            CancellableCompileTask staleTask2 = submitRecording(queue, BackgroundCompileQueue.Priority.LAST_TIER, stale2, executed);
+            CancellableCompileTask executingTask = submitRecording(queue, BackgroundCompileQueue.Priority.LAST_TIER, executing, executed);
+            Thread.sleep(50);
+            // executed after it was queued, so the request is not stale
+            callTarget(executing, 1);
+            Assert.assertEquals(3, queue.getQueueSize());
+            release.countDown();
+            blocking.awaitCompletion(TIMEOUT, TimeUnit.MILLISECONDS);
+            for (CancellableCompileTask task : Arrays.asList(staleTask1, staleTask2, executingTask)) {
+                task.awaitCompletion(TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            Assert.assertTrue(staleTask1.isCancelled());
+            Assert.assertTrue(staleTask2.isCancelled());
+            Assert.assertFalse(executingTask.isCancelled());
+            Assert.assertEquals(Arrays.asList(executing), executed);
+            Assert.assertEquals(0, queue.getQueueSize());
+        } finally {
+            queue.shutdownAndAwaitTermination(TIMEOUT);
+        }
+    }
+
+    private static OptimizedCallTarget createTarget() {
+        return (OptimizedCallTarget) Truffle.getRuntime().createCallTarget(RootNode.createConstantNode(42));
+    }
+
+    private static void callTarget(OptimizedCallTarget target, int calls) {
+        for (int i = 0; i < calls; i++) {
+            target.call();
+        }
+    }
+
+    private static CancellableCompileTask submitBlocking(BackgroundCompileQueue queue, CountDownLatch release) {
+        OptimizedCallTarget target = createTarget();
+        return queue.submitTask(BackgroundCompileQueue.Priority.INITIALIZATION, target, new BackgroundCompileQueue.Request() {
+            @Override
+            protected void execute(TruffleCompilationTask t, WeakReference<OptimizedCallTarget> targetRef) {
+                try {
+                    release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+    }
+
+    private static CancellableCompileTask submitRecording(BackgroundCompileQueue queue, BackgroundCompileQueue.Priority priority, OptimizedCallTarget target,
+                    List<OptimizedCallTarget> executed) {
+        return queue.submitTask(priority, target, new BackgroundCompileQueue.Request() {
+            @Override
+            protected void execute(TruffleCompilationTask t, WeakReference<OptimizedCallTarget> targetRef) {
+                // like compilation requests, cancelled requests complete without compiling
+                if (!t.isCancelled()) {
+                    executed.add(targetRef.get());
+                }
+            }
+        });
+    }
+
+    private static void submitAndAwait(BackgroundCompileQueue queue, OptimizedCallTarget target) throws Exception {
+        CancellableCompileTask task = queue.submitTask(BackgroundCompileQueue.Priority.LAST_TIER, target, new BackgroundCompileQueue.Request() {
+            @Override
+            protected void execute(TruffleCompilationTask t, WeakReference<OptimizedCallTarget> targetRef) {
+            }
+        });
+        task.awaitCompletion(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class TestCompileQueue extends BackgroundCompileQueue {
+
+        private final List<Thread> threads = new ArrayList<>();
+
+        @Override
+        protected ThreadFactory newThreadFactory(String threadNamePrefix, OptimizedCallTarget callTarget) {
+            return (Runnable r) -> {
+                Thread t = new Thread(r, threadNamePrefix + "-Test");
+                t.setDaemon(true);
+                synchronized (threads) {
+                    threads.add(t);
+                }
+                return t;
+            };
+        }
+
+        int getStartedThreads() {
+            synchronized (threads) {
+                return threads.size();
+            }
+        }
+
+        int getLiveThreads() {
+            int live = 0;
+            synchronized (threads) {
+                for (Thread t : threads) {
+                    if (t.isAlive()) {
+                        live++;
+                    }
+                }
+            }
+            return live;
+        }
+    }
+}
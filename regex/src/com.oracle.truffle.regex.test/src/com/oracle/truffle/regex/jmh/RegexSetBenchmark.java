@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.regex.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.oracle.truffle.regex.tregex.test.TRegexTestDummyLanguage;
+
+/**
+ * Compares matching a set of log-parsing patterns against a line in a single pass with a regex set
+ * to executing every pattern separately.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RegexSetBenchmark extends BenchmarkBase {
+
+    @State(Scope.Benchmark)
+    public static class BenchState {
+        String[] patterns = {
+                        "ERROR",
+                        "WARN(ING)?",
+                        "[Tt]imeout after \\d+ ?ms",
+                        "connection (refused|reset)",
+                        "user=[a-z]+",
+                        "status=[45]\\d\\d",
+                        "\\b\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\b",
+                        "GET|POST|PUT|DELETE",
+                        "latency=\\d{4,}",
+                        "OutOfMemoryError",
+                        "retry(ing)? \\d+/\\d+",
+                        "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}",
+        };
+        String input = "2020-06-12 10:31:07,412 INFO [worker-7] POST /api/v1/items user=alice status=201 latency=12 from 10.1.2.3";
+        Context context;
+        Value regexSet;
+        Value[] regexes;
+
+        public BenchState() {
+            context = Context.newBuilder().build();
+            context.enter();
+            Value engine = context.eval(TRegexTestDummyLanguage.ID, "").execute("");
+            regexSet = engine.invokeMember("compileSet", ProxyArray.fromArray((Object[]) patterns), "");
+            regexes = new Value[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                regexes[i] = engine.execute(patterns[i], "");
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.leave();
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public long regexSet(BenchState state) {
+        return state.regexSet.invokeMember("match", state.input, 0).getArraySize();
+    }
+
+    @Benchmark
+    public long sequential(BenchState state) {
+        long matches = 0;
+        for (Value regex : state.regexes) {
+            if (regex.invokeMember("exec", state.input, 0).getMember("isMatch").asBoolean()) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -40,6 +40,8 @@
  */
 package com.oracle.truffle.regex.tregex.test;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 public class JsTests extends RegexTestBase {
@@ -89,4 +91,44 @@ public class JsTests extends RegexTestBase {
         test("\\0", "u", "\u0000", 0, true, 0, 1);
     }
 
+    /**
+     * The DFA of this expression needs more than {@code TRegexMaxDFASize} states, so it bails out
+     * and the NFA executor keeps caching DFA states instead.
+     */
+    private static final String DFA_BAILOUT_PATTERN = "([ab]*)a([ab]{12})";
+
+    @Test
+    public void dfaBailout() {
+        for (int i = 0; i < 3; i++) {
+            // repeated executions replay the transitions cached by the first one
+            test(DFA_BAILOUT_PATTERN, "", "xabbbbbbbbbbbbx", 0, true, 1, 14, 1, 1, 2, 14);
+            test(DFA_BAILOUT_PATTERN, "", "abababababababababab", 0, true, 0, 19, 0, 6, 7, 19);
+            test(DFA_BAILOUT_PATTERN, "", "bbbbbbbbbbbbbbbbbbbb", 0, false);
+            // characters that are not cached have to be matched without the cache
+            test(DFA_BAILOUT_PATTERN, "", "\u0100abbbbbbbbbbbb\u0100", 0, true, 1, 14, 1, 1, 2, 14);
+            test(DFA_BAILOUT_PATTERN, "", "ab\u0100abbbbbbbbbbbb", 1, true, 3, 16, 3, 3, 4, 16);
+        }
+    }
+
+    @Test
+    public void dfaBailoutWithCacheEviction() {
+        // a random input visits more distinct DFA states than the transition cache can hold
+        Random random = new Random(42);
+        char[] chars = new char[5000];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = random.nextBoolean() ? 'a' : 'b';
+        }
+        for (int length = chars.length; length >= 13; length -= 997) {
+            String input = new String(chars, 0, length);
+            // [ab]* is greedy, so the match starts at 0 and the single 'a' is the last one with
+            // twelve more characters behind it
+            int a = input.lastIndexOf('a', length - 13);
+            if (a < 0) {
+                test(DFA_BAILOUT_PATTERN, "", input, 0, false);
+            } else {
+                test(DFA_BAILOUT_PATTERN, "", input, 0, true, 0, a + 13, 0, a, a + 1, a + 13);
+            }
+        }
+    }
+
 }
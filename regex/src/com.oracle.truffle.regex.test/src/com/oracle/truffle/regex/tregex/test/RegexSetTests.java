@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.regex.tregex.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.junit.Test;
+
+public class RegexSetTests extends RegexTestBase {
+
+    @Override
+    String getEngineOptions() {
+        return "";
+    }
+
+    private Value compileSet(String flags, String... patterns) {
+        return getEngine().invokeMember("compileSet", ProxyArray.fromArray((Object[]) patterns), flags);
+    }
+
+    private static void testSet(Value regexSet, String input, int fromIndex, int... expected) {
+        Value result = regexSet.invokeMember("match", input, fromIndex);
+        int[] actual = new int[(int) result.getArraySize()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = result.getArrayElement(i).asInt();
+        }
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void simple() {
+        Value set = compileSet("", "abc", "b+", "x", "[0-9]{2}");
+        assertEquals(4, set.getMember("size").asInt());
+        testSet(set, "abc", 0, 0, 1);
+        testSet(set, "xx12", 0, 2, 3);
+        testSet(set, "yyy", 0);
+        testSet(set, "abc", 1, 1);
+    }
+
+    @Test
+    public void anchors() {
+        Value set = compileSet("", "^a", "b$", "^$", "\\bc");
+        testSet(set, "ab", 0, 0, 1);
+        testSet(set, "ba", 0);
+        testSet(set, "", 0, 2);
+        testSet(set, "a c", 0, 0, 3);
+        testSet(set, "ab", 1, 1);
+    }
+
+    @Test
+    public void emptyMatches() {
+        Value set = compileSet("", "", "a*", "b");
+        testSet(set, "", 0, 0, 1);
+        testSet(set, "b", 0, 0, 1, 2);
+        testSet(set, "b", 1, 0, 1);
+    }
+
+    @Test
+    public void flags() {
+        Value set = compileSet("i", "ABC", "d");
+        testSet(set, "xabcx", 0, 0);
+        testSet(set, "D", 0, 1);
+        Value stickySet = compileSet("y", "a", "b");
+        testSet(stickySet, "ba", 0, 1);
+    }
+
+    @Test
+    public void lookAround() {
+        Value set = compileSet("", "a(?=b)", "(?<=a)c");
+        testSet(set, "ab", 0, 0);
+        testSet(set, "ac", 0, 1);
+        testSet(set, "ac", 1, 1);
+        testSet(set, "ad", 0);
+    }
+
+    @Test
+    public void deadPatterns() {
+        Value set = compileSet("", "[]", "a");
+        testSet(set, "a", 0, 1);
+    }
+
+    @Test
+    public void empty() {
+        testSet(compileSet(""), "abc", 0);
+    }
+}
@@ -47,7 +47,7 @@ public class CompiledRegexObject {
 
     private final CallTarget callTarget;
 
-    public CompiledRegexObject(RegexLanguage language, RegexExecRootNode compiledRegex) {
+    public CompiledRegexObject(RegexLanguage language, RegexBodyNode compiledRegex) {
         callTarget = Truffle.getRuntime().createCallTarget(new RegexRootNode(language, compiledRegex));
     }
 
@@ -41,17 +41,22 @@
 package com.oracle.truffle.regex;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.dsl.Cached;
 import com.oracle.truffle.api.dsl.Cached.Shared;
 import com.oracle.truffle.api.interop.ArityException;
 import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.InvalidArrayIndexException;
 import com.oracle.truffle.api.interop.TruffleObject;
 import com.oracle.truffle.api.interop.UnknownIdentifierException;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
 import com.oracle.truffle.api.interop.UnsupportedTypeException;
+import com.oracle.truffle.api.library.CachedLibrary;
 import com.oracle.truffle.api.library.ExportLibrary;
 import com.oracle.truffle.api.library.ExportMessage;
 import com.oracle.truffle.regex.runtime.nodes.StringEqualsNode;
 import com.oracle.truffle.regex.runtime.nodes.ToStringNode;
+import com.oracle.truffle.regex.tregex.TRegexCompiler;
 import com.oracle.truffle.regex.tregex.parser.RegexValidator;
 import com.oracle.truffle.regex.tregex.parser.flavors.RegexFlavor;
 import com.oracle.truffle.regex.tregex.parser.flavors.RegexFlavorProcessor;
@@ -72,13 +77,24 @@ import com.oracle.truffle.regex.util.TruffleReadOnlyKeysArray;
  * engine</li>
  * </ul>
  * <p>
+ * In addition, the {@link RegexEngine} provides the invocable member {@code compileSet}, which
+ * compiles a set of regular expressions into a {@link RegexSetObject} that reports all matching
+ * expressions in a single pass over the input. It takes the following arguments:
+ * <ol>
+ * <li>{@link TruffleObject} {@code patterns}: an array of the sources of the regular expressions to
+ * be compiled</li>
+ * <li>{@link String} {@code flags} (optional): flags to be passed to the compiler, shared by all
+ * regular expressions in the set</li>
+ * </ol>
+ * <p>
  * A {@link RegexEngine} can be obtained by executing the {@link RegexEngineBuilder}.
  */
 @ExportLibrary(InteropLibrary.class)
 public class RegexEngine extends AbstractConstantKeysObject {
 
     private static final String PROP_VALIDATE = "validate";
-    private static final TruffleReadOnlyKeysArray KEYS = new TruffleReadOnlyKeysArray(PROP_VALIDATE);
+    private static final String PROP_COMPILE_SET = "compileSet";
+    private static final TruffleReadOnlyKeysArray KEYS = new TruffleReadOnlyKeysArray(PROP_VALIDATE, PROP_COMPILE_SET);
 
     private final RegexCompiler compiler;
     private final RegexOptions options;
@@ -110,6 +126,35 @@ public class RegexEngine extends AbstractConstantKeysObject {
         return regexObject;
     }
 
+    /**
+     * Compiles the given regular expressions into one {@link RegexSetObject}. Regex sets are
+     * supported by {@link TRegexCompiler} only, and only for expressions that can be compiled to
+     * an NFA, i.e. expressions without back-references, negative look-around assertions and
+     * non-literal look-behind assertions.
+     */
+    @TruffleBoundary
+    public RegexSetObject compileSet(RegexSource[] regexSources) throws RegexSyntaxException, UnsupportedRegexException {
+        for (RegexSource regexSource : regexSources) {
+            validate(regexSource);
+        }
+        RegexCompiler mainCompiler = compiler instanceof RegexCompilerWithFallback ? ((RegexCompilerWithFallback) compiler).getMainCompiler() : compiler;
+        if (!(mainCompiler instanceof TRegexCompiler)) {
+            throw new UnsupportedRegexException("regex sets are supported by TRegex only");
+        }
+        return new RegexSetObject(((TRegexCompiler) mainCompiler).compileSet(regexSources), regexSources.length);
+    }
+
+    private void validate(RegexSource regexSource) throws RegexSyntaxException, UnsupportedRegexException {
+        RegexFlavor flavor = options.getFlavor();
+        if (flavor != null) {
+            flavor.forRegex(regexSource).validate();
+        } else {
+            RegexValidator validator = new RegexValidator(regexSource, RegexFlags.parseFlags(regexSource.getFlags()), options);
+            validator.validate();
+            options.getFeatureSet().checkSupport(regexSource, validator.getFeatures());
+        }
+    }
+
     @Override
     public TruffleReadOnlyKeysArray getKeys() {
         return KEYS;
@@ -120,6 +165,8 @@ public class RegexEngine extends AbstractConstantKeysObject {
         switch (symbol) {
             case PROP_VALIDATE:
                 return ValidateMethod.getInstance();
+            case PROP_COMPILE_SET:
+                return new CompileSetMethod(this);
             default:
                 CompilerDirectives.transferToInterpreterAndInvalidate();
                 throw UnknownIdentifierException.create(symbol);
@@ -141,21 +188,51 @@ public class RegexEngine extends AbstractConstantKeysObject {
     @SuppressWarnings("static-method")
     @ExportMessage
     boolean isMemberInvocable(String member,
-                    @Shared("isValidatePropNode") @Cached StringEqualsNode isValidatePropNode) {
-        return isValidatePropNode.execute(member, PROP_VALIDATE);
+                    @Shared("isValidatePropNode") @Cached StringEqualsNode isValidatePropNode,
+                    @Shared("isCompileSetPropNode") @Cached StringEqualsNode isCompileSetPropNode) {
+        return isValidatePropNode.execute(member, PROP_VALIDATE) || isCompileSetPropNode.execute(member, PROP_COMPILE_SET);
     }
 
     @ExportMessage
     Object invokeMember(String member, Object[] args,
                     @Shared("isValidatePropNode") @Cached StringEqualsNode isValidatePropNode,
+                    @Shared("isCompileSetPropNode") @Cached StringEqualsNode isCompileSetPropNode,
                     @Shared("patternToStringNode") @Cached ToStringNode patternToStringNode,
-                    @Shared("flagsToStringNode") @Cached ToStringNode flagsToStringNode) throws UnknownIdentifierException, ArityException, UnsupportedTypeException {
-        if (!isValidatePropNode.execute(member, PROP_VALIDATE)) {
-            CompilerDirectives.transferToInterpreterAndInvalidate();
-            throw UnknownIdentifierException.create(member);
+                    @Shared("flagsToStringNode") @Cached ToStringNode flagsToStringNode,
+                    @CachedLibrary(limit = "2") InteropLibrary patterns) throws UnknownIdentifierException, ArityException, UnsupportedTypeException {
+        if (isValidatePropNode.execute(member, PROP_VALIDATE)) {
+            RegexLanguage.validateRegex(argsToRegexSource(args, patternToStringNode, flagsToStringNode));
+            return true;
+        }
+        if (isCompileSetPropNode.execute(member, PROP_COMPILE_SET)) {
+            return compileSet(argsToRegexSetSources(args, patterns, patternToStringNode, flagsToStringNode));
+        }
+        CompilerDirectives.transferToInterpreterAndInvalidate();
+        throw UnknownIdentifierException.create(member);
+    }
+
+    @ExportLibrary(InteropLibrary.class)
+    public static final class CompileSetMethod extends AbstractRegexObject {
+
+        private final RegexEngine engine;
+
+        public CompileSetMethod(RegexEngine engine) {
+            this.engine = engine;
+        }
+
+        @SuppressWarnings("static-method")
+        @ExportMessage
+        boolean isExecutable() {
+            return true;
+        }
+
+        @ExportMessage
+        Object execute(Object[] args,
+                        @Cached ToStringNode patternToStringNode,
+                        @Cached ToStringNode flagsToStringNode,
+                        @CachedLibrary(limit = "2") InteropLibrary patterns) throws ArityException, UnsupportedTypeException {
+            return engine.compileSet(argsToRegexSetSources(args, patterns, patternToStringNode, flagsToStringNode));
         }
-        RegexLanguage.validateRegex(argsToRegexSource(args, patternToStringNode, flagsToStringNode));
-        return true;
     }
 
     @ExportLibrary(InteropLibrary.class)
@@ -195,4 +272,28 @@ public class RegexEngine extends AbstractConstantKeysObject {
         String flags = args.length == 2 ? flagsToStringNode.execute(args[1]) : "";
         return new RegexSource(pattern, flags);
     }
+
+    private static RegexSource[] argsToRegexSetSources(Object[] args, InteropLibrary patterns, ToStringNode patternToStringNode, ToStringNode flagsToStringNode)
+                    throws ArityException, UnsupportedTypeException {
+        if (!(args.length == 1 || args.length == 2)) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            throw ArityException.create(2, args.length);
+        }
+        String flags = args.length == 2 ? flagsToStringNode.execute(args[1]) : "";
+        try {
+            long size = patterns.getArraySize(args[0]);
+            if (size > Integer.MAX_VALUE) {
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                throw UnsupportedTypeException.create(args);
+            }
+            RegexSource[] sources = new RegexSource[(int) size];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = new RegexSource(patternToStringNode.execute(patterns.readArrayElement(args[0], i)), flags);
+            }
+            return sources;
+        } catch (UnsupportedMessageException | InvalidArrayIndexException e) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            throw UnsupportedTypeException.create(args);
+        }
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.regex;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Cached.Shared;
+import com.oracle.truffle.api.dsl.GenerateUncached;
+import com.oracle.truffle.api.dsl.ReportPolymorphism;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.interop.ArityException;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.UnknownIdentifierException;
+import com.oracle.truffle.api.interop.UnsupportedTypeException;
+import com.oracle.truffle.api.library.ExportLibrary;
+import com.oracle.truffle.api.library.ExportMessage;
+import com.oracle.truffle.api.nodes.DirectCallNode;
+import com.oracle.truffle.api.nodes.IndirectCallNode;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.regex.runtime.nodes.ExpectStringOrTruffleObjectNode;
+import com.oracle.truffle.regex.runtime.nodes.StringEqualsNode;
+import com.oracle.truffle.regex.runtime.nodes.ToLongNode;
+import com.oracle.truffle.regex.util.TruffleReadOnlyIntArray;
+import com.oracle.truffle.regex.util.TruffleReadOnlyKeysArray;
+
+/**
+ * {@link RegexSetObject} represents a set of regular expressions compiled into one automaton, see
+ * {@link com.oracle.truffle.regex.tregex.nodes.TRegexSetExecRootNode}. It is the result of calling
+ * {@code compileSet} on a {@link RegexEngine}. It exposes the following properties:
+ * <ol>
+ * <li>{@code int size}: number of regular expressions in the set.</li>
+ * <li>{@link RegexSetMatchMethod} {@code match}: an executable method that matches all regular
+ * expressions in the set against a string in a single pass. The method accepts the same parameters
+ * as {@link RegexObject.RegexObjectExecMethod}, and returns an array of the indices of all regular
+ * expressions that match somewhere in the input at or after {@code fromIndex}, in ascending
+ * order.</li>
+ * </ol>
+ */
+@ExportLibrary(InteropLibrary.class)
+public final class RegexSetObject extends AbstractConstantKeysObject {
+
+    static final String PROP_MATCH = "match";
+    private static final String PROP_SIZE = "size";
+    private static final TruffleReadOnlyKeysArray KEYS = new TruffleReadOnlyKeysArray(PROP_MATCH, PROP_SIZE);
+
+    private static final TruffleReadOnlyIntArray NO_MATCH = new TruffleReadOnlyIntArray(new int[0]);
+
+    private final CompiledRegexObject compiledRegexSet;
+    private final int size;
+
+    public RegexSetObject(CompiledRegexObject compiledRegexSet, int size) {
+        this.compiledRegexSet = compiledRegexSet;
+        this.size = size;
+    }
+
+    public CompiledRegexObject getCompiledRegexSet() {
+        return compiledRegexSet;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public TruffleReadOnlyKeysArray getKeys() {
+        return KEYS;
+    }
+
+    @Override
+    public Object readMemberImpl(String symbol) throws UnknownIdentifierException {
+        switch (symbol) {
+            case PROP_MATCH:
+                // this allocation should get virtualized and optimized away by graal
+                return new RegexSetMatchMethod(this);
+            case PROP_SIZE:
+                return getSize();
+            default:
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                throw UnknownIdentifierException.create(symbol);
+        }
+    }
+
+    @SuppressWarnings("static-method")
+    @ExportMessage
+    boolean isMemberInvocable(String member,
+                    @Shared("isMatchPropNode") @Cached StringEqualsNode isMatchPropNode) {
+        return isMatchPropNode.execute(member, PROP_MATCH);
+    }
+
+    @ExportMessage
+    Object invokeMember(String member, Object[] args,
+                    @Shared("isMatchPropNode") @Cached StringEqualsNode isMatchPropNode,
+                    @Cached ExpectStringOrTruffleObjectNode expectStringOrTruffleObjectNode,
+                    @Cached ToLongNode toLongNode,
+                    @Cached MatchCompiledRegexSetNode matchNode) throws UnknownIdentifierException, ArityException, UnsupportedTypeException {
+        if (!isMatchPropNode.execute(member, PROP_MATCH)) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            throw UnknownIdentifierException.create(member);
+        }
+        return match(this, args, expectStringOrTruffleObjectNode, toLongNode, matchNode);
+    }
+
+    private static Object match(RegexSetObject regexSet, Object[] args, ExpectStringOrTruffleObjectNode expectStringOrTruffleObjectNode, ToLongNode toLongNode,
+                    MatchCompiledRegexSetNode matchNode) throws ArityException, UnsupportedTypeException {
+        if (args.length != 2) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            throw ArityException.create(2, args.length);
+        }
+        Object input = expectStringOrTruffleObjectNode.execute(args[0]);
+        long fromIndex = toLongNode.execute(args[1]);
+        if (fromIndex > Integer.MAX_VALUE) {
+            return NO_MATCH;
+        }
+        return matchNode.execute(regexSet.getCompiledRegexSet(), input, (int) fromIndex);
+    }
+
+    @ExportLibrary(InteropLibrary.class)
+    public static final class RegexSetMatchMethod extends AbstractRegexObject {
+
+        private final RegexSetObject regexSet;
+
+        public RegexSetMatchMethod(RegexSetObject regexSet) {
+            this.regexSet = regexSet;
+        }
+
+        public RegexSetObject getRegexSetObject() {
+            return regexSet;
+        }
+
+        @SuppressWarnings("static-method")
+        @ExportMessage
+        boolean isExecutable() {
+            return true;
+        }
+
+        @ExportMessage
+        Object execute(Object[] args,
+                        @Cached ExpectStringOrTruffleObjectNode expectStringOrTruffleObjectNode,
+                        @Cached ToLongNode toLongNode,
+                        @Cached MatchCompiledRegexSetNode matchNode) throws ArityException, UnsupportedTypeException {
+            return match(getRegexSetObject(), args, expectStringOrTruffleObjectNode, toLongNode, matchNode);
+        }
+    }
+
+    @ReportPolymorphism
+    @GenerateUncached
+    abstract static class MatchCompiledRegexSetNode extends Node {
+
+        abstract Object execute(CompiledRegexObject receiver, Object input, int fromIndex);
+
+        @SuppressWarnings("unused")
+        @Specialization(guards = "receiver == cachedReceiver", limit = "4")
+        static Object matchFixed(CompiledRegexObject receiver, Object input, int fromIndex,
+                        @Cached("receiver") CompiledRegexObject cachedReceiver,
+                        @Cached("create(cachedReceiver.getCallTarget())") DirectCallNode directCallNode) {
+            return directCallNode.call(input, fromIndex);
+        }
+
+        @Specialization(replaces = "matchFixed")
+        static Object matchVarying(CompiledRegexObject receiver, Object input, int fromIndex,
+                        @Cached IndirectCallNode indirectCallNode) {
+            return indirectCallNode.call(receiver.getCallTarget(), input, fromIndex);
+        }
+    }
+}
@@ -70,6 +70,7 @@ import com.oracle.truffle.regex.tregex.nfa.PureNFAGenerator;
 import com.oracle.truffle.regex.tregex.nfa.PureNFAMap;
 import com.oracle.truffle.regex.tregex.nodes.TRegexExecRootNode;
 import com.oracle.truffle.regex.tregex.nodes.TRegexExecutorNode;
+import com.oracle.truffle.regex.tregex.nodes.TRegexSetExecRootNode;
 import com.oracle.truffle.regex.tregex.nodes.dfa.TRegexDFAExecutorNode;
 import com.oracle.truffle.regex.tregex.nodes.dfa.TRegexDFAExecutorProperties;
 import com.oracle.truffle.regex.tregex.nodes.nfa.TRegexBacktrackingNFAExecutorNode;
@@ -170,6 +171,30 @@ public final class TRegexCompilationRequest {
         return new TRegexExecRootNode(tRegexCompiler, ast, compileBacktrackingExecutor());
     }
 
+    /**
+     * Compiles the expression to an {@link NFA} for use in a {@link TRegexSetExecRootNode}.
+     *
+     * @return the NFA, or {@code null} if the expression can never match.
+     */
+    @TruffleBoundary
+    NFA compileSetNFA() {
+        try {
+            createAST();
+            if (ast.getRoot().isDead()) {
+                return null;
+            }
+            if (!canTransformToDFA(ast)) {
+                throw new UnsupportedRegexException("regex set contains an expression that cannot be compiled to an NFA");
+            }
+            createNFA();
+            return nfa.isDead() ? null : nfa;
+        } catch (UnsupportedRegexException e) {
+            e.setReason("TRegex: " + e.getReason());
+            e.setRegex(source);
+            throw e;
+        }
+    }
+
     public TRegexBacktrackingNFAExecutorNode compileBacktrackingExecutor() {
         assert ast != null;
         pureNFA = PureNFAGenerator.mapToNFA(ast);
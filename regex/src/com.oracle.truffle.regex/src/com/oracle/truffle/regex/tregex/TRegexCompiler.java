@@ -50,6 +50,7 @@ import com.oracle.truffle.regex.RegexSyntaxException;
 import com.oracle.truffle.regex.tregex.nfa.NFA;
 import com.oracle.truffle.regex.tregex.nodes.TRegexExecRootNode;
 import com.oracle.truffle.regex.tregex.nodes.TRegexExecRootNode.LazyCaptureGroupRegexSearchNode;
+import com.oracle.truffle.regex.tregex.nodes.TRegexSetExecRootNode;
 import com.oracle.truffle.regex.tregex.nodes.dfa.TRegexDFAExecutorNode;
 import com.oracle.truffle.regex.tregex.nodes.nfa.TRegexBacktrackingNFAExecutorNode;
 import com.oracle.truffle.regex.tregex.parser.flavors.RegexFlavor;
@@ -89,6 +90,29 @@ public final class TRegexCompiler implements RegexCompiler {
         return new TRegexCompilationRequest(this, ecmascriptSource).compile();
     }
 
+    /**
+     * Compiles the given expressions into one {@link TRegexSetExecRootNode}, which reports all
+     * matching expressions in a single pass over the input.
+     */
+    @TruffleBoundary
+    public CompiledRegexObject compileSet(RegexSource[] sources) throws RegexSyntaxException {
+        NFA[] nfas = new NFA[sources.length];
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0; i < sources.length; i++) {
+            RegexSource ecmascriptSource = sources[i];
+            if (options.getFlavor() != null) {
+                ecmascriptSource = options.getFlavor().forRegex(sources[i]).toECMAScriptRegex();
+            }
+            nfas[i] = new TRegexCompilationRequest(this, ecmascriptSource).compileSetNFA();
+            if (i > 0) {
+                pattern.append('|');
+            }
+            pattern.append("(?:").append(sources[i].getPattern()).append(')');
+        }
+        RegexSource setSource = new RegexSource(pattern.toString(), sources.length == 0 ? "" : sources[0].getFlags());
+        return new CompiledRegexObject(language, new TRegexSetExecRootNode(language, setSource, nfas));
+    }
+
     @TruffleBoundary
     public TRegexDFAExecutorNode compileEagerDFAExecutor(RegexSource source) {
         return new TRegexCompilationRequest(this, source).compileEagerDFAExecutor();
@@ -156,6 +156,14 @@ public class TRegexOptions {
      */
     public static final int TRegexMaxDFASize = 2_400;
 
+    /**
+     * Maximum number of DFA states cached by a
+     * {@link com.oracle.truffle.regex.tregex.nodes.nfa.TRegexNFAExecutorNode} whose expression
+     * could not be compiled to a DFA. When this limit is reached, cached states are evicted in
+     * approximately least recently used order.
+     */
+    public static final int TRegexMaxNFATransitionCacheSize = 1_000;
+
     /**
      * Maximum number of entries in the global compilation cache in
      * {@link com.oracle.truffle.regex.RegexLanguage}.
@@ -242,7 +242,12 @@ public class TRegexExecRootNode extends RegexExecRootNode implements RegexProfil
 
     private synchronized void switchToLazyDFA() {
         compileLazyDFA();
-        if (lazyDFANode != LAZY_DFA_BAILED_OUT) {
+        if (lazyDFANode == LAZY_DFA_BAILED_OUT) {
+            if (runnerNode == nfaNode) {
+                // the NFA executor is here to stay, let it cache the DFA states it calculates
+                ((TRegexNFAExecutorNode) nfaNode.getExecutor()).enableTransitionCache();
+            }
+        } else {
             runnerNode = insert(lazyDFANode);
             if (canSwitchToEagerDFA()) {
                 if (regressionTestMode) {
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.regex.tregex.nodes;
+
+import java.util.Arrays;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.regex.RegexBodyNode;
+import com.oracle.truffle.regex.RegexLanguage;
+import com.oracle.truffle.regex.RegexRootNode;
+import com.oracle.truffle.regex.RegexSource;
+import com.oracle.truffle.regex.tregex.nfa.NFA;
+import com.oracle.truffle.regex.tregex.nfa.NFAState;
+import com.oracle.truffle.regex.tregex.nfa.NFAStateTransition;
+import com.oracle.truffle.regex.tregex.nodes.input.InputCharAtNode;
+import com.oracle.truffle.regex.tregex.nodes.input.InputLengthNode;
+import com.oracle.truffle.regex.util.TruffleReadOnlyIntArray;
+
+/**
+ * Matches a set of regular expressions against an input string in a single pass and returns the
+ * indices of all expressions that match somewhere in the input, in ascending order.
+ * <p>
+ * The NFAs of all expressions are combined into one automaton whose state space is the disjoint
+ * union of the individual NFAs' states. This automaton is simulated in the same way as in
+ * {@link com.oracle.truffle.regex.tregex.nodes.nfa.TRegexNFAExecutorNode}, except that we are only
+ * interested in whether a match exists, not in its boundaries or capture groups. Therefore, paths
+ * are tracked as a plain set of states without any priorities, and all states of an expression
+ * are dropped as soon as that expression has matched. The search terminates early once all
+ * expressions have matched, or no expression can match anymore.
+ */
+public final class TRegexSetExecRootNode extends RegexBodyNode {
+
+    /**
+     * The NFAs of the expressions in the set, {@code null} for expressions that can never match.
+     */
+    @CompilationFinal(dimensions = 1) private final NFA[] nfas;
+    @CompilationFinal(dimensions = 1) private final boolean[] searching;
+    /**
+     * Offset of the states of every NFA in the combined state space.
+     */
+    @CompilationFinal(dimensions = 1) private final int[] stateOffsets;
+    /**
+     * Maps every state in the combined state space to the index of its expression.
+     */
+    @CompilationFinal(dimensions = 1) private final int[] expressionOfState;
+    private final int nStates;
+
+    @Child private InputLengthNode lengthNode = InputLengthNode.create();
+    @Child private InputCharAtNode charAtNode = InputCharAtNode.create();
+
+    public TRegexSetExecRootNode(RegexLanguage language, RegexSource source, NFA[] nfas) {
+        super(language, source);
+        this.nfas = nfas;
+        this.searching = new boolean[nfas.length];
+        this.stateOffsets = new int[nfas.length];
+        int offset = 0;
+        for (int i = 0; i < nfas.length; i++) {
+            stateOffsets[i] = offset;
+            if (nfas[i] != null) {
+                nfas[i].setInitialLoopBack(false);
+                searching[i] = !nfas[i].getAst().getFlags().isSticky() && !nfas[i].getAst().getRoot().startsWithCaret();
+                offset += nfas[i].getNumberOfStates();
+            }
+        }
+        this.nStates = offset;
+        this.expressionOfState = new int[nStates];
+        for (int i = 0; i < nfas.length; i++) {
+            if (nfas[i] != null) {
+                Arrays.fill(expressionOfState, stateOffsets[i], stateOffsets[i] + nfas[i].getNumberOfStates(), i);
+            }
+        }
+    }
+
+    public int getNumberOfExpressions() {
+        return nfas.length;
+    }
+
+    @Override
+    public Object execute(VirtualFrame frame) {
+        Object[] args = frame.getArguments();
+        assert args.length == 2;
+        return new TruffleReadOnlyIntArray(match(args[0], (int) args[1]));
+    }
+
+    private int[] match(Object input, int fromIndex) {
+        final int inputLength = lengthNode.execute(input);
+        if (fromIndex > inputLength) {
+            return new int[0];
+        }
+        long[] curStates = new long[((nStates - 1) >> 6) + 1];
+        long[] nextStates = new long[curStates.length];
+        boolean[] matched = new boolean[nfas.length];
+        // expressions that can never match are treated as already done
+        int nMatched = 0;
+        // NFAs containing look-behind assertions may have to start matching before fromIndex.
+        int[] startIndices = new int[nfas.length];
+        int index = fromIndex;
+        for (int i = 0; i < nfas.length; i++) {
+            if (nfas[i] == null) {
+                matched[i] = true;
+                nMatched++;
+            } else {
+                startIndices[i] = fromIndex - Math.min(fromIndex, nfas[i].getAnchoredEntry().length - 1);
+                index = Math.min(index, startIndices[i]);
+            }
+        }
+        while (nMatched < nfas.length) {
+            if (CompilerDirectives.inInterpreter()) {
+                RegexRootNode.checkThreadInterrupted();
+            }
+            boolean pending = false;
+            for (int i = 0; i < nfas.length; i++) {
+                if (!matched[i]) {
+                    if (startIndices[i] == index) {
+                        addInitialStates(curStates, i, fromIndex - index, index);
+                    }
+                    pending |= startIndices[i] > index || searching[i] && index <= inputLength;
+                }
+            }
+            if (!pending && isEmpty(curStates)) {
+                break;
+            }
+            if (index < inputLength) {
+                char c = charAtNode.execute(input, index);
+                nMatched += expandStates(curStates, nextStates, matched, c);
+                if (index >= fromIndex) {
+                    for (int i = 0; i < nfas.length; i++) {
+                        if (searching[i] && !matched[i]) {
+                            NFAState loopBack = nfas[i].getInitialLoopBackTransition().getTarget();
+                            if (expandState(nextStates, stateOffsets[i], loopBack, c)) {
+                                matched[i] = true;
+                                nMatched++;
+                            }
+                        }
+                    }
+                }
+            } else {
+                for (int i = 0; i < nfas.length; i++) {
+                    if (!matched[i] && (containsFinalState(curStates, i) ||
+                                    searching[i] && index >= fromIndex && nfas[i].getInitialLoopBackTransition().getTarget().hasTransitionToFinalState(true))) {
+                        matched[i] = true;
+                        nMatched++;
+                    }
+                }
+                break;
+            }
+            long[] tmp = curStates;
+            curStates = nextStates;
+            nextStates = tmp;
+            Arrays.fill(nextStates, 0);
+            index++;
+        }
+        int[] result = new int[nMatched];
+        int n = 0;
+        for (int i = 0; i < nfas.length; i++) {
+            if (matched[i] && nfas[i] != null) {
+                result[n++] = i;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    private void addInitialStates(long[] states, int expression, int offset, int index) {
+        NFA nfa = nfas[expression];
+        int anchoredInitialState = nfa.getAnchoredEntry()[offset].getTarget().getId();
+        int unAnchoredInitialState = nfa.getUnAnchoredEntry()[offset].getTarget().getId();
+        if (unAnchoredInitialState != anchoredInitialState && index == 0) {
+            add(states, stateOffsets[expression] + anchoredInitialState);
+        }
+        if (nfa.getState(unAnchoredInitialState) != null) {
+            add(states, stateOffsets[expression] + unAnchoredInitialState);
+        }
+    }
+
+    /**
+     * Calculates the successors of all states in {@code curStates} for character {@code c}.
+     * States of expressions that have already matched are skipped.
+     *
+     * @return the number of expressions that matched in this step.
+     */
+    private int expandStates(long[] curStates, long[] nextStates, boolean[] matched, char c) {
+        int nMatched = 0;
+        for (int i = 0; i < curStates.length; i++) {
+            long word = curStates[i];
+            while (word != 0) {
+                int stateId = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int expression = expressionOfState[stateId];
+                if (!matched[expression]) {
+                    int offset = stateOffsets[expression];
+                    if (expandState(nextStates, offset, nfas[expression].getState(stateId - offset), c)) {
+                        matched[expression] = true;
+                        nMatched++;
+                    }
+                }
+            }
+        }
+        return nMatched;
+    }
+
+    /**
+     * Adds all successors of {@code state} matching {@code c} to {@code nextStates}.
+     *
+     * @return {@code true} if {@code state} has a transition to the unanchored final state.
+     */
+    private static boolean expandState(long[] nextStates, int offset, NFAState state, char c) {
+        for (NFAStateTransition t : state.getSuccessors()) {
+            NFAState target = t.getTarget();
+            if (target.isUnAnchoredFinalState(true)) {
+                return true;
+            } else if (!target.isAnchoredFinalState(true) && target.getCharSet().contains(c)) {
+                add(nextStates, offset + target.getId());
+            }
+        }
+        return false;
+    }
+
+    private boolean containsFinalState(long[] states, int expression) {
+        NFA nfa = nfas[expression];
+        int offset = stateOffsets[expression];
+        for (int id = 0; id < nfa.getNumberOfStates(); id++) {
+            if (contains(states, offset + id) && nfa.getState(id).hasTransitionToFinalState(true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void add(long[] states, int id) {
+        states[id >> 6] |= 1L << id;
+    }
+
+    private static boolean contains(long[] states, int id) {
+        return (states[id >> 6] & (1L << id)) != 0;
+    }
+
+    private static boolean isEmpty(long[] states) {
+        for (long word : states) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected String getEngineLabel() {
+        return "TRegex set";
+    }
+}
@@ -82,6 +82,17 @@ public final class TRegexNFAExecutorLocals extends TRegexExecutorLocals {
      * path.
      */
     private boolean resultPushed = false;
+    /**
+     * The {@link TRegexNFATransitionCache.State} corresponding to {@link #curStates}, if known.
+     */
+    private TRegexNFATransitionCache.State cachedState;
+    /**
+     * Buffer of the steps taken in the current iteration, recorded for
+     * {@link TRegexNFATransitionCache#addTransition}.
+     */
+    private int[] recordedSteps;
+    private int recordedStepsLength = 0;
+    private boolean recording = false;
 
     public TRegexNFAExecutorLocals(Object input, int fromIndex, int index, int maxIndex, int nCaptureGroups, int nStates) {
         super(input, fromIndex, maxIndex, index);
@@ -115,6 +126,76 @@ public final class TRegexNFAExecutorLocals extends TRegexExecutorLocals {
         return curStates[iCurStates - frameSize];
     }
 
+    public int getCurrentPathIndex() {
+        return iCurStates / frameSize - 1;
+    }
+
+    /**
+     * Makes the path at {@code pathIndex} in {@link #curStates} the current one, i.e. the source
+     * of subsequent {@link #pushSuccessor} and {@link #pushResult} calls.
+     */
+    public void setCurrentPath(int pathIndex) {
+        iCurStates = (pathIndex + 1) * frameSize;
+    }
+
+    public int[] getCurStateIds() {
+        return getStateIds(curStates, curStatesLength);
+    }
+
+    public int[] getNextStateIds() {
+        return getStateIds(nextStates, nextStatesLength);
+    }
+
+    private int[] getStateIds(int[] states, int length) {
+        int[] ids = new int[length / frameSize];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = states[i * frameSize];
+        }
+        return ids;
+    }
+
+    public TRegexNFATransitionCache.State getCachedState() {
+        return cachedState;
+    }
+
+    public void setCachedState(TRegexNFATransitionCache.State cachedState) {
+        this.cachedState = cachedState;
+    }
+
+    public void startRecording() {
+        if (recordedSteps == null) {
+            recordedSteps = new int[3 * 8];
+        }
+        recordedStepsLength = 0;
+        recording = true;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public void recordStep(int sourcePath, NFAStateTransition t, boolean isResult) {
+        if (recordedStepsLength + 3 > recordedSteps.length) {
+            recordedSteps = Arrays.copyOf(recordedSteps, recordedSteps.length * 2);
+        }
+        recordedSteps[recordedStepsLength] = sourcePath;
+        recordedSteps[recordedStepsLength + 1] = t.getId();
+        recordedSteps[recordedStepsLength + 2] = isResult ? 1 : 0;
+        recordedStepsLength += 3;
+    }
+
+    public int[] getRecordedSteps() {
+        return recordedSteps;
+    }
+
+    public int getRecordedStepsLength() {
+        return recordedStepsLength;
+    }
+
+    public void stopRecording() {
+        recording = false;
+    }
+
     public long[] getMarks() {
         return marks;
     }
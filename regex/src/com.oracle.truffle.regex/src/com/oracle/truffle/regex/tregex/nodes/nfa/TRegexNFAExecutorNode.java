@@ -41,7 +41,10 @@
 
 package com.oracle.truffle.regex.tregex.nodes.nfa;
 
+import com.oracle.truffle.api.Assumption;
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.regex.RegexRootNode;
 import com.oracle.truffle.regex.tregex.TRegexOptions;
 import com.oracle.truffle.regex.tregex.nfa.NFA;
@@ -52,15 +55,24 @@ import com.oracle.truffle.regex.tregex.nodes.TRegexExecutorNode;
 import com.oracle.truffle.regex.tregex.nodes.dfa.TRegexDFAExecutorNode;
 
 /**
- * This regex executor matches a given expression by calculating DFA states from the NFA on the fly,
- * without any caching. It is used as a placeholder for {@link TRegexDFAExecutorNode} until the
- * expression is executed {@link TRegexOptions#TRegexGenerateDFAThreshold} times, in order to avoid
- * the costly DFA generation on all expressions that are not on any hot code paths.
+ * This regex executor matches a given expression by calculating DFA states from the NFA on the fly.
+ * It is used as a placeholder for {@link TRegexDFAExecutorNode} until the expression is executed
+ * {@link TRegexOptions#TRegexGenerateDFAThreshold} times, in order to avoid the costly DFA
+ * generation on all expressions that are not on any hot code paths. If DFA generation fails, e.g.
+ * because the DFA would exceed {@link TRegexOptions#TRegexMaxDFASize}, this executor stays in use,
+ * and the DFA states and transitions it calculates are kept in a bounded
+ * {@link TRegexNFATransitionCache} (see {@link #enableTransitionCache()}).
  */
 public class TRegexNFAExecutorNode extends TRegexExecutorNode {
 
     private final NFA nfa;
     private final boolean searching;
+    /**
+     * Published via {@link #transitionCacheDisabled}: compiled code reads this field only after the
+     * assumption was invalidated, i.e. after the field was written.
+     */
+    @CompilationFinal private TRegexNFATransitionCache transitionCache;
+    private final Assumption transitionCacheDisabled = Truffle.getRuntime().createAssumption("NFA transition cache disabled");
 
     public TRegexNFAExecutorNode(NFA nfa) {
         this.nfa = nfa;
@@ -77,6 +89,19 @@ public class TRegexNFAExecutorNode extends TRegexExecutorNode {
         return nfa;
     }
 
+    /**
+     * Start caching the DFA states and transitions calculated by this executor. This should be
+     * called only if this executor is not going to be replaced by a DFA executor, since caching
+     * increases the cost of the first searches.
+     */
+    public void enableTransitionCache() {
+        if (transitionCache == null) {
+            transitionCache = new TRegexNFATransitionCache(nfa);
+            // invalidate compiled code only after the cache is visible to the recompilation
+            transitionCacheDisabled.invalidate();
+        }
+    }
+
     @Override
     public boolean writesCaptureGroups() {
         return true;
@@ -132,6 +157,49 @@ public class TRegexNFAExecutorNode extends TRegexExecutorNode {
 
     private void findNextStates(TRegexNFAExecutorLocals locals) {
         char c = getChar(locals);
+        // We are supposed to find the first match of the regular expression. A match starting
+        // at a higher index has lower priority and so we give the lowest priority to the loopback
+        // transition.
+        // The loopback priority has to be lower than the priority of any path completed so far.
+        // Therefore, we only follow the loopback if no path has been completed so far
+        // (i.e. !locals.hasResult()).
+        boolean followLoopBack = searching && !locals.hasResult() && locals.getIndex() >= locals.getFromIndex();
+        if (!transitionCacheDisabled.isValid() && TRegexNFATransitionCache.isCacheable(c)) {
+            findNextStatesCached(locals, c, followLoopBack);
+        } else {
+            locals.setCachedState(null);
+            expandStates(locals, c, followLoopBack);
+        }
+    }
+
+    private void findNextStatesCached(TRegexNFAExecutorLocals locals, char c, boolean followLoopBack) {
+        TRegexNFATransitionCache.State state = locals.getCachedState();
+        if (state == null || state.isEvicted()) {
+            state = transitionCache.getState(locals.getCurStateIds());
+        }
+        TRegexNFATransitionCache.Transition transition = state.getTransition(c, followLoopBack);
+        if (transition != null) {
+            for (int i = 0; i < transition.size(); i++) {
+                int sourcePath = transition.getSourcePath(i);
+                if (sourcePath >= 0) {
+                    locals.setCurrentPath(sourcePath);
+                }
+                if (transition.isResult(i)) {
+                    locals.pushResult(transition.getNFATransition(i), sourcePath >= 0);
+                } else {
+                    locals.pushSuccessor(transition.getNFATransition(i), sourcePath >= 0);
+                }
+            }
+            locals.setCachedState(transition.getSuccessor());
+        } else {
+            locals.startRecording();
+            expandStates(locals, c, followLoopBack);
+            locals.stopRecording();
+            locals.setCachedState(transitionCache.addTransition(state, c, followLoopBack, locals.getRecordedSteps(), locals.getRecordedStepsLength(), locals.getNextStateIds()));
+        }
+    }
+
+    private void expandStates(TRegexNFAExecutorLocals locals, char c, boolean followLoopBack) {
         while (locals.hasNext()) {
             expandState(locals, locals.next(), c, false);
             // If we have found a path to a final state, then we will trim all paths with lower
@@ -140,13 +208,7 @@ public class TRegexNFAExecutorNode extends TRegexExecutorNode {
                 return;
             }
         }
-        // We are supposed to find the first match of the regular expression. A match starting
-        // at a higher index has lower priority and so we give the lowest priority to the loopback
-        // transition.
-        // The loopback priority has to be lower than the priority of any path completed so far.
-        // Therefore, we only follow the loopback if no path has been completed so far
-        // (i.e. !locals.hasResult()).
-        if (searching && !locals.hasResult() && locals.getIndex() >= locals.getFromIndex()) {
+        if (followLoopBack) {
             expandState(locals, nfa.getInitialLoopBackTransition().getTarget().getId(), c, true);
         }
     }
@@ -166,8 +228,14 @@ public class TRegexNFAExecutorNode extends TRegexExecutorNode {
             if (!t.getTarget().isAnchoredFinalState(true) && (locals.getMarks()[markIndex] & markBit) == 0) {
                 locals.getMarks()[markIndex] |= markBit;
                 if (t.getTarget().isUnAnchoredFinalState(true)) {
+                    if (locals.isRecording()) {
+                        locals.recordStep(isLoopBack ? -1 : locals.getCurrentPathIndex(), t, true);
+                    }
                     locals.pushResult(t, !isLoopBack);
                 } else if (target.getCharSet().contains(c)) {
+                    if (locals.isRecording()) {
+                        locals.recordStep(isLoopBack ? -1 : locals.getCurrentPathIndex(), t, false);
+                    }
                     locals.pushSuccessor(t, !isLoopBack);
                 }
             }
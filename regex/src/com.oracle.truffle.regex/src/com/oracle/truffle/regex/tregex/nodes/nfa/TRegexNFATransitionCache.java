@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.oracle.truffle.regex.tregex.nodes.nfa;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.regex.tregex.TRegexOptions;
+import com.oracle.truffle.regex.tregex.nfa.NFA;
+import com.oracle.truffle.regex.tregex.nfa.NFAStateTransition;
+
+/**
+ * A bounded cache of DFA states and transitions calculated on the fly by
+ * {@link TRegexNFAExecutorNode}. Every {@link State} corresponds to the ordered list of NFA states
+ * at the end of the paths currently considered by the executor, and every {@link Transition}
+ * records which of these paths were extended by which NFA transitions when consuming a given
+ * character. Replaying a cached transition yields the same successor paths, capture group indices
+ * and results as expanding all NFA states again, without looking at any character sets.
+ * <p>
+ * The cache holds at most {@link TRegexOptions#TRegexMaxNFATransitionCacheSize} states. When it is
+ * full, a state is evicted in clock order: states whose transitions were used since the clock hand
+ * last passed them get a second chance. Evicting a state drops its outgoing transitions, but cached
+ * transitions of other states may still point to it, so the executor has to look up the state
+ * again (see {@link State#isEvicted()}) before extending it. This bounds the memory held by the
+ * cache to its live states and their direct successors.
+ */
+final class TRegexNFATransitionCache {
+
+    /**
+     * Transitions are cached for characters below this value only, which covers the typical
+     * ASCII and Latin-1 inputs without spending too much memory per state.
+     */
+    private static final int MAX_CACHED_CHAR = 256;
+
+    private final NFA nfa;
+    /**
+     * The cached states in clock order, i.e. the first entry is the next eviction candidate.
+     */
+    private final LinkedHashMap<State, State> states = new LinkedHashMap<>();
+
+    TRegexNFATransitionCache(NFA nfa) {
+        this.nfa = nfa;
+    }
+
+    static boolean isCacheable(char c) {
+        return c < MAX_CACHED_CHAR;
+    }
+
+    /**
+     * Returns the cached state for the given list of NFA state IDs, creating it if necessary.
+     */
+    @TruffleBoundary
+    synchronized State getState(int[] nfaStateIds) {
+        State state = new State(nfaStateIds);
+        State cached = states.get(state);
+        if (cached != null) {
+            return cached;
+        }
+        if (states.size() >= TRegexOptions.TRegexMaxNFATransitionCacheSize) {
+            evictState();
+        }
+        states.put(state, state);
+        return state;
+    }
+
+    private void evictState() {
+        while (true) {
+            Iterator<State> iterator = states.keySet().iterator();
+            State candidate = iterator.next();
+            iterator.remove();
+            if (candidate.referenced) {
+                // second chance: move the state to the end of the clock
+                candidate.referenced = false;
+                states.put(candidate, candidate);
+            } else {
+                candidate.evict();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates and registers the transition from {@code source} recorded by
+     * {@link TRegexNFAExecutorLocals} during one step of the NFA executor.
+     *
+     * @param recordedSteps triples of source path index (or {@code -1} for the initial loop back
+     *            transition), NFA transition ID and {@code 1} if the transition was pushed as a
+     *            result, {@code 0} otherwise.
+     * @param successorIds the NFA state IDs of the successor paths, in priority order.
+     * @return the successor state.
+     */
+    @TruffleBoundary
+    State addTransition(State source, char c, boolean followLoopBack, int[] recordedSteps, int recordedStepsLength, int[] successorIds) {
+        assert isCacheable(c);
+        int n = recordedStepsLength / 3;
+        int[] sourcePaths = new int[n];
+        NFAStateTransition[] nfaTransitions = new NFAStateTransition[n];
+        int resultIndex = -1;
+        for (int i = 0; i < n; i++) {
+            sourcePaths[i] = recordedSteps[i * 3];
+            nfaTransitions[i] = nfa.getTransitions()[recordedSteps[i * 3 + 1]];
+            if (recordedSteps[i * 3 + 2] != 0) {
+                resultIndex = i;
+            }
+        }
+        State successor = getState(successorIds);
+        source.setTransition(c, followLoopBack, new Transition(sourcePaths, nfaTransitions, resultIndex, successor));
+        return successor;
+    }
+
+    static final class State {
+
+        private final int[] nfaStateIds;
+        private final int hashCode;
+        /**
+         * Transitions indexed by {@code (c << 1) | (followLoopBack ? 1 : 0)}. Transitions are
+         * immutable, so racy publication through this array is safe.
+         */
+        private Transition[] transitions;
+        /**
+         * Set whenever a transition of this state is used, cleared by the eviction clock. Racy
+         * updates only affect the eviction order.
+         */
+        private boolean referenced;
+        private volatile boolean evicted;
+
+        State(int[] nfaStateIds) {
+            this.nfaStateIds = nfaStateIds;
+            this.hashCode = Arrays.hashCode(nfaStateIds);
+        }
+
+        Transition getTransition(char c, boolean followLoopBack) {
+            Transition[] t = transitions;
+            if (t == null || !isCacheable(c)) {
+                return null;
+            }
+            Transition transition = t[transitionIndex(c, followLoopBack)];
+            if (transition != null && !referenced) {
+                referenced = true;
+            }
+            return transition;
+        }
+
+        /**
+         * Returns {@code true} if this state was removed from the cache. Evicted states may still be
+         * reached via cached transitions, but must not be extended by new transitions; the
+         * executor has to look up a fresh state via {@link TRegexNFATransitionCache#getState(int[])} instead.
+         */
+        boolean isEvicted() {
+            return evicted;
+        }
+
+        private synchronized void evict() {
+            evicted = true;
+            transitions = null;
+        }
+
+        private synchronized void setTransition(char c, boolean followLoopBack, Transition transition) {
+            if (evicted) {
+                return;
+            }
+            if (transitions == null) {
+                transitions = new Transition[MAX_CACHED_CHAR << 1];
+            }
+            transitions[transitionIndex(c, followLoopBack)] = transition;
+        }
+
+        private static int transitionIndex(char c, boolean followLoopBack) {
+            return (c << 1) | (followLoopBack ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj || obj instanceof State && Arrays.equals(nfaStateIds, ((State) obj).nfaStateIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    static final class Transition {
+
+        /**
+         * Index of the path in the current list of paths that is extended by the NFA transition
+         * at the same index in {@link #nfaTransitions}, or {@code -1} if the NFA transition is
+         * reached via the initial loop back transition.
+         */
+        private final int[] sourcePaths;
+        private final NFAStateTransition[] nfaTransitions;
+        /**
+         * Index of the NFA transition that completes a match, or {@code -1} if this transition
+         * does not produce a result.
+         */
+        private final int resultIndex;
+        private final State successor;
+
+        Transition(int[] sourcePaths, NFAStateTransition[] nfaTransitions, int resultIndex, State successor) {
+            this.sourcePaths = sourcePaths;
+            this.nfaTransitions = nfaTransitions;
+            this.resultIndex = resultIndex;
+            this.successor = successor;
+        }
+
+        int size() {
+            return sourcePaths.length;
+        }
+
+        int getSourcePath(int i) {
+            return sourcePaths[i];
+        }
+
+        NFAStateTransition getNFATransition(int i) {
+            return nfaTransitions[i];
+        }
+
+        boolean isResult(int i) {
+            return i == resultIndex;
+        }
+
+        State getSuccessor() {
+            return successor;
+        }
+    }
+}
@@ -469,6 +469,22 @@ def svm_gate_body(args, tasks):
                 cinterfacetutorial([])
                 clinittest([])
 
+        with Task('image compilation cache', tasks, tags=[GraalTags.helloworld]) as t:
+            if t:
+                cache_test_dir = tempfile.mkdtemp()
+                try:
+                    _compilation_cache_test(native_image, cache_test_dir)
+                finally:
+                    remove_tree(cache_test_dir)
+
+        with Task('image profile-guided optimization', tasks, tags=[GraalTags.helloworld]) as t:
+            if t:
+                pgo_test_dir = tempfile.mkdtemp()
+                try:
+                    _pgo_test(native_image, pgo_test_dir)
+                finally:
+                    remove_tree(pgo_test_dir)
+
         with Task('image demos debuginfo', tasks, tags=[GraalTags.helloworld_debug]) as t:
             if t:
                 if svm_java8():
@@ -496,11 +512,38 @@ def svm_gate_body(args, tasks):
                     # We need the -H:+EnableAllSecurityServices for com.oracle.svm.test.SecurityServiceTest
                     native_unittest(['--build-args', _native_unittest_features, '-H:+EnableAllSecurityServices'] + blacklist_args)
 
+        with Task('native unittests with flight recorder', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                recording_dir = tempfile.mkdtemp()
+                try:
+                    recording = join(recording_dir, 'test.svmfr')
+                    native_unittest(['com.oracle.svm.test.FlightRecorderTest', '--build-args', '-H:+FlightRecorder',
+                                     '--run-args', '-XX:FlightRecorderFile=' + recording, '-XX:FlightRecorderFlushInterval=50',
+                                     '-Dcom.oracle.svm.test.flightRecording=' + recording, '--verbose'])
+                finally:
+                    remove_tree(recording_dir)
+
+        with Task('native unittests with heap dumps', tasks, tags=[GraalTags.test]) as t:
+            if t and mx.get_os() == 'linux':
+                native_unittest(['com.oracle.svm.test.HeapDumpTest', '--build-args', '-H:+AllowVMInspection'])
+
+        with Task('native unittests with compacting old generation', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                # The heap is verified before and after every collection while the tests compact the old generation
+                native_unittest(['com.oracle.svm.test.OldGenerationCompactionTest', '--build-args', '-H:+CompactingOldGeneration', '-H:+VerifyHeap'])
+
+        with Task('native unittests with survivor spaces', tasks, tags=[GraalTags.test]) as t:
+            if t:
+                # Every collection of the test is incremental, so objects age through the survivor spaces
+                native_unittest(['com.oracle.svm.test.SurvivorSpaceAgingTest', '--build-args', '-H:MaxSurvivorSpaces=2',
+                                 '-H:InitialCollectionPolicy=com.oracle.svm.core.genscavenge.CollectionPolicy$OnlyIncrementally', '-H:+VerifyHeap'])
+
         with Task('Run Truffle NFI unittests with SVM image', tasks, tags=["svmjunit"]) as t:
             if t:
                 testlib = mx_subst.path_substitutions.substitute('-Dnative.test.lib=<path:truffle:TRUFFLE_TEST_NATIVE>/<lib:nativetest>')
+                # Includes DirectCallNFITest and NFIDirectCallOverheadTest, which reports the cost of direct and libffi calls
                 native_unittest_args = ['com.oracle.truffle.nfi.test', '--build-args', '--language:nfi',
-                                        '-H:MaxRuntimeCompileMethods=1700', '--run-args', testlib, '--very-verbose', '--enable-timing']
+                                        '-H:MaxRuntimeCompileMethods=1800', '--run-args', testlib, '--very-verbose', '--enable-timing']
                 native_unittest(native_unittest_args)
 
         with Task('Relocations in generated object file on Linux', tasks, tags=[GraalTags.relocations]) as t:
@@ -954,6 +997,114 @@ def _helloworld(native_image, javac_command, path, build_only, args):
         if actual_output != expected_output:
             raise Exception('Unexpected output: ' + str(actual_output) + "  !=  " + str(expected_output))
 
+def _compilation_cache_test(native_image, path):
+    """
+    Builds the same image three times with one compilation cache. The second build must take all
+    results stored by the first build from the cache, and the third build, which changes the main
+    class, must recompile it. All builds run with -H:+VerifyCompilationCache, so every stored entry
+    is read back and compared, and every cache hit is compared with a fresh compilation.
+    """
+    cache_dir = join(path, 'cache')
+
+    def _build(name, message):
+        build_dir = join(path, name)
+        mkpath(build_dir)
+        source = join(build_dir, 'CompilationCacheTest.java')
+        with open(source, 'w') as fp:
+            fp.write('public class CompilationCacheTest { public static void main(String[] args) { System.out.println("' + message + '"); } }')
+            fp.flush()
+        mx.run([mx.get_jdk().javac, source])
+        image = native_image(['-H:Path=' + build_dir, '-H:Name=compilationcachetest', '-H:CompilationCacheDirectory=' + cache_dir, '-H:+VerifyCompilationCache',
+                              '-cp', build_dir, 'CompilationCacheTest'])
+
+        out = mx.OutputCapture()
+        mx.run([image], out=out)
+        if out.data.strip() != message:
+            mx.abort('Unexpected output of the ' + name + ' image: ' + out.data)
+
+        reports = glob(join(build_dir, 'reports', 'compilation_cache_statistics_*.txt'))
+        if len(reports) != 1:
+            mx.abort('Expected 1 compilation cache report for the ' + name + ' image, found: ' + str(reports))
+        statistics = {}
+        with open(reports[0]) as fp:
+            for line in fp:
+                key, _, value = line.partition(': ')
+                statistics[key] = value.strip()
+        mx.log('Compilation cache statistics of the ' + name + ' image: ' + str(statistics))
+        if statistics['store failures'] != '0' or statistics['verified'] != statistics['hits']:
+            mx.abort('Unexpected compilation cache statistics of the ' + name + ' image: ' + str(statistics))
+        return dict((key, int(value)) for key, value in statistics.items() if value.isdigit())
+
+    cold = _build('cold', 'Hello from the first build')
+    if cold['hits'] != 0 or cold['stored'] == 0:
+        mx.abort('The first build must compile and store all methods: ' + str(cold))
+
+    warm = _build('warm', 'Hello from the first build')
+    if warm['hits'] != cold['stored'] or warm['stored'] != 0:
+        mx.abort('The second build must reuse every stored result: ' + str(warm))
+
+    changed = _build('changed', 'Hello from a changed build')
+    if changed['hits'] == 0 or changed['misses'] <= warm['misses'] or changed['stored'] == 0:
+        mx.abort('A changed main class must only invalidate the methods that depend on it: ' + str(changed))
+
+def _pgo_test(native_image, path):
+    """
+    Builds an image with -H:+ProfilingInstrumentation, runs it to record its profiles, and then
+    builds and runs an image that is optimized with the recorded profiles.
+    """
+    source = join(path, 'PGOTest.java')
+    with open(source, 'w') as fp:
+        fp.write('''public class PGOTest {
+    interface Shape { double area(); }
+    static final class Square implements Shape { final double s; Square(double s) { this.s = s; } public double area() { return s * s; } }
+    static final class Circle implements Shape { final double r; Circle(double r) { this.r = r; } public double area() { return 3.14159 * r * r; } }
+    static double compute(Shape[] shapes) {
+        double sum = 0;
+        for (Shape shape : shapes) {
+            if (shape.area() > 10) {
+                sum += shape.area();
+            }
+        }
+        return sum;
+    }
+    public static void main(String[] args) {
+        Shape[] shapes = new Shape[100];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = i % 10 == 0 ? new Circle(i) : new Square(i);
+        }
+        double sum = 0;
+        for (int i = 0; i < 20000; i++) {
+            sum += compute(shapes);
+        }
+        System.out.println(sum > 0 ? "PGOTest done" : "PGOTest failed");
+    }
+}''')
+        fp.flush()
+    mx.run([mx.get_jdk().javac, source])
+
+    def _build_and_run(name, build_args, run_args):
+        build_dir = join(path, name)
+        mkpath(build_dir)
+        image = native_image(['-H:Path=' + build_dir, '-H:Name=pgotest', '-cp', path, 'PGOTest'] + build_args)
+        out = mx.OutputCapture()
+        mx.run([image] + run_args, out=out)
+        if out.data.strip() != 'PGOTest done':
+            mx.abort('Unexpected output of the ' + name + ' image: ' + out.data)
+
+    profiles = join(path, 'pgotest.iprof')
+    _build_and_run('instrumented', ['-H:+ProfilingInstrumentation'], ['-XX:ProfilesDumpFile=' + profiles])
+    if not exists(profiles):
+        mx.abort('The instrumented image did not write its profiles to ' + profiles)
+    with open(profiles) as fp:
+        lines = fp.read().splitlines()
+    compute = [line for line in lines if line.startswith('method ') and 'PGOTest.compute(' in line]
+    if len(compute) != 1 or int(compute[0].split(' ')[2]) < 20000:
+        mx.abort('Missing or wrong invocation profile of PGOTest.compute: ' + str(compute))
+    if not any(line.startswith('branch ') for line in lines) or not any(line.startswith('receiver ') and 'PGOTest$Square' in line for line in lines):
+        mx.abort('The profiles do not contain branch and receiver profiles: ' + profiles)
+
+    _build_and_run('optimized', ['-H:UseProfiles=' + profiles], [])
+
 def _javac_image(native_image, path, args=None):
     args = [] if args is None else args
     mkpath(path)
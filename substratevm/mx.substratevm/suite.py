@@ -569,6 +569,7 @@ suite = {
             "dependencies": [
                 "mx:JUNIT_TOOL",
                 "sdk:GRAAL_SDK",
+                "com.oracle.svm.core.genscavenge",
             ],
             "checkstyle": "com.oracle.svm.core",
             "workingSets": "SVM",
@@ -691,6 +692,7 @@ suite = {
             "javaCompliance": "8+",
             "annotationProcessors": [
                 "truffle:TRUFFLE_DSL_PROCESSOR",
+                "compiler:GRAAL_PROCESSOR",
             ],
             "workingSets": "SVM",
         },
@@ -1094,6 +1096,7 @@ suite = {
           "distDependencies": [
             "mx:JUNIT_TOOL",
             "sdk:GRAAL_SDK",
+            "SVM",
           ],
           "testDistribution" : True,
         },
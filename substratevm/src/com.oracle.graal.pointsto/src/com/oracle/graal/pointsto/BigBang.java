@@ -76,6 +76,7 @@ import com.oracle.graal.pointsto.meta.AnalysisUniverse;
 import com.oracle.graal.pointsto.meta.HostedProviders;
 import com.oracle.graal.pointsto.typestate.PointsToStats;
 import com.oracle.graal.pointsto.typestate.TypeState;
+import com.oracle.graal.pointsto.typestate.TypeStateCache;
 import com.oracle.graal.pointsto.util.CompletionExecutor;
 import com.oracle.graal.pointsto.util.CompletionExecutor.DebugContextRunnable;
 import com.oracle.graal.pointsto.util.Timer;
@@ -109,6 +110,7 @@ public abstract class BigBang {
 
     protected final boolean trackTypeFlowInputs;
     protected final boolean reportAnalysisStatistics;
+    private final TypeStateCache typeStateCache;
 
     /**
      * Processing queue.
@@ -141,6 +143,8 @@ public abstract class BigBang {
         this.unsupportedFeatures = unsupportedFeatures;
         this.providers = providers;
 
+        this.typeStateCache = new TypeStateCache(PointstoOptions.CanonicalizeTypeStates.getValue(options), PointstoOptions.PrintPointsToStatistics.getValue(options));
+
         this.objectType = metaAccess.lookupJavaType(Object.class);
         /*
          * Make sure the all-instantiated type flow is created early. We do not have any
@@ -177,6 +181,10 @@ public abstract class BigBang {
         return reportAnalysisStatistics;
     }
 
+    public TypeStateCache getTypeStateCache() {
+        return typeStateCache;
+    }
+
     public OptionValues getOptions() {
         return options;
     }
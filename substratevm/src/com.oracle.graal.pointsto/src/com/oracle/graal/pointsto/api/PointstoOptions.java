@@ -125,6 +125,9 @@ public class PointstoOptions {
     @Option(help = "Report analysis statistics.")//
     public static final OptionKey<Boolean> PrintPointsToStatistics = new OptionKey<>(false);
 
+    @Option(help = "Share equal type states and type bit sets, and cache the results of type state union and intersection operations.")//
+    public static final OptionKey<Boolean> CanonicalizeTypeStates = new OptionKey<>(false);
+
     @Option(help = "Path to the contents of the Inspect web server.")//
     public static final OptionKey<String> InspectServerContentPath = new OptionKey<>("inspect");
 
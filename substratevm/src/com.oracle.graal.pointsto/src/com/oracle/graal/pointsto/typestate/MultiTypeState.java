@@ -53,8 +53,14 @@ public class MultiTypeState extends TypeState {
     private final int typesCount;
     /** Can this type state represent the null value? */
     protected final boolean canBeNull;
-    /** Has this type state been merged with the all-instantiated type state? */
+    /**
+     * Has this type state been merged with the all-instantiated type state? This is the only state
+     * that changes after construction. It can be shared by all flows with an equal state, see
+     * {@link TypeStateCache}.
+     */
     protected boolean merged;
+    /** Cache the hash code, it is used for canonicalization, see {@link TypeStateCache}. */
+    private int hashCode;
 
     /** Creates a new type state using the provided types bit set and objects. */
     MultiTypeState(BigBang bb, boolean canBeNull, int properties, BitSet typesBitSet, AnalysisObject... objects) {
@@ -74,7 +80,8 @@ public class MultiTypeState extends TypeState {
          * another thread calls clone() the words[] array can be in an inconsistent state.
          */
         TypeStateUtils.trimBitSetToSize(typesBitSet);
-        this.typesBitSet = typesBitSet;
+        /* Equal bit sets are shared between states, see TypeStateCache. */
+        this.typesBitSet = bb.getTypeStateCache().canonicalize(typesBitSet);
         long cardinality = typesBitSet.cardinality();
         assert cardinality < Integer.MAX_VALUE : "We don't expect so much types.";
         this.typesCount = (int) cardinality;
@@ -220,7 +227,7 @@ public class MultiTypeState extends TypeState {
             return this;
         } else {
             /* Just flip the canBeNull flag and copy the rest of the values from this. */
-            return new MultiTypeState(bb, resultCanBeNull, this);
+            return bb.getTypeStateCache().canonicalize(new MultiTypeState(bb, resultCanBeNull, this));
         }
     }
 
@@ -342,9 +349,13 @@ public class MultiTypeState extends TypeState {
 
     @Override
     public int hashCode() {
-        int result = 1;
-        result = 31 * result + Arrays.hashCode(objects);
-        result = 31 * result + (canBeNull ? 1 : 0);
+        int result = hashCode;
+        if (result == 0) {
+            result = 1;
+            result = 31 * result + Arrays.hashCode(objects);
+            result = 31 * result + (canBeNull ? 1 : 0);
+            hashCode = result;
+        }
         return result;
     }
 
@@ -358,7 +369,7 @@ public class MultiTypeState extends TypeState {
         }
 
         MultiTypeState that = (MultiTypeState) o;
-        return this.canBeNull == that.canBeNull &&
+        return this.canBeNull == that.canBeNull && this.hashCode() == that.hashCode() &&
                         this.typesCount == that.typesCount && this.typesBitSet.equals(that.typesBitSet) &&
                         Arrays.equals(this.objects, that.objects);
     }
@@ -106,7 +106,7 @@ public class PointsToStats {
         reportStatistics = bb.reportAnalysisStatistics();
     }
 
-    public static void report(@SuppressWarnings("unused") BigBang bb, String reportNameRoot) {
+    public static void report(BigBang bb, String reportNameRoot) {
 
         try {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
@@ -117,6 +117,7 @@ public class PointsToStats {
             doReport(statsDirectory, reportNameRoot, "union operation stats", timeStamp, PointsToStats::reportUnionOpertationsStats);
             doReport(statsDirectory, reportNameRoot, "type flow stats", timeStamp, PointsToStats::reportTypeFlowStats);
             doReport(statsDirectory, reportNameRoot, "pruned type flow stats", timeStamp, PointsToStats::reportPrunedTypeFlows);
+            doReport(statsDirectory, reportNameRoot, "type state cache stats", timeStamp, out -> reportTypeStateCacheStats(bb.getTypeStateCache(), out));
 
         } catch (IOException e) {
             throw JVMCIError.shouldNotReachHere(e);
@@ -381,6 +382,30 @@ public class PointsToStats {
                         });
     }
 
+    // type state canonicalization and operation caching
+
+    private static void reportTypeStateCacheStats(TypeStateCache cache, BufferedWriter out) {
+        if (!cache.isEnabled()) {
+            doWrite(out, "Type state canonicalization is disabled.\n");
+            return;
+        }
+        doWrite(out, String.format("%-30s\t%15s\n", "Statistic", "Value"));
+        doWrite(out, String.format("%-30s\t%15d\n", "Reused states", cache.reusedStates.get()));
+        doWrite(out, String.format("%-30s\t%15d\n", "Reused type bit sets", cache.reusedBitSets.get()));
+        doWrite(out, String.format("%-30s\t%15d\n", "Estimated saved bytes", cache.savedBytes.get()));
+        reportOperationCacheStats(out, "Union", cache.unionHits.get(), cache.unionMisses.get(), cache.unionMissNanos.get());
+        reportOperationCacheStats(out, "Intersection", cache.intersectionHits.get(), cache.intersectionMisses.get(), cache.intersectionMissNanos.get());
+    }
+
+    private static void reportOperationCacheStats(BufferedWriter out, String operation, long hits, long misses, long missNanos) {
+        doWrite(out, String.format("%-30s\t%15d\n", operation + " cache hits", hits));
+        doWrite(out, String.format("%-30s\t%15d\n", operation + " cache misses", misses));
+        doWrite(out, String.format("%-30s\t%15d\n", operation + " time on misses (ms)", missNanos / 1_000_000));
+        /* Assume that a hit would have taken as long as an average miss. */
+        long savedNanos = misses == 0 ? 0 : hits * (missNanos / misses);
+        doWrite(out, String.format("%-30s\t%15d\n", operation + " estimated saved (ms)", savedNanos / 1_000_000));
+    }
+
     // union operations frequency
 
     private static ConcurrentHashMap<UnionOperation, AtomicInteger> unionStats = new ConcurrentHashMap<>();
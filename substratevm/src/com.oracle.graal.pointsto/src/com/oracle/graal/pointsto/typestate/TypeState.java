@@ -422,7 +422,27 @@ public abstract class TypeState {
             return s1;
         } else if (s2.isNull()) {
             return s1.forCanBeNull(bb, true);
-        } else if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
+        }
+
+        TypeStateCache cache = bb.getTypeStateCache();
+        if (!cache.isEnabled()) {
+            return dispatchUnion(bb, s1, s2);
+        }
+        TypeState result = cache.lookupUnion(s1, s2);
+        if (result == null) {
+            long startTime = cache.startTime();
+            result = dispatchUnion(bb, s1, s2);
+            if (result != s1 && result != s2) {
+                /* Keep returning an operand as is, so that callers can detect that nothing changed. */
+                result = cache.canonicalize(result);
+            }
+            cache.recordUnion(s1, s2, result, startTime);
+        }
+        return result;
+    }
+
+    private static TypeState dispatchUnion(BigBang bb, TypeState s1, TypeState s2) {
+        if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
             return doUnion(bb, (SingleTypeState) s1, (SingleTypeState) s2);
         } else if (s1 instanceof SingleTypeState && s2 instanceof MultiTypeState) {
             return doUnion(bb, (MultiTypeState) s2, (SingleTypeState) s1);
@@ -451,7 +471,27 @@ public abstract class TypeState {
             return s2;
         } else if (s2.isNull()) {
             return s2.forCanBeNull(bb, s1.canBeNull());
-        } else if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
+        }
+
+        TypeStateCache cache = bb.getTypeStateCache();
+        if (!cache.isEnabled()) {
+            return dispatchIntersection(bb, s1, s2);
+        }
+        TypeState result = cache.lookupIntersection(s1, s2);
+        if (result == null) {
+            long startTime = cache.startTime();
+            result = dispatchIntersection(bb, s1, s2);
+            if (result != s1 && result != s2) {
+                /* Keep returning an operand as is, so that callers can detect that nothing changed. */
+                result = cache.canonicalize(result);
+            }
+            cache.recordIntersection(s1, s2, result, startTime);
+        }
+        return result;
+    }
+
+    private static TypeState dispatchIntersection(BigBang bb, TypeState s1, TypeState s2) {
+        if (s1 instanceof SingleTypeState && s2 instanceof SingleTypeState) {
             return doIntersection(bb, (SingleTypeState) s1, (SingleTypeState) s2);
         } else if (s1 instanceof SingleTypeState && s2 instanceof MultiTypeState) {
             return doIntersection(bb, (SingleTypeState) s1, (MultiTypeState) s2);
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.graal.pointsto.typestate;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Canonicalizes the multi-type states and their type bit sets, and caches the results of union and
+ * intersection operations.
+ * <p>
+ * Most type flows of a large analysis end up with one of comparatively few distinct states. Without
+ * canonicalization each flow holds its own copy of an equal state, including the objects array and
+ * the types bit set. With canonicalization equal states are mostly the same object, which also
+ * makes the identity based operation cache effective: the same pair of states is combined over and
+ * over again while the analysis propagates states through the flow graph.
+ * <p>
+ * All tables are direct-mapped and lossy: a new entry replaces the one it collides with. This keeps
+ * the memory used by the cache bounded, and it does not keep alive the intermediate states that a
+ * flow goes through before it reaches its final state.
+ * <p>
+ * The types and objects of a type state never change, so a cached entry never becomes stale.
+ * However, a {@link MultiTypeState} is not fully immutable: its {@code merged} flag is set when
+ * {@link MultiTypeState#noteMerge} marks its objects as merged. A canonical state is shared by all
+ * flows with an equal state, so once one of them notes the merge the flag is set for all of them.
+ * This is only correct because equal states contain the same analysis objects, and noting the merge
+ * marks those objects, not the state: the flag just records that this was already done. Any state
+ * that is added to the cache must keep to this, i.e., it must not carry other mutable state that
+ * belongs to a single flow.
+ * <p>
+ * The cache is disabled by default, see {@code PointstoOptions.CanonicalizeTypeStates}.
+ */
+public final class TypeStateCache {
+
+    private static final int STATE_TABLE_SIZE = 1 << 16;
+    private static final int BITSET_TABLE_SIZE = 1 << 14;
+    private static final int OPERATION_CACHE_SIZE = 1 << 14;
+
+    /** Rough size of a MultiTypeState object, in bytes. */
+    private static final long STATE_OBJECT_SIZE = 48;
+    /** Rough size of a BitSet object without its words array, in bytes. */
+    private static final long BITSET_OBJECT_SIZE = 24;
+    private static final long ARRAY_HEADER_SIZE = 16;
+
+    private final boolean enabled;
+    private final boolean collectStatistics;
+    private final AtomicReferenceArray<MultiTypeState> states;
+    private final AtomicReferenceArray<BitSet> typesBitSets;
+    private final AtomicReferenceArray<CachedOperation> unionCache;
+    private final AtomicReferenceArray<CachedOperation> intersectionCache;
+
+    /* Statistics, only collected when the analysis statistics are reported. */
+    final AtomicLong reusedStates = new AtomicLong();
+    final AtomicLong reusedBitSets = new AtomicLong();
+    final AtomicLong savedBytes = new AtomicLong();
+    final AtomicLong unionHits = new AtomicLong();
+    final AtomicLong unionMisses = new AtomicLong();
+    final AtomicLong intersectionHits = new AtomicLong();
+    final AtomicLong intersectionMisses = new AtomicLong();
+    /** Time spent computing the operations that missed the cache, in nanoseconds. */
+    final AtomicLong unionMissNanos = new AtomicLong();
+    final AtomicLong intersectionMissNanos = new AtomicLong();
+
+    public TypeStateCache(boolean enabled, boolean collectStatistics) {
+        this.enabled = enabled;
+        this.collectStatistics = enabled && collectStatistics;
+        this.states = enabled ? new AtomicReferenceArray<>(STATE_TABLE_SIZE) : null;
+        this.typesBitSets = enabled ? new AtomicReferenceArray<>(BITSET_TABLE_SIZE) : null;
+        this.unionCache = enabled ? new AtomicReferenceArray<>(OPERATION_CACHE_SIZE) : null;
+        this.intersectionCache = enabled ? new AtomicReferenceArray<>(OPERATION_CACHE_SIZE) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    boolean collectStatistics() {
+        return collectStatistics;
+    }
+
+    /** Returns a state equal to {@code state}, which is canonical if one was registered before. */
+    TypeState canonicalize(TypeState state) {
+        if (!enabled || !(state instanceof MultiTypeState)) {
+            return state;
+        }
+        MultiTypeState multiState = (MultiTypeState) state;
+        int index = mix(multiState.hashCode()) & (STATE_TABLE_SIZE - 1);
+        MultiTypeState existing = states.get(index);
+        if (existing == multiState) {
+            return multiState;
+        } else if (existing != null && existing.getProperties() == multiState.getProperties() && existing.equals(multiState)) {
+            if (collectStatistics) {
+                reusedStates.incrementAndGet();
+                long saved = STATE_OBJECT_SIZE;
+                if (existing.objects != multiState.objects) {
+                    saved += ARRAY_HEADER_SIZE + 8L * multiState.objects.length;
+                }
+                savedBytes.addAndGet(saved);
+            }
+            return existing;
+        }
+        states.set(index, multiState);
+        return multiState;
+    }
+
+    /** Returns a bit set equal to {@code bitSet}, which must not be modified anymore. */
+    BitSet canonicalize(BitSet bitSet) {
+        if (!enabled) {
+            return bitSet;
+        }
+        int index = mix(bitSet.hashCode()) & (BITSET_TABLE_SIZE - 1);
+        BitSet existing = typesBitSets.get(index);
+        if (existing == bitSet) {
+            return bitSet;
+        } else if (existing != null && existing.equals(bitSet)) {
+            if (collectStatistics) {
+                reusedBitSets.incrementAndGet();
+                savedBytes.addAndGet(BITSET_OBJECT_SIZE + ARRAY_HEADER_SIZE + bitSet.size() / Byte.SIZE);
+            }
+            return existing;
+        }
+        typesBitSets.set(index, bitSet);
+        return bitSet;
+    }
+
+    /** Returns the cached union of the two states, or null. */
+    TypeState lookupUnion(TypeState s1, TypeState s2) {
+        /* Union is commutative, so the operands match in both orders. */
+        TypeState result = lookup(unionCache, s1, s2, true);
+        if (collectStatistics) {
+            (result != null ? unionHits : unionMisses).incrementAndGet();
+        }
+        return result;
+    }
+
+    void recordUnion(TypeState s1, TypeState s2, TypeState result, long startNanos) {
+        unionCache.set(index(s1, s2, true), new CachedOperation(s1, s2, result));
+        if (collectStatistics) {
+            unionMissNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /** Returns the cached intersection of the two states, or null. */
+    TypeState lookupIntersection(TypeState s1, TypeState s2) {
+        TypeState result = lookup(intersectionCache, s1, s2, false);
+        if (collectStatistics) {
+            (result != null ? intersectionHits : intersectionMisses).incrementAndGet();
+        }
+        return result;
+    }
+
+    void recordIntersection(TypeState s1, TypeState s2, TypeState result, long startNanos) {
+        intersectionCache.set(index(s1, s2, false), new CachedOperation(s1, s2, result));
+        if (collectStatistics) {
+            intersectionMissNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /** Start time for {@link #recordUnion} and {@link #recordIntersection}. */
+    long startTime() {
+        return collectStatistics ? System.nanoTime() : 0;
+    }
+
+    private static TypeState lookup(AtomicReferenceArray<CachedOperation> cache, TypeState s1, TypeState s2, boolean commutative) {
+        CachedOperation entry = cache.get(index(s1, s2, commutative));
+        if (entry != null && ((entry.s1 == s1 && entry.s2 == s2) || (commutative && entry.s1 == s2 && entry.s2 == s1))) {
+            return entry.result;
+        }
+        return null;
+    }
+
+    private static int index(TypeState s1, TypeState s2, boolean commutative) {
+        int h1 = System.identityHashCode(s1);
+        int h2 = System.identityHashCode(s2);
+        return mix(commutative ? h1 ^ h2 : 31 * h1 + h2) & (OPERATION_CACHE_SIZE - 1);
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class CachedOperation {
+        final TypeState s1;
+        final TypeState s2;
+        final TypeState result;
+
+        CachedOperation(TypeState s1, TypeState s2, TypeState result) {
+            this.s1 = s1;
+            this.s2 = s2;
+            this.result = result;
+        }
+    }
+}
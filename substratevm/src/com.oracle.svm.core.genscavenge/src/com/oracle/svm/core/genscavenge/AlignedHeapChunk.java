@@ -30,8 +30,10 @@ import org.graalvm.compiler.word.Word;
 import org.graalvm.nativeimage.ImageSingletons;
 import org.graalvm.nativeimage.Platform;
 import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.c.struct.RawField;
 import org.graalvm.nativeimage.c.struct.RawStructure;
 import org.graalvm.nativeimage.c.struct.SizeOf;
+import org.graalvm.nativeimage.c.struct.UniqueLocationIdentity;
 import org.graalvm.nativeimage.hosted.Feature;
 import org.graalvm.word.Pointer;
 import org.graalvm.word.UnsignedWord;
@@ -90,6 +92,18 @@ public class AlignedHeapChunk extends HeapChunk {
      */
     @RawStructure
     public interface AlignedHeader extends HeapChunk.Header<AlignedHeader> {
+
+        /**
+         * The destination of the live objects of each card, while a compacting collection of the
+         * old generation is in progress. See {@link OldGenerationCompactor}.
+         */
+        @RawField
+        @UniqueLocationIdentity
+        Pointer getCompactionTable();
+
+        @RawField
+        @UniqueLocationIdentity
+        void setCompactionTable(Pointer newTable);
     }
 
     /*
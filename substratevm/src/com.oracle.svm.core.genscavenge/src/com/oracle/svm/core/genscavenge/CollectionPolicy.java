@@ -29,11 +29,13 @@ import org.graalvm.nativeimage.Platform;
 import org.graalvm.nativeimage.Platforms;
 import org.graalvm.nativeimage.hosted.Feature.FeatureAccess;
 import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
 
 import com.oracle.svm.core.log.Log;
 import com.oracle.svm.core.option.HostedOptionKey;
 import com.oracle.svm.core.option.RuntimeOptionKey;
 import com.oracle.svm.core.util.TimeUtils;
+import com.oracle.svm.core.util.UnsignedUtils;
 
 /** A collection policy to decide when to collect incrementally or completely. */
 public abstract class CollectionPolicy {
@@ -52,6 +54,18 @@ public abstract class CollectionPolicy {
          */
         @Option(help = "Percentage of time that should be spent in young generation collections.")//
         public static final RuntimeOptionKey<Integer> PercentTimeInIncrementalCollection = new RuntimeOptionKey<>(50);
+
+        @Option(help = "Pause time goal in milliseconds for incremental collections with the Adaptive collection policy. 0 means no goal.")//
+        public static final RuntimeOptionKey<Integer> MaxGCPauseMillis = new RuntimeOptionKey<>(100);
+
+        @Option(help = "Throughput goal for the Adaptive collection policy: at most 1 / (1 + GCTimeRatio) of the time should be spent in collections.")//
+        public static final RuntimeOptionKey<Integer> GCTimeRatio = new RuntimeOptionKey<>(19);
+
+        @Option(help = "Weight in percent of the most recent collection in the averages kept by the Adaptive collection policy.")//
+        public static final RuntimeOptionKey<Integer> AdaptiveSizePolicyWeight = new RuntimeOptionKey<>(25);
+
+        @Option(help = "Percentage by which the Adaptive collection policy grows the young generation to meet the throughput goal.")//
+        public static final RuntimeOptionKey<Integer> YoungGenerationSizeIncrement = new RuntimeOptionKey<>(20);
     }
 
     @Platforms(Platform.HOSTED_ONLY.class)
@@ -72,6 +86,14 @@ public abstract class CollectionPolicy {
 
     public abstract void nameToLog(Log log);
 
+    /**
+     * Called after each collection with the time spent in the collection and the time the mutator
+     * ran since the previous collection, so that policies can adapt to the observed behavior.
+     */
+    public void updateAfterCollection(@SuppressWarnings("unused") boolean completeCollection, @SuppressWarnings("unused") long collectionNanos, @SuppressWarnings("unused") long mutatorNanos) {
+        /* Nothing to do by default. */
+    }
+
     protected static GCImpl.Accounting getAccounting() {
         return HeapImpl.getHeapImpl().getGCImpl().getAccounting();
     }
@@ -296,4 +318,91 @@ public abstract class CollectionPolicy {
             return veto;
         }
     }
+
+    /**
+     * A collection policy that decides like {@link BySpaceAndTime} when to collect completely, and
+     * in addition resizes the young generation after each collection to meet a pause time goal
+     * ({@link Options#MaxGCPauseMillis}) and a throughput goal ({@link Options#GCTimeRatio}).
+     *
+     * The time of an incremental collection is roughly proportional to the surviving young objects,
+     * which grow with the size of the young generation. So if the average incremental pause exceeds
+     * the goal, the young generation is shrunk in proportion. Otherwise, if too much time is spent
+     * in collections, the young generation is grown so that collections are less frequent. The
+     * young generation size includes the survivor spaces, which are not sized separately. A young
+     * generation size that was requested explicitly, with {@code -Xmn} or {@code MaxNewSize}, is
+     * never changed.
+     */
+    public static class Adaptive extends BySpaceAndTime {
+
+        /** Never shrink below this many aligned chunks. */
+        private static final int MINIMUM_YOUNG_GENERATION_CHUNKS = 2;
+        /** Never shrink by more than half at once, to not overreact to a single long pause. */
+        private static final int MINIMUM_SHRINK_PERCENT = 50;
+
+        private boolean hasAverages;
+        /** Weighted average of the incremental collection pauses. */
+        private long averagePauseNanos;
+        /** Weighted average of the fraction of time spent in collections, in 1/1000. */
+        private long averageCollectionCostPerMille;
+
+        @Override
+        public void nameToLog(Log log) {
+            log.string("adaptive: pause goal ").signed(Options.MaxGCPauseMillis.getValue()).string(" msec, time ratio ").signed(Options.GCTimeRatio.getValue())
+                            .string(HeapPolicy.isMaximumYoungGenerationSizeExplicit() ? ", fixed" : ", initial").string(" young generation size ").unsigned(HeapPolicy.getMaximumYoungGenerationSize());
+        }
+
+        @Override
+        public void updateAfterCollection(boolean completeCollection, long collectionNanos, long mutatorNanos) {
+            final Log trace = Log.noopLog().string("[CollectionPolicy.Adaptive.updateAfterCollection:").newline();
+            final long intervalNanos = collectionNanos + mutatorNanos;
+            final long costPerMille = (intervalNanos > 0 ? (1000 * collectionNanos) / intervalNanos : 0);
+            if (!hasAverages) {
+                averagePauseNanos = collectionNanos;
+                averageCollectionCostPerMille = costPerMille;
+                hasAverages = true;
+            } else {
+                /* Complete collections take long regardless of the young generation size. */
+                if (!completeCollection) {
+                    averagePauseNanos = weightedAverage(averagePauseNanos, collectionNanos);
+                }
+                averageCollectionCostPerMille = weightedAverage(averageCollectionCostPerMille, costPerMille);
+            }
+
+            if (HeapPolicy.isMaximumYoungGenerationSizeExplicit()) {
+                trace.string("  explicit young generation size: ").unsigned(HeapPolicy.getMaximumYoungGenerationSize()).string("]").newline();
+                return;
+            }
+
+            final UnsignedWord youngSize = HeapPolicy.getMaximumYoungGenerationSize();
+            final long goalNanos = TimeUtils.millisToNanos(Options.MaxGCPauseMillis.getValue());
+            final long goalCostPerMille = 1000 / (1 + Math.max(Options.GCTimeRatio.getValue(), 0));
+            UnsignedWord newSize = youngSize;
+            if (goalNanos > 0 && averagePauseNanos > goalNanos) {
+                final long percent = Math.max((100 * goalNanos) / averagePauseNanos, MINIMUM_SHRINK_PERCENT);
+                newSize = youngSize.unsignedDivide(100).multiply(WordFactory.unsigned(percent));
+            } else if (averageCollectionCostPerMille > goalCostPerMille) {
+                newSize = youngSize.add(youngSize.unsignedDivide(100).multiply(Options.YoungGenerationSizeIncrement.getValue()));
+            }
+            newSize = UnsignedUtils.max(newSize, HeapPolicy.getAlignedHeapChunkSize().multiply(MINIMUM_YOUNG_GENERATION_CHUNKS));
+            /* Leave room for the old generation and for a complete promotion of the young one. */
+            newSize = UnsignedUtils.min(newSize, HeapPolicy.getMaximumHeapSize().unsignedDivide(3));
+            newSize = UnsignedUtils.roundDown(newSize, HeapPolicy.getAlignedHeapChunkSize());
+            if (newSize.notEqual(youngSize)) {
+                HeapPolicy.setMaximumYoungGenerationSize(newSize);
+            }
+            trace.string("  averagePauseNanos: ").signed(averagePauseNanos)
+                            .string("  goalNanos: ").signed(goalNanos)
+                            .string("  averageCollectionCostPerMille: ").signed(averageCollectionCostPerMille)
+                            .string("  goalCostPerMille: ").signed(goalCostPerMille)
+                            .string("  youngSize: ").unsigned(youngSize)
+                            .string("  newSize: ").unsigned(newSize)
+                            .string("]").newline();
+        }
+
+        private static long weightedAverage(long average, long sample) {
+            final int weight = Options.AdaptiveSizePolicyWeight.getValue();
+            assert ((0L <= weight) && (weight <= 100L)) : "AdaptiveSizePolicyWeight should be in the range [0..100].";
+            return (weight * sample + (100 - weight) * average) / 100;
+        }
+    }
 }
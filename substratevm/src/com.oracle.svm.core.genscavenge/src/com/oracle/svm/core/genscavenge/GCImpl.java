@@ -77,6 +77,7 @@ import com.oracle.svm.core.code.SimpleCodeInfoQueryResult;
 import com.oracle.svm.core.deopt.DeoptimizationSupport;
 import com.oracle.svm.core.deopt.DeoptimizedFrame;
 import com.oracle.svm.core.deopt.Deoptimizer;
+import com.oracle.svm.core.flightrecorder.FlightRecorder;
 import com.oracle.svm.core.heap.AllocationFreeList;
 import com.oracle.svm.core.heap.AllocationFreeList.PreviouslyRegisteredElementException;
 import com.oracle.svm.core.heap.CodeReferenceMapDecoder;
@@ -84,6 +85,7 @@ import com.oracle.svm.core.heap.CollectionWatcher;
 import com.oracle.svm.core.heap.GC;
 import com.oracle.svm.core.heap.GCCause;
 import com.oracle.svm.core.heap.NoAllocationVerifier;
+import com.oracle.svm.core.heap.ObjectReferenceVisitor;
 import com.oracle.svm.core.heap.ObjectVisitor;
 import com.oracle.svm.core.heap.ReferenceHandler;
 import com.oracle.svm.core.hub.LayoutEncoding;
@@ -102,6 +104,7 @@ import com.oracle.svm.core.thread.NativeVMOperationData;
 import com.oracle.svm.core.thread.VMOperation;
 import com.oracle.svm.core.thread.VMThreads;
 import com.oracle.svm.core.util.TimeUtils;
+import com.oracle.svm.core.util.UnsignedUtils;
 import com.oracle.svm.core.util.VMError;
 import com.sun.management.GcInfo;
 
@@ -141,6 +144,7 @@ public class GCImpl implements GC {
 
     private CollectionPolicy policy;
     private boolean completeCollection;
+    private boolean compactingCollection;
     private UnsignedWord sizeBefore;
 
     @Platforms(Platform.HOSTED_ONLY.class)
@@ -153,6 +157,7 @@ public class GCImpl implements GC {
         this.collectionWatcherList = AllocationFreeList.factory();
         this.noAllocationVerifier = NoAllocationVerifier.factory("GCImpl.GCImpl()", false);
         this.completeCollection = false;
+        this.compactingCollection = false;
         this.sizeBefore = WordFactory.zero();
 
         this.policy = CollectionPolicy.getInitialPolicy(access);
@@ -175,6 +180,7 @@ public class GCImpl implements GC {
         this.collectionTimer = new Timer("collection");
         this.referenceObjectsTimer = new Timer("referenceObjects");
         this.releaseSpacesTimer = new Timer("releaseSpaces");
+        this.compactOldGenerationTimer = new Timer("compactOldGeneration");
         this.promotePinnedObjectsTimer = new Timer("promotePinnedObjects");
         this.rootScanTimer = new Timer("rootScan");
         this.scanGreyObjectsTimer = new Timer("scanGreyObject");
@@ -234,6 +240,7 @@ public class GCImpl implements GC {
 
         /* Stop the mutator timer. */
         mutatorTimer.close();
+        long startNanos = System.nanoTime();
 
         /* Note that a collection is in progress, or exit if one is already in progress. */
         startCollectionOrExit();
@@ -243,6 +250,7 @@ public class GCImpl implements GC {
 
         /* Flush chunks from thread-local lists to global lists. */
         ThreadLocalAllocation.disableThreadLocalAllocation();
+        UnsignedWord usedBytesBefore = HeapImpl.getHeapImpl().getUsedChunkBytes();
         /* Report the heap before the collection. */
         printGCBefore(cause.getName());
         /* Scrub the lists I maintain, before the collection. */
@@ -252,6 +260,8 @@ public class GCImpl implements GC {
 
         /* Collect. */
         boolean outOfMemory = collectImpl(cause.getName());
+        /* Let the policy adapt to the time spent in this collection and in the mutator before. */
+        getPolicy().updateAfterCollection(completeCollection, collectionTimer.getCollectedNanos(), mutatorTimer.getLastIntervalNanos());
 
         /* Run any collection watchers after the collection. */
         visitWatchersAfter();
@@ -261,6 +271,9 @@ public class GCImpl implements GC {
         printGCAfter(cause.getName());
         /* Note that the collection is finished. */
         finishCollection();
+        if (FlightRecorder.isEnabled()) {
+            FlightRecorder.emitGarbageCollection(startNanos, cause.getId(), completeCollection, getCollectionEpoch(), usedBytesBefore, HeapImpl.getHeapImpl().getUsedChunkBytes());
+        }
 
         /* Start the mutator timer. */
         mutatorTimer.open();
@@ -325,6 +338,8 @@ public class GCImpl implements GC {
             if (completeCollection) {
                 scavenge(false);
             }
+            /* A complete collection empties the survivor spaces, which resets the threshold. */
+            HeapImpl.getHeapImpl().getYoungGeneration().computeTenuringThreshold();
         }
         CommittedMemoryProvider.get().afterGarbageCollection(completeCollection);
 
@@ -409,6 +424,7 @@ public class GCImpl implements GC {
                 verboseGCLog.string("  policy: ");
                 getPolicy().nameToLog(verboseGCLog);
                 verboseGCLog.string("  type: ").string(completeCollection ? "complete" : "incremental");
+                verboseGCLog.string("  peak chunk bytes: ").unsigned(accounting.getPeakChunkBytes());
                 if (HeapOptions.PrintHeapShape.getValue()) {
                     heap.report(verboseGCLog);
                 }
@@ -421,6 +437,9 @@ public class GCImpl implements GC {
                 verboseGCLog.string("]");
                 verboseGCLog.string("]").newline();
             }
+            if (HeapOptions.PrintTenuringDistribution.getValue() && !completeCollection) {
+                heap.getYoungGeneration().logTenuringDistribution(Log.log()).newline();
+            }
         }
     }
 
@@ -530,6 +549,14 @@ public class GCImpl implements GC {
         return completeCollection;
     }
 
+    /**
+     * Is the current collection compacting the old generation in place? See
+     * {@link OldGenerationCompactor}.
+     */
+    boolean isCompactingCollection() {
+        return compactingCollection;
+    }
+
     /**
      * Scavenge, either just from dirty roots or from all roots.
      *
@@ -539,6 +566,7 @@ public class GCImpl implements GC {
     private void scavenge(boolean fromDirtyRoots) {
         try (GreyToBlackObjRefVisitor.Counters gtborv = greyToBlackObjRefVisitor.openCounters()) {
             final Log trace = Log.noopLog().string("[GCImpl.scavenge:").string("  fromDirtyRoots: ").bool(fromDirtyRoots).newline();
+            compactingCollection = !fromDirtyRoots && HeapOptions.CompactingOldGeneration.getValue();
 
             try (Timer rst = rootScanTimer.open()) {
                 trace.string("  Cheney scan: ");
@@ -556,6 +584,14 @@ public class GCImpl implements GC {
             }
 
             trace.string("  Release spaces: ");
+            /* Both the from and to Spaces are populated now, so this is the peak footprint. */
+            accounting.beforeReleaseSpaces();
+
+            if (compactingCollection) {
+                trace.string("  Compact old generation: ");
+                /* Before the young Spaces are released, because references into them are read. */
+                compactOldGeneration();
+            }
             /* Release any memory in the young and from Spaces. */
             try (Timer rst = releaseSpacesTimer.open()) {
                 releaseSpaces();
@@ -564,11 +600,38 @@ public class GCImpl implements GC {
             trace.string("  Swap spaces: ");
             /* Exchange the from and to Spaces. */
             swapSpaces();
+            compactingCollection = false;
 
             trace.string("]").newline();
         }
     }
 
+    /** Slide the live objects of the old from-space together and update all references to them. */
+    @SuppressWarnings("try")
+    private void compactOldGeneration() {
+        final OldGeneration oldGen = HeapImpl.getHeapImpl().getOldGeneration();
+        final OldGenerationCompactor compactor = oldGen.getCompactor();
+        try (Timer cogt = compactOldGenerationTimer.open()) {
+            compactor.planCompaction(oldGen.getFromSpace());
+
+            /*
+             * Each reference must be updated exactly once, so the references of runtime compiled
+             * code are only visited by the walk of the code cache, not also for the frames of that
+             * code on the stack.
+             */
+            walkStackRoots(compactor.getFixupReferenceVisitor(), false);
+            if (threadLocalsWalker != null) {
+                threadLocalsWalker.walk(compactor.getFixupReferenceVisitor());
+            }
+            if (DeoptimizationSupport.enabled()) {
+                RuntimeCodeInfoMemory.singleton().walkRuntimeMethods(compactor.getFixupCodeInfoVisitor());
+            }
+            compactor.fixupHeapReferences(oldGen.getFromSpace(), oldGen.getToSpace());
+
+            compactor.compact(oldGen.getFromSpace());
+        }
+    }
+
     /**
      * Visit all the memory that is reserved for runtime compiled code. References from the runtime
      * compiled code to the Java heap must be consider as either strong or weak references,
@@ -740,45 +803,50 @@ public class GCImpl implements GC {
         trace.string("]").newline();
     }
 
-    @NeverInline("Starting a stack walk in the caller frame. " +
-                    "Note that we could start the stack frame also further down the stack, because GC stack frames must not access any objects that are processed by the GC. " +
-                    "But we don't store stack frame information for the first frame we would need to process.")
-    @Uninterruptible(reason = "Required by called JavaStackWalker methods. We are at a safepoint during GC, so it does not change anything for this method.", calleeMustBe = false)
     @SuppressWarnings("try")
     private void blackenStackRoots() {
         final Log trace = Log.noopLog().string("[GCImpl.blackenStackRoots:").newline();
         try (Timer bsr = blackenStackRootsTimer.open()) {
-            Pointer sp = readCallerStackPointer();
-            trace.string("[blackenStackRoots:").string("  sp: ").hex(sp);
-            CodePointer ip = readReturnAddress();
-            trace.string("  ip: ").hex(ip).newline();
+            walkStackRoots(greyToBlackObjRefVisitor, true);
+        }
+        trace.string("]").newline();
+    }
 
-            JavaStackWalk walk = StackValue.get(JavaStackWalk.class);
-            JavaStackWalker.initWalk(walk, sp, ip);
-            walkStack(walk);
+    @NeverInline("Starting a stack walk in the caller frame. " +
+                    "Note that we could start the stack frame also further down the stack, because GC stack frames must not access any objects that are processed by the GC. " +
+                    "But we don't store stack frame information for the first frame we would need to process.")
+    @Uninterruptible(reason = "Required by called JavaStackWalker methods. We are at a safepoint during GC, so it does not change anything for this method.", calleeMustBe = false)
+    private void walkStackRoots(ObjectReferenceVisitor visitor, boolean visitRuntimeCodeInfo) {
+        final Log trace = Log.noopLog();
+        Pointer sp = readCallerStackPointer();
+        trace.string("[walkStackRoots:").string("  sp: ").hex(sp);
+        CodePointer ip = readReturnAddress();
+        trace.string("  ip: ").hex(ip).newline();
 
-            if (SubstrateOptions.MultiThreaded.getValue()) {
-                /*
-                 * Scan the stacks of all the threads. Other threads will be blocked at a safepoint
-                 * (or in native code) so they will each have a JavaFrameAnchor in their VMThread.
-                 */
-                for (IsolateThread vmThread = VMThreads.firstThread(); vmThread.isNonNull(); vmThread = VMThreads.nextThread(vmThread)) {
-                    if (vmThread == CurrentIsolate.getCurrentThread()) {
-                        /*
-                         * The current thread is already scanned by code above, so we do not have to
-                         * do anything for it here. It might have a JavaFrameAnchor from earlier
-                         * Java-to-C transitions, but certainly not at the top of the stack since it
-                         * is running this code, so just this scan would be incomplete.
-                         */
-                        continue;
-                    }
-                    if (JavaStackWalker.initWalk(walk, vmThread)) {
-                        walkStack(walk);
-                    }
-                    trace.newline();
+        JavaStackWalk walk = StackValue.get(JavaStackWalk.class);
+        JavaStackWalker.initWalk(walk, sp, ip);
+        walkStack(walk, visitor, visitRuntimeCodeInfo);
+
+        if (SubstrateOptions.MultiThreaded.getValue()) {
+            /*
+             * Scan the stacks of all the threads. Other threads will be blocked at a safepoint (or
+             * in native code) so they will each have a JavaFrameAnchor in their VMThread.
+             */
+            for (IsolateThread vmThread = VMThreads.firstThread(); vmThread.isNonNull(); vmThread = VMThreads.nextThread(vmThread)) {
+                if (vmThread == CurrentIsolate.getCurrentThread()) {
+                    /*
+                     * The current thread is already scanned by code above, so we do not have to do
+                     * anything for it here. It might have a JavaFrameAnchor from earlier Java-to-C
+                     * transitions, but certainly not at the top of the stack since it is running
+                     * this code, so just this scan would be incomplete.
+                     */
+                    continue;
                 }
+                if (JavaStackWalker.initWalk(walk, vmThread)) {
+                    walkStack(walk, visitor, visitRuntimeCodeInfo);
+                }
+                trace.newline();
             }
-            trace.string("]").newline();
         }
         trace.string("]").newline();
     }
@@ -790,7 +858,7 @@ public class GCImpl implements GC {
      * calls to a stack frame visitor.
      */
     @Uninterruptible(reason = "Required by called JavaStackWalker methods. We are at a safepoint during GC, so it does not change anything for this method.", calleeMustBe = false)
-    private void walkStack(JavaStackWalk walk) {
+    private static void walkStack(JavaStackWalk walk, ObjectReferenceVisitor visitor, boolean visitRuntimeCodeInfo) {
         assert VMOperation.isGCInProgress() : "This methods accesses a CodeInfo without a tether";
 
         while (true) {
@@ -814,7 +882,7 @@ public class GCImpl implements GC {
                 if (referenceMapIndex == CodeInfoQueryResult.NO_REFERENCE_MAP) {
                     throw CodeInfoTable.reportNoReferenceMap(sp, ip, codeInfo);
                 }
-                CodeReferenceMapDecoder.walkOffsetsFromPointer(sp, referenceMapEncoding, referenceMapIndex, greyToBlackObjRefVisitor);
+                CodeReferenceMapDecoder.walkOffsetsFromPointer(sp, referenceMapEncoding, referenceMapIndex, visitor);
             } else {
                 /*
                  * This is a deoptimized frame. The DeoptimizedFrame object is stored in the frame,
@@ -822,7 +890,7 @@ public class GCImpl implements GC {
                  */
             }
 
-            if (DeoptimizationSupport.enabled() && codeInfo != CodeInfoTable.getImageCodeInfo()) {
+            if (visitRuntimeCodeInfo && DeoptimizationSupport.enabled() && codeInfo != CodeInfoTable.getImageCodeInfo()) {
                 /*
                  * For runtime-compiled code that is currently on the stack, we need to treat all
                  * the references to Java heap objects as strong references. It is important that we
@@ -830,8 +898,8 @@ public class GCImpl implements GC {
                  * decide to invalidate too much code, depending on the order in which the CodeInfo
                  * objects are visited.
                  */
-                RuntimeCodeInfoAccess.walkStrongReferences(codeInfo, greyToBlackObjRefVisitor);
-                RuntimeCodeInfoAccess.walkWeakReferences(codeInfo, greyToBlackObjRefVisitor);
+                RuntimeCodeInfoAccess.walkStrongReferences(codeInfo, visitor);
+                RuntimeCodeInfoAccess.walkWeakReferences(codeInfo, visitor);
             }
 
             if (!JavaStackWalker.continueWalk(walk, queryResult, deoptFrame)) {
@@ -1176,6 +1244,7 @@ public class GCImpl implements GC {
     private final Timer rootScanTimer;
     private final Timer scanGreyObjectsTimer;
     private final Timer releaseSpacesTimer;
+    private final Timer compactOldGenerationTimer;
     private final Timer verifyAfterTimer;
     private final Timer verifyBeforeTimer;
     private final Timer walkThreadLocalsTimer;
@@ -1203,6 +1272,7 @@ public class GCImpl implements GC {
         blackenDirtyCardRootsTimer.reset();
         scanGreyObjectsTimer.reset();
         referenceObjectsTimer.reset();
+        compactOldGenerationTimer.reset();
         releaseSpacesTimer.reset();
         verifyAfterTimer.reset();
         watchersAfterTimer.reset();
@@ -1229,6 +1299,7 @@ public class GCImpl implements GC {
             logOneTimer(log, "          ", blackenDirtyCardRootsTimer);
             logOneTimer(log, "          ", scanGreyObjectsTimer);
             logOneTimer(log, "      ", referenceObjectsTimer);
+            logOneTimer(log, "      ", compactOldGenerationTimer);
             logOneTimer(log, "      ", releaseSpacesTimer);
             logOneTimer(log, "    ", verifyAfterTimer);
             logOneTimer(log, "    ", watchersAfterTimer);
@@ -1279,6 +1350,9 @@ public class GCImpl implements GC {
         private UnsignedWord youngChunkBytesAfter;
         private UnsignedWord oldChunkBytesBefore;
         private UnsignedWord oldChunkBytesAfter;
+        /* Chunk bytes held before the from Spaces are released, i.e., the peak of a collection. */
+        private UnsignedWord peakChunkBytes;
+        private UnsignedWord completeCollectionMaxPeakChunkBytes;
         /* History of promotions and copies. */
         private int history;
         private UnsignedWord[] promotedUnpinnedChunkBytes;
@@ -1309,6 +1383,8 @@ public class GCImpl implements GC {
             this.youngChunkBytesAfter = WordFactory.zero();
             this.oldChunkBytesBefore = WordFactory.zero();
             this.oldChunkBytesAfter = WordFactory.zero();
+            this.peakChunkBytes = WordFactory.zero();
+            this.completeCollectionMaxPeakChunkBytes = WordFactory.zero();
             /* Initialize histories. */
             this.promotedUnpinnedChunkBytes = historyFactory(WordFactory.zero());
             this.copiedUnpinnedChunkBytes = historyFactory(WordFactory.zero());
@@ -1380,6 +1456,16 @@ public class GCImpl implements GC {
             return youngChunkBytesAfter;
         }
 
+        /** Bytes held by all chunks at the peak of the last collection. */
+        UnsignedWord getPeakChunkBytes() {
+            return peakChunkBytes;
+        }
+
+        /** The largest peak of all complete collections so far. */
+        UnsignedWord getCompleteCollectionMaxPeakChunkBytes() {
+            return completeCollectionMaxPeakChunkBytes;
+        }
+
         /** Average promoted unpinned chunk bytes. */
         UnsignedWord averagePromotedUnpinnedChunkBytes() {
             return averageOfHistory(promotedUnpinnedChunkBytes);
@@ -1474,6 +1560,10 @@ public class GCImpl implements GC {
             trace.string("]").newline();
         }
 
+        void beforeReleaseSpaces() {
+            peakChunkBytes = HeapImpl.getHeapImpl().getUsedChunkBytes();
+        }
+
         void afterCollection(boolean completeCollection, Timer collectionTimer) {
             if (completeCollection) {
                 afterCompleteCollection(collectionTimer);
@@ -1509,9 +1599,11 @@ public class GCImpl implements GC {
             /* Complete collections only copy, and they copy everything. */
             setHistoryOf(copiedUnpinnedChunkBytes, oldChunkBytesAfter);
             copiedTotalChunkBytes = copiedTotalChunkBytes.add(oldChunkBytesAfter);
+            completeCollectionMaxPeakChunkBytes = UnsignedUtils.max(completeCollectionMaxPeakChunkBytes, peakChunkBytes);
             completeCollectionTotalNanos += collectionTimer.getCollectedNanos();
             trace.string("  completeCollectionCount: ").signed(completeCollectionCount)
-                            .string("  oldChunkBytesAfter: ").unsigned(oldChunkBytesAfter);
+                            .string("  oldChunkBytesAfter: ").unsigned(oldChunkBytesAfter)
+                            .string("  peakChunkBytes: ").unsigned(peakChunkBytes);
             trace.string("]").newline();
         }
 
@@ -1772,6 +1864,7 @@ public class GCImpl implements GC {
         final long completeNanos = accounting.getCompleteCollectionTotalNanos();
         log.string(prefix).string("CompleteGCCount: ").signed(accounting.getCompleteCollectionCount()).newline();
         log.string(prefix).string("CompleteGCNanos: ").signed(completeNanos).newline();
+        log.string(prefix).string("CompleteGCMaxPeakChunkBytes: ").unsigned(accounting.getCompleteCollectionMaxPeakChunkBytes()).newline();
         /* Compute a GC load percent. */
         final long gcNanos = incrementalNanos + completeNanos;
         final long mutatorNanos = mutatorTimer.getCollectedNanos();
@@ -310,10 +310,12 @@ class HeapChunkProvider {
      */
     static void resetAlignedHeader(AlignedHeader alignedChunk) {
         resetChunkHeader(alignedChunk, AlignedHeapChunk.getAlignedHeapChunkStart(alignedChunk));
+        alignedChunk.setCompactionTable(WordFactory.nullPointer());
     }
 
     private static void resetAlignedHeapChunk(AlignedHeader chunk) {
         resetChunkHeader(chunk, AlignedHeapChunk.getAlignedHeapChunkStart(chunk));
+        chunk.setCompactionTable(WordFactory.nullPointer());
 
         /* Initialize the space for the card remembered set table. */
         CardTable.cleanTableToPointer(AlignedHeapChunk.getCardTableStart(chunk), AlignedHeapChunk.getCardTableLimit(chunk));
@@ -309,6 +309,19 @@ public class HeapImpl extends Heap {
         return space.isOldSpace();
     }
 
+    /**
+     * Returns the number of incremental collections that an object in the young generation has
+     * survived, i.e., 0 for an object in eden. Returns -1 for an object in the old generation or in
+     * the image heap.
+     */
+    public int getObjectAge(Object obj) {
+        if (isInImageHeap(obj)) {
+            return -1;
+        }
+        Space space = HeapChunk.getEnclosingHeapChunk(obj).getSpace();
+        return space.isOldSpace() ? -1 : space.getAge();
+    }
+
     /** The head of the linked list of object pins. */
     private AtomicReference<PinnedObjectImpl> pinHead;
 
@@ -632,6 +645,12 @@ public class HeapImpl extends Heap {
         return true;
     }
 
+    @Override
+    public void retireThreadLocalAllocation() {
+        VMOperation.guaranteeInProgressAtSafepoint("Must only be called at a safepoint");
+        ThreadLocalAllocation.disableThreadLocalAllocation();
+    }
+
     @Override
     public boolean walkCollectedHeapObjects(ObjectVisitor visitor) {
         VMOperation.guaranteeInProgressAtSafepoint("Must only be called at a safepoint");
@@ -43,6 +43,12 @@ public class HeapOptions {
     @Option(help = "Print the time for each of the phases of each collection, if +VerboseGC.")//
     public static final RuntimeOptionKey<Boolean> PrintGCTimes = new RuntimeOptionKey<>(false);
 
+    @Option(help = "Print the age histogram of the survivor spaces and the tenuring threshold after each incremental collection, if +PrintGC or +VerboseGC.")//
+    public static final RuntimeOptionKey<Boolean> PrintTenuringDistribution = new RuntimeOptionKey<>(false);
+
+    @Option(help = "Compact the old generation in place during complete collections instead of copying it, which lowers the peak memory footprint.")//
+    public static final RuntimeOptionKey<Boolean> CompactingOldGeneration = new RuntimeOptionKey<>(false);
+
     /** This produces a lot of output: be prepared to stream the output to a post-processor. */
     @Option(help = "Trace each object promotion.")//
     public static final HostedOptionKey<Boolean> TraceObjectPromotion = new HostedOptionKey<>(false);
@@ -193,6 +193,12 @@ public class HeapPolicy {
         return HeapPolicyOptions.MaxSurvivorSpaces.getValue();
     }
 
+    static UnsignedWord getTargetSurvivorSize() {
+        final int percent = HeapPolicyOptions.TargetSurvivorPercent.getValue();
+        VMError.guarantee((percent >= 0) && (percent <= 100), "TargetSurvivorPercent should be in [0 ..100]");
+        return getMaximumYoungGenerationSize().unsignedDivide(100).multiply(percent);
+    }
+
     /* Memory configuration */
 
     private static UnsignedWord maximumYoungGenerationSize;
@@ -234,6 +240,14 @@ public class HeapPolicy {
         return youngSize;
     }
 
+    /**
+     * Returns true if the size of the young generation was requested explicitly, with {@code -Xmn}
+     * or {@link SubstrateOptions#MaxNewSize}, rather than derived from the maximum heap size.
+     */
+    public static boolean isMaximumYoungGenerationSizeExplicit() {
+        return XOptions.getXmn().getEpoch() > 0 || SubstrateOptions.MaxNewSize.getHostedValue() != 0;
+    }
+
     /** Set the maximum young generation size, returning the previous value. */
     public static UnsignedWord setMaximumYoungGenerationSize(UnsignedWord value) {
         final UnsignedWord result = maximumYoungGenerationSize;
@@ -75,6 +75,9 @@ public class HeapPolicyOptions {
     @Option(help = "Defines the upper bound for the number of remaining bytes in the young generation that cause a collection when `System.gc` is called.") //
     public static final RuntimeOptionKey<Long> UserRequestedGCThreshold = new RuntimeOptionKey<>(16L * 1024L * 1024L);
 
-    @Option(help = "Maximum value for survivor space") //
+    @Option(help = "Maximum number of survivor spaces, which is also the maximum number of incremental collections an object survives before it is tenured") //
     public static final HostedOptionKey<Integer> MaxSurvivorSpaces = new HostedOptionKey<>(0);
+
+    @Option(help = "The desired size of the survivor spaces after an incremental collection as a percent of the maximum young generation size; the tenuring threshold is lowered when survivors exceed it") //
+    public static final RuntimeOptionKey<Integer> TargetSurvivorPercent = new RuntimeOptionKey<>(25);
 }
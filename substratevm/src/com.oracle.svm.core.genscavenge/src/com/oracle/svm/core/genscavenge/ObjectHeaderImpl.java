@@ -57,6 +57,10 @@ import com.oracle.svm.core.util.VMError;
  * without a remembered set. So, in places where it is necessary to explicitly distinguish image
  * heap objects, it is necessary to call {@link Heap#isInImageHeap}. Usually, image heap objects
  * must be treated specially anyways as they neither have a {@link HeapChunk} nor a {@link Space}.
+ * <p>
+ * A forwarding header never has the remembered set bit, while objects in the old generation always
+ * have it. A compacting collection therefore marks live old objects in place by setting both the
+ * remembered set bit and the forwarded bit, which keeps the hub readable.
  */
 public class ObjectHeaderImpl extends ObjectHeader {
     // @formatter:off
@@ -64,6 +68,7 @@ public class ObjectHeaderImpl extends ObjectHeader {
     private static final UnsignedWord UNALIGNED_BIT                 = WordFactory.unsigned(0b001);  // 0 or 8.
     private static final UnsignedWord REMEMBERED_SET_BIT            = WordFactory.unsigned(0b010);  // 0 or 8.
     private static final UnsignedWord FORWARDED_BIT                 = WordFactory.unsigned(0b100);  // 4 or c.
+    private static final UnsignedWord MARKED_BITS                   = WordFactory.unsigned(0b110);  // 6 or e.
 
     private static final int RESERVED_BITS_MASK                     = 0b111;
     private static final UnsignedWord MASK_HEADER_BITS              = WordFactory.unsigned(RESERVED_BITS_MASK);
@@ -313,7 +318,26 @@ public class ObjectHeaderImpl extends ObjectHeader {
     }
 
     private static boolean testForwardedHeaderBit(UnsignedWord headerBits) {
-        return headerBits.and(FORWARDED_BIT).notEqual(0);
+        return headerBits.and(MARKED_BITS).equal(FORWARDED_BIT);
+    }
+
+    /** Is this the header of an object that a compacting collection marked as live? */
+    public static boolean isMarkedHeader(UnsignedWord header) {
+        return header.and(MARKED_BITS).equal(MARKED_BITS);
+    }
+
+    /** Mark an object of the old generation as live during a compacting collection. */
+    protected static void setMarkedBits(Object o) {
+        UnsignedWord oldHeader = readHeaderFromObject(o);
+        assert !isForwardedHeader(oldHeader) : "Forwarded objects can not be marked";
+        writeHeaderToObject(o, oldHeader.or(MARKED_BITS));
+    }
+
+    /** Remove the mark of a compacting collection, leaving the remembered set bit in place. */
+    protected static void clearMarkedBits(Pointer objectPointer) {
+        UnsignedWord oldHeader = readHeaderFromPointer(objectPointer);
+        assert isMarkedHeader(oldHeader);
+        writeHeaderToObject(objectPointer.toObject(), oldHeader.and(FORWARDED_BIT.not()));
     }
 
     public static Object getForwardedObject(Pointer ptr) {
@@ -52,6 +52,9 @@ public class OldGeneration extends Generation {
     /** Walkers of Spaces where there might be grey objects. */
     private final GreyObjectsWalker toGreyObjectsWalker;
 
+    /** Marks and slides the objects of FromSpace during compacting collections. */
+    private final OldGenerationCompactor compactor;
+
     /** Constructor. */
     @Platforms(Platform.HOSTED_ONLY.class)
     OldGeneration(String name) {
@@ -60,6 +63,7 @@ public class OldGeneration extends Generation {
         this.fromSpace = new Space("oldFromSpace", true, age);
         this.toSpace = new Space("oldToSpace", false, age);
         this.toGreyObjectsWalker = GreyObjectsWalker.factory();
+        this.compactor = new OldGenerationCompactor();
     }
 
     /** Return all allocated virtual memory chunks to HeapChunkProvider. */
@@ -87,7 +91,8 @@ public class OldGeneration extends Generation {
     }
 
     /**
-     * Promote an Object to ToSpace if it is not already in ToSpace.
+     * Promote an Object to ToSpace if it is not already in ToSpace. During a compacting collection,
+     * Objects of FromSpace are marked in place instead.
      */
     @AlwaysInline("GC performance")
     @Override
@@ -96,6 +101,10 @@ public class OldGeneration extends Generation {
             AlignedHeapChunk.AlignedHeader chunk = AlignedHeapChunk.getEnclosingAlignedHeapChunk(original);
             Space originalSpace = chunk.getSpace();
             if (originalSpace.isFrom()) {
+                if (originalSpace == getFromSpace() && GCImpl.getGCImpl().isCompactingCollection()) {
+                    getCompactor().markObject(original, header);
+                    return original;
+                }
                 return promoteAlignedObject(original, originalSpace);
             }
         } else {
@@ -125,7 +134,10 @@ public class OldGeneration extends Generation {
 
     void releaseSpaces() {
         /* Release any spaces associated with this generation after a collection. */
-        getFromSpace().release();
+        if (!HeapImpl.getHeapImpl().getGCImpl().isCompactingCollection()) {
+            /* A compacting collection keeps the FromSpace chunks that still hold objects. */
+            getFromSpace().release();
+        }
         /* Just clean remember set in complete collection */
         if (HeapImpl.getHeapImpl().getGCImpl().isCompleteCollection()) {
             /* Clean the spaces that have been scanned for grey objects. */
@@ -143,6 +155,9 @@ public class OldGeneration extends Generation {
     }
 
     protected boolean scanGreyObjects() {
+        if (GCImpl.getGCImpl().isCompactingCollection()) {
+            return scanGreyAndMarkedObjects();
+        }
         if (!getToGreyObjectsWalker().haveGreyObjects()) {
             return false;
         }
@@ -151,6 +166,22 @@ public class OldGeneration extends Generation {
         return true;
     }
 
+    /** Visiting either kind of object can produce more of both kinds. */
+    private boolean scanGreyAndMarkedObjects() {
+        boolean result = false;
+        boolean hasGrey = true;
+        while (hasGrey) {
+            hasGrey = false;
+            if (getToGreyObjectsWalker().haveGreyObjects()) {
+                getToGreyObjectsWalker().walkGreyObjects();
+                hasGrey = true;
+            }
+            hasGrey |= getCompactor().scanMarkedObjects();
+            result |= hasGrey;
+        }
+        return result;
+    }
+
     @Override
     public Log report(Log log, boolean traceHeapChunks) {
         log.string("[Old generation: ").indent(true);
@@ -264,7 +295,8 @@ public class OldGeneration extends Generation {
     }
 
     void swapSpaces() {
-        assert getFromSpace().isEmpty() : "fromSpace should be empty.";
+        /* After a compacting collection, FromSpace keeps the compacted objects. */
+        assert getFromSpace().isEmpty() || HeapImpl.getHeapImpl().getGCImpl().isCompactingCollection() : "fromSpace should be empty.";
         getFromSpace().absorb(getToSpace());
     }
 
@@ -277,6 +309,10 @@ public class OldGeneration extends Generation {
         return toGreyObjectsWalker;
     }
 
+    OldGenerationCompactor getCompactor() {
+        return compactor;
+    }
+
     boolean walkHeapChunks(MemoryWalker.Visitor visitor) {
         /* In no particular order visit all the spaces. */
         return getFromSpace().walkHeapChunks(visitor) && getToSpace().walkHeapChunks(visitor);
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.genscavenge;
+
+import static org.graalvm.compiler.nodes.extended.BranchProbabilityNode.FREQUENT_PROBABILITY;
+import static org.graalvm.compiler.nodes.extended.BranchProbabilityNode.SLOW_PATH_PROBABILITY;
+import static org.graalvm.compiler.nodes.extended.BranchProbabilityNode.probability;
+
+import java.lang.ref.Reference;
+
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.annotate.AlwaysInline;
+import com.oracle.svm.core.annotate.NeverInline;
+import com.oracle.svm.core.code.CodeInfo;
+import com.oracle.svm.core.code.RuntimeCodeCache.CodeInfoVisitor;
+import com.oracle.svm.core.code.RuntimeCodeInfoAccess;
+import com.oracle.svm.core.config.ConfigurationValues;
+import com.oracle.svm.core.heap.ObjectReferenceVisitor;
+import com.oracle.svm.core.heap.ObjectVisitor;
+import com.oracle.svm.core.heap.ReferenceAccess;
+import com.oracle.svm.core.heap.ReferenceInternals;
+import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.hub.InteriorObjRefWalker;
+import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.thread.VMOperation;
+import com.oracle.svm.core.util.VMError;
+
+/**
+ * Compacts the aligned chunks of the old generation in place, so that a complete collection does
+ * not need a second copy of the old generation. The phases are:
+ * <ul>
+ * <li>Marking: during the Cheney scan, objects of the old from-space are
+ * {@linkplain ObjectHeaderImpl#setMarkedBits marked} instead of being copied, and pushed on a mark
+ * stack that is drained together with the grey objects of the old to-space.</li>
+ * <li>Planning: for each card of each from-space chunk, the destination of the first live object
+ * that starts in the card is recorded in a side table. Objects slide towards the first chunk of
+ * the from-space, so an object never moves to a later chunk, and never to a higher address within
+ * its own chunk.</li>
+ * <li>Fixup: every reference to a marked object, in the roots and in all live objects, is updated
+ * to the new location, which is computed from the side table and the live objects in front of it
+ * in the same card. Every location is visited exactly once, because the fixup is not
+ * idempotent.</li>
+ * <li>Compaction: the marked objects are moved, their marks are cleared, the remembered sets of
+ * the destination chunks are rebuilt, and the chunks that became empty are released.</li>
+ * </ul>
+ * The young generation, pinned objects, and unaligned chunks are still handled by copying or by
+ * moving whole chunks to the old to-space.
+ */
+final class OldGenerationCompactor {
+
+    private static final int INITIAL_MARK_STACK_CAPACITY = 1024;
+
+    /* Objects that are marked but whose references have not been visited yet. */
+    private Pointer markStack;
+    private UnsignedWord markStackCount;
+    private UnsignedWord markStackCapacity;
+
+    private final FixupReferenceVisitor fixupReferenceVisitor;
+    private final FixupObjectVisitor fixupObjectVisitor;
+    private final FixupCodeInfoVisitor fixupCodeInfoVisitor;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    OldGenerationCompactor() {
+        this.markStack = WordFactory.nullPointer();
+        this.markStackCount = WordFactory.zero();
+        this.markStackCapacity = WordFactory.zero();
+        this.fixupReferenceVisitor = new FixupReferenceVisitor();
+        this.fixupObjectVisitor = new FixupObjectVisitor(fixupReferenceVisitor);
+        this.fixupCodeInfoVisitor = new FixupCodeInfoVisitor(fixupReferenceVisitor);
+    }
+
+    ObjectReferenceVisitor getFixupReferenceVisitor() {
+        return fixupReferenceVisitor;
+    }
+
+    CodeInfoVisitor getFixupCodeInfoVisitor() {
+        return fixupCodeInfoVisitor;
+    }
+
+    /*
+     * Marking.
+     */
+
+    /** Mark an object of the old from-space as live, making it grey if it was white. */
+    @AlwaysInline("GC performance")
+    void markObject(Object original, UnsignedWord header) {
+        if (!ObjectHeaderImpl.isMarkedHeader(header)) {
+            ObjectHeaderImpl.setMarkedBits(original);
+            pushMarkStack(original);
+        }
+    }
+
+    @AlwaysInline("GC performance")
+    private void pushMarkStack(Object obj) {
+        if (probability(SLOW_PATH_PROBABILITY, markStackCount.equal(markStackCapacity))) {
+            growMarkStack();
+        }
+        markStack.writeWord(markStackCount.multiply(wordSize()), Word.objectToUntrackedPointer(obj));
+        markStackCount = markStackCount.add(1);
+    }
+
+    @NeverInline("Slow path")
+    private void growMarkStack() {
+        UnsignedWord newCapacity = markStackCapacity.equal(0) ? WordFactory.unsigned(INITIAL_MARK_STACK_CAPACITY) : markStackCapacity.multiply(2);
+        Pointer newStack = UnmanagedMemory.realloc(markStack, newCapacity.multiply(wordSize()));
+        VMError.guarantee(newStack.isNonNull(), "Failed to grow the mark stack of the old generation compactor.");
+        markStack = newStack;
+        markStackCapacity = newCapacity;
+    }
+
+    /**
+     * Blacken the marked objects on the mark stack, which might mark further objects or copy
+     * objects to the old to-space.
+     *
+     * @return true if any object was visited, false otherwise.
+     */
+    boolean scanMarkedObjects() {
+        GreyToBlackObjectVisitor visitor = GCImpl.getGCImpl().getGreyToBlackObjectVisitor();
+        boolean result = false;
+        while (markStackCount.aboveThan(0)) {
+            markStackCount = markStackCount.subtract(1);
+            Pointer objPointer = markStack.readWord(markStackCount.multiply(wordSize()));
+            visitor.visitObjectInline(objPointer.toObject());
+            result = true;
+        }
+        return result;
+    }
+
+    /*
+     * Planning.
+     */
+
+    /** Compute the destination of the live objects of each card of the old from-space. */
+    void planCompaction(Space fromSpace) {
+        assert VMOperation.isGCInProgress() : "Should only be called from the collector.";
+        assert markStackCount.equal(0) : "All marked objects should have been visited.";
+        AlignedHeapChunk.AlignedHeader destChunk = fromSpace.getFirstAlignedHeapChunk();
+        Pointer dest = destChunk.isNull() ? WordFactory.nullPointer() : AlignedHeapChunk.getObjectsStart(destChunk);
+        for (AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            Pointer objectsStart = AlignedHeapChunk.getObjectsStart(chunk);
+            Pointer top = chunk.getTop();
+            UnsignedWord indexLimit = CardTable.indexLimitForMemorySize(top.subtract(objectsStart));
+            if (indexLimit.equal(0)) {
+                continue;
+            }
+            Pointer table = UnmanagedMemory.malloc(indexLimit.multiply(wordSize()));
+            VMError.guarantee(table.isNonNull(), "Failed to allocate the compaction table of an aligned heap chunk.");
+            chunk.setCompactionTable(table);
+
+            Pointer cursor = objectsStart;
+            for (UnsignedWord index = WordFactory.zero(); index.belowThan(indexLimit); index = index.add(1)) {
+                /* Sum up the live objects that start in this card. */
+                Pointer cardLimit = CardTable.indexToMemoryPointer(objectsStart, index.add(1));
+                UnsignedWord live = WordFactory.zero();
+                while (cursor.belowThan(top) && cursor.belowThan(cardLimit)) {
+                    UnsignedWord size = LayoutEncoding.getSizeFromObject(cursor.toObject());
+                    if (ObjectHeaderImpl.isMarkedHeader(ObjectHeaderImpl.readHeaderFromPointer(cursor))) {
+                        live = live.add(size);
+                    }
+                    cursor = cursor.add(size);
+                }
+                /* The live objects of a card are kept together, so they might need a new chunk. */
+                if (live.aboveThan(0) && dest.add(live).aboveThan(destChunk.getEnd())) {
+                    destChunk = destChunk.getNext();
+                    assert destChunk.isNonNull() : "Objects must not slide past their own chunk.";
+                    dest = AlignedHeapChunk.getObjectsStart(destChunk);
+                }
+                table.writeWord(index.multiply(wordSize()), dest);
+                dest = dest.add(live);
+            }
+        }
+    }
+
+    /** The location of a marked object after the compaction. */
+    @AlwaysInline("GC performance")
+    static Pointer newLocation(Pointer p) {
+        AlignedHeapChunk.AlignedHeader chunk = AlignedHeapChunk.getEnclosingAlignedHeapChunkFromPointer(p);
+        Pointer objectsStart = AlignedHeapChunk.getObjectsStart(chunk);
+        UnsignedWord index = CardTable.memoryOffsetToIndex(p.subtract(objectsStart));
+        Pointer result = chunk.getCompactionTable().readWord(index.multiply(wordSize()));
+        /* Add the live objects in front of this one that start in the same card. */
+        Pointer cursor = FirstObjectTable.getImpreciseFirstObjectPointer(AlignedHeapChunk.getFirstObjectTableStart(chunk), objectsStart, chunk.getTop(), index);
+        while (cursor.belowThan(p)) {
+            UnsignedWord size = LayoutEncoding.getSizeFromObject(cursor.toObject());
+            if (ObjectHeaderImpl.isMarkedHeader(ObjectHeaderImpl.readHeaderFromPointer(cursor))) {
+                result = result.add(size);
+            }
+            cursor = cursor.add(size);
+        }
+        assert cursor.equal(p) : "The pointer must point to the start of an object.";
+        return result;
+    }
+
+    /*
+     * Fixup.
+     */
+
+    /** Update the references of all live objects in the heap to the marked objects. */
+    void fixupHeapReferences(Space fromSpace, Space toSpace) {
+        /* The objects that were copied or whose chunk was promoted. */
+        toSpace.walkObjects(fixupObjectVisitor);
+
+        /* The marked objects themselves. */
+        for (AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            Pointer cursor = AlignedHeapChunk.getObjectsStart(chunk);
+            Pointer top = chunk.getTop();
+            while (cursor.belowThan(top)) {
+                Object obj = cursor.toObject();
+                if (ObjectHeaderImpl.isMarkedHeader(ObjectHeaderImpl.readHeaderFromPointer(cursor))) {
+                    fixupObjectVisitor.visitObjectInline(obj);
+                }
+                cursor = cursor.add(LayoutEncoding.getSizeFromObject(obj));
+            }
+        }
+
+        /* The writable part of the image heap. */
+        ImageHeapInfo imageHeapInfo = HeapImpl.getImageHeapInfo();
+        if (imageHeapInfo.firstWritableReferenceObject != null) {
+            Pointer cur = Word.objectToUntrackedPointer(imageHeapInfo.firstWritableReferenceObject);
+            Pointer last = Word.objectToUntrackedPointer(imageHeapInfo.lastWritableReferenceObject);
+            while (cur.belowOrEqual(last)) {
+                Object obj = cur.toObject();
+                fixupObjectVisitor.visitObjectInline(obj);
+                cur = LayoutEncoding.getObjectEnd(obj);
+            }
+        }
+    }
+
+    /*
+     * Compaction.
+     */
+
+    /** Move the marked objects to their planned locations and release the chunks left empty. */
+    void compact(Space fromSpace) {
+        AlignedHeapChunk.AlignedHeader destChunk = WordFactory.nullPointer();
+        for (AlignedHeapChunk.AlignedHeader chunk = fromSpace.getFirstAlignedHeapChunk(); chunk.isNonNull(); chunk = chunk.getNext()) {
+            Pointer table = chunk.getCompactionTable();
+            if (table.isNull()) {
+                continue;
+            }
+            Pointer objectsStart = AlignedHeapChunk.getObjectsStart(chunk);
+            /* The top might be lowered while this chunk is its own destination. */
+            Pointer top = chunk.getTop();
+            Pointer cursor = objectsStart;
+            UnsignedWord cardIndex = WordFactory.unsigned(-1L);
+            Pointer dest = WordFactory.nullPointer();
+            while (cursor.belowThan(top)) {
+                UnsignedWord header = ObjectHeaderImpl.readHeaderFromPointer(cursor);
+                UnsignedWord size = LayoutEncoding.getSizeFromObject(cursor.toObject());
+                if (ObjectHeaderImpl.isMarkedHeader(header)) {
+                    UnsignedWord index = CardTable.memoryOffsetToIndex(cursor.subtract(objectsStart));
+                    if (index.notEqual(cardIndex)) {
+                        cardIndex = index;
+                        dest = table.readWord(index.multiply(wordSize()));
+                    }
+                    AlignedHeapChunk.AlignedHeader target = AlignedHeapChunk.getEnclosingAlignedHeapChunkFromPointer(dest);
+                    if (target.notEqual(destChunk)) {
+                        /* The first object placed into a chunk: start its remembered set over. */
+                        destChunk = target;
+                        CardTable.cleanTableToPointer(AlignedHeapChunk.getCardTableStart(destChunk), AlignedHeapChunk.getCardTableLimit(destChunk));
+                        FirstObjectTable.initializeTableToPointer(AlignedHeapChunk.getFirstObjectTableStart(destChunk), AlignedHeapChunk.getFirstObjectTableLimit(destChunk));
+                    }
+                    assert target.notEqual(chunk) || dest.belowOrEqual(cursor) : "Objects only slide towards the start of a chunk.";
+                    ObjectHeaderImpl.clearMarkedBits(cursor);
+                    if (dest.notEqual(cursor)) {
+                        moveObject(cursor, dest, size);
+                    }
+                    destChunk.setTop(dest.add(size));
+                    AlignedHeapChunk.setUpRememberedSetForObjectOfAlignedHeapChunk(destChunk, dest.toObject());
+                    dest = dest.add(size);
+                }
+                cursor = cursor.add(size);
+            }
+            UnmanagedMemory.free(table);
+            chunk.setCompactionTable(WordFactory.nullPointer());
+        }
+
+        /* Everything after the last destination is garbage now. */
+        AlignedHeapChunk.AlignedHeader chunk = destChunk.isNull() ? fromSpace.getFirstAlignedHeapChunk() : destChunk.getNext();
+        while (chunk.isNonNull()) {
+            AlignedHeapChunk.AlignedHeader next = chunk.getNext();
+            assert chunk.getCompactionTable().isNull();
+            fromSpace.extractAlignedHeapChunk(chunk);
+            HeapChunkProvider.get().consumeAlignedChunk(chunk);
+            chunk = next;
+        }
+        /* The live unaligned chunks have been promoted to the old to-space. */
+        fromSpace.releaseUnalignedHeapChunks();
+
+        releaseMarkStack();
+    }
+
+    /**
+     * Move an object to its destination. Copying forward is safe even if the source and the
+     * destination overlap, because within a chunk the destination is never above the source.
+     */
+    private static void moveObject(Pointer source, Pointer dest, UnsignedWord size) {
+        UnsignedWord offset = WordFactory.zero();
+        while (probability(FREQUENT_PROBABILITY, offset.belowThan(size))) {
+            dest.writeWord(offset, source.readWord(offset));
+            offset = offset.add(wordSize());
+        }
+    }
+
+    private void releaseMarkStack() {
+        assert markStackCount.equal(0);
+        if (markStack.isNonNull()) {
+            UnmanagedMemory.free(markStack);
+        }
+        markStack = WordFactory.nullPointer();
+        markStackCapacity = WordFactory.zero();
+    }
+
+    private static int wordSize() {
+        return ConfigurationValues.getTarget().wordSize;
+    }
+
+    /** Update a reference to a marked object to its location after the compaction. */
+    private static final class FixupReferenceVisitor implements ObjectReferenceVisitor {
+
+        @Platforms(Platform.HOSTED_ONLY.class)
+        FixupReferenceVisitor() {
+        }
+
+        @Override
+        public boolean visitObjectReference(Pointer objRef, boolean compressed) {
+            return visitObjectReferenceInline(objRef, 0, compressed, null);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, boolean compressed, Object holderObject) {
+            return visitObjectReferenceInline(objRef, 0, compressed, holderObject);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, int innerOffset, boolean compressed) {
+            return visitObjectReferenceInline(objRef, innerOffset, compressed, null);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectReferenceInline(Pointer objRef, int innerOffset, boolean compressed, Object holderObject) {
+            Pointer offsetP = ReferenceAccess.singleton().readObjectAsUntrackedPointer(objRef, compressed);
+            assert offsetP.isNonNull() || innerOffset == 0;
+            Pointer p = offsetP.subtract(innerOffset);
+            if (p.isNull() || HeapImpl.getHeapImpl().isInImageHeap(p)) {
+                return true;
+            }
+            /*
+             * Derived references are read from the slot itself, and the objects only move after
+             * all references were updated, so the order of the visits does not matter.
+             */
+            if (ObjectHeaderImpl.isMarkedHeader(ObjectHeaderImpl.readHeaderFromPointer(p))) {
+                Pointer newP = newLocation(p);
+                if (newP.notEqual(p)) {
+                    ReferenceAccess.singleton().writeObjectAt(objRef, newP.add(innerOffset).toObject(), compressed);
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Update all references of an object, including the manually processed referent field. */
+    private static final class FixupObjectVisitor implements ObjectVisitor {
+        private final FixupReferenceVisitor refVisitor;
+
+        @Platforms(Platform.HOSTED_ONLY.class)
+        FixupObjectVisitor(FixupReferenceVisitor refVisitor) {
+            this.refVisitor = refVisitor;
+        }
+
+        @Override
+        public boolean visitObject(Object obj) {
+            return visitObjectInline(obj);
+        }
+
+        @Override
+        @AlwaysInline("GC performance")
+        public boolean visitObjectInline(Object obj) {
+            DynamicHub hub = KnownIntrinsics.readHub(obj);
+            if (probability(SLOW_PATH_PROBABILITY, hub.isReferenceInstanceClass())) {
+                Reference<?> dr = KnownIntrinsics.convertUnknownValue(obj, Reference.class);
+                refVisitor.visitObjectReference(ReferenceInternals.getReferentFieldAddress(dr), true);
+            }
+            InteriorObjRefWalker.walkObjectInline(obj, refVisitor);
+            return true;
+        }
+    }
+
+    /**
+     * Update the references of the runtime compiled code. The strong and weak references together
+     * cover each object field of the code exactly once.
+     */
+    private static final class FixupCodeInfoVisitor implements CodeInfoVisitor {
+        private final FixupReferenceVisitor refVisitor;
+
+        @Platforms(Platform.HOSTED_ONLY.class)
+        FixupCodeInfoVisitor(FixupReferenceVisitor refVisitor) {
+            this.refVisitor = refVisitor;
+        }
+
+        @Override
+        public <T extends CodeInfo> boolean visitCode(T codeInfo) {
+            RuntimeCodeInfoAccess.walkStrongReferences(codeInfo, refVisitor);
+            RuntimeCodeInfoAccess.walkWeakReferences(codeInfo, refVisitor);
+            return true;
+        }
+    }
+}
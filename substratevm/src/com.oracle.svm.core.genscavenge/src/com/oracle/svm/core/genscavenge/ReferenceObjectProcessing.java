@@ -213,7 +213,8 @@ public class ReferenceObjectProcessing {
     private static boolean willSurviveThisCollection(Object obj) {
         HeapChunk.Header<?> chunk = HeapChunk.getEnclosingHeapChunk(obj);
         Space space = chunk.getSpace();
-        return !space.isFrom();
+        /* A compacting collection leaves the live objects of the old from-space in place. */
+        return !space.isFrom() || ObjectHeaderImpl.isMarkedHeader(ObjectHeaderImpl.readHeaderFromObject(obj));
     }
 
     private static Reference<?> popRememberedRef() {
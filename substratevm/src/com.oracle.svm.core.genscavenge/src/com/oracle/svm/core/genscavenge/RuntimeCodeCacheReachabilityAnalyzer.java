@@ -69,7 +69,7 @@ class RuntimeCodeCacheReachabilityAnalyzer implements ObjectReferenceVisitor {
         }
 
         UnsignedWord header = ObjectHeaderImpl.readHeaderFromPointer(ptrToObj);
-        if (ObjectHeaderImpl.isForwardedHeader(header)) {
+        if (ObjectHeaderImpl.isForwardedHeader(header) || ObjectHeaderImpl.isMarkedHeader(header)) {
             return true;
         }
 
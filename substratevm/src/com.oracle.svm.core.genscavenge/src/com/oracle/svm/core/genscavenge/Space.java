@@ -603,7 +603,7 @@ public class Space {
     }
 
     /** Recycle all UnalignedHeapChunks in this Space. */
-    private void releaseUnalignedHeapChunks() {
+    void releaseUnalignedHeapChunks() {
         /* Pop UnalignedHeapChunks off the list until it is empty. */
         for (UnalignedHeapChunk.UnalignedHeader chunk = popUnalignedHeapChunk(); chunk.isNonNull(); chunk = popUnalignedHeapChunk()) {
             HeapChunkProvider.get().consumeUnalignedChunk(chunk);
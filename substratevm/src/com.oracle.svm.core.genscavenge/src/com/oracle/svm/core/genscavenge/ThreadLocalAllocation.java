@@ -46,6 +46,7 @@ import org.graalvm.word.WordFactory;
 import com.oracle.svm.core.SubstrateOptions;
 import com.oracle.svm.core.annotate.RestrictHeapAccess;
 import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.flightrecorder.FlightRecorder;
 import com.oracle.svm.core.genscavenge.AlignedHeapChunk.AlignedHeader;
 import com.oracle.svm.core.genscavenge.UnalignedHeapChunk.UnalignedHeader;
 import com.oracle.svm.core.genscavenge.graal.nodes.FormatArrayNode;
@@ -131,6 +132,9 @@ public final class ThreadLocalAllocation {
         final UnsignedWord gcEpoch = HeapImpl.getHeapImpl().getGCImpl().possibleCollectionPrologue();
         /* Allocate the requested instance. */
         final Object result = slowPathNewInstanceWithoutAllocating(hub);
+        if (FlightRecorder.isEnabled()) {
+            FlightRecorder.emitAllocationSlowPath(result, LayoutEncoding.getInstanceSize(hub.getLayoutEncoding()), false);
+        }
         /* Allow the collector to do stuff now that allocation, etc., is allowed. */
         HeapImpl.getHeapImpl().getGCImpl().possibleCollectionEpilogue(gcEpoch);
         runSlowPathHooks();
@@ -206,6 +210,10 @@ public final class ThreadLocalAllocation {
         /* Allocate the requested array. */
         DynamicHub hub = ObjectHeaderImpl.getObjectHeaderImpl().dynamicHubFromObjectHeader(objectHeader);
         final Object result = slowPathNewArrayWithoutAllocating(hub, length);
+        if (FlightRecorder.isEnabled()) {
+            UnsignedWord size = LayoutEncoding.getArraySize(hub.getLayoutEncoding(), length);
+            FlightRecorder.emitAllocationSlowPath(result, size, size.aboveOrEqual(HeapPolicy.getLargeArrayThreshold()));
+        }
         /* Allow the collector to do stuff now that allocation, etc., is allowed. */
         HeapImpl.getHeapImpl().getGCImpl().possibleCollectionEpilogue(gcEpoch);
         runSlowPathHooks();
@@ -48,6 +48,10 @@ public class YoungGeneration extends Generation {
     private final GreyObjectsWalker[] survivorGreyObjectsWalkers;
     private final int maxSurvivorSpaces;
 
+    // Mutable State.
+    /** Objects in a space of this age or older are promoted to the old generation. */
+    private int tenuringThreshold;
+
     /* Constructors. */
 
     @Platforms(Platform.HOSTED_ONLY.class)
@@ -68,6 +72,7 @@ public class YoungGeneration extends Generation {
             this.survivorToSpaces[i] = new Space("Survivor-" + (i + 1) + " To", false, (i + 1));
             this.survivorGreyObjectsWalkers[i] = GreyObjectsWalker.factory();
         }
+        this.tenuringThreshold = maxSurvivorSpaces;
     }
 
     /** Return all allocated virtual memory chunks to HeapChunkProvider. */
@@ -180,6 +185,48 @@ public class YoungGeneration extends Generation {
         }
     }
 
+    public int getTenuringThreshold() {
+        return tenuringThreshold;
+    }
+
+    /**
+     * Compute the tenuring threshold for the next incremental collection from the age histogram of
+     * the survivor spaces, similar to HotSpot's adaptive tenuring: the threshold is the youngest age
+     * at which the survivors of that age and younger exceed the target survivor size, so that the
+     * survivors that do not fit are promoted by the next collection instead of being copied again.
+     * After a complete collection the survivor spaces are empty and the threshold is reset to
+     * {@link HeapPolicy#getMaxSurvivorSpaces()}.
+     */
+    void computeTenuringThreshold() {
+        final UnsignedWord targetSize = HeapPolicy.getTargetSurvivorSize();
+        UnsignedWord total = WordFactory.zero();
+        int threshold = maxSurvivorSpaces;
+        for (int i = 0; i < maxSurvivorSpaces; i++) {
+            total = total.add(getSurvivorFromSpaceAt(i).getChunkBytes());
+            if (total.aboveThan(targetSize)) {
+                threshold = i + 1;
+                break;
+            }
+        }
+        tenuringThreshold = threshold;
+    }
+
+    Log logTenuringDistribution(Log log) {
+        log.string("[Tenuring distribution: threshold ").signed(tenuringThreshold).string(" (max ").signed(maxSurvivorSpaces).string(")");
+        log.string("  target survivor size: ").unsigned(HeapPolicy.getTargetSurvivorSize());
+        UnsignedWord total = WordFactory.zero();
+        for (int i = 0; i < maxSurvivorSpaces; i++) {
+            final UnsignedWord bytes = getSurvivorFromSpaceAt(i).getChunkBytes();
+            if (bytes.equal(0)) {
+                continue;
+            }
+            total = total.add(bytes);
+            log.newline().string("  age ").signed(i + 1).string(": ").unsigned(bytes).string(" bytes, ").unsigned(total).string(" total");
+        }
+        log.string("]");
+        return log;
+    }
+
     void swapSpaces() {
         for (int i = 0; i < maxSurvivorSpaces; i++) {
             assert getSurvivorFromSpaceAt(i).isEmpty() : "Survivor fromSpace should be empty.";
@@ -340,7 +387,7 @@ public class YoungGeneration extends Generation {
         assert originalSpace.isEdenSpace() || originalSpace.isSurvivorSpace() : "Should be Eden or survivor.";
         assert originalSpace.isFrom() : "must not be called for other objects";
 
-        if (originalSpace.getAge() < maxSurvivorSpaces) {
+        if (originalSpace.getAge() < tenuringThreshold) {
             int age = originalSpace.getNextAgeForPromotion();
             Space toSpace = getSurvivorToSpaceAt(age - 1);
             return toSpace.promoteAlignedObject(original, originalSpace);
@@ -353,7 +400,7 @@ public class YoungGeneration extends Generation {
     private void promoteUnalignedObject(UnalignedHeapChunk.UnalignedHeader originalChunk, Space originalSpace) {
         assert originalSpace.isFrom() : "must not be called for other objects";
 
-        if (originalSpace.getAge() < maxSurvivorSpaces) {
+        if (originalSpace.getAge() < tenuringThreshold) {
             int age = originalSpace.getNextAgeForPromotion();
             Space toSpace = getSurvivorToSpaceAt(age - 1);
             toSpace.promoteUnalignedHeapChunk(originalChunk, originalSpace);
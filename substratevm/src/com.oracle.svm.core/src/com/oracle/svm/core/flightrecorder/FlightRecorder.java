@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.flightrecorder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.graalvm.compiler.api.replacements.Fold;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.CurrentIsolate;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.PinnedObject;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.ProcessProperties;
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.nativeimage.impl.UnmanagedMemorySupport;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.MemoryUtil;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.jdk.UninterruptibleUtils.AtomicLong;
+import com.oracle.svm.core.jdk.UninterruptibleUtils.AtomicUnsigned;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.thread.JavaVMOperation;
+import com.oracle.svm.core.thread.VMThreads;
+import com.oracle.svm.core.threadlocal.FastThreadLocalFactory;
+import com.oracle.svm.core.threadlocal.FastThreadLocalInt;
+import com.oracle.svm.core.threadlocal.FastThreadLocalWord;
+
+/**
+ * A low-overhead recorder for VM events, enabled with {@link FlightRecorderOptions#FlightRecorder}.
+ * <p>
+ * Each thread writes fixed-size event records into its own buffer without any synchronization. The
+ * buffer is allocated on the first event of a thread and freed when the thread exits or the
+ * recording stops. Writing a record is uninterruptible, so a safepoint never observes a partially
+ * written record. When a thread's buffer is full, it is promoted to a global buffer by
+ * atomically reserving space in it. A flusher thread periodically brings the VM to a safepoint,
+ * promotes all thread-local buffers, swaps the global buffer with a second one and then writes the
+ * swapped-out buffer to the recording file while the application continues to run. Events that do
+ * not fit into the global buffer until the next flush are dropped and reported as
+ * {@link FlightRecorderEvent#LOST_EVENTS}.
+ * <p>
+ * The recording file consists of a header ({@link #MAGIC}, {@link #BYTE_ORDER_MARK}, the
+ * {@link System#nanoTime()} and {@link System#currentTimeMillis()} at the start of the recording)
+ * followed by the records described in {@link FlightRecorderEvent}.
+ */
+public final class FlightRecorder {
+
+    static final byte[] MAGIC = "SVMFR001".getBytes(StandardCharsets.US_ASCII);
+    static final int BYTE_ORDER_MARK = 0x01020304;
+
+    static final int TYPE_OFFSET = 0;
+    static final int SIZE_OFFSET = 4;
+    static final int THREAD_OFFSET = 8;
+    static final int START_OFFSET = 16;
+    static final int DURATION_OFFSET = 24;
+    static final int PAYLOAD_OFFSET = 32;
+    static final int EVENT_SIZE = PAYLOAD_OFFSET + 4 * Long.BYTES;
+
+    private static final FastThreadLocalWord<Pointer> threadBuffer = FastThreadLocalFactory.createWord();
+    private static final FastThreadLocalInt threadBufferPosition = FastThreadLocalFactory.createInt();
+
+    private volatile boolean recording;
+    private Pointer activeBuffer;
+    private Pointer flushBuffer;
+    private UnsignedWord globalBufferSize;
+    private UnsignedWord flushLength;
+    private final AtomicUnsigned activePosition = new AtomicUnsigned();
+    private final AtomicLong lostEvents = new AtomicLong(0);
+
+    /* State of the flusher, guarded by this. */
+    private OutputStream output;
+    private byte[] writeBuffer;
+    private final Set<Long> writtenClasses = new HashSet<>();
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    FlightRecorder() {
+    }
+
+    @Fold
+    public static boolean isEnabled() {
+        return FlightRecorderOptions.FlightRecorder.getValue();
+    }
+
+    @Fold
+    static FlightRecorder singleton() {
+        return ImageSingletons.lookup(FlightRecorder.class);
+    }
+
+    @Fold
+    static int getThreadBufferSize() {
+        /* Whole records only, so that promoted buffers never leave a gap in the global buffer. */
+        return Math.max(1, FlightRecorderOptions.FlightRecorderThreadBufferSize.getValue() / EVENT_SIZE) * EVENT_SIZE;
+    }
+
+    /*
+     * Event emission.
+     */
+
+    public static void emitGarbageCollection(long startNanos, int causeId, boolean complete, UnsignedWord epoch, UnsignedWord usedBefore, UnsignedWord usedAfter) {
+        long end = System.nanoTime();
+        emit(FlightRecorderEvent.GARBAGE_COLLECTION, startNanos, end - startNanos, epoch.rawValue(), (causeId & 0xFFFF_FFFFL) | (complete ? 1L << 32 : 0L), usedBefore.rawValue(), usedAfter.rawValue());
+    }
+
+    public static void emitSafepoint(long startNanos, long frozenNanos) {
+        long end = System.nanoTime();
+        emit(FlightRecorderEvent.SAFEPOINT, startNanos, end - startNanos, frozenNanos - startNanos, 0L, 0L, 0L);
+    }
+
+    public static void emitMonitorContendedEnter(long startNanos, Object obj) {
+        long end = System.nanoTime();
+        emit(FlightRecorderEvent.MONITOR_CONTENDED_ENTER, startNanos, end - startNanos, classId(obj), 0L, 0L, 0L);
+    }
+
+    public static void emitAllocationSlowPath(Object obj, UnsignedWord size, boolean outsideChunk) {
+        emit(FlightRecorderEvent.ALLOCATION_SLOW_PATH, System.nanoTime(), 0L, classId(obj), size.rawValue(), outsideChunk ? 1L : 0L, 0L);
+    }
+
+    /**
+     * Hubs live in the image heap and never move, so their address identifies a class for the
+     * whole recording.
+     */
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private static long classId(Object obj) {
+        return Word.objectToUntrackedPointer(KnownIntrinsics.readHub(obj)).rawValue();
+    }
+
+    @Uninterruptible(reason = "A safepoint must not flush the thread-local buffer while a record is written.")
+    private static void emit(int type, long startNanos, long durationNanos, long payload0, long payload1, long payload2, long payload3) {
+        FlightRecorder recorder = singleton();
+        if (!recorder.recording) {
+            return;
+        }
+        Pointer buffer = threadBuffer.get();
+        if (buffer.isNull()) {
+            buffer = ImageSingletons.lookup(UnmanagedMemorySupport.class).malloc(WordFactory.unsigned(getThreadBufferSize()));
+            if (buffer.isNull()) {
+                recorder.lostEvents.incrementAndGet();
+                return;
+            }
+            threadBuffer.set(buffer);
+            threadBufferPosition.set(0);
+        }
+        int position = threadBufferPosition.get();
+        if (position + EVENT_SIZE > getThreadBufferSize()) {
+            recorder.promote(buffer, position);
+            position = 0;
+        }
+        Pointer event = buffer.add(position);
+        event.writeInt(TYPE_OFFSET, type);
+        event.writeInt(SIZE_OFFSET, EVENT_SIZE);
+        event.writeLong(THREAD_OFFSET, CurrentIsolate.getCurrentThread().rawValue());
+        event.writeLong(START_OFFSET, startNanos);
+        event.writeLong(DURATION_OFFSET, durationNanos);
+        event.writeLong(PAYLOAD_OFFSET, payload0);
+        event.writeLong(PAYLOAD_OFFSET + 8, payload1);
+        event.writeLong(PAYLOAD_OFFSET + 16, payload2);
+        event.writeLong(PAYLOAD_OFFSET + 24, payload3);
+        threadBufferPosition.set(position + EVENT_SIZE);
+    }
+
+    /** Moves the remaining records of an exiting thread to the global buffer and frees its buffer. */
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    public static void threadExit(IsolateThread thread) {
+        Pointer buffer = threadBuffer.get(thread);
+        if (buffer.isNonNull()) {
+            FlightRecorder recorder = singleton();
+            if (recorder.recording) {
+                recorder.promote(buffer, threadBufferPosition.get(thread));
+            }
+            freeThreadBuffer(thread, buffer);
+        }
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private static void freeThreadBuffer(IsolateThread thread, Pointer buffer) {
+        threadBuffer.set(thread, WordFactory.nullPointer());
+        threadBufferPosition.set(thread, 0);
+        ImageSingletons.lookup(UnmanagedMemorySupport.class).free(buffer);
+    }
+
+    @Uninterruptible(reason = "Called from uninterruptible code.", mayBeInlined = true)
+    private void promote(Pointer records, int length) {
+        if (length == 0) {
+            return;
+        }
+        UnsignedWord offset = activePosition.getAndAdd(WordFactory.unsigned(length));
+        UnsignedWord end = offset.add(length);
+        if (end.belowOrEqual(globalBufferSize)) {
+            MemoryUtil.copyConjointMemoryAtomic(records, activeBuffer.add(offset), WordFactory.unsigned(length));
+        } else {
+            lostEvents.addAndGet(length / EVENT_SIZE);
+            if (offset.belowThan(globalBufferSize)) {
+                /* Only one promotion can straddle the end: mark the rest of the buffer unused. */
+                Pointer padding = activeBuffer.add(offset);
+                padding.writeInt(TYPE_OFFSET, FlightRecorderEvent.PADDING);
+                padding.writeInt(SIZE_OFFSET, (int) globalBufferSize.subtract(offset).rawValue());
+            }
+        }
+    }
+
+    /*
+     * Recording and flushing.
+     */
+
+    synchronized void start() throws IOException {
+        assert !recording;
+        int size = Math.max(1, FlightRecorderOptions.FlightRecorderGlobalBufferSize.getValue() / EVENT_SIZE) * EVENT_SIZE;
+        globalBufferSize = WordFactory.unsigned(size);
+        activeBuffer = UnmanagedMemory.malloc(globalBufferSize);
+        flushBuffer = UnmanagedMemory.malloc(globalBufferSize);
+        flushLength = WordFactory.zero();
+        activePosition.set(WordFactory.zero());
+        writeBuffer = new byte[64 * 1024];
+
+        String fileName = FlightRecorderOptions.FlightRecorderFile.getValue();
+        if (fileName.isEmpty()) {
+            fileName = "svm-flightrecording-" + ProcessProperties.getProcessID() + ".svmfr";
+        }
+        output = new FileOutputStream(fileName);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4 + 8 + 8).order(ByteOrder.nativeOrder());
+        header.put(MAGIC).putInt(BYTE_ORDER_MARK).putLong(System.nanoTime()).putLong(System.currentTimeMillis());
+        output.write(header.array());
+        recording = true;
+    }
+
+    /**
+     * Collects all events recorded so far and appends them to the recording file. Called
+     * periodically by the flusher thread and once more at shutdown.
+     */
+    synchronized void flush() {
+        if (!recording) {
+            return;
+        }
+        JavaVMOperation.enqueueBlockingSafepoint("FlightRecorderFlush", this::swapBuffersAtSafepoint);
+        try {
+            writeFlushBuffer();
+            output.flush();
+        } catch (IOException e) {
+            Log.log().string("Flight recorder stopped, IOException during flush: ").string(e.getMessage()).newline();
+            stopRecording();
+        }
+    }
+
+    synchronized void stop() {
+        if (recording) {
+            flush();
+            stopRecording();
+        }
+    }
+
+    private void stopRecording() {
+        recording = false;
+        JavaVMOperation.enqueueBlockingSafepoint("FlightRecorderStop", this::freeBuffersAtSafepoint);
+        try {
+            output.close();
+        } catch (IOException e) {
+            Log.log().string("IOException while closing the flight recording: ").string(e.getMessage()).newline();
+        }
+    }
+
+    /** No thread can be in the middle of emitting an event, and none starts one after this. */
+    private void freeBuffersAtSafepoint() {
+        for (IsolateThread thread = VMThreads.firstThread(); thread.isNonNull(); thread = VMThreads.nextThread(thread)) {
+            Pointer buffer = threadBuffer.get(thread);
+            if (buffer.isNonNull()) {
+                freeThreadBuffer(thread, buffer);
+            }
+        }
+        UnmanagedMemory.free(activeBuffer);
+        UnmanagedMemory.free(flushBuffer);
+        activeBuffer = WordFactory.nullPointer();
+        flushBuffer = WordFactory.nullPointer();
+    }
+
+    /** Must not allocate: runs at a safepoint while all other threads are stopped. */
+    private void swapBuffersAtSafepoint() {
+        for (IsolateThread thread = VMThreads.firstThread(); thread.isNonNull(); thread = VMThreads.nextThread(thread)) {
+            Pointer buffer = threadBuffer.get(thread);
+            if (buffer.isNonNull()) {
+                promote(buffer, threadBufferPosition.get(thread));
+                threadBufferPosition.set(thread, 0);
+            }
+        }
+        UnsignedWord length = activePosition.get();
+        flushLength = length.belowOrEqual(globalBufferSize) ? length : globalBufferSize;
+        Pointer filled = activeBuffer;
+        activeBuffer = flushBuffer;
+        flushBuffer = filled;
+        activePosition.set(WordFactory.zero());
+    }
+
+    private void writeFlushBuffer() throws IOException {
+        long length = flushLength.rawValue();
+        writeClassRecords(length);
+        PinnedObject pinned = PinnedObject.create(writeBuffer);
+        try {
+            for (long offset = 0; offset < length; offset += writeBuffer.length) {
+                int chunk = (int) Math.min(writeBuffer.length, length - offset);
+                MemoryUtil.copyConjointMemoryAtomic(flushBuffer.add(WordFactory.unsigned(offset)), pinned.addressOfArrayElement(0), WordFactory.unsigned(chunk));
+                output.write(writeBuffer, 0, chunk);
+            }
+        } finally {
+            pinned.close();
+        }
+        long lost = lostEvents.getAndSet(0);
+        if (lost > 0) {
+            ByteBuffer record = ByteBuffer.allocate(8 + 8).order(ByteOrder.nativeOrder());
+            record.putInt(FlightRecorderEvent.LOST_EVENTS).putInt(record.capacity()).putLong(lost);
+            output.write(record.array());
+        }
+    }
+
+    /** Writes a {@link FlightRecorderEvent#CLASS} record for every class that is new in this flush. */
+    private void writeClassRecords(long length) throws IOException {
+        long offset = 0;
+        while (offset < length) {
+            Pointer record = flushBuffer.add(WordFactory.unsigned(offset));
+            int type = record.readInt(TYPE_OFFSET);
+            if (type == FlightRecorderEvent.MONITOR_CONTENDED_ENTER || type == FlightRecorderEvent.ALLOCATION_SLOW_PATH) {
+                long classId = record.readLong(PAYLOAD_OFFSET);
+                if (writtenClasses.add(classId)) {
+                    DynamicHub hub = (DynamicHub) WordFactory.<Pointer> pointer(classId).toObject();
+                    byte[] name = DynamicHub.toClass(hub).getName().getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer classRecord = ByteBuffer.allocate(8 + 8 + name.length).order(ByteOrder.nativeOrder());
+                    classRecord.putInt(FlightRecorderEvent.CLASS).putInt(classRecord.capacity()).putLong(classId).put(name);
+                    output.write(classRecord.array());
+                }
+            }
+            offset += record.readInt(SIZE_OFFSET);
+        }
+    }
+}
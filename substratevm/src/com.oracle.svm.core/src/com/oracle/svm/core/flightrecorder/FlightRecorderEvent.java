@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.flightrecorder;
+
+/**
+ * Event types written by the {@link FlightRecorder}. Every record starts with a 4-byte type and a
+ * 4-byte size that includes the header, so readers can skip records they do not know. All values
+ * are in the byte order of the machine that wrote the recording, see
+ * {@link FlightRecorder#BYTE_ORDER_MARK}.
+ * <p>
+ * Fixed-size records ({@link FlightRecorder#EVENT_SIZE} bytes) continue with the recording thread,
+ * the start time and the duration in nanoseconds (as by {@link System#nanoTime()}), followed by four
+ * event-specific payload words that are documented on each type below. Class ids refer to a
+ * {@link #CLASS} record that is written before the first event using it.
+ */
+public final class FlightRecorderEvent {
+
+    /** Unused space at the end of a buffer, to be skipped. */
+    public static final int PADDING = 0;
+
+    /** A garbage collection: epoch, cause id and complete flag (bit 32), used bytes before, after. */
+    public static final int GARBAGE_COLLECTION = 1;
+
+    /** A safepoint, with the duration from its request to its end: time to safepoint. */
+    public static final int SAFEPOINT = 2;
+
+    /** A monitor enter that had to wait for the monitor: class id of the object. */
+    public static final int MONITOR_CONTENDED_ENTER = 3;
+
+    /** An allocation that took the slow path: class id, size, outside of a TLAB chunk (1 or 0). */
+    public static final int ALLOCATION_SLOW_PATH = 4;
+
+    /**
+     * Variable-size record: a class id and the UTF-8 bytes of the class name up to the end of the
+     * record.
+     */
+    public static final int CLASS = 100;
+
+    /** Variable-size record: the number of events that were dropped since the last flush. */
+    public static final int LOST_EVENTS = 101;
+
+    private FlightRecorderEvent() {
+    }
+}
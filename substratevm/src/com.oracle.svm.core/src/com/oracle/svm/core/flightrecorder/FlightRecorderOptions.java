@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.flightrecorder;
+
+import org.graalvm.compiler.options.Option;
+import org.graalvm.compiler.options.OptionType;
+
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+
+public class FlightRecorderOptions {
+    @Option(help = "Build the flight recorder into the image. It continuously records garbage collections, safepoints, contended monitor enters and slow-path allocations to a file.", type = OptionType.User) //
+    public static final HostedOptionKey<Boolean> FlightRecorder = new HostedOptionKey<>(false);
+
+    @Option(help = "Size in bytes of the thread-local flight recorder buffers.", type = OptionType.Expert) //
+    public static final HostedOptionKey<Integer> FlightRecorderThreadBufferSize = new HostedOptionKey<>(4 * 1024);
+
+    @Option(help = "Size in bytes of the global flight recorder buffer that full thread-local buffers are promoted to. Events that do not fit until the next flush are counted as lost.", type = OptionType.Expert) //
+    public static final RuntimeOptionKey<Integer> FlightRecorderGlobalBufferSize = new RuntimeOptionKey<>(4 * 1024 * 1024);
+
+    @Option(help = "Interval in milliseconds at which recorded events are flushed to the recording file.", type = OptionType.User) //
+    public static final RuntimeOptionKey<Integer> FlightRecorderFlushInterval = new RuntimeOptionKey<>(1000);
+
+    @Option(help = "File that the flight recorder writes to. Defaults to svm-flightrecording-<pid>.svmfr in the working directory.", type = OptionType.User) //
+    public static final RuntimeOptionKey<String> FlightRecorderFile = new RuntimeOptionKey<>("");
+}
@@ -92,6 +92,13 @@ public abstract class Heap {
      */
     public abstract boolean walkCollectedHeapObjects(ObjectVisitor visitor);
 
+    /**
+     * Retire the thread-local allocation buffers of all threads, so that the objects allocated in
+     * them are visited by {@link #walkCollectedHeapObjects}. Must only be executed as part of a VM
+     * operation that causes a safepoint.
+     */
+    public abstract void retireThreadLocalAllocation();
+
     /** Return a list of all the classes in the heap. */
     public abstract List<Class<?>> getClassList();
 
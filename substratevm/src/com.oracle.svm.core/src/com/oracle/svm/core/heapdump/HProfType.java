@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.heapdump;
+
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+
+import com.oracle.svm.core.util.VMError;
+
+import jdk.vm.ci.meta.JavaKind;
+
+/** The basic types of the HPROF format, as used for field and array element types. */
+public final class HProfType {
+    public static final int OBJECT = 2;
+    public static final int BOOLEAN = 4;
+    public static final int CHAR = 5;
+    public static final int FLOAT = 6;
+    public static final int DOUBLE = 7;
+    public static final int BYTE = 8;
+    public static final int SHORT = 9;
+    public static final int INT = 10;
+    public static final int LONG = 11;
+
+    /** The size of object IDs, which are the addresses of the objects. */
+    public static final int ID_SIZE = 8;
+
+    public static int sizeOf(int type) {
+        switch (type) {
+            case OBJECT:
+                return ID_SIZE;
+            case BOOLEAN:
+            case BYTE:
+                return 1;
+            case CHAR:
+            case SHORT:
+                return 2;
+            case FLOAT:
+            case INT:
+                return 4;
+            case DOUBLE:
+            case LONG:
+                return 8;
+            default:
+                throw VMError.shouldNotReachHere();
+        }
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public static int fromJavaKind(JavaKind kind) {
+        switch (kind) {
+            case Object:
+                return OBJECT;
+            case Boolean:
+                return BOOLEAN;
+            case Char:
+                return CHAR;
+            case Float:
+                return FLOAT;
+            case Double:
+                return DOUBLE;
+            case Byte:
+                return BYTE;
+            case Short:
+                return SHORT;
+            case Int:
+                return INT;
+            case Long:
+                return LONG;
+            default:
+                throw VMError.shouldNotReachHere("Unexpected field kind: " + kind);
+        }
+    }
+
+    private HProfType() {
+    }
+}
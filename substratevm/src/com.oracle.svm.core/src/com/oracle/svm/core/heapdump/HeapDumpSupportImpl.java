@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.heapdump;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.impl.HeapDumpSupport;
+
+import com.oracle.svm.core.annotate.UnknownObjectField;
+import com.oracle.svm.core.heap.GCCause;
+import com.oracle.svm.core.heap.Heap;
+
+/**
+ * Writes HPROF heap dumps of the running isolate, see {@link HeapDumpWriter}.
+ * <p>
+ * The field layout of the instantiated classes is not available through reflection at run time, so
+ * it is encoded into tables at image build time. For each type ID, the fields declared by that type
+ * are a range of entries in {@link #fieldData}, and each entry consists of the index of the field
+ * name in {@link #fieldNames}, the {@link HProfType} of the field, and its location: the offset in
+ * the object for instance fields, and the offset in the static field arrays of
+ * {@link com.oracle.svm.core.StaticFieldsSupport} for static fields.
+ */
+public final class HeapDumpSupportImpl implements HeapDumpSupport {
+
+    static final int FIELD_ENTRY_SIZE = 3;
+    static final int FIELD_NAME = 0;
+    static final int FIELD_TYPE = 1;
+    static final int FIELD_LOCATION = 2;
+
+    @UnknownObjectField(types = {int[].class}) private int[] instanceFieldStarts;
+    @UnknownObjectField(types = {int[].class}) private int[] staticFieldStarts;
+    @UnknownObjectField(types = {int[].class}) private int[] instanceSizes;
+    @UnknownObjectField(types = {int[].class}) private int[] fieldData;
+    @UnknownObjectField(types = {String[].class}) private String[] fieldNames;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public HeapDumpSupportImpl() {
+    }
+
+    /**
+     * Installs the field tables. {@code instanceFieldStarts} and {@code staticFieldStarts} have one
+     * element more than there are type IDs, so that the fields of type ID {@code i} are the entries
+     * from {@code starts[i]} (inclusive) to {@code starts[i + 1]} (exclusive). {@code instanceSizes}
+     * contains the size of the HPROF instance field values of each type, including the fields of
+     * its superclasses.
+     */
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public void setData(int[] newInstanceFieldStarts, int[] newStaticFieldStarts, int[] newInstanceSizes, int[] newFieldData, String[] newFieldNames) {
+        this.instanceFieldStarts = newInstanceFieldStarts;
+        this.staticFieldStarts = newStaticFieldStarts;
+        this.instanceSizes = newInstanceSizes;
+        this.fieldData = newFieldData;
+        this.fieldNames = newFieldNames;
+    }
+
+    public static HeapDumpSupportImpl singleton() {
+        return (HeapDumpSupportImpl) ImageSingletons.lookup(HeapDumpSupport.class);
+    }
+
+    @Override
+    public void dumpHeap(String outputFile, boolean live) throws IOException {
+        if (live) {
+            Heap.getHeap().getGC().collectCompletely(GCCause.JavaLangSystemGC);
+        }
+        try (FileOutputStream stream = new FileOutputStream(outputFile)) {
+            HeapDumpWriter writer = new HeapDumpWriter(this, stream.getFD());
+            if (!writer.writeHeapDump()) {
+                throw new IOException("Failed to write heap dump to " + outputFile);
+            }
+        }
+    }
+
+    int getInstanceFieldStart(int typeID) {
+        return instanceFieldStarts[typeID];
+    }
+
+    int getInstanceFieldEnd(int typeID) {
+        return instanceFieldStarts[typeID + 1];
+    }
+
+    int getStaticFieldStart(int typeID) {
+        return staticFieldStarts[typeID];
+    }
+
+    int getStaticFieldEnd(int typeID) {
+        return staticFieldStarts[typeID + 1];
+    }
+
+    int getInstanceSize(int typeID) {
+        return instanceSizes[typeID];
+    }
+
+    String getFieldName(int field) {
+        return fieldNames[fieldData[field * FIELD_ENTRY_SIZE + FIELD_NAME]];
+    }
+
+    int getFieldType(int field) {
+        return fieldData[field * FIELD_ENTRY_SIZE + FIELD_TYPE];
+    }
+
+    int getFieldLocation(int field) {
+        return fieldData[field * FIELD_ENTRY_SIZE + FIELD_LOCATION];
+    }
+
+    String[] getFieldNames() {
+        return fieldNames;
+    }
+}
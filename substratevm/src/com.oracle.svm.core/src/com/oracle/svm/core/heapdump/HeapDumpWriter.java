@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.heapdump;
+
+import java.io.FileDescriptor;
+
+import org.graalvm.compiler.word.ObjectAccess;
+import org.graalvm.compiler.word.Word;
+import org.graalvm.nativeimage.CurrentIsolate;
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.UnmanagedMemory;
+import org.graalvm.nativeimage.c.function.CodePointer;
+import org.graalvm.nativeimage.c.type.CCharPointer;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.UnsignedWord;
+import org.graalvm.word.WordFactory;
+
+import com.oracle.svm.core.StaticFieldsSupport;
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.annotate.NeverInline;
+import com.oracle.svm.core.annotate.RestrictHeapAccess;
+import com.oracle.svm.core.code.CodeInfo;
+import com.oracle.svm.core.code.CodeInfoTable;
+import com.oracle.svm.core.deopt.DeoptimizedFrame;
+import com.oracle.svm.core.heap.Heap;
+import com.oracle.svm.core.heap.ObjectHeader;
+import com.oracle.svm.core.heap.ObjectReferenceVisitor;
+import com.oracle.svm.core.heap.ObjectVisitor;
+import com.oracle.svm.core.heap.ReferenceAccess;
+import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.hub.LayoutEncoding;
+import com.oracle.svm.core.snippets.KnownIntrinsics;
+import com.oracle.svm.core.stack.JavaStackWalker;
+import com.oracle.svm.core.stack.StackFrameVisitor;
+import com.oracle.svm.core.thread.JavaVMOperation;
+import com.oracle.svm.core.thread.VMThreads;
+import com.oracle.svm.core.util.VMError;
+
+/**
+ * Streams a heap dump in the HPROF 1.0.2 format to a file.
+ * <p>
+ * The whole dump is written in a single VM operation, so that the heap does not change while it is
+ * walked. Nothing is allocated in the VM operation: records are assembled in a fixed-size native
+ * buffer that is written to the file whenever it is full, so the dump is never materialized in
+ * memory. Heap dump sub-records are grouped into one HEAP_DUMP_SEGMENT per buffer, whose length is
+ * patched in the buffer before it is written. Sub-records that do not fit into an empty buffer, for
+ * example large arrays, get a segment of their own whose length is known up front.
+ * <p>
+ * Object IDs are the addresses of the objects. Classes are {@link DynamicHub}s in the image heap.
+ * Since objects of the image heap are never collected and can be referenced from compiled code, all
+ * of them are reported as roots, in addition to the references from the stack frames of all
+ * threads.
+ */
+final class HeapDumpWriter implements ObjectVisitor {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final String FILE_HEADER = "JAVA PROFILE 1.0.2";
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final int STACK_TRACE_SERIAL = 1;
+    private static final int ID_SIZE = HProfType.ID_SIZE;
+
+    /* Top-level record tags. */
+    private static final int TAG_UTF8 = 0x01;
+    private static final int TAG_LOAD_CLASS = 0x02;
+    private static final int TAG_STACK_TRACE = 0x05;
+    private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int TAG_HEAP_DUMP_END = 0x2C;
+
+    /* Sub-record tags of heap dump segments. */
+    private static final int ROOT_UNKNOWN = 0xFF;
+    private static final int ROOT_STICKY_CLASS = 0x05;
+    private static final int CLASS_DUMP = 0x20;
+    private static final int INSTANCE_DUMP = 0x21;
+    private static final int OBJ_ARRAY_DUMP = 0x22;
+    private static final int PRIM_ARRAY_DUMP = 0x23;
+
+    /* The image heap is walked several times, writing different records for its objects. */
+    private static final int PHASE_LOAD_CLASSES = 0;
+    private static final int PHASE_CLASS_DUMPS = 1;
+    private static final int PHASE_OBJECTS = 2;
+
+    private final HeapDumpSupportImpl metadata;
+    private final FileDescriptor descriptor;
+    private final StackRootsVisitor stackRootsVisitor;
+    private final FrameReferencesVisitor frameReferencesVisitor;
+
+    private Pointer buffer;
+    private int position;
+    /** The position of the header of the open heap dump segment in the buffer, or -1. */
+    private int segmentStart;
+    private int phase;
+    private boolean inImageHeap;
+    private boolean failed;
+
+    HeapDumpWriter(HeapDumpSupportImpl metadata, FileDescriptor descriptor) {
+        this.metadata = metadata;
+        this.descriptor = descriptor;
+        this.stackRootsVisitor = new StackRootsVisitor();
+        this.frameReferencesVisitor = new FrameReferencesVisitor();
+    }
+
+    /** Writes the heap dump and returns true on success. */
+    boolean writeHeapDump() {
+        buffer = UnmanagedMemory.malloc(BUFFER_SIZE);
+        try {
+            JavaVMOperation.enqueueBlockingSafepoint("HeapDump", this::writeHeapDumpAtSafepoint);
+        } finally {
+            UnmanagedMemory.free(buffer);
+            buffer = WordFactory.nullPointer();
+        }
+        return !failed;
+    }
+
+    private void writeHeapDumpAtSafepoint() {
+        position = 0;
+        segmentStart = -1;
+        failed = false;
+
+        writeFileHeader();
+        beginRecord(TAG_STACK_TRACE, 12);
+        writeU4(STACK_TRACE_SERIAL);
+        writeU4(0); // thread serial number
+        writeU4(0); // number of frames
+        for (String name : metadata.getFieldNames()) {
+            writeUtf8Record(name, false);
+        }
+
+        Heap heap = Heap.getHeap();
+        phase = PHASE_LOAD_CLASSES;
+        heap.walkImageHeapObjects(this);
+        phase = PHASE_CLASS_DUMPS;
+        heap.walkImageHeapObjects(this);
+        writeStackRoots();
+        phase = PHASE_OBJECTS;
+        inImageHeap = true;
+        heap.walkImageHeapObjects(this);
+        inImageHeap = false;
+        /* Objects in the TLABs of threads are only visited once the TLABs are retired. */
+        heap.retireThreadLocalAllocation();
+        heap.walkCollectedHeapObjects(this);
+
+        beginRecord(TAG_HEAP_DUMP_END, 0);
+        flush();
+    }
+
+    @Override
+    public boolean visitObject(Object o) {
+        if (o instanceof Class<?>) {
+            DynamicHub hub = DynamicHub.fromClass((Class<?>) o);
+            if (!hub.isPrimitive()) {
+                if (phase == PHASE_LOAD_CLASSES) {
+                    writeLoadClass(hub);
+                } else if (phase == PHASE_CLASS_DUMPS) {
+                    writeClassDump(hub);
+                }
+            }
+        } else if (phase == PHASE_OBJECTS) {
+            writeObject(o);
+        }
+        return !failed;
+    }
+
+    private void writeFileHeader() {
+        for (int i = 0; i < FILE_HEADER.length(); i++) {
+            writeU1(FILE_HEADER.charAt(i));
+        }
+        writeU1(0);
+        writeU4(ID_SIZE);
+        writeU8(System.currentTimeMillis());
+    }
+
+    private void writeLoadClass(DynamicHub hub) {
+        String name = hub.getName();
+        writeUtf8Record(name, true);
+        beginRecord(TAG_LOAD_CLASS, 4 + ID_SIZE + 4 + ID_SIZE);
+        writeU4(hub.getTypeID() + 1); // class serial number
+        writeId(hub);
+        writeU4(STACK_TRACE_SERIAL);
+        writeId(name);
+    }
+
+    private void writeClassDump(DynamicHub hub) {
+        int typeID = hub.getTypeID();
+        int staticStart = metadata.getStaticFieldStart(typeID);
+        int staticEnd = metadata.getStaticFieldEnd(typeID);
+        int instanceStart = metadata.getInstanceFieldStart(typeID);
+        int instanceEnd = metadata.getInstanceFieldEnd(typeID);
+
+        long size = 1 + 7 * ID_SIZE + 4 + 4 + 2 + 2 + 2 + (instanceEnd - instanceStart) * (ID_SIZE + 1);
+        for (int field = staticStart; field < staticEnd; field++) {
+            size += ID_SIZE + 1 + HProfType.sizeOf(metadata.getFieldType(field));
+        }
+
+        beginSubRecord(1 + ID_SIZE);
+        writeU1(ROOT_STICKY_CLASS);
+        writeId(hub);
+
+        beginSubRecord(size);
+        writeU1(CLASS_DUMP);
+        writeId(hub);
+        writeU4(STACK_TRACE_SERIAL);
+        writeId(hub.getSuperHub());
+        writeId(null); // class loader
+        writeId(null); // signers
+        writeId(null); // protection domain
+        writeId(null); // reserved
+        writeId(null); // reserved
+        writeU4(metadata.getInstanceSize(typeID));
+        writeU2(0); // constant pool entries
+        writeU2(staticEnd - staticStart);
+        for (int field = staticStart; field < staticEnd; field++) {
+            int type = metadata.getFieldType(field);
+            writeId(metadata.getFieldName(field));
+            writeU1(type);
+            UnsignedWord location = WordFactory.unsigned(metadata.getFieldLocation(field));
+            if (type == HProfType.OBJECT) {
+                writeValue(StaticFieldsSupport.getStaticObjectFields(), type, location);
+            } else {
+                writeValue(StaticFieldsSupport.getStaticPrimitiveFields(), type, location);
+            }
+        }
+        writeU2(instanceEnd - instanceStart);
+        for (int field = instanceStart; field < instanceEnd; field++) {
+            writeId(metadata.getFieldName(field));
+            writeU1(metadata.getFieldType(field));
+        }
+    }
+
+    private void writeObject(Object o) {
+        if (inImageHeap) {
+            writeRoot(Word.objectToUntrackedPointer(o).rawValue());
+        }
+        DynamicHub hub = ObjectHeader.readDynamicHubFromObject(o);
+        if (hub.isArray()) {
+            int length = KnownIntrinsics.readArrayLength(o);
+            if (LayoutEncoding.isObjectArray(hub.getLayoutEncoding())) {
+                writeObjectArray(o, hub, length);
+            } else {
+                writePrimitiveArray(o, hub, length);
+            }
+        } else {
+            /* Hybrid objects are written without their array part. */
+            writeInstance(o, hub);
+        }
+    }
+
+    private void writeInstance(Object o, DynamicHub hub) {
+        int size = metadata.getInstanceSize(hub.getTypeID());
+        beginSubRecord(1 + ID_SIZE + 4 + ID_SIZE + 4 + size);
+        writeU1(INSTANCE_DUMP);
+        writeId(o);
+        writeU4(STACK_TRACE_SERIAL);
+        writeId(hub);
+        writeU4(size);
+        for (DynamicHub cur = hub; cur != null; cur = cur.getSuperHub()) {
+            int typeID = cur.getTypeID();
+            for (int field = metadata.getInstanceFieldStart(typeID); field < metadata.getInstanceFieldEnd(typeID); field++) {
+                writeValue(o, metadata.getFieldType(field), WordFactory.unsigned(metadata.getFieldLocation(field)));
+            }
+        }
+    }
+
+    private void writeObjectArray(Object array, DynamicHub hub, int length) {
+        int encoding = hub.getLayoutEncoding();
+        beginSubRecord(1 + ID_SIZE + 4 + 4 + ID_SIZE + (long) length * ID_SIZE);
+        writeU1(OBJ_ARRAY_DUMP);
+        writeId(array);
+        writeU4(STACK_TRACE_SERIAL);
+        writeU4(length);
+        writeId(hub);
+        for (int i = 0; i < length; i++) {
+            writeValue(array, HProfType.OBJECT, LayoutEncoding.getArrayElementOffset(encoding, i));
+        }
+    }
+
+    private void writePrimitiveArray(Object array, DynamicHub hub, int length) {
+        int encoding = hub.getLayoutEncoding();
+        int type = getElementType(hub);
+        beginSubRecord(1 + ID_SIZE + 4 + 4 + 1 + (long) length * HProfType.sizeOf(type));
+        writeU1(PRIM_ARRAY_DUMP);
+        writeId(array);
+        writeU4(STACK_TRACE_SERIAL);
+        writeU4(length);
+        writeU1(type);
+        for (int i = 0; i < length; i++) {
+            writeValue(array, type, LayoutEncoding.getArrayElementOffset(encoding, i));
+        }
+    }
+
+    private static int getElementType(DynamicHub arrayHub) {
+        Class<?> componentType = DynamicHub.toClass(arrayHub.getComponentHub());
+        if (componentType == boolean.class) {
+            return HProfType.BOOLEAN;
+        } else if (componentType == char.class) {
+            return HProfType.CHAR;
+        } else if (componentType == float.class) {
+            return HProfType.FLOAT;
+        } else if (componentType == double.class) {
+            return HProfType.DOUBLE;
+        } else if (componentType == byte.class) {
+            return HProfType.BYTE;
+        } else if (componentType == short.class) {
+            return HProfType.SHORT;
+        } else if (componentType == int.class) {
+            return HProfType.INT;
+        } else if (componentType == long.class) {
+            return HProfType.LONG;
+        }
+        throw VMError.shouldNotReachHere();
+    }
+
+    private void writeValue(Object o, int type, UnsignedWord offset) {
+        switch (type) {
+            case HProfType.OBJECT:
+                writeId(ObjectAccess.readObject(o, offset));
+                break;
+            case HProfType.BOOLEAN:
+            case HProfType.BYTE:
+                writeU1(ObjectAccess.readByte(o, offset));
+                break;
+            case HProfType.CHAR:
+            case HProfType.SHORT:
+                writeU2(ObjectAccess.readShort(o, offset));
+                break;
+            case HProfType.FLOAT:
+            case HProfType.INT:
+                writeU4(ObjectAccess.readInt(o, offset));
+                break;
+            case HProfType.DOUBLE:
+            case HProfType.LONG:
+                writeU8(ObjectAccess.readLong(o, offset));
+                break;
+            default:
+                throw VMError.shouldNotReachHere();
+        }
+    }
+
+    private void writeRoot(long id) {
+        beginSubRecord(1 + ID_SIZE);
+        writeU1(ROOT_UNKNOWN);
+        writeU8(id);
+    }
+
+    @NeverInline("Starting a stack walk in the caller frame.")
+    private void writeStackRoots() {
+        Pointer sp = KnownIntrinsics.readCallerStackPointer();
+        JavaStackWalker.walkCurrentThread(sp, stackRootsVisitor);
+        if (SubstrateOptions.MultiThreaded.getValue()) {
+            for (IsolateThread vmThread = VMThreads.firstThread(); vmThread.isNonNull(); vmThread = VMThreads.nextThread(vmThread)) {
+                if (vmThread == CurrentIsolate.getCurrentThread()) {
+                    continue;
+                }
+                JavaStackWalker.walkThread(vmThread, stackRootsVisitor);
+            }
+        }
+    }
+
+    private void writeUtf8Record(String s, boolean binaryName) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        beginRecord(TAG_UTF8, ID_SIZE + length);
+        writeId(s);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (binaryName && c == '.') {
+                c = '/';
+            }
+            /* Modified UTF-8, as used by the JVM. */
+            if (c >= 0x0001 && c <= 0x007F) {
+                writeU1(c);
+            } else if (c <= 0x07FF) {
+                writeU1(0xC0 | (c >> 6));
+                writeU1(0x80 | (c & 0x3F));
+            } else {
+                writeU1(0xE0 | (c >> 12));
+                writeU1(0x80 | ((c >> 6) & 0x3F));
+                writeU1(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /*
+     * Record framing.
+     */
+
+    private void beginRecord(int tag, long length) {
+        closeSegment();
+        writeRecordHeader(tag, length);
+    }
+
+    private void beginSubRecord(long size) {
+        if (segmentStart >= 0 && position + size > BUFFER_SIZE) {
+            closeSegment();
+            flush();
+        }
+        if (segmentStart < 0) {
+            if (RECORD_HEADER_SIZE + size > BUFFER_SIZE) {
+                /* The sub-record is streamed through the buffer in a segment of its own. */
+                writeRecordHeader(TAG_HEAP_DUMP_SEGMENT, size);
+                return;
+            }
+            if (position + RECORD_HEADER_SIZE + size > BUFFER_SIZE) {
+                flush();
+            }
+            segmentStart = position;
+            writeRecordHeader(TAG_HEAP_DUMP_SEGMENT, 0);
+        }
+    }
+
+    private void closeSegment() {
+        if (segmentStart >= 0) {
+            putU4(segmentStart + 5, position - segmentStart - RECORD_HEADER_SIZE);
+            segmentStart = -1;
+        }
+    }
+
+    private void writeRecordHeader(int tag, long length) {
+        writeU1(tag);
+        writeU4(0); // microseconds since the time stamp in the file header
+        writeU4((int) length);
+    }
+
+    /*
+     * Buffered output.
+     */
+
+    private void writeId(Object o) {
+        writeU8(Word.objectToUntrackedPointer(o).rawValue());
+    }
+
+    private void writeU1(int value) {
+        ensureAvailable(1);
+        buffer.writeByte(position, (byte) value);
+        position += 1;
+    }
+
+    private void writeU2(int value) {
+        ensureAvailable(2);
+        buffer.writeByte(position, (byte) (value >>> 8));
+        buffer.writeByte(position + 1, (byte) value);
+        position += 2;
+    }
+
+    private void writeU4(int value) {
+        ensureAvailable(4);
+        putU4(position, value);
+        position += 4;
+    }
+
+    private void writeU8(long value) {
+        writeU4((int) (value >>> 32));
+        writeU4((int) value);
+    }
+
+    private void putU4(int offset, int value) {
+        buffer.writeByte(offset, (byte) (value >>> 24));
+        buffer.writeByte(offset + 1, (byte) (value >>> 16));
+        buffer.writeByte(offset + 2, (byte) (value >>> 8));
+        buffer.writeByte(offset + 3, (byte) value);
+    }
+
+    private void ensureAvailable(int bytes) {
+        if (position + bytes > BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        assert segmentStart < 0 : "the open segment must be closed before flushing";
+        if (position > 0 && !failed) {
+            failed = !ImageSingletons.lookup(HeapDumpFileSupport.class).writeBytes(descriptor, (CCharPointer) buffer, WordFactory.unsigned(position));
+        }
+        position = 0;
+    }
+
+    /** Reports the references in all stack frames as roots. */
+    private final class StackRootsVisitor extends StackFrameVisitor {
+        @Override
+        @RestrictHeapAccess(access = RestrictHeapAccess.Access.NO_ALLOCATION, reason = "Must not allocate while dumping the heap.")
+        protected boolean visitFrame(Pointer sp, CodePointer ip, CodeInfo codeInfo, DeoptimizedFrame deoptimizedFrame) {
+            return CodeInfoTable.visitObjectReferences(sp, ip, codeInfo, deoptimizedFrame, frameReferencesVisitor);
+        }
+    }
+
+    private final class FrameReferencesVisitor implements ObjectReferenceVisitor {
+        @Override
+        public boolean visitObjectReference(Pointer objRef, boolean compressed) {
+            Pointer objAddr = ReferenceAccess.singleton().readObjectAsUntrackedPointer(objRef, compressed);
+            if (objAddr.isNonNull()) {
+                writeRoot(objAddr.rawValue());
+            }
+            return !failed;
+        }
+    }
+}
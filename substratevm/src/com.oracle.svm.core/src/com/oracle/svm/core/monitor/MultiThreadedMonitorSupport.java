@@ -50,6 +50,7 @@ import com.oracle.svm.core.annotate.RestrictHeapAccess;
 import com.oracle.svm.core.annotate.RestrictHeapAccess.Access;
 import com.oracle.svm.core.annotate.TargetClass;
 import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.flightrecorder.FlightRecorder;
 import com.oracle.svm.core.hub.DynamicHub;
 import com.oracle.svm.core.snippets.KnownIntrinsics;
 import com.oracle.svm.core.snippets.SubstrateForeignCallTarget;
@@ -58,6 +59,8 @@ import com.oracle.svm.core.thread.JavaThreads;
 import com.oracle.svm.core.thread.ThreadStatus;
 import com.oracle.svm.core.thread.ThreadingSupportImpl;
 import com.oracle.svm.core.thread.VMOperationControl;
+import com.oracle.svm.core.threadlocal.FastThreadLocalFactory;
+import com.oracle.svm.core.threadlocal.FastThreadLocalInt;
 import com.oracle.svm.core.util.VMError;
 
 import sun.misc.Unsafe;
@@ -79,7 +82,9 @@ import sun.misc.Unsafe;
  * UniverseBuilder.canHaveMonitorFields(AnalysisType) for details.
  * <p>
  * Synchronization on {@link String}, arrays, and other types not detected by the static analysis
- * (like synchronization via JNI) fall back to a monitor stored in {@link #additionalMonitors}.
+ * (like synchronization via JNI) fall back to a monitor stored in {@link #additionalMonitors}. That
+ * secondary storage is striped by identity hash code so that threads synchronizing on unrelated
+ * objects do not contend on a single lock.
  * <p>
  * {@link Condition} objects are used to implement {@link #wait()} and {@link #notify()}. When an
  * object monitor needs a condition object, it is atomically swapped into its
@@ -101,12 +106,34 @@ public class MultiThreadedMonitorSupport extends MonitorSupport {
     private static long SYNC_MONITOR_CONDITION_FIELD_OFFSET = -1;
     private static long SYNC_STATE_FIELD_OFFSET = -1;
 
+    /** The number of stripes of {@link #additionalMonitors}, must be a power of two. */
+    private static final int ADDITIONAL_MONITORS_STRIPES = 32;
+
+    /**
+     * Secondary storage for monitor slots, striped by {@link System#identityHashCode}. Each stripe
+     * is synchronized to prevent concurrent access and modification.
+     */
+    private final AdditionalMonitorsStripe[] additionalMonitors;
+
     /**
-     * Secondary storage for monitor slots. Synchronized to prevent concurrent access and
-     * modification.
+     * Set while the current thread holds the lock of any stripe of {@link #additionalMonitors}. A
+     * recursive manipulation of the same stripe would corrupt its table, and one of another stripe
+     * could deadlock with a thread that does the same in the opposite order, so both are rejected.
      */
-    private final Map<Object, ReentrantLock> additionalMonitors = new WeakIdentityHashMap<>();
-    private final ReentrantLock additionalMonitorsLock = new ReentrantLock();
+    private static final FastThreadLocalInt manipulatingAdditionalMonitors = FastThreadLocalFactory.createInt();
+
+    /** A part of the secondary storage for monitor slots, together with the lock guarding it. */
+    private static final class AdditionalMonitorsStripe {
+        final Map<Object, ReentrantLock> monitors = new WeakIdentityHashMap<>();
+        final ReentrantLock lock = new ReentrantLock();
+    }
+
+    public MultiThreadedMonitorSupport() {
+        additionalMonitors = new AdditionalMonitorsStripe[ADDITIONAL_MONITORS_STRIPES];
+        for (int i = 0; i < additionalMonitors.length; i++) {
+            additionalMonitors[i] = new AdditionalMonitorsStripe();
+        }
+    }
 
     @Override
     public int maybeAdjustNewParkStatus(int status) {
@@ -163,7 +190,17 @@ public class MultiThreadedMonitorSupport extends MonitorSupport {
     @Override
     public void monitorEnter(Object obj) {
         ReentrantLock lockObject = getOrCreateMonitor(obj, true);
-        lockObject.lock();
+        if (FlightRecorder.isEnabled() && lockObject.isLocked() && !lockObject.isHeldByCurrentThread()) {
+            /*
+             * Only observe the lock before acquiring it: a tryLock() would let the recording thread
+             * barge ahead of threads that are already queued.
+             */
+            long startNanos = System.nanoTime();
+            lockObject.lock();
+            FlightRecorder.emitMonitorContendedEnter(startNanos, obj);
+        } else {
+            lockObject.lock();
+        }
     }
 
     @SubstrateForeignCallTarget(stubCallingConvention = false)
@@ -334,26 +371,29 @@ public class MultiThreadedMonitorSupport extends MonitorSupport {
 
     protected ReentrantLock getOrCreateMonitorFromMap(Object obj, boolean createIfNotExisting) {
         assert obj.getClass() != Target_java_lang_ref_ReferenceQueue_Lock.class : "ReferenceQueue.Lock must have a monitor field or we can deadlock accessing WeakIdentityHashMap below";
-        VMError.guarantee(!additionalMonitorsLock.isHeldByCurrentThread(),
-                        "Recursive manipulation of the additionalMonitors map can lead to table corruptions and double insertion of a monitor for the same object");
+        AdditionalMonitorsStripe stripe = additionalMonitors[System.identityHashCode(obj) & (ADDITIONAL_MONITORS_STRIPES - 1)];
+        VMError.guarantee(manipulatingAdditionalMonitors.get() == 0,
+                        "Recursive manipulation of the additionalMonitors map can lead to table corruptions, double insertion of a monitor for the same object, or deadlocks between stripes");
 
         /*
-         * Lock the monitor map and maybe add a monitor for this object. This serialization might be
-         * a scalability problem.
+         * Lock the stripe of the monitor map that this object hashes to and maybe add a monitor
+         * for this object.
          */
-        additionalMonitorsLock.lock();
+        stripe.lock.lock();
+        manipulatingAdditionalMonitors.set(1);
         try {
-            ReentrantLock existingMonitor = additionalMonitors.get(obj);
+            ReentrantLock existingMonitor = stripe.monitors.get(obj);
             if (existingMonitor != null || !createIfNotExisting) {
                 assert existingMonitor == null || isMonitorLock(existingMonitor);
                 return existingMonitor;
             }
             ReentrantLock newMonitor = newMonitorLock();
-            ReentrantLock previousEntry = additionalMonitors.put(obj, newMonitor);
+            ReentrantLock previousEntry = stripe.monitors.put(obj, newMonitor);
             VMError.guarantee(previousEntry == null, "Replaced monitor in secondary storage map");
             return newMonitor;
         } finally {
-            additionalMonitorsLock.unlock();
+            manipulatingAdditionalMonitors.set(0);
+            stripe.lock.unlock();
         }
     }
 
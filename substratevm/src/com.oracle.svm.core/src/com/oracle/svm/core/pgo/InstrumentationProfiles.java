@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.pgo;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+import org.graalvm.nativeimage.hosted.Feature;
+
+import com.oracle.svm.core.ImageProfiles;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.annotate.UnknownObjectField;
+import com.oracle.svm.core.jdk.RuntimeSupport;
+import com.oracle.svm.core.log.Log;
+import com.oracle.svm.core.util.UserError;
+
+/**
+ * The {@link ImageProfiles} of an image built with
+ * {@link MethodProfile.Options#ProfilingInstrumentation}. The profiles are also written to
+ * {@link MethodProfile.Options#ProfilesDumpFile} when the image exits.
+ */
+public final class InstrumentationProfiles extends ImageProfiles {
+
+    /** The profiles of all instrumented methods, set when the compilation has finished. */
+    @UnknownObjectField(types = MethodProfile[].class) private MethodProfile[] profiles;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    InstrumentationProfiles() {
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public void setProfiles(MethodProfile[] profiles) {
+        this.profiles = profiles;
+    }
+
+    @Override
+    protected String computeProfiles() {
+        return MethodProfile.dumpProfiles(profiles);
+    }
+
+    static void writeProfiles() {
+        String fileName = MethodProfile.Options.ProfilesDumpFile.getValue();
+        if (fileName.isEmpty()) {
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(fileName)) {
+            out.write(dumpProfiles().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.log().string("IOException while writing the profiles to ").string(fileName).string(": ").string(e.getMessage()).newline();
+        }
+    }
+}
+
+@AutomaticFeature
+class InstrumentationProfilesFeature implements Feature {
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return MethodProfile.Options.ProfilingInstrumentation.getValue();
+    }
+
+    @Override
+    public void afterRegistration(AfterRegistrationAccess access) {
+        UserError.guarantee(MethodProfile.Options.UseProfiles.getValue().isEmpty(), "The options %s and %s cannot be used together: an instrumented image cannot be optimized with profiles",
+                        MethodProfile.Options.ProfilingInstrumentation.getName(), MethodProfile.Options.UseProfiles.getName());
+        ImageSingletons.add(ImageProfiles.class, new InstrumentationProfiles());
+        RuntimeSupport.getRuntimeSupport().addShutdownHook(InstrumentationProfiles::writeProfiles);
+    }
+}
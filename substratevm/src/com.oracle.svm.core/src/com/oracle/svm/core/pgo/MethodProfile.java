@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.core.pgo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.graalvm.compiler.options.Option;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.Platforms;
+
+import com.oracle.svm.core.annotate.UnknownObjectField;
+import com.oracle.svm.core.annotate.UnknownPrimitiveField;
+import com.oracle.svm.core.option.HostedOptionKey;
+import com.oracle.svm.core.option.RuntimeOptionKey;
+import com.oracle.svm.core.snippets.SnippetRuntime;
+import com.oracle.svm.core.snippets.SnippetRuntime.SubstrateForeignCallDescriptor;
+import com.oracle.svm.core.snippets.SubstrateForeignCallTarget;
+
+/**
+ * Runtime profile of a single method of an instrumented image. The counters are incremented by
+ * code that the image builder inserts when the method is parsed for compilation, see
+ * {@link Options#ProfilingInstrumentation}. All updates are unsynchronized, so counts from
+ * concurrently executing threads can be lost. The profiles are only used as heuristics for the
+ * next image build, so approximate counts are good enough and much cheaper than atomic updates.
+ *
+ * The profiles of all methods are written to {@link Options#ProfilesDumpFile} when the image
+ * exits. The text format has one {@code method} line per profiled method, followed by the
+ * {@code branch} and {@code receiver} lines of that method:
+ *
+ * <pre>
+ * method &lt;bytecode hash&gt; &lt;invocations&gt; &lt;method name&gt;
+ * branch &lt;bci&gt; &lt;not taken&gt; &lt;taken&gt;
+ * receiver &lt;bci&gt; &lt;other&gt; [&lt;class name&gt; &lt;count&gt;]*
+ * </pre>
+ */
+public final class MethodProfile {
+
+    public static class Options {
+        @Option(help = "Instrument the image to collect branch, receiver type and invocation profiles that are written to a file at exit")//
+        public static final HostedOptionKey<Boolean> ProfilingInstrumentation = new HostedOptionKey<>(false);
+
+        @Option(help = "File that the profiles of an instrumented image are written to at exit")//
+        public static final RuntimeOptionKey<String> ProfilesDumpFile = new RuntimeOptionKey<>("default.iprof");
+
+        @Option(help = "Profiles file written by an instrumented image that is used to guide the optimization of this image")//
+        public static final HostedOptionKey<String> UseProfiles = new HostedOptionKey<>("");
+
+        @Option(help = "Minimum number of recorded invocations for a method to be considered hot by the inliner")//
+        public static final HostedOptionKey<Integer> HotMethodInvocationThreshold = new HostedOptionKey<>(10000);
+
+        @Option(help = "Maximum number of nodes in a hot method so that it is inlined into its callers")//
+        public static final HostedOptionKey<Integer> MaxNodesInHotInlinedMethod = new HostedOptionKey<>(100);
+    }
+
+    /** Number of receiver types recorded per call site. Other receiver types are only counted. */
+    public static final int RECEIVER_TYPES_PER_SITE = 4;
+
+    public static final SubstrateForeignCallDescriptor RECORD_RECEIVER = SnippetRuntime.findForeignCall(MethodProfile.class, "recordReceiver", false);
+
+    /**
+     * All method profiles, keyed by method name. The map access must be thread safe since profiles
+     * are created during parsing when everything is concurrent.
+     */
+    @Platforms(Platform.HOSTED_ONLY.class)//
+    private static final ConcurrentMap<String, MethodProfile> profiles = new ConcurrentHashMap<>();
+
+    /*
+     * Profiles are only created during compilation, after the static analysis, so the analysis
+     * never sees the values of these fields. They are effectively final.
+     */
+
+    /** Method name, formatted as {@code %H.%n(%P)%R}. */
+    @UnknownObjectField(types = String.class) private String methodName;
+    /** Hash of the bytecode the instrumentation was derived from, to detect stale profiles. */
+    @UnknownPrimitiveField private int codeHash;
+    /** Bytecode indices of the profiled conditional branches. */
+    @UnknownObjectField(types = int[].class) private int[] branchBcis;
+    /** Bytecode indices of the profiled virtual and interface calls. */
+    @UnknownObjectField(types = int[].class) private int[] receiverBcis;
+
+    /**
+     * The invocation counter at index 0, followed by the not-taken and taken counters of each
+     * branch in {@link #branchBcis}.
+     */
+    @UnknownObjectField(types = long[].class) private long[] counters;
+    /** The first receiver classes seen at each call site in {@link #receiverBcis}. */
+    @UnknownObjectField(types = Class[].class) private Class<?>[] receiverTypes;
+    /**
+     * The counts for {@link #receiverTypes}, followed by the count of all other receivers, for each
+     * call site in {@link #receiverBcis}.
+     */
+    @UnknownObjectField(types = long[].class) private long[] receiverCounts;
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public static MethodProfile lookup(String methodName, int codeHash, int[] branchBcis, int[] receiverBcis) {
+        return profiles.computeIfAbsent(methodName, key -> new MethodProfile(key, codeHash, branchBcis, receiverBcis));
+    }
+
+    /** The profiles of all methods that were instrumented so far. */
+    @Platforms(Platform.HOSTED_ONLY.class)
+    public static MethodProfile[] getAllProfiles() {
+        return profiles.values().toArray(new MethodProfile[0]);
+    }
+
+    @Platforms(Platform.HOSTED_ONLY.class)
+    private MethodProfile(String methodName, int codeHash, int[] branchBcis, int[] receiverBcis) {
+        this.methodName = methodName;
+        this.codeHash = codeHash;
+        this.branchBcis = branchBcis;
+        this.receiverBcis = receiverBcis;
+        this.counters = new long[1 + 2 * branchBcis.length];
+        this.receiverTypes = new Class<?>[RECEIVER_TYPES_PER_SITE * receiverBcis.length];
+        this.receiverCounts = new long[(RECEIVER_TYPES_PER_SITE + 1) * receiverBcis.length];
+    }
+
+    /** The array incremented by the instrumentation code. */
+    public long[] getCounters() {
+        return counters;
+    }
+
+    /** The index in {@link #getCounters()} of the invocation counter. */
+    public static int invocationCounterIndex() {
+        return 0;
+    }
+
+    /**
+     * The index in {@link #getCounters()} of the not-taken counter of the given branch. The taken
+     * counter directly follows it.
+     */
+    public static int branchCounterIndex(int branch) {
+        return 1 + 2 * branch;
+    }
+
+    public int[] getBranchBcis() {
+        return branchBcis;
+    }
+
+    public int[] getReceiverBcis() {
+        return receiverBcis;
+    }
+
+    /** Called by the instrumentation code before the virtual or interface call {@code site}. */
+    @SubstrateForeignCallTarget(stubCallingConvention = false)
+    private static void recordReceiver(MethodProfile profile, int site, Object receiver) {
+        if (receiver == null) {
+            /* The call throws a NullPointerException, which is not a receiver type. */
+            return;
+        }
+        Class<?> receiverType = receiver.getClass();
+        int typesBase = site * RECEIVER_TYPES_PER_SITE;
+        int countsBase = site * (RECEIVER_TYPES_PER_SITE + 1);
+        for (int i = 0; i < RECEIVER_TYPES_PER_SITE; i++) {
+            Class<?> recordedType = profile.receiverTypes[typesBase + i];
+            if (recordedType == null) {
+                /* A racing thread can claim the same slot for another type, its count is lost. */
+                profile.receiverTypes[typesBase + i] = receiverType;
+                profile.receiverCounts[countsBase + i]++;
+                return;
+            } else if (recordedType == receiverType) {
+                profile.receiverCounts[countsBase + i]++;
+                return;
+            }
+        }
+        profile.receiverCounts[countsBase + RECEIVER_TYPES_PER_SITE]++;
+    }
+
+    private void appendTo(StringBuilder result) {
+        result.append("method ").append(codeHash).append(' ').append(counters[invocationCounterIndex()]).append(' ').append(methodName).append('\n');
+        for (int i = 0; i < branchBcis.length; i++) {
+            long notTaken = counters[branchCounterIndex(i)];
+            long taken = counters[branchCounterIndex(i) + 1];
+            if (notTaken != 0 || taken != 0) {
+                result.append("branch ").append(branchBcis[i]).append(' ').append(notTaken).append(' ').append(taken).append('\n');
+            }
+        }
+        for (int i = 0; i < receiverBcis.length; i++) {
+            int countsBase = i * (RECEIVER_TYPES_PER_SITE + 1);
+            /* Types are only recorded once, but racing threads can record a type twice. */
+            Map<String, Long> types = new LinkedHashMap<>();
+            for (int j = 0; j < RECEIVER_TYPES_PER_SITE; j++) {
+                Class<?> type = receiverTypes[i * RECEIVER_TYPES_PER_SITE + j];
+                if (type != null) {
+                    types.merge(type.getName(), receiverCounts[countsBase + j], Long::sum);
+                }
+            }
+            long other = receiverCounts[countsBase + RECEIVER_TYPES_PER_SITE];
+            if (!types.isEmpty() || other != 0) {
+                result.append("receiver ").append(receiverBcis[i]).append(' ').append(other);
+                for (Map.Entry<String, Long> entry : types.entrySet()) {
+                    result.append(' ').append(entry.getKey()).append(' ').append(entry.getValue());
+                }
+                result.append('\n');
+            }
+        }
+    }
+
+    /**
+     * Returns the profiles of the given methods that were executed at least once, in the format
+     * described in the class comment.
+     */
+    static String dumpProfiles(MethodProfile[] allProfiles) {
+        List<MethodProfile> executed = new ArrayList<>();
+        for (MethodProfile profile : allProfiles) {
+            if (profile.counters[invocationCounterIndex()] != 0) {
+                executed.add(profile);
+            }
+        }
+        executed.sort(Comparator.comparing(profile -> profile.methodName));
+
+        StringBuilder result = new StringBuilder();
+        for (MethodProfile profile : executed) {
+            profile.appendTo(result);
+        }
+        return result.toString();
+    }
+}
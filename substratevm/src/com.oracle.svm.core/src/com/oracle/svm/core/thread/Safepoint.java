@@ -50,6 +50,7 @@ import com.oracle.svm.core.annotate.NeverInline;
 import com.oracle.svm.core.annotate.RestrictHeapAccess;
 import com.oracle.svm.core.annotate.StubCallingConvention;
 import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.flightrecorder.FlightRecorder;
 import com.oracle.svm.core.heap.Heap;
 import com.oracle.svm.core.jdk.UninterruptibleUtils;
 import com.oracle.svm.core.log.Log;
@@ -514,6 +515,10 @@ public final class Safepoint {
         /** The thread requesting a safepoint. */
         private volatile IsolateThread requestingThread;
 
+        /** When the current safepoint was requested and reached, for the flight recorder. */
+        private long startNanos;
+        private long frozenNanos;
+
         @Platforms(Platform.HOSTED_ONLY.class)
         private Master() {
             this.safepointState = NOT_AT_SAFEPOINT;
@@ -538,6 +543,9 @@ public final class Safepoint {
             }
 
             requestingThread = CurrentIsolate.getCurrentThread();
+            if (FlightRecorder.isEnabled()) {
+                startNanos = System.nanoTime();
+            }
             Statistics.reset();
             Statistics.setStartNanos();
             ImageSingletons.lookup(Heap.class).prepareForSafepoint();
@@ -545,6 +553,9 @@ public final class Safepoint {
             requestSafepoints(reason);
             waitForSafepoints(reason);
             Statistics.setFrozenNanos();
+            if (FlightRecorder.isEnabled()) {
+                frozenNanos = System.nanoTime();
+            }
             safepointState = AT_SAFEPOINT;
             return lock;
         }
@@ -559,6 +570,9 @@ public final class Safepoint {
             releaseSafepoints(reason);
             ImageSingletons.lookup(Heap.class).endSafepoint();
             Statistics.setThawedNanos();
+            if (FlightRecorder.isEnabled()) {
+                FlightRecorder.emitSafepoint(startNanos, frozenNanos);
+            }
             requestingThread = WordFactory.nullPointer();
 
             if (unlock) {
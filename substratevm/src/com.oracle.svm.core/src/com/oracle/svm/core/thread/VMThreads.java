@@ -41,6 +41,7 @@ import com.oracle.svm.core.annotate.RestrictHeapAccess;
 import com.oracle.svm.core.annotate.Uninterruptible;
 import com.oracle.svm.core.c.function.CEntryPointErrors;
 import com.oracle.svm.core.c.function.CFunctionOptions;
+import com.oracle.svm.core.flightrecorder.FlightRecorder;
 import com.oracle.svm.core.heap.Heap;
 import com.oracle.svm.core.jdk.UninterruptibleUtils;
 import com.oracle.svm.core.jdk.UninterruptibleUtils.AtomicWord;
@@ -283,6 +284,9 @@ public abstract class VMThreads {
         }
 
         cleanupBeforeDetach(thread);
+        if (FlightRecorder.isEnabled()) {
+            FlightRecorder.threadExit(thread);
+        }
 
         setStatusIgnoreSafepointsAndLock();
         OSThreadHandle threadToCleanup;
@@ -40,6 +40,7 @@ import com.oracle.svm.core.SubstrateOptions;
 import com.oracle.svm.core.SubstrateTargetDescription;
 import com.oracle.svm.core.config.ConfigurationValues;
 import com.oracle.svm.core.config.ObjectLayout;
+import com.oracle.svm.core.pgo.MethodProfile;
 import com.oracle.svm.hosted.code.CompileQueue;
 import com.oracle.svm.hosted.code.SharedRuntimeConfigurationBuilder;
 import com.oracle.svm.hosted.config.HybridLayout;
@@ -47,6 +48,7 @@ import com.oracle.svm.hosted.meta.HostedField;
 import com.oracle.svm.hosted.meta.HostedInstanceClass;
 import com.oracle.svm.hosted.meta.HostedMetaAccess;
 import com.oracle.svm.hosted.meta.HostedUniverse;
+import com.oracle.svm.hosted.pgo.ProfileGuidedResultsBuilder;
 
 import jdk.vm.ci.meta.JavaKind;
 
@@ -143,6 +145,9 @@ public class HostedConfiguration {
     }
 
     public StaticAnalysisResultsBuilder createStaticAnalysisResultsBuilder(BigBang bigbang, HostedUniverse universe) {
+        if (!MethodProfile.Options.UseProfiles.getValue().isEmpty()) {
+            return new ProfileGuidedResultsBuilder(bigbang, universe);
+        }
         return new StaticAnalysisResultsBuilder(bigbang, universe);
     }
 
@@ -68,6 +68,12 @@ public class NativeImageOptions {
     @Option(help = "Print logging information during compilation")//
     public static final HostedOptionKey<Boolean> PrintAOTCompilation = new HostedOptionKey<>(false);
 
+    @Option(help = "Directory in which compilation results are cached between image builds. Methods whose compiler input is unchanged are not recompiled.")//
+    public static final HostedOptionKey<String> CompilationCacheDirectory = new HostedOptionKey<>("");
+
+    @Option(help = "Compile methods even if their result is found in the compilation cache, and fail if the cached result differs. Also checks that every stored entry reads back unchanged.")//
+    public static final HostedOptionKey<Boolean> VerifyCompilationCache = new HostedOptionKey<>(false);
+
     @Option(help = "Print class statistics of native image heap")//
     public static final HostedOptionKey<Boolean> PrintHeapHistogram = new HostedOptionKey<>(false);
 
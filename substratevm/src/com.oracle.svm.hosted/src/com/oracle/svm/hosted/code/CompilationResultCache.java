@@ -0,0 +1,1505 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.code;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.graalvm.collections.EconomicMap;
+import org.graalvm.collections.Equivalence;
+import org.graalvm.collections.UnmodifiableMapCursor;
+import org.graalvm.compiler.bytecode.Bytecode;
+import org.graalvm.compiler.code.CompilationResult;
+import org.graalvm.compiler.code.CompilationResult.CodeAnnotation;
+import org.graalvm.compiler.code.CompilationResult.CodeComment;
+import org.graalvm.compiler.code.CompilationResult.JumpTable;
+import org.graalvm.compiler.code.DataSection;
+import org.graalvm.compiler.core.common.CompilationIdentifier;
+import org.graalvm.compiler.core.common.CompressEncoding;
+import org.graalvm.compiler.core.common.Fields;
+import org.graalvm.compiler.core.common.LIRKind;
+import org.graalvm.compiler.core.common.type.AbstractObjectStamp;
+import org.graalvm.compiler.core.common.type.FloatStamp;
+import org.graalvm.compiler.core.common.type.IllegalStamp;
+import org.graalvm.compiler.core.common.type.IntegerStamp;
+import org.graalvm.compiler.core.common.type.ObjectStamp;
+import org.graalvm.compiler.core.common.type.RawPointerStamp;
+import org.graalvm.compiler.core.common.type.Stamp;
+import org.graalvm.compiler.core.common.type.StampPair;
+import org.graalvm.compiler.core.common.type.VoidStamp;
+import org.graalvm.compiler.debug.DebugOptions;
+import org.graalvm.compiler.graph.Node;
+import org.graalvm.compiler.graph.Position;
+import org.graalvm.compiler.nodes.FieldLocationIdentity;
+import org.graalvm.compiler.nodes.NamedLocationIdentity;
+import org.graalvm.compiler.nodes.NodeView;
+import org.graalvm.compiler.nodes.StructuredGraph;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.type.NarrowOopStamp;
+import org.graalvm.compiler.options.OptionDescriptor;
+import org.graalvm.compiler.options.OptionKey;
+import org.graalvm.compiler.options.OptionValues;
+import org.graalvm.compiler.serviceprovider.GraalServices;
+import org.graalvm.word.LocationIdentity;
+
+import com.oracle.graal.pointsto.api.PointstoOptions;
+import com.oracle.graal.pointsto.reports.ReportUtils;
+import com.oracle.svm.core.StaticFieldsSupport;
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.c.struct.CInterfaceLocationIdentity;
+import com.oracle.svm.core.config.ConfigurationValues;
+import com.oracle.svm.core.graal.code.SubstrateBackend;
+import com.oracle.svm.core.graal.code.SubstrateCompilationResult;
+import com.oracle.svm.core.graal.code.SubstrateDataBuilder;
+import com.oracle.svm.core.graal.nodes.SubstrateNarrowOopStamp;
+import com.oracle.svm.core.heap.ReferenceMapEncoder;
+import com.oracle.svm.core.heap.SubstrateReferenceMap;
+import com.oracle.svm.core.hub.DynamicHub;
+import com.oracle.svm.core.meta.SubstrateObjectConstant;
+import com.oracle.svm.core.option.HostedOptionValues;
+import com.oracle.svm.core.option.RuntimeOptionValues;
+import com.oracle.svm.core.util.UserError;
+import com.oracle.svm.core.util.VMError;
+import com.oracle.svm.hosted.NativeImageOptions;
+import com.oracle.svm.hosted.code.amd64.AMD64HostedPatcher;
+import com.oracle.svm.hosted.meta.HostedField;
+import com.oracle.svm.hosted.meta.HostedInstanceClass;
+import com.oracle.svm.hosted.meta.HostedMethod;
+import com.oracle.svm.hosted.meta.HostedType;
+import com.oracle.svm.hosted.meta.HostedUniverse;
+
+import jdk.vm.ci.amd64.AMD64;
+import jdk.vm.ci.amd64.AMD64Kind;
+import jdk.vm.ci.code.BytecodeFrame;
+import jdk.vm.ci.code.BytecodePosition;
+import jdk.vm.ci.code.DebugInfo;
+import jdk.vm.ci.code.Register;
+import jdk.vm.ci.code.RegisterValue;
+import jdk.vm.ci.code.StackLockValue;
+import jdk.vm.ci.code.StackSlot;
+import jdk.vm.ci.code.VirtualObject;
+import jdk.vm.ci.code.site.Call;
+import jdk.vm.ci.code.site.ConstantReference;
+import jdk.vm.ci.code.site.DataPatch;
+import jdk.vm.ci.code.site.DataSectionReference;
+import jdk.vm.ci.code.site.ExceptionHandler;
+import jdk.vm.ci.code.site.Infopoint;
+import jdk.vm.ci.code.site.InfopointReason;
+import jdk.vm.ci.code.site.Mark;
+import jdk.vm.ci.meta.AllocatableValue;
+import jdk.vm.ci.meta.Constant;
+import jdk.vm.ci.meta.JavaConstant;
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.JavaValue;
+import jdk.vm.ci.meta.ResolvedJavaField;
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+import jdk.vm.ci.meta.ResolvedJavaType;
+import jdk.vm.ci.meta.Value;
+import jdk.vm.ci.meta.ValueKind;
+import jdk.vm.ci.meta.VMConstant;
+
+/**
+ * Persistent cache of {@link CompilationResult compilation results} that survives between image
+ * builds, enabled with {@link NativeImageOptions#CompilationCacheDirectory}.
+ *
+ * A compilation result is looked up by a SHA-256 key over everything the backend consumes: the
+ * image builder itself (JDK, class path entries, target architecture and all option values), the
+ * bytecode of the method, and the graph that is handed to the compiler. Hosted types, methods and
+ * fields referenced by the graph contribute a fingerprint of the properties that code generation
+ * depends on, e.g., type check ranges, instance sizes, vtable indices and field offsets. So a
+ * change in one class only invalidates the methods whose compiled code can actually differ.
+ *
+ * Only results that can be described without referring to objects of the current build are
+ * cached: object constants are limited to hubs, interned strings and the static field arrays. Any
+ * other graph or result, as well as results with source mappings (debug info generation) and
+ * deoptimization targets, is compiled as usual and not stored. Corrupt or stale entries are
+ * treated as misses, so the cache directory can be deleted at any time. Entries are never evicted.
+ * {@link NativeImageOptions#VerifyCompilationCache} compiles every method anyway and checks that
+ * cached results are identical to the compiled ones.
+ */
+public final class CompilationResultCache {
+
+    private static final int MAGIC = 0x53434352;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte NULL = 0;
+
+    private static final byte CONSTANT_PRIMITIVE = 1;
+    private static final byte CONSTANT_NULL = 2;
+    private static final byte CONSTANT_HUB = 3;
+    private static final byte CONSTANT_STRING = 4;
+    private static final byte CONSTANT_STATIC_OBJECT_FIELDS = 5;
+    private static final byte CONSTANT_STATIC_PRIMITIVE_FIELDS = 6;
+
+    private static final byte VALUE_ILLEGAL = 1;
+    private static final byte VALUE_CONSTANT = 2;
+    private static final byte VALUE_STACK_SLOT = 3;
+    private static final byte VALUE_REGISTER = 4;
+    private static final byte VALUE_VIRTUAL_OBJECT = 5;
+    private static final byte VALUE_STACK_LOCK = 6;
+
+    private static final byte KIND_VALUE = 1;
+    private static final byte KIND_REFERENCE = 2;
+    private static final byte KIND_COMPRESSED_REFERENCE = 3;
+    private static final byte KIND_UNKNOWN_REFERENCE = 4;
+
+    private static final byte POSITION = 1;
+    private static final byte FRAME = 2;
+
+    private static final byte INFOPOINT = 1;
+    private static final byte CALL = 2;
+
+    private static final byte REFERENCE_DATA_SECTION = 1;
+    private static final byte REFERENCE_CONSTANT = 2;
+
+    private static final byte ANNOTATION_PATCHER = 1;
+    private static final byte ANNOTATION_JUMP_TABLE = 2;
+    private static final byte ANNOTATION_COMMENT = 3;
+
+    /** Thrown when a graph or a compilation result cannot be described in a build-independent way. */
+    @SuppressWarnings("serial")
+    private static final class NotCacheableException extends RuntimeException {
+        NotCacheableException(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    /** A {@link DataOutputStream} that only feeds a message digest. */
+    private static final class KeyWriter extends DataOutputStream {
+        private final MessageDigest digest;
+
+        KeyWriter() {
+            this(newDigest());
+        }
+
+        private KeyWriter(MessageDigest digest) {
+            super(new DigestOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }, digest));
+            this.digest = digest;
+        }
+
+        byte[] finish() {
+            return digest.digest();
+        }
+
+        private static MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw VMError.shouldNotReachHere(ex);
+            }
+        }
+    }
+
+    /** Maps the names written to cache entries back to elements of the current universe. */
+    private static final class LookupTables {
+        final Map<String, HostedType> types = new HashMap<>();
+        final Map<String, HostedMethod> methods = new HashMap<>();
+        final Map<DynamicHub, HostedType> hubs = new IdentityHashMap<>();
+        final Map<String, Register> registers = new HashMap<>();
+        final Set<String> ambiguous = new HashSet<>();
+
+        LookupTables(HostedUniverse universe) {
+            for (HostedType type : universe.getTypes()) {
+                if (types.put(type.getName(), type) != null) {
+                    ambiguous.add(type.getName());
+                }
+                hubs.put(type.getHub(), type);
+            }
+            for (HostedMethod method : universe.getMethods()) {
+                String descriptor = descriptor(method);
+                if (methods.put(descriptor, method) != null) {
+                    ambiguous.add(descriptor);
+                }
+            }
+            for (Register register : ConfigurationValues.getTarget().arch.getRegisters()) {
+                registers.put(register.name, register);
+            }
+        }
+
+        <T> T lookup(Map<String, T> map, String name) {
+            T result = map.get(name);
+            if (result == null || ambiguous.contains(name)) {
+                throw new NotCacheableException("cannot resolve " + name);
+            }
+            return result;
+        }
+
+        String name(HostedType type) {
+            return checkUnique(type.getName());
+        }
+
+        String name(HostedMethod method) {
+            return checkUnique(descriptor(method));
+        }
+
+        private String checkUnique(String name) {
+            if (ambiguous.contains(name)) {
+                throw new NotCacheableException("ambiguous name " + name);
+            }
+            return name;
+        }
+    }
+
+    private final Path directory;
+    private final HostedUniverse universe;
+    private final byte[] buildFingerprint;
+    private final Map<Object, byte[]> elementFingerprints = new ConcurrentHashMap<>();
+    private volatile LookupTables lookupTables;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger stored = new AtomicInteger();
+    private final AtomicInteger notCacheable = new AtomicInteger();
+    private final AtomicInteger verified = new AtomicInteger();
+    private final AtomicInteger storeFailures = new AtomicInteger();
+    private final AtomicReference<String> firstStoreFailure = new AtomicReference<>();
+
+    /**
+     * Returns the cache for the current image build, or null if no cache directory is specified.
+     */
+    public static CompilationResultCache create(HostedUniverse universe) {
+        String directoryName = NativeImageOptions.CompilationCacheDirectory.getValue();
+        if (directoryName.isEmpty()) {
+            return null;
+        }
+        if (SubstrateOptions.useLLVMBackend() || !(ConfigurationValues.getTarget().arch instanceof AMD64) || SubstrateOptions.GenerateDebugInfo.getValue() > 0) {
+            throw UserError.abort("The compilation cache is only supported by the AMD64 backend without debug info generation, remove the option %s=%s",
+                            NativeImageOptions.CompilationCacheDirectory.getName(), directoryName);
+        }
+        Path directory = Paths.get(directoryName).toAbsolutePath();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            throw UserError.abort(ex, "Cannot create compilation cache directory " + directory);
+        }
+        return new CompilationResultCache(directory, universe);
+    }
+
+    private CompilationResultCache(Path directory, HostedUniverse universe) {
+        this.directory = directory;
+        this.universe = universe;
+        try {
+            this.buildFingerprint = computeBuildFingerprint();
+        } catch (IOException ex) {
+            throw UserError.abort(ex, "Cannot compute the image builder fingerprint for the compilation cache");
+        }
+    }
+
+    private LookupTables lookupTables() {
+        LookupTables result = lookupTables;
+        if (result == null) {
+            synchronized (this) {
+                result = lookupTables;
+                if (result == null) {
+                    result = new LookupTables(universe);
+                    lookupTables = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Writes the statistics of the current image build to the reports directory. */
+    public void report() {
+        String path = Paths.get(SubstrateOptions.Path.getValue(), "reports").toString();
+        ReportUtils.report("compilation cache statistics", path, "compilation_cache_statistics", "txt", writer -> {
+            writer.println("directory: " + directory);
+            writer.println("hits: " + hits.get());
+            writer.println("misses: " + misses.get());
+            writer.println("stored: " + stored.get());
+            writer.println("not cacheable: " + notCacheable.get());
+            writer.println("verified: " + verified.get());
+            writer.println("store failures: " + storeFailures.get());
+            if (firstStoreFailure.get() != null) {
+                writer.println("first store failure: " + firstStoreFailure.get());
+            }
+        });
+    }
+
+    /*
+     * Cache keys.
+     */
+
+    /**
+     * Returns the cache key for compiling the given graph of the method, or null if the graph
+     * cannot be described independently of the current image build.
+     */
+    public byte[] computeKey(HostedMethod method, StructuredGraph graph) {
+        try {
+            KeyWriter out = new KeyWriter();
+            out.write(buildFingerprint);
+            out.write(fingerprint(method));
+            byte[] code = method.getCode();
+            out.writeInt(code == null ? -1 : code.length);
+            if (code != null) {
+                out.write(code);
+            }
+            writeGraph(out, graph);
+            return out.finish();
+        } catch (NotCacheableException ex) {
+            notCacheable.incrementAndGet();
+            return null;
+        } catch (IOException ex) {
+            throw VMError.shouldNotReachHere(ex);
+        }
+    }
+
+    private static byte[] computeBuildFingerprint() throws IOException {
+        KeyWriter out = new KeyWriter();
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        for (String property : new String[]{"java.vm.name", "java.vm.version", "java.version"}) {
+            writeString(out, String.valueOf(System.getProperty(property)));
+        }
+        /* The image builder itself: a rebuilt compiler or builder must not reuse old results. */
+        for (String property : new String[]{"sun.boot.class.path", "jvmci.class.path.append", "java.class.path", "jdk.module.path", "jdk.module.upgrade.path"}) {
+            String path = System.getProperty(property);
+            if (path != null) {
+                writeString(out, property);
+                for (String entry : path.split(File.pathSeparator)) {
+                    if (!entry.isEmpty()) {
+                        writeFileStamps(out, Paths.get(entry));
+                    }
+                }
+            }
+        }
+        AMD64 arch = (AMD64) ConfigurationValues.getTarget().arch;
+        writeString(out, arch.getName());
+        writeString(out, arch.getFeatures().toString());
+        writeString(out, arch.getFlags().toString());
+        writeOptions(out, HostedOptionValues.singleton());
+        writeOptions(out, RuntimeOptionValues.singleton());
+        return out.finish();
+    }
+
+    private static void writeFileStamps(DataOutputStream out, Path path) throws IOException {
+        writeString(out, path.toAbsolutePath().toString());
+        if (Files.isDirectory(path)) {
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(path)) {
+                files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            out.writeInt(files.size());
+            for (Path file : files) {
+                writeString(out, path.relativize(file).toString());
+                out.writeLong(Files.size(file));
+                out.writeLong(Files.getLastModifiedTime(file).toMillis());
+            }
+        } else if (Files.isRegularFile(path)) {
+            out.writeInt(-1);
+            out.writeLong(Files.size(path));
+            out.writeLong(Files.getLastModifiedTime(path).toMillis());
+        } else {
+            out.writeInt(-2);
+        }
+    }
+
+    /**
+     * Options that do not influence the compiled code and are therefore not part of the build
+     * fingerprint: the options of the cache itself, the name and location of the image and its
+     * main class, and options that only print or report. Together with the debug options, these
+     * differ between builds that otherwise compile the same code, e.g. two builds of the same
+     * application into different directories.
+     */
+    private static final Set<OptionKey<?>> IGNORED_OPTIONS = new HashSet<>(Arrays.asList(
+                    NativeImageOptions.CompilationCacheDirectory, NativeImageOptions.VerifyCompilationCache, NativeImageOptions.TempDirectory,
+                    SubstrateOptions.Path, SubstrateOptions.Name, SubstrateOptions.Class, SubstrateOptions.CLibraryPath, PointstoOptions.InspectServerContentPath,
+                    SubstrateOptions.PrintFlags, SubstrateOptions.DumpTargetInfo,
+                    NativeImageOptions.PrintUniverse, NativeImageOptions.PrintAOTCompilation, NativeImageOptions.PrintHeapHistogram, NativeImageOptions.PrintMethodHistogram,
+                    NativeImageOptions.PrintImageElementSizes, NativeImageOptions.PrintImageHeapPartitionSizes, NativeImageOptions.PrintFeatures,
+                    NativeImageOptions.ReportExceptionStackTraces, NativeImageOptions.ReportUnsafeOffsetWarnings,
+                    PointstoOptions.PrintSynchronizedAnalysis, PointstoOptions.PrintPointsToStatistics));
+
+    private static void writeOptions(DataOutputStream out, OptionValues values) throws IOException {
+        Map<String, String> sorted = new TreeMap<>();
+        UnmodifiableMapCursor<OptionKey<?>, Object> cursor = values.getMap().getEntries();
+        while (cursor.advance()) {
+            OptionKey<?> key = cursor.getKey();
+            if (IGNORED_OPTIONS.contains(key) || isDebugOption(key)) {
+                continue;
+            }
+            Object value = cursor.getValue();
+            sorted.put(key.getName(), value instanceof Object[] ? Arrays.deepToString((Object[]) value) : String.valueOf(value));
+        }
+        out.writeInt(sorted.size());
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static boolean isDebugOption(OptionKey<?> key) {
+        OptionDescriptor descriptor = key.getDescriptor();
+        return descriptor != null && descriptor.getDeclaringClass() == DebugOptions.class;
+    }
+
+    private void writeGraph(KeyWriter out, StructuredGraph graph) throws IOException {
+        EconomicMap<Node, Integer> ids = EconomicMap.create(Equivalence.IDENTITY);
+        for (Node node : graph.getNodes()) {
+            ids.put(node, ids.size());
+        }
+        out.writeInt(ids.size());
+        writeString(out, graph.getGuardsStage().name());
+        out.writeInt(graph.getEntryBCI());
+        out.writeBoolean(graph.hasUnsafeAccess());
+
+        for (Node node : graph.getNodes()) {
+            writeString(out, node.getClass().getName());
+            for (Position position : node.inputPositions()) {
+                writeEdge(out, ids, node, position);
+            }
+            out.writeInt(-1);
+            for (Position position : node.successorPositions()) {
+                writeEdge(out, ids, node, position);
+            }
+            out.writeInt(-1);
+            Fields data = node.getNodeClass().getData();
+            for (int i = 0; i < data.getCount(); i++) {
+                writeKeyValue(out, data.get(node, i));
+            }
+            if (node instanceof ValueNode) {
+                writeKeyValue(out, ((ValueNode) node).stamp(NodeView.DEFAULT));
+            }
+        }
+    }
+
+    private static void writeEdge(KeyWriter out, EconomicMap<Node, Integer> ids, Node node, Position position) throws IOException {
+        out.writeInt(position.getIndex());
+        out.writeInt(position.getSubIndex());
+        Node target = position.get(node);
+        if (target == null) {
+            out.writeInt(-1);
+        } else {
+            Integer id = ids.get(target);
+            if (id == null) {
+                throw new NotCacheableException("edge to a node that is not part of the graph");
+            }
+            out.writeInt(id);
+        }
+    }
+
+    private void writeKeyValue(KeyWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        writeString(out, value.getClass().getName());
+        if (value instanceof JavaConstant) {
+            JavaConstant constant = (JavaConstant) value;
+            writeConstant(out, constant);
+            if (constant.getJavaKind() == JavaKind.Object && constant.isNonNull() && SubstrateObjectConstant.asObject(constant) instanceof DynamicHub) {
+                out.write(fingerprint(lookupTables().hubs.get(SubstrateObjectConstant.asObject(constant))));
+            }
+        } else if (value instanceof Constant) {
+            throw new NotCacheableException("constant " + value);
+        } else if (value instanceof HostedType || value instanceof HostedMethod || value instanceof HostedField) {
+            out.write(fingerprint(value));
+        } else if (value instanceof ResolvedJavaType || value instanceof ResolvedJavaMethod || value instanceof ResolvedJavaField) {
+            throw new NotCacheableException("reference to " + value);
+        } else if (value instanceof Stamp) {
+            writeStamp(out, (Stamp) value);
+        } else if (value instanceof StampPair) {
+            writeKeyValue(out, ((StampPair) value).getTrustedStamp());
+            writeKeyValue(out, ((StampPair) value).getUncheckedStamp());
+        } else if (value instanceof FieldLocationIdentity) {
+            writeKeyValue(out, ((FieldLocationIdentity) value).getField());
+        } else if (value instanceof Bytecode) {
+            writeKeyValue(out, ((Bytecode) value).getMethod());
+        } else if (value instanceof Enum) {
+            writeString(out, ((Enum<?>) value).name());
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                writeKeyValue(out, Array.get(value, i));
+            }
+        } else if (value instanceof LocationIdentity) {
+            writeLocationIdentity(out, (LocationIdentity) value);
+        } else if (value instanceof String || JavaKind.fromBoxedJavaClass(value.getClass()) != JavaKind.Illegal) {
+            writeString(out, value.toString());
+        } else {
+            /*
+             * The string representation of an arbitrary object does not necessarily cover all of
+             * its state, so it must not be used as part of a key.
+             */
+            throw new NotCacheableException("node data of type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Writes all properties of a stamp. The class name is already written by the caller, and only
+     * classes whose complete state is known here are accepted.
+     */
+    private void writeStamp(KeyWriter out, Stamp stamp) throws IOException {
+        Class<?> stampClass = stamp.getClass();
+        if (stampClass == IntegerStamp.class) {
+            IntegerStamp integerStamp = (IntegerStamp) stamp;
+            out.writeInt(integerStamp.getBits());
+            out.writeLong(integerStamp.lowerBound());
+            out.writeLong(integerStamp.upperBound());
+            out.writeLong(integerStamp.downMask());
+            out.writeLong(integerStamp.upMask());
+        } else if (stampClass == FloatStamp.class) {
+            FloatStamp floatStamp = (FloatStamp) stamp;
+            out.writeInt(floatStamp.getBits());
+            out.writeDouble(floatStamp.lowerBound());
+            out.writeDouble(floatStamp.upperBound());
+            out.writeBoolean(floatStamp.isNonNaN());
+        } else if (stampClass == ObjectStamp.class || stampClass == SubstrateNarrowOopStamp.class) {
+            AbstractObjectStamp objectStamp = (AbstractObjectStamp) stamp;
+            writeKeyValue(out, objectStamp.type());
+            out.writeBoolean(objectStamp.isExactType());
+            out.writeBoolean(objectStamp.nonNull());
+            out.writeBoolean(objectStamp.alwaysNull());
+            if (stamp instanceof NarrowOopStamp) {
+                CompressEncoding encoding = ((NarrowOopStamp) stamp).getEncoding();
+                out.writeLong(encoding.getBase());
+                out.writeInt(encoding.getShift());
+            }
+        } else if (stampClass == RawPointerStamp.class) {
+            RawPointerStamp pointerStamp = (RawPointerStamp) stamp;
+            out.writeBoolean(pointerStamp.nonNull());
+            out.writeBoolean(pointerStamp.alwaysNull());
+        } else if (stampClass != VoidStamp.class && stampClass != IllegalStamp.class) {
+            throw new NotCacheableException("stamp of type " + stampClass.getName());
+        }
+    }
+
+    private static void writeLocationIdentity(KeyWriter out, LocationIdentity identity) throws IOException {
+        Class<?> identityClass = identity.getClass();
+        if (identity.isAny() || identity.isInit()) {
+            /* Singletons, identified by the class name that is already written. */
+            return;
+        }
+        if (identityClass == NamedLocationIdentity.class || identityClass == CInterfaceLocationIdentity.class) {
+            /* These classes consist of nothing but the name and the mutability. */
+            writeString(out, identity.toString());
+            out.writeBoolean(identity.isImmutable());
+        } else {
+            throw new NotCacheableException("location identity of type " + identityClass.getName());
+        }
+    }
+
+    private byte[] fingerprint(Object element) throws IOException {
+        byte[] result = elementFingerprints.get(element);
+        if (result == null) {
+            KeyWriter out = new KeyWriter();
+            if (element instanceof HostedType) {
+                writeTypeFingerprint(out, (HostedType) element);
+            } else if (element instanceof HostedMethod) {
+                writeMethodFingerprint(out, (HostedMethod) element);
+            } else {
+                writeFieldFingerprint(out, (HostedField) element);
+            }
+            result = out.finish();
+            elementFingerprints.put(element, result);
+        }
+        return result;
+    }
+
+    private void writeTypeFingerprint(DataOutputStream out, HostedType type) throws IOException {
+        writeString(out, lookupTables().name(type));
+        out.writeInt(type.getModifiers());
+        out.writeInt(type.getTypeID());
+        out.writeInt(type.getInstanceOfFromTypeID());
+        out.writeInt(type.getInstanceOfNumTypeIDs());
+        int[] matches = type.getAssignableFromMatches();
+        out.writeInt(matches.length);
+        for (int match : matches) {
+            out.writeInt(match);
+        }
+        out.writeBoolean(type.isInstantiated());
+        out.writeBoolean(type.isInitialized());
+        out.writeBoolean(type.isWordType());
+        writeTypeName(out, type.getSuperclass());
+        writeTypeName(out, type.getStrengthenStampType());
+        writeTypeName(out, type.getUniqueConcreteImplementation());
+        if (type instanceof HostedInstanceClass) {
+            out.writeInt(((HostedInstanceClass) type).getInstanceSize());
+        }
+        DynamicHub hub = type.getHub();
+        out.writeInt(hub.getLayoutEncoding());
+        out.writeInt(hub.getMonitorOffset());
+        out.writeInt(hub.getHashCodeOffset());
+        HostedMethod[] vtable = type.getVTable();
+        out.writeInt(vtable.length);
+        for (HostedMethod method : vtable) {
+            writeString(out, method == null ? "" : descriptor(method));
+        }
+    }
+
+    private static void writeTypeName(DataOutputStream out, HostedType type) throws IOException {
+        writeString(out, type == null ? "" : type.getName());
+    }
+
+    private static void writeMethodFingerprint(DataOutputStream out, HostedMethod method) throws IOException {
+        writeString(out, descriptor(method));
+        out.writeInt(method.getModifiers());
+        out.writeInt(method.hasVTableIndex() ? method.getVTableIndex() : -1);
+        out.writeBoolean(method.isEntryPoint());
+        out.writeBoolean(method.hasCalleeSavedRegisters());
+        out.writeBoolean(method.isDeoptTarget());
+        out.writeBoolean(method.canDeoptimize());
+        writeString(out, method.getDeoptStubType().name());
+        writeString(out, Arrays.toString(method.getAnnotations()));
+        HostedMethod[] implementations = method.getImplementations();
+        out.writeInt(implementations == null ? -1 : implementations.length);
+        if (implementations != null) {
+            for (HostedMethod implementation : implementations) {
+                writeString(out, descriptor(implementation));
+            }
+        }
+    }
+
+    private static void writeFieldFingerprint(DataOutputStream out, HostedField field) throws IOException {
+        writeTypeName(out, field.getDeclaringClass());
+        writeString(out, field.getName());
+        writeTypeName(out, field.getType());
+        out.writeInt(field.getModifiers());
+        out.writeInt(field.hasLocation() ? field.getLocation() : -1);
+        out.writeBoolean(field.isAccessed());
+        out.writeBoolean(field.isWritten());
+        writeString(out, field.getStorageKind().name());
+    }
+
+    private static String descriptor(HostedMethod method) {
+        return method.getDeclaringClass().getName() + "." + method.getName() + method.getSignature().toMethodDescriptor();
+    }
+
+    /*
+     * Cache entries.
+     */
+
+    private Path entryFile(byte[] key) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : key) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return directory.resolve(hex.substring(0, 2)).resolve(hex.substring(2) + ".bin");
+    }
+
+    /**
+     * Returns the cached compilation result for the key, or null if there is no usable entry. The
+     * returned result is already {@link CompilationResult#close() closed}.
+     */
+    public CompilationResult lookup(HostedMethod method, byte[] key, SubstrateBackend backend, CompilationIdentifier compilationIdentifier) {
+        Path file = entryFile(key);
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+            DataInputStream in = new DataInputStream(stream);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                misses.incrementAndGet();
+                return null;
+            }
+            byte[] storedKey = new byte[in.readInt()];
+            in.readFully(storedKey);
+            if (!Arrays.equals(key, storedKey)) {
+                misses.incrementAndGet();
+                return null;
+            }
+            CompilationResult result = backend.newCompilationResult(compilationIdentifier, method.format("%H.%n(%p)"));
+            readResult(in, result);
+            result.close();
+            hits.incrementAndGet();
+            return result;
+        } catch (IOException | RuntimeException ex) {
+            /* No entry, or a truncated, corrupt or stale one: compile the method and overwrite it. */
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a compilation result under the given {@link #computeKey key}. The graph is the method's
+     * graph before compilation, used to detect methods that were only inlined by the compiler.
+     * Results that cannot be described independently of the current build are skipped. A failure
+     * to write the entry only loses the entry, the image build continues and the failure is listed
+     * in the {@link #report() statistics}.
+     */
+    public void store(byte[] key, StructuredGraph graph, CompilationResult result) {
+        byte[] entry;
+        try {
+            checkCacheable(graph, result);
+            entry = serialize(result);
+        } catch (NotCacheableException ex) {
+            notCacheable.incrementAndGet();
+            return;
+        }
+        if (NativeImageOptions.VerifyCompilationCache.getValue()) {
+            verifyRoundTrip(result, entry);
+        }
+
+        Path file = entryFile(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(key.length);
+                out.write(key);
+                out.write(entry);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+            stored.incrementAndGet();
+        } catch (IOException ex) {
+            storeFailures.incrementAndGet();
+            firstStoreFailure.compareAndSet(null, file + ": " + ex);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ex) {
+                    /* Best effort, the next build overwrites stale temporary files anyway. */
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a result that was found in the cache is identical to the result of compiling the
+     * method again, enabled with {@link NativeImageOptions#VerifyCompilationCache}.
+     */
+    public void verifyHit(HostedMethod method, CompilationResult cached, CompilationResult compiled) {
+        byte[] compiledEntry;
+        try {
+            compiledEntry = serialize(compiled);
+        } catch (NotCacheableException ex) {
+            throw VMError.shouldNotReachHere("Compilation cache hit for " + method.format("%H.%n(%p)") + ", but the compiled result is not cacheable: " + ex.getMessage());
+        }
+        VMError.guarantee(Arrays.equals(serialize(cached), compiledEntry), "Cached compilation result of " + method.format("%H.%n(%p)") + " differs from the compiled result");
+        verified.incrementAndGet();
+    }
+
+    private void verifyRoundTrip(CompilationResult result, byte[] entry) {
+        CompilationResult copy = new CompilationResult(result.getCompilationId(), result.getName());
+        try {
+            readResult(new DataInputStream(new ByteArrayInputStream(entry)), copy);
+        } catch (IOException ex) {
+            throw VMError.shouldNotReachHere(ex);
+        }
+        VMError.guarantee(Arrays.equals(entry, serialize(copy)), "Compilation result of " + result.getName() + " differs after reading it back from the compilation cache entry");
+    }
+
+    private byte[] serialize(CompilationResult result) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeResult(out, result);
+        } catch (IOException ex) {
+            throw VMError.shouldNotReachHere(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void checkCacheable(StructuredGraph graph, CompilationResult result) {
+        if (!result.getSourceMappings().isEmpty()) {
+            throw new NotCacheableException("source mappings");
+        }
+        if (result.getAssumptions() != null && result.getAssumptions().length > 0) {
+            throw new NotCacheableException("assumptions");
+        }
+        if (result instanceof SubstrateCompilationResult && ((SubstrateCompilationResult) result).getDeoptimizationSourcePositions() != null) {
+            throw new NotCacheableException("deoptimization source positions");
+        }
+        /* Everything that was inlined during compilation must already be covered by the key. */
+        if (result.getMethods() != null) {
+            Set<ResolvedJavaMethod> inputMethods = new HashSet<>(graph.getMethods());
+            inputMethods.add(graph.method());
+            for (ResolvedJavaMethod method : result.getMethods()) {
+                if (!inputMethods.contains(method)) {
+                    throw new NotCacheableException("method inlined during compilation: " + method);
+                }
+            }
+        }
+    }
+
+    private void writeResult(DataOutputStream out, CompilationResult result) throws IOException {
+        out.writeInt(result.getTargetCodeSize());
+        out.write(result.getTargetCode(), 0, result.getTargetCodeSize());
+        out.writeInt(result.getTotalFrameSize());
+        out.writeBoolean(result.hasUnsafeAccess());
+        writeValue(out, result.getCustomStackArea(), null);
+
+        DataSection dataSection = result.getDataSection();
+        Map<DataSection.Data, Integer> dataIndices = new IdentityHashMap<>();
+        List<DataSection.Data> dataItems = new ArrayList<>();
+        for (DataPatch patch : result.getDataPatches()) {
+            if (patch.reference instanceof DataSectionReference) {
+                DataSection.Data data = dataSection.findData((DataSectionReference) patch.reference);
+                if (data == null) {
+                    throw new NotCacheableException("data item of another data section");
+                }
+                if (!dataIndices.containsKey(data)) {
+                    dataIndices.put(data, dataItems.size());
+                    dataItems.add(data);
+                }
+            }
+        }
+        out.writeInt(dataItems.size());
+        for (DataSection.Data data : dataItems) {
+            writeDataItem(out, data);
+        }
+
+        out.writeInt(result.getDataPatches().size());
+        for (DataPatch patch : result.getDataPatches()) {
+            if (patch.note != null) {
+                throw new NotCacheableException("data patch note");
+            }
+            out.writeInt(patch.pcOffset);
+            if (patch.reference instanceof DataSectionReference) {
+                out.writeByte(REFERENCE_DATA_SECTION);
+                out.writeInt(dataIndices.get(dataSection.findData((DataSectionReference) patch.reference)));
+            } else if (patch.reference instanceof ConstantReference) {
+                out.writeByte(REFERENCE_CONSTANT);
+                VMConstant constant = ((ConstantReference) patch.reference).getConstant();
+                if (!(constant instanceof JavaConstant)) {
+                    throw new NotCacheableException("constant " + constant);
+                }
+                writeConstant(out, (JavaConstant) constant);
+            } else {
+                throw new NotCacheableException("reference " + patch.reference);
+            }
+        }
+
+        out.writeInt(result.getInfopoints().size());
+        for (Infopoint infopoint : result.getInfopoints()) {
+            if (infopoint.getClass() == Call.class) {
+                Call call = (Call) infopoint;
+                out.writeByte(CALL);
+                if (call.target != null && !(call.target instanceof HostedMethod)) {
+                    throw new NotCacheableException("call target " + call.target);
+                }
+                writeMethod(out, (HostedMethod) call.target);
+                out.writeInt(call.size);
+                out.writeBoolean(call.direct);
+            } else if (infopoint.getClass() == Infopoint.class) {
+                out.writeByte(INFOPOINT);
+                writeString(out, infopoint.reason.name());
+            } else {
+                throw new NotCacheableException("infopoint " + infopoint);
+            }
+            out.writeInt(infopoint.pcOffset);
+            writeDebugInfo(out, infopoint.debugInfo);
+        }
+
+        out.writeInt(result.getExceptionHandlers().size());
+        for (ExceptionHandler handler : result.getExceptionHandlers()) {
+            out.writeInt(handler.pcOffset);
+            out.writeInt(handler.handlerPos);
+        }
+
+        out.writeInt(result.getMarks().size());
+        for (Mark mark : result.getMarks()) {
+            if (!(mark.id instanceof String)) {
+                throw new NotCacheableException("mark " + mark.id);
+            }
+            out.writeInt(mark.pcOffset);
+            writeString(out, (String) mark.id);
+        }
+
+        out.writeInt(result.getCodeAnnotations().size());
+        for (CodeAnnotation annotation : result.getCodeAnnotations()) {
+            if (annotation instanceof AMD64HostedPatcher) {
+                AMD64HostedPatcher patcher = (AMD64HostedPatcher) annotation;
+                if (patcher.getPosition() != patcher.getInstructionPosition()) {
+                    throw new NotCacheableException("shifted patcher");
+                }
+                out.writeByte(ANNOTATION_PATCHER);
+                out.writeInt(patcher.getInstructionPosition());
+                out.writeInt(patcher.getOperandPosition());
+                out.writeInt(patcher.getOperandSize());
+                out.writeInt(patcher.getNextInstructionPosition());
+            } else if (annotation instanceof JumpTable) {
+                JumpTable table = (JumpTable) annotation;
+                out.writeByte(ANNOTATION_JUMP_TABLE);
+                out.writeInt(table.getPosition());
+                out.writeInt(table.low);
+                out.writeInt(table.high);
+                out.writeInt(table.entrySize);
+            } else if (annotation instanceof CodeComment) {
+                out.writeByte(ANNOTATION_COMMENT);
+                out.writeInt(annotation.getPosition());
+                writeString(out, ((CodeComment) annotation).value);
+            } else {
+                throw new NotCacheableException("annotation " + annotation);
+            }
+        }
+    }
+
+    private void readResult(DataInputStream in, CompilationResult result) throws IOException {
+        int codeSize = in.readInt();
+        byte[] code = new byte[codeSize];
+        in.readFully(code);
+        result.setTargetCode(code, codeSize);
+        result.setTotalFrameSize(in.readInt());
+        result.setHasUnsafeAccess(in.readBoolean());
+        JavaValue customStackArea = readJavaValue(in, null);
+        if (customStackArea != null) {
+            result.setCustomStackAreaOffset((StackSlot) customStackArea);
+        }
+
+        DataSectionReference[] dataReferences = new DataSectionReference[in.readInt()];
+        for (int i = 0; i < dataReferences.length; i++) {
+            dataReferences[i] = result.getDataSection().insertData(readDataItem(in));
+        }
+
+        int numDataPatches = in.readInt();
+        for (int i = 0; i < numDataPatches; i++) {
+            int pcOffset = in.readInt();
+            byte tag = in.readByte();
+            if (tag == REFERENCE_DATA_SECTION) {
+                result.recordDataPatch(pcOffset, dataReferences[in.readInt()]);
+            } else {
+                result.recordDataPatch(pcOffset, new ConstantReference((VMConstant) readConstant(in)));
+            }
+        }
+
+        int numInfopoints = in.readInt();
+        for (int i = 0; i < numInfopoints; i++) {
+            byte tag = in.readByte();
+            if (tag == CALL) {
+                HostedMethod target = readMethod(in);
+                int size = in.readInt();
+                boolean direct = in.readBoolean();
+                int pcOffset = in.readInt();
+                result.addInfopoint(new Call(target, pcOffset, size, direct, readDebugInfo(in)));
+            } else {
+                InfopointReason reason = InfopointReason.valueOf(readString(in));
+                int pcOffset = in.readInt();
+                result.addInfopoint(new Infopoint(pcOffset, readDebugInfo(in), reason));
+            }
+        }
+
+        int numExceptionHandlers = in.readInt();
+        for (int i = 0; i < numExceptionHandlers; i++) {
+            int pcOffset = in.readInt();
+            result.recordExceptionHandler(pcOffset, in.readInt());
+        }
+
+        int numMarks = in.readInt();
+        for (int i = 0; i < numMarks; i++) {
+            int pcOffset = in.readInt();
+            result.recordMark(pcOffset, readString(in));
+        }
+
+        int numAnnotations = in.readInt();
+        for (int i = 0; i < numAnnotations; i++) {
+            byte tag = in.readByte();
+            int position = in.readInt();
+            if (tag == ANNOTATION_PATCHER) {
+                int operandPosition = in.readInt();
+                int operandSize = in.readInt();
+                result.addAnnotation(new AMD64HostedPatcher(position, operandPosition, operandSize, in.readInt()));
+            } else if (tag == ANNOTATION_JUMP_TABLE) {
+                int low = in.readInt();
+                int high = in.readInt();
+                result.addAnnotation(new JumpTable(position, low, high, in.readInt()));
+            } else {
+                result.addAnnotation(new CodeComment(position, readString(in)));
+            }
+        }
+    }
+
+    private void writeDataItem(DataOutputStream out, DataSection.Data data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(data.getSize()).order(ConfigurationValues.getTarget().arch.getByteOrder());
+        List<VMConstant> patches = new ArrayList<>();
+        DataSection.emit(buffer, data, (position, constant) -> {
+            if (position != 0) {
+                throw new NotCacheableException("data item with an embedded object constant");
+            }
+            patches.add(constant);
+        });
+        if (patches.size() > 1 || (patches.size() == 1 && !(patches.get(0) instanceof JavaConstant))) {
+            throw new NotCacheableException("data item with patches " + patches);
+        }
+        out.writeInt(data.getAlignment());
+        out.writeInt(data.getSize());
+        out.write(buffer.array());
+        out.writeBoolean(!patches.isEmpty());
+        if (!patches.isEmpty()) {
+            writeConstant(out, (JavaConstant) patches.get(0));
+        }
+    }
+
+    private DataSection.Data readDataItem(DataInputStream in) throws IOException {
+        int alignment = in.readInt();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        if (in.readBoolean()) {
+            DataSection.Data data = new SubstrateDataBuilder().createDataItem(readConstant(in));
+            data.updateAlignment(alignment);
+            return data;
+        }
+        return new DataSection.RawData(bytes, alignment);
+    }
+
+    /*
+     * Debug info.
+     */
+
+    private void writeDebugInfo(DataOutputStream out, DebugInfo debugInfo) throws IOException {
+        if (debugInfo == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        out.writeByte(FRAME);
+        if (debugInfo.getCalleeSaveInfo() != null) {
+            throw new NotCacheableException("callee save info");
+        }
+        VirtualObject[] virtualObjects = debugInfo.getVirtualObjectMapping();
+        out.writeInt(virtualObjects == null ? -1 : virtualObjects.length);
+        if (virtualObjects != null) {
+            for (VirtualObject virtualObject : virtualObjects) {
+                writeType(out, (HostedType) virtualObject.getType());
+                out.writeInt(virtualObject.getId());
+                out.writeBoolean(virtualObject.isAutoBox());
+            }
+            for (VirtualObject virtualObject : virtualObjects) {
+                JavaValue[] values = virtualObject.getValues();
+                JavaKind[] slotKinds = virtualObject.getSlotKinds();
+                out.writeInt(values.length);
+                for (int i = 0; i < values.length; i++) {
+                    writeString(out, slotKinds[i].name());
+                    writeValue(out, values[i], virtualObjects);
+                }
+            }
+        }
+        writePosition(out, debugInfo.getBytecodePosition(), virtualObjects);
+
+        if (debugInfo.getReferenceMap() != null && !(debugInfo.getReferenceMap() instanceof SubstrateReferenceMap)) {
+            throw new NotCacheableException("reference map " + debugInfo.getReferenceMap());
+        }
+        SubstrateReferenceMap referenceMap = (SubstrateReferenceMap) debugInfo.getReferenceMap();
+        out.writeBoolean(referenceMap != null);
+        if (referenceMap != null) {
+            for (ReferenceMapEncoder.OffsetIterator it = referenceMap.getOffsets(); it.hasNext();) {
+                boolean compressed = it.isNextCompressed();
+                boolean derived = it.isNextDerived();
+                int offset = it.nextInt();
+                Set<Integer> derivedOffsets = derived ? it.getDerivedOffsets(offset) : Collections.emptySet();
+                out.writeBoolean(true);
+                out.writeInt(offset);
+                out.writeBoolean(compressed);
+                out.writeInt(derivedOffsets.size());
+                for (int derivedOffset : derivedOffsets) {
+                    out.writeInt(derivedOffset);
+                }
+            }
+            out.writeBoolean(false);
+        }
+    }
+
+    private DebugInfo readDebugInfo(DataInputStream in) throws IOException {
+        if (in.readByte() == NULL) {
+            return null;
+        }
+        int numVirtualObjects = in.readInt();
+        VirtualObject[] virtualObjects = null;
+        if (numVirtualObjects >= 0) {
+            virtualObjects = new VirtualObject[numVirtualObjects];
+            for (int i = 0; i < numVirtualObjects; i++) {
+                HostedType type = readType(in);
+                int id = in.readInt();
+                virtualObjects[i] = GraalServices.createVirtualObject(type, id, in.readBoolean());
+            }
+            for (VirtualObject virtualObject : virtualObjects) {
+                int length = in.readInt();
+                JavaValue[] values = new JavaValue[length];
+                JavaKind[] slotKinds = new JavaKind[length];
+                for (int i = 0; i < length; i++) {
+                    slotKinds[i] = JavaKind.valueOf(readString(in));
+                    values[i] = readJavaValue(in, virtualObjects);
+                }
+                virtualObject.setValues(values, slotKinds);
+            }
+        }
+        DebugInfo debugInfo = new DebugInfo(readPosition(in, virtualObjects), virtualObjects);
+
+        if (in.readBoolean()) {
+            SubstrateReferenceMap referenceMap = new SubstrateReferenceMap();
+            while (in.readBoolean()) {
+                int offset = in.readInt();
+                boolean compressed = in.readBoolean();
+                referenceMap.markReferenceAtOffset(offset, compressed);
+                int numDerived = in.readInt();
+                for (int i = 0; i < numDerived; i++) {
+                    referenceMap.markReferenceAtOffset(in.readInt(), offset, compressed);
+                }
+            }
+            debugInfo.setReferenceMap(referenceMap);
+        }
+        return debugInfo;
+    }
+
+    private void writePosition(DataOutputStream out, BytecodePosition position, VirtualObject[] virtualObjects) throws IOException {
+        if (position == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        if (!(position.getMethod() instanceof HostedMethod)) {
+            throw new NotCacheableException("position in " + position.getMethod());
+        }
+        if (position instanceof BytecodeFrame) {
+            BytecodeFrame frame = (BytecodeFrame) position;
+            out.writeByte(FRAME);
+            writePosition(out, frame.caller(), virtualObjects);
+            writeMethod(out, (HostedMethod) frame.getMethod());
+            out.writeInt(frame.getBCI());
+            out.writeBoolean(frame.rethrowException);
+            out.writeBoolean(frame.duringCall);
+            out.writeInt(frame.numLocals);
+            out.writeInt(frame.numStack);
+            out.writeInt(frame.numLocks);
+            for (int i = 0; i < frame.numLocals; i++) {
+                writeString(out, frame.getLocalValueKind(i).name());
+            }
+            for (int i = 0; i < frame.numStack; i++) {
+                writeString(out, frame.getStackValueKind(i).name());
+            }
+            for (JavaValue value : frame.values) {
+                writeValue(out, value, virtualObjects);
+            }
+        } else {
+            out.writeByte(POSITION);
+            writePosition(out, position.getCaller(), virtualObjects);
+            writeMethod(out, (HostedMethod) position.getMethod());
+            out.writeInt(position.getBCI());
+        }
+    }
+
+    private BytecodePosition readPosition(DataInputStream in, VirtualObject[] virtualObjects) throws IOException {
+        byte tag = in.readByte();
+        if (tag == NULL) {
+            return null;
+        }
+        BytecodePosition caller = readPosition(in, virtualObjects);
+        HostedMethod method = readMethod(in);
+        int bci = in.readInt();
+        if (tag == POSITION) {
+            return new BytecodePosition(caller, method, bci);
+        }
+        boolean rethrowException = in.readBoolean();
+        boolean duringCall = in.readBoolean();
+        int numLocals = in.readInt();
+        int numStack = in.readInt();
+        int numLocks = in.readInt();
+        JavaKind[] slotKinds = new JavaKind[numLocals + numStack];
+        for (int i = 0; i < slotKinds.length; i++) {
+            slotKinds[i] = JavaKind.valueOf(readString(in));
+        }
+        JavaValue[] values = new JavaValue[numLocals + numStack + numLocks];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readJavaValue(in, virtualObjects);
+        }
+        return new BytecodeFrame((BytecodeFrame) caller, method, bci, rethrowException, duringCall, values, slotKinds, numLocals, numStack, numLocks);
+    }
+
+    private void writeValue(DataOutputStream out, JavaValue value, VirtualObject[] virtualObjects) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof VirtualObject) {
+            int index = virtualObjects == null ? -1 : Arrays.asList(virtualObjects).indexOf(value);
+            if (index < 0) {
+                throw new NotCacheableException("unmapped virtual object " + value);
+            }
+            out.writeByte(VALUE_VIRTUAL_OBJECT);
+            out.writeInt(index);
+        } else if (value instanceof StackLockValue) {
+            StackLockValue lock = (StackLockValue) value;
+            out.writeByte(VALUE_STACK_LOCK);
+            writeValue(out, lock.getOwner(), virtualObjects);
+            writeValue(out, lock.getSlot(), virtualObjects);
+            out.writeBoolean(lock.isEliminated());
+        } else if (value instanceof JavaConstant) {
+            out.writeByte(VALUE_CONSTANT);
+            writeConstant(out, (JavaConstant) value);
+        } else if (value == Value.ILLEGAL) {
+            out.writeByte(VALUE_ILLEGAL);
+        } else if (value instanceof StackSlot) {
+            StackSlot slot = (StackSlot) value;
+            out.writeByte(VALUE_STACK_SLOT);
+            writeKind(out, slot.getValueKind());
+            out.writeInt(slot.getRawOffset());
+            out.writeBoolean(slot.getRawAddFrameSize());
+        } else if (value instanceof RegisterValue) {
+            RegisterValue register = (RegisterValue) value;
+            out.writeByte(VALUE_REGISTER);
+            writeKind(out, register.getValueKind());
+            writeString(out, register.getRegister().name);
+        } else {
+            throw new NotCacheableException("value " + value);
+        }
+    }
+
+    private JavaValue readJavaValue(DataInputStream in, VirtualObject[] virtualObjects) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case VALUE_VIRTUAL_OBJECT:
+                return virtualObjects[in.readInt()];
+            case VALUE_STACK_LOCK:
+                JavaValue owner = readJavaValue(in, virtualObjects);
+                AllocatableValue slot = (AllocatableValue) readJavaValue(in, virtualObjects);
+                return new StackLockValue(owner, slot, in.readBoolean());
+            case VALUE_CONSTANT:
+                return readConstant(in);
+            case VALUE_ILLEGAL:
+                return Value.ILLEGAL;
+            case VALUE_STACK_SLOT:
+                LIRKind slotKind = readKind(in);
+                int offset = in.readInt();
+                return StackSlot.get(slotKind, offset, in.readBoolean());
+            case VALUE_REGISTER:
+                LIRKind registerKind = readKind(in);
+                return lookupTables().lookup(lookupTables().registers, readString(in)).asValue(registerKind);
+            default:
+                throw new NotCacheableException("unknown value tag " + tag);
+        }
+    }
+
+    private static void writeKind(DataOutputStream out, ValueKind<?> valueKind) throws IOException {
+        if (!(valueKind instanceof LIRKind) || !(valueKind.getPlatformKind() instanceof AMD64Kind)) {
+            throw new NotCacheableException("value kind " + valueKind);
+        }
+        LIRKind kind = (LIRKind) valueKind;
+        if (kind.isDerivedReference() || kind.getPlatformKind().getVectorLength() > 1) {
+            throw new NotCacheableException("value kind " + valueKind);
+        }
+        writeString(out, ((AMD64Kind) kind.getPlatformKind()).name());
+        if (kind.isUnknownReference()) {
+            out.writeByte(KIND_UNKNOWN_REFERENCE);
+        } else if (kind.isValue()) {
+            out.writeByte(KIND_VALUE);
+        } else if (kind.isCompressedReference(0)) {
+            out.writeByte(KIND_COMPRESSED_REFERENCE);
+        } else {
+            out.writeByte(KIND_REFERENCE);
+        }
+    }
+
+    private static LIRKind readKind(DataInputStream in) throws IOException {
+        AMD64Kind platformKind = AMD64Kind.valueOf(readString(in));
+        byte tag = in.readByte();
+        switch (tag) {
+            case KIND_VALUE:
+                return LIRKind.value(platformKind);
+            case KIND_REFERENCE:
+                return LIRKind.reference(platformKind);
+            case KIND_COMPRESSED_REFERENCE:
+                return LIRKind.compressedReference(platformKind);
+            case KIND_UNKNOWN_REFERENCE:
+                return LIRKind.unknownReference(platformKind);
+            default:
+                throw new NotCacheableException("unknown kind tag " + tag);
+        }
+    }
+
+    /*
+     * Constants and elements.
+     */
+
+    private void writeConstant(DataOutputStream out, JavaConstant constant) throws IOException {
+        JavaKind kind = constant.getJavaKind();
+        if (kind != JavaKind.Object) {
+            out.writeByte(CONSTANT_PRIMITIVE);
+            writeString(out, kind.name());
+            out.writeLong(rawBits(constant));
+            return;
+        }
+        if (!(constant instanceof SubstrateObjectConstant) && !constant.isNull()) {
+            throw new NotCacheableException("constant " + constant);
+        }
+        boolean compressed = SubstrateObjectConstant.isCompressed(constant);
+        if (constant.isNull()) {
+            out.writeByte(CONSTANT_NULL);
+            out.writeBoolean(compressed);
+            return;
+        }
+        Object object = SubstrateObjectConstant.asObject(constant);
+        if (object instanceof DynamicHub) {
+            out.writeByte(CONSTANT_HUB);
+            out.writeBoolean(compressed);
+            HostedType type = lookupTables().hubs.get(object);
+            if (type == null) {
+                throw new NotCacheableException("hub without a type " + object);
+            }
+            writeType(out, type);
+        } else if (object instanceof String && object == ((String) object).intern()) {
+            out.writeByte(CONSTANT_STRING);
+            out.writeBoolean(compressed);
+            writeString(out, (String) object);
+        } else if (object == StaticFieldsSupport.getStaticObjectFields()) {
+            out.writeByte(CONSTANT_STATIC_OBJECT_FIELDS);
+            out.writeBoolean(compressed);
+        } else if (object == StaticFieldsSupport.getStaticPrimitiveFields()) {
+            out.writeByte(CONSTANT_STATIC_PRIMITIVE_FIELDS);
+            out.writeBoolean(compressed);
+        } else {
+            throw new NotCacheableException("object constant of type " + object.getClass().getName());
+        }
+    }
+
+    private JavaConstant readConstant(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        if (tag == CONSTANT_PRIMITIVE) {
+            JavaKind kind = JavaKind.valueOf(readString(in));
+            return primitiveConstant(kind, in.readLong());
+        }
+        boolean compressed = in.readBoolean();
+        Object object;
+        switch (tag) {
+            case CONSTANT_NULL:
+                object = null;
+                break;
+            case CONSTANT_HUB:
+                object = readType(in).getHub();
+                break;
+            case CONSTANT_STRING:
+                object = readString(in).intern();
+                break;
+            case CONSTANT_STATIC_OBJECT_FIELDS:
+                object = StaticFieldsSupport.getStaticObjectFields();
+                break;
+            case CONSTANT_STATIC_PRIMITIVE_FIELDS:
+                object = StaticFieldsSupport.getStaticPrimitiveFields();
+                break;
+            default:
+                throw new NotCacheableException("unknown constant tag " + tag);
+        }
+        return SubstrateObjectConstant.forObject(object, compressed);
+    }
+
+    private static long rawBits(JavaConstant constant) {
+        switch (constant.getJavaKind()) {
+            case Illegal:
+                return 0;
+            case Boolean:
+                return constant.asBoolean() ? 1 : 0;
+            case Float:
+                return Float.floatToRawIntBits(constant.asFloat());
+            case Double:
+                return Double.doubleToRawLongBits(constant.asDouble());
+            default:
+                return constant.asLong();
+        }
+    }
+
+    private static JavaConstant primitiveConstant(JavaKind kind, long bits) {
+        switch (kind) {
+            case Illegal:
+                return JavaConstant.forIllegal();
+            case Boolean:
+                return JavaConstant.forBoolean(bits != 0);
+            case Byte:
+                return JavaConstant.forByte((byte) bits);
+            case Short:
+                return JavaConstant.forShort((short) bits);
+            case Char:
+                return JavaConstant.forChar((char) bits);
+            case Int:
+                return JavaConstant.forInt((int) bits);
+            case Long:
+                return JavaConstant.forLong(bits);
+            case Float:
+                return JavaConstant.forFloat(Float.intBitsToFloat((int) bits));
+            case Double:
+                return JavaConstant.forDouble(Double.longBitsToDouble(bits));
+            default:
+                throw new NotCacheableException("constant of kind " + kind);
+        }
+    }
+
+    private void writeType(DataOutputStream out, HostedType type) throws IOException {
+        writeString(out, lookupTables().name(type));
+    }
+
+    private HostedType readType(DataInputStream in) throws IOException {
+        return lookupTables().lookup(lookupTables().types, readString(in));
+    }
+
+    private void writeMethod(DataOutputStream out, HostedMethod method) throws IOException {
+        writeString(out, method == null ? "" : lookupTables().name(method));
+    }
+
+    private HostedMethod readMethod(DataInputStream in) throws IOException {
+        String descriptor = readString(in);
+        return descriptor.isEmpty() ? null : lookupTables().lookup(lookupTables().methods, descriptor);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
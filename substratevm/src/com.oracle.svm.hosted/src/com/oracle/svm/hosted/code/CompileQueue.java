@@ -132,6 +132,7 @@ import com.oracle.svm.core.graal.phases.DeadStoreRemovalPhase;
 import com.oracle.svm.core.graal.snippets.DeoptTester;
 import com.oracle.svm.core.graal.stackvalue.StackValueNode;
 import com.oracle.svm.core.heap.RestrictHeapAccessCallees;
+import com.oracle.svm.core.pgo.MethodProfile;
 import com.oracle.svm.core.util.InterruptImageBuilding;
 import com.oracle.svm.core.util.VMError;
 import com.oracle.svm.hosted.FeatureHandler;
@@ -139,6 +140,7 @@ import com.oracle.svm.hosted.NativeImageGenerator;
 import com.oracle.svm.hosted.NativeImageOptions;
 import com.oracle.svm.hosted.meta.HostedMethod;
 import com.oracle.svm.hosted.meta.HostedUniverse;
+import com.oracle.svm.hosted.pgo.ProfiledAnalysisResults;
 import com.oracle.svm.hosted.phases.DevirtualizeCallsPhase;
 import com.oracle.svm.hosted.phases.HostedGraphBuilderPhase;
 import com.oracle.svm.hosted.phases.StrengthenStampsPhase;
@@ -173,6 +175,7 @@ public class CompileQueue {
     private LIRSuites regularLIRSuites = null;
     private LIRSuites deoptTargetLIRSuites = null;
     private final ConcurrentMap<Constant, DataSection.Data> dataCache;
+    private final CompilationResultCache compilationResultCache;
 
     private SnippetReflectionProvider snippetReflection;
     private final FeatureHandler featureHandler;
@@ -319,7 +322,12 @@ public class CompileQueue {
         this.compilations = new ConcurrentHashMap<>();
         this.runtimeConfig = runtimeConfigBuilder.getRuntimeConfig();
         this.deoptimizeAll = deoptimizeAll;
-        this.dataCache = new ConcurrentHashMap<>();
+        this.compilationResultCache = CompilationResultCache.create(universe);
+        /*
+         * Data items shared between compilations cannot be restored from the compilation result
+         * cache, so every compilation gets its own data items when the cache is used.
+         */
+        this.dataCache = compilationResultCache == null ? new ConcurrentHashMap<>() : null;
         this.executor = new CompletionExecutor(universe.getBigBang(), executorService, universe.getBigBang().getHeartbeatCallback());
         this.featureHandler = featureHandler;
         this.snippetReflection = snippetReflection;
@@ -369,6 +377,9 @@ public class CompileQueue {
         if (NativeImageOptions.PrintMethodHistogram.getValue()) {
             printMethodHistogram();
         }
+        if (compilationResultCache != null) {
+            compilationResultCache.report();
+        }
     }
 
     private boolean suitesNotCreated() {
@@ -632,9 +643,26 @@ public class CompileQueue {
         if (callee.compilationInfo.isTrivialMethod()) {
             return true;
         }
+        if (isHotMethod(callee)) {
+            return true;
+        }
         return false;
     }
 
+    /**
+     * Methods that were invoked frequently in an instrumented image are inlined like trivial
+     * methods, as long as they are still small.
+     */
+    private static boolean isHotMethod(HostedMethod callee) {
+        if (!(callee.getProfilingInfo() instanceof ProfiledAnalysisResults) || callee.getAnnotation(Uninterruptible.class) != null || mustNotAllocate(callee)) {
+            return false;
+        }
+        long invocationCount = ((ProfiledAnalysisResults) callee.getProfilingInfo()).getInvocationCount();
+        StructuredGraph graph = callee.compilationInfo.getGraph();
+        return invocationCount >= MethodProfile.Options.HotMethodInvocationThreshold.getValue() && graph != null &&
+                        graph.getNodeCount() <= MethodProfile.Options.MaxNodesInHotInlinedMethod.getValue();
+    }
+
     private static boolean mustNotAllocateCallee(HostedMethod method) {
         return ImageSingletons.lookup(RestrictHeapAccessCallees.class).mustNotAllocate(method);
     }
@@ -932,8 +960,9 @@ public class CompileQueue {
         @Override
         public CompilationResultBuilder createBuilder(CodeCacheProvider codeCache, ForeignCallsProvider foreignCalls, FrameMap frameMap, Assembler asm, DataBuilder dataBuilder,
                         FrameContext frameContext, OptionValues options, DebugContext debug, CompilationResult compilationResult, Register uncompressedNullRegister) {
+            EconomicMap<Constant, DataSection.Data> dataItems = dataCache != null ? EconomicMap.wrapMap(dataCache) : EconomicMap.create();
             return new CompilationResultBuilder(codeCache, foreignCalls, frameMap, asm, dataBuilder, frameContext, options, debug, compilationResult, uncompressedNullRegister,
-                            EconomicMap.wrapMap(dataCache));
+                            dataItems);
         }
     }
 
@@ -974,6 +1003,20 @@ public class CompileQueue {
                                 .filter(invoke -> method.compilationInfo.isDeoptEntry(invoke.bci(), true, false))
                                 .count();
 
+                byte[] cacheKey = null;
+                CompilationResult cached = null;
+                if (compilationResultCache != null && !method.compilationInfo.isDeoptTarget()) {
+                    cacheKey = compilationResultCache.computeKey(method, graph);
+                    if (cacheKey != null) {
+                        cached = compilationResultCache.lookup(method, cacheKey, backend, compilationIdentifier);
+                        if (cached != null && !NativeImageOptions.VerifyCompilationCache.getValue()) {
+                            method.compilationInfo.numNodesAfterCompilation = graph.getNodeCount();
+                            ensureCalleesCompiled(method, reason, cached);
+                            return cached;
+                        }
+                    }
+                }
+
                 Suites suites = method.compilationInfo.isDeoptTarget() ? deoptTargetSuites : regularSuites;
                 LIRSuites lirSuites = method.compilationInfo.isDeoptTarget() ? deoptTargetLIRSuites : regularLIRSuites;
 
@@ -989,25 +1032,18 @@ public class CompileQueue {
                 if (method.compilationInfo.isDeoptTarget()) {
                     assert verifyDeoptTarget(method, result);
                 }
-                for (Infopoint infopoint : result.getInfopoints()) {
-                    if (infopoint instanceof Call) {
-                        Call call = (Call) infopoint;
-                        HostedMethod callTarget = (HostedMethod) call.target;
-                        if (call.direct) {
-                            ensureCompiled(callTarget, new DirectCallReason(method, reason));
-                        } else if (callTarget != null && callTarget.getImplementations() != null) {
-                            for (HostedMethod impl : callTarget.getImplementations()) {
-                                ensureCompiled(impl, new VirtualCallReason(method, callTarget, reason));
-                            }
-                        }
-                    }
-                }
+                ensureCalleesCompiled(method, reason, result);
 
                 /* Shrink resulting code array to minimum size, to reduze memory footprint. */
                 if (result.getTargetCode().length > result.getTargetCodeSize()) {
                     result.setTargetCode(Arrays.copyOf(result.getTargetCode(), result.getTargetCodeSize()), result.getTargetCodeSize());
                 }
 
+                if (cached != null) {
+                    compilationResultCache.verifyHit(method, cached, result);
+                } else if (cacheKey != null) {
+                    compilationResultCache.store(cacheKey, method.compilationInfo.graph, result);
+                }
                 return result;
             }
         } catch (Throwable ex) {
@@ -1017,6 +1053,22 @@ public class CompileQueue {
         }
     }
 
+    private void ensureCalleesCompiled(HostedMethod method, CompileReason reason, CompilationResult result) {
+        for (Infopoint infopoint : result.getInfopoints()) {
+            if (infopoint instanceof Call) {
+                Call call = (Call) infopoint;
+                HostedMethod callTarget = (HostedMethod) call.target;
+                if (call.direct) {
+                    ensureCompiled(callTarget, new DirectCallReason(method, reason));
+                } else if (callTarget != null && callTarget.getImplementations() != null) {
+                    for (HostedMethod impl : callTarget.getImplementations()) {
+                        ensureCompiled(impl, new VirtualCallReason(method, callTarget, reason));
+                    }
+                }
+            }
+        }
+    }
+
     protected void removeDeoptTargetOptimizations(Suites suites) {
         GraalConfiguration.instance().removeDeoptTargetOptimizations(suites);
 
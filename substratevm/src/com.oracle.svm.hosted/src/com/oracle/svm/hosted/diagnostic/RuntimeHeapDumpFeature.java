@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.diagnostic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.nativeimage.ImageSingletons;
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.nativeimage.impl.HeapDumpSupport;
+
+import com.oracle.svm.core.VMInspection;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.heapdump.HProfType;
+import com.oracle.svm.core.heapdump.HeapDumpFileSupport;
+import com.oracle.svm.core.heapdump.HeapDumpSupportImpl;
+import com.oracle.svm.hosted.FeatureImpl.BeforeCompilationAccessImpl;
+import com.oracle.svm.hosted.meta.HostedField;
+import com.oracle.svm.hosted.meta.HostedType;
+
+import jdk.vm.ci.meta.ResolvedJavaField;
+
+/**
+ * Enables {@link org.graalvm.nativeimage.VMRuntime#dumpHeap} when VM inspection is enabled, and
+ * encodes the field layout of all types for the heap dump writer.
+ */
+@AutomaticFeature
+public class RuntimeHeapDumpFeature implements Feature {
+
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return VMInspection.isEnabled();
+    }
+
+    @Override
+    public void duringSetup(DuringSetupAccess access) {
+        /* Heap dumps need platform support for writing the file without allocating. */
+        if (ImageSingletons.contains(HeapDumpFileSupport.class)) {
+            ImageSingletons.add(HeapDumpSupport.class, new HeapDumpSupportImpl());
+        }
+    }
+
+    @Override
+    public void beforeCompilation(BeforeCompilationAccess access) {
+        if (!ImageSingletons.contains(HeapDumpSupport.class)) {
+            return;
+        }
+        BeforeCompilationAccessImpl config = (BeforeCompilationAccessImpl) access;
+
+        int numTypeIDs = 0;
+        for (HostedType type : config.getUniverse().getTypes()) {
+            numTypeIDs = Math.max(numTypeIDs, type.getTypeID() + 1);
+        }
+        HostedType[] typesByID = new HostedType[numTypeIDs];
+        for (HostedType type : config.getUniverse().getTypes()) {
+            typesByID[type.getTypeID()] = type;
+        }
+
+        Map<String, Integer> nameIndices = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<Integer> fieldData = new ArrayList<>();
+        int[] instanceFieldStarts = new int[numTypeIDs + 1];
+        int[] staticFieldStarts = new int[numTypeIDs + 1];
+        int[] instanceSizes = new int[numTypeIDs];
+
+        for (int typeID = 0; typeID < numTypeIDs; typeID++) {
+            instanceFieldStarts[typeID] = fieldData.size() / HeapDumpSupportImpl.FIELD_ENTRY_SIZE;
+            HostedType type = typesByID[typeID];
+            if (type != null) {
+                addFields(type.getInstanceFields(false), fieldData, nameIndices, names);
+                for (HostedField field : type.getInstanceFields(true)) {
+                    if (field.hasLocation()) {
+                        instanceSizes[typeID] += HProfType.sizeOf(HProfType.fromJavaKind(field.getStorageKind()));
+                    }
+                }
+            }
+        }
+        instanceFieldStarts[numTypeIDs] = fieldData.size() / HeapDumpSupportImpl.FIELD_ENTRY_SIZE;
+
+        for (int typeID = 0; typeID < numTypeIDs; typeID++) {
+            staticFieldStarts[typeID] = fieldData.size() / HeapDumpSupportImpl.FIELD_ENTRY_SIZE;
+            HostedType type = typesByID[typeID];
+            if (type != null) {
+                addFields(type.getStaticFields(), fieldData, nameIndices, names);
+            }
+        }
+        staticFieldStarts[numTypeIDs] = fieldData.size() / HeapDumpSupportImpl.FIELD_ENTRY_SIZE;
+
+        int[] encodedFieldData = new int[fieldData.size()];
+        for (int i = 0; i < encodedFieldData.length; i++) {
+            encodedFieldData[i] = fieldData.get(i);
+        }
+        HeapDumpSupportImpl.singleton().setData(instanceFieldStarts, staticFieldStarts, instanceSizes, encodedFieldData, names.toArray(new String[names.size()]));
+    }
+
+    private static void addFields(ResolvedJavaField[] fields, List<Integer> fieldData, Map<String, Integer> nameIndices, List<String> names) {
+        for (ResolvedJavaField f : fields) {
+            HostedField field = (HostedField) f;
+            if (!field.hasLocation()) {
+                /* Fields that are never read or written, or static fields that are constant. */
+                continue;
+            }
+            fieldData.add(nameIndices.computeIfAbsent(field.getName(), name -> {
+                names.add(name);
+                return names.size() - 1;
+            }));
+            fieldData.add(HProfType.fromJavaKind(field.getStorageKind()));
+            fieldData.add(field.getLocation());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.pgo;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.oracle.graal.pointsto.BigBang;
+import com.oracle.graal.pointsto.meta.AnalysisMethod;
+import com.oracle.graal.pointsto.results.StaticAnalysisResults;
+import com.oracle.graal.pointsto.results.StaticAnalysisResults.BytecodeEntry;
+import com.oracle.graal.pointsto.results.StaticAnalysisResultsBuilder;
+import com.oracle.svm.core.pgo.MethodProfile;
+import com.oracle.svm.hosted.meta.HostedUniverse;
+import com.oracle.svm.hosted.pgo.RecordedProfiles.RecordedMethod;
+
+import jdk.vm.ci.meta.JavaMethodProfile;
+import jdk.vm.ci.meta.JavaTypeProfile;
+import jdk.vm.ci.meta.JavaTypeProfile.ProfiledType;
+
+/**
+ * Combines the static analysis results with the profiles recorded by an instrumented image, see
+ * {@link MethodProfile.Options#UseProfiles}.
+ *
+ * The type profiles of the static analysis are exact, i.e., they contain all types that can reach
+ * a bytecode, and optimizations such as devirtualization rely on that. Recorded receiver types
+ * therefore only change the probabilities of the types in a static type profile, never the set of
+ * types. A profile is ignored if the bytecode of the method changed since it was recorded.
+ */
+public class ProfileGuidedResultsBuilder extends StaticAnalysisResultsBuilder {
+
+    /** Marks methods in {@link #matchedMethods} that have no usable recorded profile. */
+    private static final RecordedMethod NOT_RECORDED = new RecordedMethod(0, 0);
+
+    private final RecordedProfiles profiles;
+    private final Map<AnalysisMethod, RecordedMethod> matchedMethods = new ConcurrentHashMap<>();
+
+    public ProfileGuidedResultsBuilder(BigBang bb, HostedUniverse converter) {
+        super(bb, converter);
+        this.profiles = RecordedProfiles.load(Paths.get(MethodProfile.Options.UseProfiles.getValue()));
+    }
+
+    private RecordedMethod lookupRecorded(AnalysisMethod method) {
+        RecordedMethod result = matchedMethods.computeIfAbsent(method, m -> {
+            RecordedMethod recorded = profiles.get(m.format("%H.%n(%P)%R"));
+            if (recorded == null || m.getCode() == null || recorded.codeHash != Arrays.hashCode(m.getCode())) {
+                return NOT_RECORDED;
+            }
+            return recorded;
+        });
+        return result == NOT_RECORDED ? null : result;
+    }
+
+    @Override
+    protected BytecodeEntry createBytecodeEntry(AnalysisMethod method, int bci, JavaTypeProfile typeProfile, JavaMethodProfile methodProfile, JavaTypeProfile invokeResultTypeProfile) {
+        JavaTypeProfile weightedTypeProfile = typeProfile;
+        RecordedMethod recorded = lookupRecorded(method);
+        if (typeProfile != null && recorded != null) {
+            Map<String, Long> receivers = recorded.receivers.get(bci);
+            if (receivers != null) {
+                weightedTypeProfile = weightTypeProfile(typeProfile, receivers);
+            }
+        }
+        return super.createBytecodeEntry(method, bci, weightedTypeProfile, methodProfile, invokeResultTypeProfile);
+    }
+
+    private static JavaTypeProfile weightTypeProfile(JavaTypeProfile typeProfile, Map<String, Long> receivers) {
+        ProfiledType[] types = typeProfile.getTypes();
+        if (types.length < 2) {
+            return typeProfile;
+        }
+        long[] counts = new long[types.length];
+        long total = 0;
+        for (int i = 0; i < types.length; i++) {
+            counts[i] = receivers.getOrDefault(types[i].getType().toClassName(), 0L);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return typeProfile;
+        }
+        ProfiledType[] weightedTypes = new ProfiledType[types.length];
+        for (int i = 0; i < types.length; i++) {
+            weightedTypes[i] = new ProfiledType(types[i].getType(), (double) counts[i] / total);
+        }
+        /* Like the profiles collected by a JIT, the most frequent type comes first. */
+        Arrays.sort(weightedTypes, (a, b) -> Double.compare(b.getProbability(), a.getProbability()));
+        return new JavaTypeProfile(typeProfile.getNullSeen(), typeProfile.getNotRecordedProbability(), weightedTypes);
+    }
+
+    @Override
+    protected StaticAnalysisResults createStaticAnalysisResults(AnalysisMethod method, JavaTypeProfile[] parameterTypeProfiles, JavaTypeProfile resultTypeProfile, BytecodeEntry first) {
+        RecordedMethod recorded = lookupRecorded(method);
+        if (recorded == null) {
+            return super.createStaticAnalysisResults(method, parameterTypeProfiles, resultTypeProfile, first);
+        }
+        return new ProfiledAnalysisResults(method.getCodeSize(), parameterTypeProfiles, resultTypeProfile, first, recorded);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.pgo;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.graalvm.compiler.nodes.extended.BranchProbabilityNode;
+
+import com.oracle.graal.pointsto.results.StaticAnalysisResults;
+import com.oracle.svm.hosted.pgo.RecordedProfiles.RecordedMethod;
+
+import jdk.vm.ci.meta.JavaTypeProfile;
+
+/**
+ * Static analysis results of a method, extended with the branch probabilities and the invocation
+ * count recorded by an instrumented image.
+ */
+public final class ProfiledAnalysisResults extends StaticAnalysisResults {
+
+    private final long invocationCount;
+    private final int[] branchBcis;
+    private final long[] notTakenCounts;
+    private final long[] takenCounts;
+
+    ProfiledAnalysisResults(int codeSize, JavaTypeProfile[] parameterTypeProfiles, JavaTypeProfile resultTypeProfile, BytecodeEntry first, RecordedMethod recorded) {
+        super(codeSize, parameterTypeProfiles, resultTypeProfile, first);
+        this.invocationCount = recorded.invocations;
+        this.branchBcis = new int[recorded.branches.size()];
+        this.notTakenCounts = new long[branchBcis.length];
+        this.takenCounts = new long[branchBcis.length];
+        int i = 0;
+        for (Map.Entry<Integer, long[]> entry : recorded.branches.entrySet()) {
+            branchBcis[i] = entry.getKey();
+            notTakenCounts[i] = entry.getValue()[0];
+            takenCounts[i] = entry.getValue()[1];
+            i++;
+        }
+    }
+
+    /** The number of times the method was invoked in the instrumented image. */
+    public long getInvocationCount() {
+        return invocationCount;
+    }
+
+    @Override
+    public double getBranchTakenProbability(int bci) {
+        int index = Arrays.binarySearch(branchBcis, bci);
+        if (index < 0) {
+            return super.getBranchTakenProbability(bci);
+        }
+        double probability = (double) takenCounts[index] / (takenCounts[index] + notTakenCounts[index]);
+        /*
+         * A probability of 0 or 1 would make the bytecode parser replace the branch that was never
+         * taken with a deoptimization, but AOT compiled code must handle all paths.
+         */
+        return Math.min(Math.max(probability, BranchProbabilityNode.LUDICROUSLY_SLOW_PATH_PROBABILITY), BranchProbabilityNode.LUDICROUSLY_FAST_PATH_PROBABILITY);
+    }
+
+    @Override
+    public int getExecutionCount(int bci) {
+        int index = Arrays.binarySearch(branchBcis, bci);
+        if (index < 0) {
+            return super.getExecutionCount(bci);
+        }
+        return (int) Math.min(takenCounts[index] + notTakenCounts[index], Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.pgo;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.graalvm.compiler.api.replacements.SnippetReflectionProvider;
+import org.graalvm.compiler.bytecode.BytecodeStream;
+import org.graalvm.compiler.bytecode.Bytecodes;
+import org.graalvm.compiler.core.common.spi.ForeignCallsProvider;
+import org.graalvm.compiler.nodes.ConstantNode;
+import org.graalvm.compiler.nodes.FrameState;
+import org.graalvm.compiler.nodes.LogicNode;
+import org.graalvm.compiler.nodes.NodeView;
+import org.graalvm.compiler.nodes.ValueNode;
+import org.graalvm.compiler.nodes.calc.AddNode;
+import org.graalvm.compiler.nodes.calc.ConditionalNode;
+import org.graalvm.compiler.nodes.extended.ForeignCallNode;
+import org.graalvm.compiler.nodes.graphbuilderconf.GraphBuilderConfiguration.Plugins;
+import org.graalvm.compiler.nodes.graphbuilderconf.GraphBuilderContext;
+import org.graalvm.compiler.nodes.graphbuilderconf.NodePlugin;
+import org.graalvm.compiler.nodes.graphbuilderconf.ProfilingPlugin;
+import org.graalvm.compiler.nodes.java.LoadIndexedNode;
+import org.graalvm.compiler.nodes.java.StoreIndexedNode;
+import org.graalvm.compiler.phases.util.Providers;
+import org.graalvm.nativeimage.ImageSingletons;
+
+import com.oracle.graal.pointsto.meta.AnalysisMethod;
+import com.oracle.svm.core.ImageProfiles;
+import com.oracle.svm.core.annotate.AutomaticFeature;
+import com.oracle.svm.core.annotate.Uninterruptible;
+import com.oracle.svm.core.graal.GraalFeature;
+import com.oracle.svm.core.graal.meta.RuntimeConfiguration;
+import com.oracle.svm.core.graal.meta.SubstrateForeignCallLinkage;
+import com.oracle.svm.core.heap.RestrictHeapAccessCallees;
+import com.oracle.svm.core.meta.SubstrateObjectConstant;
+import com.oracle.svm.core.pgo.InstrumentationProfiles;
+import com.oracle.svm.core.pgo.MethodProfile;
+import com.oracle.svm.core.snippets.SnippetRuntime.SubstrateForeignCallDescriptor;
+import com.oracle.svm.hosted.FeatureImpl.BeforeAnalysisAccessImpl;
+import com.oracle.svm.hosted.meta.HostedMethod;
+
+import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+
+/**
+ * Inserts the code that collects the {@link MethodProfile} of a method when the method is parsed
+ * for compilation: an invocation counter at the method start, a not-taken and a taken counter for
+ * each conditional branch, and a call that records the receiver type before each virtual and
+ * interface call. The instrumentation is only inserted for AOT compilation, so the static analysis
+ * and runtime compilation are not affected.
+ */
+final class ProfilingInstrumentationPlugin implements ProfilingPlugin, NodePlugin {
+
+    private static final String PGO_PACKAGE_PREFIX = MethodProfile.class.getPackage().getName() + ".";
+
+    private final ForeignCallsProvider foreignCalls;
+    private final Map<ResolvedJavaMethod, MethodProfile> profiles = new ConcurrentHashMap<>();
+
+    ProfilingInstrumentationPlugin(ForeignCallsProvider foreignCalls) {
+        this.foreignCalls = foreignCalls;
+    }
+
+    @Override
+    public boolean shouldProfile(GraphBuilderContext builder, ResolvedJavaMethod method) {
+        if (builder.parsingIntrinsic() || !(method instanceof HostedMethod) || method.getCode() == null) {
+            return false;
+        }
+        HostedMethod hMethod = (HostedMethod) method;
+        if (hMethod.compilationInfo.isDeoptTarget()) {
+            /* Deoptimization target frames must match the frames of the original method. */
+            return false;
+        }
+        if (hMethod.getAnnotation(Uninterruptible.class) != null || ImageSingletons.lookup(RestrictHeapAccessCallees.class).mustNotAllocate(hMethod)) {
+            return false;
+        }
+        return !hMethod.getDeclaringClass().toJavaName(true).startsWith(PGO_PACKAGE_PREFIX);
+    }
+
+    private MethodProfile getProfile(ResolvedJavaMethod method) {
+        return profiles.computeIfAbsent(method, ProfilingInstrumentationPlugin::createProfile);
+    }
+
+    private static MethodProfile createProfile(ResolvedJavaMethod method) {
+        byte[] code = method.getCode();
+        int[] branchBcis = new int[code.length];
+        int[] receiverBcis = new int[code.length];
+        int numBranches = 0;
+        int numReceivers = 0;
+        BytecodeStream stream = new BytecodeStream(code);
+        while (stream.currentBC() != Bytecodes.END) {
+            if (isConditionalBranch(stream.currentBC())) {
+                branchBcis[numBranches++] = stream.currentBCI();
+            } else if (stream.currentBC() == Bytecodes.INVOKEVIRTUAL || stream.currentBC() == Bytecodes.INVOKEINTERFACE) {
+                receiverBcis[numReceivers++] = stream.currentBCI();
+            }
+            stream.next();
+        }
+        return MethodProfile.lookup(method.format("%H.%n(%P)%R"), Arrays.hashCode(code), Arrays.copyOf(branchBcis, numBranches), Arrays.copyOf(receiverBcis, numReceivers));
+    }
+
+    private static boolean isConditionalBranch(int opcode) {
+        return (opcode >= Bytecodes.IFEQ && opcode <= Bytecodes.IF_ACMPNE) || opcode == Bytecodes.IFNULL || opcode == Bytecodes.IFNONNULL;
+    }
+
+    @Override
+    public void profileInvoke(GraphBuilderContext builder, ResolvedJavaMethod method, FrameState frameState) {
+        MethodProfile profile = getProfile(method);
+        increment(builder, profile, ConstantNode.forInt(MethodProfile.invocationCounterIndex()), frameState);
+    }
+
+    @Override
+    public void profileGoto(GraphBuilderContext builder, ResolvedJavaMethod method, int bci, int targetBci, FrameState frameState) {
+        /*
+         * Only called for branches that are known to go one way, which does not happen in AOT
+         * compiled code since the static analysis results have no branch probabilities.
+         */
+    }
+
+    @Override
+    public void profileIf(GraphBuilderContext builder, ResolvedJavaMethod method, int bci, LogicNode condition, int trueBranchBci, int falseBranchBci, FrameState frameState) {
+        MethodProfile profile = getProfile(method);
+        int branch = Arrays.binarySearch(profile.getBranchBcis(), bci);
+        if (branch < 0) {
+            return;
+        }
+        BytecodeStream stream = new BytecodeStream(method.getCode());
+        stream.setBCI(bci);
+        int takenBci = stream.readBranchDest();
+        /*
+         * The parser can swap the successors when it simplifies the condition, so the taken
+         * branch is identified by its target.
+         */
+        boolean conditionMeansTaken;
+        if (trueBranchBci == takenBci && falseBranchBci != takenBci) {
+            conditionMeansTaken = true;
+        } else if (falseBranchBci == takenBci && trueBranchBci != takenBci) {
+            conditionMeansTaken = false;
+        } else {
+            return;
+        }
+        int notTakenIndex = MethodProfile.branchCounterIndex(branch);
+        ValueNode trueIndex = builder.append(ConstantNode.forInt(conditionMeansTaken ? notTakenIndex + 1 : notTakenIndex));
+        ValueNode falseIndex = builder.append(ConstantNode.forInt(conditionMeansTaken ? notTakenIndex : notTakenIndex + 1));
+        ValueNode index = builder.append(new ConditionalNode(condition, trueIndex, falseIndex));
+        increment(builder, profile, index, frameState);
+    }
+
+    private static void increment(GraphBuilderContext builder, MethodProfile profile, ValueNode index, FrameState frameState) {
+        ValueNode counters = ConstantNode.forConstant(SubstrateObjectConstant.forObject(profile.getCounters()), builder.getMetaAccess(), builder.getGraph());
+        ValueNode count = builder.append(new LoadIndexedNode(null, counters, index, null, JavaKind.Long));
+        ValueNode incremented = builder.append(AddNode.create(count, ConstantNode.forLong(1), NodeView.DEFAULT));
+        StoreIndexedNode store = builder.append(new StoreIndexedNode(counters, index, null, null, JavaKind.Long, incremented));
+        store.setStateAfter(frameState);
+    }
+
+    @Override
+    public boolean handleInvoke(GraphBuilderContext b, ResolvedJavaMethod method, ValueNode[] args) {
+        ResolvedJavaMethod caller = b.getMethod();
+        if (args.length == 0 || args[0].getStackKind() != JavaKind.Object || !shouldProfile(b, caller)) {
+            return false;
+        }
+        int opcode = caller.getCode()[b.bci()] & 0xff;
+        if (opcode != Bytecodes.INVOKEVIRTUAL && opcode != Bytecodes.INVOKEINTERFACE) {
+            return false;
+        }
+        MethodProfile profile = getProfile(caller);
+        int site = Arrays.binarySearch(profile.getReceiverBcis(), b.bci());
+        if (site >= 0) {
+            ValueNode profileNode = ConstantNode.forConstant(SubstrateObjectConstant.forObject(profile), b.getMetaAccess(), b.getGraph());
+            b.add(new ForeignCallNode(foreignCalls, MethodProfile.RECORD_RECEIVER, profileNode, ConstantNode.forInt(site, b.getGraph()), args[0]));
+        }
+        /* The invoke itself is still handled by the parser. */
+        return false;
+    }
+}
+
+@AutomaticFeature
+final class ProfilingInstrumentationFeature implements GraalFeature {
+
+    @Override
+    public boolean isInConfiguration(IsInConfigurationAccess access) {
+        return MethodProfile.Options.ProfilingInstrumentation.getValue();
+    }
+
+    @Override
+    public void beforeAnalysis(BeforeAnalysisAccess a) {
+        BeforeAnalysisAccessImpl access = (BeforeAnalysisAccessImpl) a;
+        access.getBigBang().addRootMethod((AnalysisMethod) MethodProfile.RECORD_RECEIVER.findMethod(access.getMetaAccess()));
+        /*
+         * The profiles and their arrays are only allocated during compilation, when the
+         * instrumentation embeds them as constants, so the static analysis never sees them.
+         */
+        access.registerAsInHeap(MethodProfile.class);
+        access.registerAsInHeap(MethodProfile[].class);
+        access.registerAsInHeap(long[].class);
+        access.registerAsInHeap(int[].class);
+        access.registerAsInHeap(Class[].class);
+    }
+
+    @Override
+    public void afterCompilation(AfterCompilationAccess access) {
+        /* All methods are instrumented now, so the list of profiles is complete. */
+        ((InstrumentationProfiles) ImageSingletons.lookup(ImageProfiles.class)).setProfiles(MethodProfile.getAllProfiles());
+    }
+
+    @Override
+    public void registerForeignCalls(RuntimeConfiguration runtimeConfig, Providers providers, SnippetReflectionProvider snippetReflection,
+                    Map<SubstrateForeignCallDescriptor, SubstrateForeignCallLinkage> foreignCalls, boolean hosted) {
+        foreignCalls.put(MethodProfile.RECORD_RECEIVER, new SubstrateForeignCallLinkage(providers, MethodProfile.RECORD_RECEIVER));
+    }
+
+    @Override
+    public void registerGraphBuilderPlugins(Providers providers, Plugins plugins, boolean analysis, boolean hosted) {
+        if (!analysis && hosted) {
+            ProfilingInstrumentationPlugin plugin = new ProfilingInstrumentationPlugin(providers.getForeignCalls());
+            plugins.setProfilingPlugin(plugin);
+            plugins.prependNodePlugin(plugin);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.hosted.pgo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.oracle.svm.core.pgo.MethodProfile;
+import com.oracle.svm.core.util.UserError;
+
+/**
+ * The profiles read from a file that was written by an instrumented image, see
+ * {@link MethodProfile} for the file format.
+ */
+final class RecordedProfiles {
+
+    static final class RecordedMethod {
+        final int codeHash;
+        final long invocations;
+        /** Maps the bci of a branch to its not-taken and taken counts. */
+        final TreeMap<Integer, long[]> branches = new TreeMap<>();
+        /** Maps the bci of a call to the counts of its receiver class names. */
+        final Map<Integer, Map<String, Long>> receivers = new HashMap<>();
+
+        RecordedMethod(int codeHash, long invocations) {
+            this.codeHash = codeHash;
+            this.invocations = invocations;
+        }
+    }
+
+    private final Map<String, RecordedMethod> methods;
+
+    private RecordedProfiles(Map<String, RecordedMethod> methods) {
+        this.methods = methods;
+    }
+
+    /** Returns the profile of the method with the given name, or {@code null} if there is none. */
+    RecordedMethod get(String methodName) {
+        return methods.get(methodName);
+    }
+
+    int size() {
+        return methods.size();
+    }
+
+    static RecordedProfiles load(Path file) {
+        Map<String, RecordedMethod> methods = new HashMap<>();
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RecordedMethod current = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("method ")) {
+                    String[] parts = line.split(" ", 4);
+                    checkFormat(parts.length == 4, file, lineNumber);
+                    current = new RecordedMethod(Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+                    methods.put(parts[3], current);
+                } else if (line.startsWith("branch ")) {
+                    String[] parts = line.split(" ");
+                    checkFormat(current != null && parts.length == 4, file, lineNumber);
+                    current.branches.put(Integer.valueOf(parts[1]), new long[]{Long.parseLong(parts[2]), Long.parseLong(parts[3])});
+                } else if (line.startsWith("receiver ")) {
+                    String[] parts = line.split(" ");
+                    checkFormat(current != null && parts.length >= 3 && parts.length % 2 == 1, file, lineNumber);
+                    Map<String, Long> types = new HashMap<>();
+                    for (int i = 3; i < parts.length; i += 2) {
+                        types.merge(parts[i], Long.parseLong(parts[i + 1]), Long::sum);
+                    }
+                    current.receivers.put(Integer.valueOf(parts[1]), types);
+                } else {
+                    checkFormat(false, file, lineNumber);
+                }
+            }
+        } catch (NumberFormatException ex) {
+            throw UserError.abort(ex, "Malformed profiles file " + file + " at line " + lineNumber);
+        } catch (IOException ex) {
+            throw UserError.abort(ex, "Cannot read profiles file " + file);
+        }
+        return new RecordedProfiles(methods);
+    }
+
+    private static void checkFormat(boolean condition, Path file, int lineNumber) {
+        UserError.guarantee(condition, "Malformed profiles file %s at line %d", file, lineNumber);
+    }
+}
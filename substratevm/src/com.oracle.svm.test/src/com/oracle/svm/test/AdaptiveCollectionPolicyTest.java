@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.nativeimage.ImageInfo;
+import org.graalvm.nativeimage.RuntimeOptions;
+import org.graalvm.word.UnsignedWord;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import com.oracle.svm.core.SubstrateOptions;
+import com.oracle.svm.core.genscavenge.CollectionPolicy;
+import com.oracle.svm.core.genscavenge.HeapPolicy;
+import com.oracle.svm.core.util.UnsignedUtils;
+
+/**
+ * Tests how {@link CollectionPolicy.Adaptive} resizes the young generation to meet its pause time
+ * and throughput goals. The collection and mutator times are passed to the policy directly, so the
+ * results do not depend on the speed of the machine.
+ *
+ * An explicit young generation size cannot be unset again, so the test that sets one runs last.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AdaptiveCollectionPolicyTest {
+
+    private static final int PAUSE_GOAL_MILLIS = 10;
+
+    private int initialPauseGoal;
+    private UnsignedWord initialYoungSize;
+    private UnsignedWord youngSize;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("policy state only exists in an image", ImageInfo.inImageRuntimeCode());
+        initialPauseGoal = RuntimeOptions.get("MaxGCPauseMillis");
+        RuntimeOptions.set("MaxGCPauseMillis", PAUSE_GOAL_MILLIS);
+        initialYoungSize = HeapPolicy.getMaximumYoungGenerationSize();
+        /* Well below the upper bound of a third of the heap, so the policy can grow it. */
+        UnsignedWord chunk = HeapPolicy.getAlignedHeapChunkSize();
+        youngSize = UnsignedUtils.roundDown(UnsignedUtils.min(chunk.multiply(64), HeapPolicy.getMaximumHeapSize().unsignedDivide(6)), chunk);
+        HeapPolicy.setMaximumYoungGenerationSize(youngSize);
+    }
+
+    @After
+    public void tearDown() {
+        if (ImageInfo.inImageRuntimeCode()) {
+            RuntimeOptions.set("MaxGCPauseMillis", initialPauseGoal);
+            HeapPolicy.setMaximumYoungGenerationSize(initialYoungSize);
+        }
+    }
+
+    private static void collect(CollectionPolicy.Adaptive policy, long pauseMillis, long mutatorMillis) {
+        policy.updateAfterCollection(false, TimeUnit.MILLISECONDS.toNanos(pauseMillis), TimeUnit.MILLISECONDS.toNanos(mutatorMillis));
+    }
+
+    private static UnsignedWord percentOf(UnsignedWord size, int percent) {
+        return UnsignedUtils.roundDown(size.unsignedDivide(100).multiply(percent), HeapPolicy.getAlignedHeapChunkSize());
+    }
+
+    private static void assertYoungSize(UnsignedWord expected) {
+        Assert.assertEquals(expected.rawValue(), HeapPolicy.getMaximumYoungGenerationSize().rawValue());
+    }
+
+    @Test
+    public void test1ShrinksWhenPausesExceedGoal() {
+        Assume.assumeFalse(HeapPolicy.isMaximumYoungGenerationSizeExplicit());
+        CollectionPolicy.Adaptive policy = new CollectionPolicy.Adaptive();
+        /* Twice the goal: shrink in proportion, to a half. */
+        collect(policy, 2 * PAUSE_GOAL_MILLIS, 1000);
+        UnsignedWord expected = percentOf(youngSize, 50);
+        assertYoungSize(expected);
+
+        /* Ten times the goal: still shrink by at most a half at once. */
+        policy = new CollectionPolicy.Adaptive();
+        collect(policy, 10 * PAUSE_GOAL_MILLIS, 1000);
+        assertYoungSize(percentOf(expected, 50));
+    }
+
+    @Test
+    public void test2NeverShrinksBelowMinimum() {
+        Assume.assumeFalse(HeapPolicy.isMaximumYoungGenerationSizeExplicit());
+        CollectionPolicy.Adaptive policy = new CollectionPolicy.Adaptive();
+        for (int i = 0; i < 64; i++) {
+            collect(policy, 10 * PAUSE_GOAL_MILLIS, 1000);
+        }
+        assertYoungSize(HeapPolicy.getAlignedHeapChunkSize().multiply(2));
+    }
+
+    @Test
+    public void test3GrowsWhenCollectionsTakeTooMuchTime() {
+        Assume.assumeFalse(HeapPolicy.isMaximumYoungGenerationSizeExplicit());
+        CollectionPolicy.Adaptive policy = new CollectionPolicy.Adaptive();
+        /* Pauses meet the goal, but 20% of the time is spent collecting, above the 5% goal. */
+        collect(policy, PAUSE_GOAL_MILLIS / 2, 4 * PAUSE_GOAL_MILLIS / 2);
+        UnsignedWord increment = youngSize.unsignedDivide(100).multiply(RuntimeOptions.<Integer> get("YoungGenerationSizeIncrement"));
+        assertYoungSize(UnsignedUtils.roundDown(youngSize.add(increment), HeapPolicy.getAlignedHeapChunkSize()));
+    }
+
+    @Test
+    public void test4KeepsSizeWhenGoalsAreMet() {
+        Assume.assumeFalse(HeapPolicy.isMaximumYoungGenerationSizeExplicit());
+        CollectionPolicy.Adaptive policy = new CollectionPolicy.Adaptive();
+        for (int i = 0; i < 16; i++) {
+            collect(policy, PAUSE_GOAL_MILLIS / 2, 1000);
+        }
+        assertYoungSize(youngSize);
+    }
+
+    @Test
+    public void test5KeepsExplicitYoungGenerationSize() {
+        /*
+         * Request the size that is in effect anyway, so the tests that run after this class are not
+         * affected by the explicit size.
+         */
+        RuntimeOptions.set(SubstrateOptions.MaxNewSize.getName(), initialYoungSize.rawValue());
+        Assert.assertTrue(HeapPolicy.isMaximumYoungGenerationSizeExplicit());
+
+        CollectionPolicy.Adaptive policy = new CollectionPolicy.Adaptive();
+        for (int i = 0; i < 16; i++) {
+            collect(policy, 10 * PAUSE_GOAL_MILLIS, 1000);
+        }
+        assertYoungSize(youngSize);
+        for (int i = 0; i < 16; i++) {
+            collect(policy, PAUSE_GOAL_MILLIS / 2, PAUSE_GOAL_MILLIS);
+        }
+        assertYoungSize(youngSize);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Arrays never have a monitor field, so synchronizing on them uses the secondary monitor storage,
+ * which is striped by identity hash code. These tests make many threads contend on arrays that hash
+ * to the same and to different stripes at the same time.
+ */
+public class AdditionalMonitorsTest {
+
+    private static final int THREADS = 8;
+    private static final int LOCKS = 256;
+    private static final int ITERATIONS = 20_000;
+
+    @Test
+    public void testMutualExclusionAcrossStripes() throws Throwable {
+        long[][] locks = new long[LOCKS][1];
+        runThreads(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                long[] lock = locks[(i * 31 + thread) % LOCKS];
+                synchronized (lock) {
+                    /* A non-atomic read-modify-write that loses updates without mutual exclusion. */
+                    long value = lock[0];
+                    Thread.yield();
+                    lock[0] = value + 1;
+                }
+            }
+        });
+        long sum = 0;
+        for (long[] lock : locks) {
+            sum += lock[0];
+        }
+        Assert.assertEquals((long) THREADS * ITERATIONS, sum);
+    }
+
+    @Test
+    public void testNestedLockingAcrossStripes() throws Throwable {
+        Object[] locks = new Object[LOCKS];
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new int[0];
+        }
+        int[] counter = new int[1];
+        runThreads(thread -> {
+            for (int i = 0; i < ITERATIONS / 10; i++) {
+                /* Always nest in index order, so that threads cannot deadlock on the monitors. */
+                int first = (i + thread) % (LOCKS - 1);
+                int second = first + 1 + (i % (LOCKS - 1 - first));
+                synchronized (locks[first]) {
+                    synchronized (locks[second]) {
+                        synchronized (counter) {
+                            counter[0]++;
+                        }
+                    }
+                }
+            }
+        });
+        Assert.assertEquals(THREADS * (ITERATIONS / 10), counter[0]);
+    }
+
+    @Test
+    public void testWaitAndNotifyAcrossStripes() throws Throwable {
+        Object[] mailboxes = new Object[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            mailboxes[i] = new Object[1];
+        }
+        /* Each thread passes a token to the next one through the mailbox of the receiver. */
+        runThreads(thread -> {
+            Object[] own = (Object[]) mailboxes[thread];
+            Object[] next = (Object[]) mailboxes[(thread + 1) % THREADS];
+            for (int round = 0; round < 100; round++) {
+                if (thread != 0 || round != 0) {
+                    synchronized (own) {
+                        while (own[0] == null) {
+                            own.wait();
+                        }
+                        own[0] = null;
+                    }
+                }
+                synchronized (next) {
+                    next[0] = Boolean.TRUE;
+                    next.notifyAll();
+                }
+            }
+        });
+    }
+
+    private interface Body {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runThreads(Body body) throws Throwable {
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(thread);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(60_000);
+            Assert.assertFalse("Thread did not finish, monitors might be deadlocked", thread.isAlive());
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
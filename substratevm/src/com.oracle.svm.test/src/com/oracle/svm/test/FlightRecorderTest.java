@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+import org.graalvm.nativeimage.ImageInfo;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.oracle.svm.test.FlightRecordingParser.Event;
+import com.oracle.svm.test.FlightRecordingParser.Recording;
+
+/**
+ * Checks the events written by the flight recorder. The image must be built with
+ * {@code -H:+FlightRecorder} and run with {@code -XX:FlightRecorderFile=<file>} and
+ * {@code -Dcom.oracle.svm.test.flightRecording=<file>}, otherwise the test is skipped.
+ */
+public class FlightRecorderTest {
+
+    private static final String RECORDING_PROPERTY = "com.oracle.svm.test.flightRecording";
+    private static final long TIMEOUT_MILLIS = 60_000;
+
+    /** Class of the contended monitor, so that its events can be told apart from others. */
+    static final class ContendedLock {
+    }
+
+    @Test
+    public void testGarbageCollectionAndMonitorContention() throws Exception {
+        Assume.assumeTrue(ImageInfo.inImageRuntimeCode());
+        String fileName = System.getProperty(RECORDING_PROPERTY);
+        Assume.assumeTrue(fileName != null);
+        Path file = Paths.get(fileName);
+
+        System.gc();
+        contendMonitor(new ContendedLock());
+
+        Recording recording = awaitEvents(file);
+        Event gc = recording.getEvents(FlightRecordingParser.GARBAGE_COLLECTION).get(0);
+        Assert.assertTrue("A garbage collection must take time.", gc.durationNanos > 0);
+        Assert.assertTrue("The start of a garbage collection must be after the start of the recording.", gc.startNanos >= recording.startNanos);
+
+        Event contention = findContention(recording);
+        Assert.assertNotNull("A MONITOR_CONTENDED_ENTER event for " + ContendedLock.class.getName() + " must be recorded.", contention);
+        Assert.assertTrue("The thread was blocked for at least 100ms, but the event has a duration of " + contention.durationNanos + "ns.",
+                        contention.durationNanos >= 100_000_000L);
+    }
+
+    /** Holds the monitor in another thread for long enough that the current thread must wait. */
+    private static void contendMonitor(Object lock) throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (lock) {
+                locked.countDown();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        holder.start();
+        locked.await();
+        synchronized (lock) {
+            Assert.assertTrue(Thread.holdsLock(lock));
+        }
+        holder.join();
+    }
+
+    private static Event findContention(Recording recording) {
+        for (Event event : recording.getEvents(FlightRecordingParser.MONITOR_CONTENDED_ENTER)) {
+            if (ContendedLock.class.getName().equals(recording.classes.get(event.payload[0]))) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /** Events become visible in the file only after the next periodic flush. */
+    private static Recording awaitEvents(Path file) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            Recording recording = FlightRecordingParser.parse(file);
+            if ((!recording.getEvents(FlightRecordingParser.GARBAGE_COLLECTION).isEmpty() && findContention(recording) != null) || System.currentTimeMillis() > deadline) {
+                Assert.assertFalse("No garbage collection was recorded.", recording.getEvents(FlightRecordingParser.GARBAGE_COLLECTION).isEmpty());
+                return recording;
+            }
+            Thread.sleep(50);
+        }
+    }
+}
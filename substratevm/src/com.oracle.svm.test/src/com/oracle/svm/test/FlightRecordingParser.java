@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal reader for the files written by the flight recorder of native images
+ * ({@code -H:+FlightRecorder}). The format is documented in
+ * {@code com.oracle.svm.core.flightrecorder.FlightRecorder} and {@code FlightRecorderEvent}.
+ */
+public final class FlightRecordingParser {
+
+    public static final int PADDING = 0;
+    public static final int GARBAGE_COLLECTION = 1;
+    public static final int SAFEPOINT = 2;
+    public static final int MONITOR_CONTENDED_ENTER = 3;
+    public static final int ALLOCATION_SLOW_PATH = 4;
+    public static final int CLASS = 100;
+    public static final int LOST_EVENTS = 101;
+
+    private static final byte[] MAGIC = "SVMFR001".getBytes(StandardCharsets.US_ASCII);
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PAYLOAD_WORDS = 4;
+
+    /** A fixed-size event record. */
+    public static final class Event {
+        public final int type;
+        public final long thread;
+        public final long startNanos;
+        public final long durationNanos;
+        public final long[] payload;
+
+        Event(int type, long thread, long startNanos, long durationNanos, long[] payload) {
+            this.type = type;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.payload = payload;
+        }
+    }
+
+    public static final class Recording {
+        public final long startNanos;
+        public final long startMillis;
+        public final List<Event> events = new ArrayList<>();
+        /** Class names by the class ids used in the payload of events. */
+        public final Map<Long, String> classes = new HashMap<>();
+        public long lostEvents;
+
+        Recording(long startNanos, long startMillis) {
+            this.startNanos = startNanos;
+            this.startMillis = startMillis;
+        }
+
+        public List<Event> getEvents(int type) {
+            List<Event> result = new ArrayList<>();
+            for (Event event : events) {
+                if (event.type == type) {
+                    result.add(event);
+                }
+            }
+            return result;
+        }
+    }
+
+    private FlightRecordingParser() {
+    }
+
+    /**
+     * Parses a recording. A record at the end of the file that is only partially written, because
+     * the recorder is still flushing, is ignored.
+     */
+    public static Recording parse(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a flight recording: " + file);
+        }
+        int byteOrderMark = buffer.getInt();
+        if (byteOrderMark != BYTE_ORDER_MARK) {
+            if (Integer.reverseBytes(byteOrderMark) != BYTE_ORDER_MARK) {
+                throw new IOException("Invalid byte order mark in flight recording: " + file);
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        Recording recording = new Recording(buffer.getLong(), buffer.getLong());
+
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int type = buffer.getInt();
+            int size = buffer.getInt();
+            if (size < RECORD_HEADER_SIZE) {
+                throw new IOException("Invalid size " + size + " of record at offset " + start + " in flight recording: " + file);
+            }
+            if (size - RECORD_HEADER_SIZE > buffer.remaining()) {
+                break;
+            }
+            switch (type) {
+                case PADDING:
+                    break;
+                case CLASS: {
+                    long classId = buffer.getLong();
+                    byte[] name = new byte[size - RECORD_HEADER_SIZE - Long.BYTES];
+                    buffer.get(name);
+                    recording.classes.put(classId, new String(name, StandardCharsets.UTF_8));
+                    break;
+                }
+                case LOST_EVENTS:
+                    recording.lostEvents += buffer.getLong();
+                    break;
+                default: {
+                    long thread = buffer.getLong();
+                    long startNanos = buffer.getLong();
+                    long durationNanos = buffer.getLong();
+                    long[] payload = new long[PAYLOAD_WORDS];
+                    for (int i = 0; i < PAYLOAD_WORDS; i++) {
+                        payload[i] = buffer.getLong();
+                    }
+                    recording.events.add(new Event(type, thread, startNanos, durationNanos, payload));
+                    break;
+                }
+            }
+            buffer.position(start + size);
+        }
+        return recording;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.nativeimage.ImageInfo;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.VMRuntime;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Writes an HPROF heap dump with {@link VMRuntime#dumpHeap} and parses it again. The image must be
+ * built with {@code -H:+AllowVMInspection}, otherwise the test is skipped.
+ */
+public class HeapDumpTest {
+
+    private static final String FILE_HEADER = "JAVA PROFILE 1.0.2";
+
+    private static final int TAG_UTF8 = 0x01;
+    private static final int TAG_LOAD_CLASS = 0x02;
+    private static final int TAG_HEAP_DUMP = 0x0C;
+    private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+    private static final int TAG_HEAP_DUMP_END = 0x2C;
+
+    private static final int ROOT_UNKNOWN = 0xFF;
+    private static final int ROOT_STICKY_CLASS = 0x05;
+    private static final int CLASS_DUMP = 0x20;
+    private static final int INSTANCE_DUMP = 0x21;
+    private static final int OBJ_ARRAY_DUMP = 0x22;
+    private static final int PRIM_ARRAY_DUMP = 0x23;
+
+    private static final int TYPE_OBJECT = 2;
+
+    private static final long MARKER = 0x5EED_CAFE_F00D_BEEFL;
+
+    static final class DumpedObject {
+        long marker;
+        Object next;
+    }
+
+    /** The parts of a heap dump that the test checks. */
+    private static final class HeapDump {
+        int idSize;
+        final Map<Long, String> strings = new HashMap<>();
+        final Map<String, Long> classIds = new HashMap<>();
+        final Map<Long, List<byte[]>> instancesByClass = new HashMap<>();
+        int classDumps;
+        boolean ended;
+
+        List<byte[]> getInstances(Class<?> clazz) {
+            Long classId = classIds.get(clazz.getName().replace('.', '/'));
+            Assert.assertNotNull("No LOAD_CLASS record for " + clazz.getName(), classId);
+            List<byte[]> instances = instancesByClass.get(classId);
+            return instances != null ? instances : new ArrayList<>();
+        }
+    }
+
+    @Test
+    public void testDumpContainsNewObjects() throws IOException {
+        Assume.assumeTrue(ImageInfo.inImageRuntimeCode());
+        Assume.assumeTrue(Platform.includedIn(Platform.LINUX.class));
+
+        /* Freshly allocated, so that the objects are still in the TLAB of this thread. */
+        DumpedObject first = new DumpedObject();
+        first.marker = MARKER;
+        first.next = new DumpedObject();
+
+        Path file = Files.createTempFile("svm-heapdump-test", ".hprof");
+        try {
+            try {
+                VMRuntime.dumpHeap(file.toString(), true);
+            } catch (UnsupportedOperationException e) {
+                Assume.assumeNoException("Heap dumps need -H:+AllowVMInspection", e);
+            }
+            HeapDump dump = parse(ByteBuffer.wrap(Files.readAllBytes(file)));
+
+            Assert.assertTrue("The dump must end with a HEAP_DUMP_END record.", dump.ended);
+            Assert.assertTrue("The dump must contain CLASS_DUMP records.", dump.classDumps > 0);
+            List<byte[]> instances = dump.getInstances(DumpedObject.class);
+            Assert.assertTrue("Both instances of DumpedObject must be dumped, found " + instances.size(), instances.size() >= 2);
+            boolean foundMarker = false;
+            for (byte[] fields : instances) {
+                ByteBuffer buffer = ByteBuffer.wrap(fields);
+                for (int i = 0; i + Long.BYTES <= fields.length; i++) {
+                    foundMarker |= buffer.getLong(i) == MARKER;
+                }
+            }
+            Assert.assertTrue("The field values of DumpedObject must be dumped.", foundMarker);
+            Assert.assertNotNull(first.next);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static HeapDump parse(ByteBuffer buffer) {
+        HeapDump dump = new HeapDump();
+        byte[] header = new byte[FILE_HEADER.length()];
+        buffer.get(header);
+        Assert.assertEquals(FILE_HEADER, new String(header, StandardCharsets.US_ASCII));
+        Assert.assertEquals(0, buffer.get());
+        dump.idSize = buffer.getInt();
+        Assert.assertTrue("Unexpected id size " + dump.idSize, dump.idSize == 4 || dump.idSize == 8);
+        buffer.getLong(); // timestamp
+
+        while (buffer.hasRemaining()) {
+            int tag = buffer.get() & 0xFF;
+            buffer.getInt(); // time offset
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+            switch (tag) {
+                case TAG_UTF8: {
+                    long id = readId(buffer, dump);
+                    byte[] bytes = new byte[end - buffer.position()];
+                    buffer.get(bytes);
+                    dump.strings.put(id, new String(bytes, StandardCharsets.UTF_8));
+                    break;
+                }
+                case TAG_LOAD_CLASS: {
+                    buffer.getInt(); // class serial number
+                    long classId = readId(buffer, dump);
+                    buffer.getInt(); // stack trace serial number
+                    String name = dump.strings.get(readId(buffer, dump));
+                    Assert.assertNotNull("LOAD_CLASS must refer to a previous UTF8 record.", name);
+                    dump.classIds.put(name, classId);
+                    break;
+                }
+                case TAG_HEAP_DUMP:
+                case TAG_HEAP_DUMP_SEGMENT:
+                    while (buffer.position() < end) {
+                        parseSubRecord(buffer, dump);
+                    }
+                    break;
+                case TAG_HEAP_DUMP_END:
+                    dump.ended = true;
+                    break;
+                default:
+                    break;
+            }
+            Assert.assertTrue("Record with tag " + tag + " is longer than its length.", buffer.position() <= end);
+            buffer.position(end);
+        }
+        return dump;
+    }
+
+    private static void parseSubRecord(ByteBuffer buffer, HeapDump dump) {
+        int tag = buffer.get() & 0xFF;
+        switch (tag) {
+            case ROOT_UNKNOWN:
+            case ROOT_STICKY_CLASS:
+                readId(buffer, dump);
+                break;
+            case CLASS_DUMP: {
+                readId(buffer, dump);
+                buffer.getInt();
+                for (int i = 0; i < 6; i++) {
+                    readId(buffer, dump);
+                }
+                buffer.getInt(); // instance size
+                int constantPoolEntries = buffer.getShort() & 0xFFFF;
+                for (int i = 0; i < constantPoolEntries; i++) {
+                    buffer.getShort();
+                    skipValue(buffer, dump, buffer.get());
+                }
+                int staticFields = buffer.getShort() & 0xFFFF;
+                for (int i = 0; i < staticFields; i++) {
+                    readId(buffer, dump);
+                    skipValue(buffer, dump, buffer.get());
+                }
+                int instanceFields = buffer.getShort() & 0xFFFF;
+                for (int i = 0; i < instanceFields; i++) {
+                    readId(buffer, dump);
+                    buffer.get();
+                }
+                dump.classDumps++;
+                break;
+            }
+            case INSTANCE_DUMP: {
+                readId(buffer, dump);
+                buffer.getInt();
+                long classId = readId(buffer, dump);
+                byte[] fields = new byte[buffer.getInt()];
+                buffer.get(fields);
+                dump.instancesByClass.computeIfAbsent(classId, k -> new ArrayList<>()).add(fields);
+                break;
+            }
+            case OBJ_ARRAY_DUMP: {
+                readId(buffer, dump);
+                buffer.getInt();
+                int length = buffer.getInt();
+                readId(buffer, dump);
+                buffer.position(buffer.position() + length * dump.idSize);
+                break;
+            }
+            case PRIM_ARRAY_DUMP: {
+                readId(buffer, dump);
+                buffer.getInt();
+                int length = buffer.getInt();
+                int type = buffer.get();
+                buffer.position(buffer.position() + length * valueSize(dump, type));
+                break;
+            }
+            default:
+                Assert.fail("Unexpected heap dump sub-record " + tag);
+        }
+    }
+
+    private static long readId(ByteBuffer buffer, HeapDump dump) {
+        return dump.idSize == 8 ? buffer.getLong() : buffer.getInt() & 0xFFFF_FFFFL;
+    }
+
+    private static void skipValue(ByteBuffer buffer, HeapDump dump, int type) {
+        buffer.position(buffer.position() + valueSize(dump, type));
+    }
+
+    /** The sizes of the HPROF basic types, indexed by their type code. */
+    private static int valueSize(HeapDump dump, int type) {
+        switch (type) {
+            case TYPE_OBJECT:
+                return dump.idSize;
+            case 4: // boolean
+            case 8: // byte
+                return 1;
+            case 5: // char
+            case 9: // short
+                return 2;
+            case 6: // float
+            case 10: // int
+                return 4;
+            case 7: // double
+            case 11: // long
+                return 8;
+            default:
+                throw new AssertionError("Unexpected basic type " + type);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.graalvm.nativeimage.ImageInfo;
+import org.graalvm.nativeimage.Platform;
+import org.graalvm.nativeimage.RuntimeOptions;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the in-place compaction of the old generation that is enabled with
+ * {@code -XX:+CompactingOldGeneration}. The gate also builds this test with
+ * {@code -H:+CompactingOldGeneration -H:+VerifyHeap}, so that the heap is verified before and
+ * after every compacting collection.
+ */
+public class OldGenerationCompactionTest {
+
+    private static final String OPTION = "CompactingOldGeneration";
+
+    /* Small arrays stay below the LargeArrayThreshold, so they live in aligned chunks. */
+    private static final int ARRAY_SIZE = 512;
+    private static final long LIVE_BYTES = 128L * 1024 * 1024;
+
+    private static final Path STATUS = Paths.get("/proc/self/status");
+    private static final Path CLEAR_REFS = Paths.get("/proc/self/clear_refs");
+
+    /* Keeps the live set reachable across the collections of a measurement. */
+    private static List<byte[]> liveSet;
+
+    /* The value the image was built with, e.g., -H:+CompactingOldGeneration in the gate. */
+    private boolean initialValue;
+
+    @Before
+    public void saveOption() {
+        if (ImageInfo.inImageRuntimeCode()) {
+            initialValue = RuntimeOptions.get(OPTION);
+        }
+    }
+
+    @After
+    public void resetOption() {
+        liveSet = null;
+        if (ImageInfo.inImageRuntimeCode()) {
+            RuntimeOptions.set(OPTION, initialValue);
+        }
+    }
+
+    @Test
+    public void testSurvivorsAreIntact() {
+        Assume.assumeTrue(ImageInfo.inImageRuntimeCode());
+        RuntimeOptions.set(OPTION, true);
+
+        /* Promote the objects to the old generation, then punch holes between them. */
+        List<byte[]> all = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            byte[] array = new byte[ARRAY_SIZE];
+            array[0] = (byte) i;
+            array[ARRAY_SIZE - 1] = (byte) (i >> 8);
+            all.add(array);
+        }
+        System.gc();
+        WeakReference<byte[]> survivor = new WeakReference<>(all.get(99_999));
+        WeakReference<byte[]> garbage = new WeakReference<>(all.get(99_998));
+        List<byte[]> survivors = new ArrayList<>();
+        for (int i = 1; i < all.size(); i += 2) {
+            survivors.add(all.get(i));
+        }
+        all = null;
+
+        /* This collection has to slide the survivors over the dead arrays. */
+        System.gc();
+
+        Assert.assertNull("The referent of a dead array must be cleared.", garbage.get());
+        Assert.assertSame("The referent of a moved array must be updated.", survivors.get(survivors.size() - 1), survivor.get());
+        for (int j = 0; j < survivors.size(); j++) {
+            int i = 2 * j + 1;
+            byte[] array = survivors.get(j);
+            Assert.assertEquals(ARRAY_SIZE, array.length);
+            Assert.assertEquals((byte) i, array[0]);
+            Assert.assertEquals((byte) (i >> 8), array[ARRAY_SIZE - 1]);
+        }
+    }
+
+    static final class Node {
+        final int id;
+        Node next;
+        Node other;
+        Object[] payload;
+
+        Node(int id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Compacts an object graph with references in all directions several times, and allocates
+     * young objects that old objects refer to in between, so that the compacted chunks need
+     * correct card tables and first object tables for the following incremental collections.
+     */
+    @Test
+    public void testObjectGraphSurvivesRepeatedCompaction() {
+        Assume.assumeTrue(ImageInfo.inImageRuntimeCode());
+        RuntimeOptions.set(OPTION, true);
+
+        final int count = 50_000;
+        Node[] nodes = new Node[count];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = new Node(i);
+        }
+        for (int i = 0; i < count; i++) {
+            nodes[i].next = nodes[(i + 1) % count];
+            nodes[i].other = nodes[(int) ((i * 7919L) % count)];
+        }
+        System.gc();
+
+        for (int round = 1; round <= 4; round++) {
+            /* Drop every node whose id is not a multiple of 2^round, and relink the others. */
+            int stride = 1 << round;
+            Node previous = null;
+            for (int i = 0; i < count; i++) {
+                if (i % stride == 0) {
+                    if (previous != null) {
+                        previous.next = nodes[i];
+                    }
+                    previous = nodes[i];
+                    previous.other = nodes[(i + stride * round) % count - ((i + stride * round) % count) % stride];
+                } else {
+                    nodes[i] = null;
+                }
+            }
+            previous.next = nodes[0];
+            System.gc();
+
+            /* Old-to-young references that only the card table knows about. */
+            for (int i = 0; i < count; i += stride) {
+                nodes[i].payload = new Object[]{Integer.valueOf(i), new int[]{i, round}};
+            }
+            System.gc();
+
+            int visited = 0;
+            Node node = nodes[0];
+            do {
+                Assert.assertEquals(0, node.id % stride);
+                Assert.assertSame(nodes[node.id], node);
+                Assert.assertEquals(0, node.other.id % stride);
+                Assert.assertSame(nodes[node.other.id], node.other);
+                Assert.assertEquals(Integer.valueOf(node.id), node.payload[0]);
+                int[] ints = (int[]) node.payload[1];
+                Assert.assertEquals(node.id, ints[0]);
+                Assert.assertEquals(round, ints[1]);
+                visited++;
+                node = node.next;
+            } while (node != nodes[0]);
+            Assert.assertEquals(count / stride, visited);
+        }
+    }
+
+    @Test
+    public void testPeakFootprintDrops() throws IOException {
+        Assume.assumeTrue(ImageInfo.inImageRuntimeCode());
+        Assume.assumeTrue(Platform.includedIn(Platform.LINUX.class));
+        Assume.assumeTrue(Files.isWritable(CLEAR_REFS));
+
+        RuntimeOptions.set(OPTION, false);
+        long copyingPeak = measurePeakOfCompleteCollection();
+        RuntimeOptions.set(OPTION, true);
+        long compactingPeak = measurePeakOfCompleteCollection();
+
+        Assert.assertTrue("A complete collection that copies a live set of " + LIVE_BYTES + " bytes must need additional memory, but needed " + copyingPeak + " bytes.",
+                        copyingPeak > LIVE_BYTES / 2);
+        Assert.assertTrue("Compacting needed " + compactingPeak + " additional bytes, copying needed " + copyingPeak + " bytes.", compactingPeak < copyingPeak / 2);
+    }
+
+    /**
+     * Promote a fresh live set to the old generation, then return how much the resident set grows
+     * beyond its previous size during one more complete collection.
+     */
+    private static long measurePeakOfCompleteCollection() throws IOException {
+        liveSet = null;
+        System.gc();
+
+        List<byte[]> arrays = new ArrayList<>();
+        for (long allocated = 0; allocated < LIVE_BYTES; allocated += ARRAY_SIZE) {
+            arrays.add(new byte[ARRAY_SIZE]);
+        }
+        liveSet = arrays;
+        System.gc();
+
+        /* Resets the high water mark of the resident set to the current resident set. */
+        try (FileWriter writer = new FileWriter(CLEAR_REFS.toFile())) {
+            writer.write("5");
+        }
+        long residentBefore = readStatusKilobytes("VmRSS:");
+        System.gc();
+        long highWaterMark = readStatusKilobytes("VmHWM:");
+        return (highWaterMark - residentBefore) * 1024;
+    }
+
+    private static long readStatusKilobytes(String key) throws IOException {
+        for (String line : Files.readAllLines(STATUS, StandardCharsets.US_ASCII)) {
+            if (line.startsWith(key)) {
+                return Long.parseLong(line.substring(key.length()).trim().split("\\s+")[0]);
+            }
+        }
+        throw new AssertionError("Missing " + key + " in " + STATUS);
+    }
+}
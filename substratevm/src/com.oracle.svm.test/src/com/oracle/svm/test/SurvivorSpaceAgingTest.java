@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.svm.test;
+
+import org.graalvm.nativeimage.ImageInfo;
+import org.graalvm.nativeimage.RuntimeOptions;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.oracle.svm.core.genscavenge.HeapImpl;
+import com.oracle.svm.core.genscavenge.HeapPolicy;
+import com.oracle.svm.core.heap.GCCause;
+import com.oracle.svm.core.heap.Heap;
+
+/**
+ * Tests that objects age through the survivor spaces and are promoted to the old generation at
+ * the tenuring threshold. The gate builds this test with {@code -H:MaxSurvivorSpaces=2} and a
+ * collection policy that only collects incrementally, so that every {@link #collect()} is an
+ * incremental collection.
+ */
+public class SurvivorSpaceAgingTest {
+
+    private static final String OPTION = "TargetSurvivorPercent";
+    private static final int OLD = -1;
+
+    /* Keeps the object reachable across collections, so that it is copied by each of them. */
+    private static Object[] holder;
+
+    private int initialTargetSurvivorPercent;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("object ages only exist in an image", ImageInfo.inImageRuntimeCode());
+        Assume.assumeTrue("the image must be built with -H:MaxSurvivorSpaces=2 or more", HeapPolicy.getMaxSurvivorSpaces() >= 2);
+        initialTargetSurvivorPercent = RuntimeOptions.get(OPTION);
+        /* Start from empty survivor spaces and a reset threshold. */
+        Heap.getHeap().getGC().collectCompletely(GCCause.UnitTest);
+    }
+
+    @After
+    public void tearDown() {
+        holder = null;
+        if (ImageInfo.inImageRuntimeCode()) {
+            RuntimeOptions.set(OPTION, initialTargetSurvivorPercent);
+        }
+    }
+
+    private static void collect() {
+        Heap.getHeap().getGC().collect(GCCause.UnitTest);
+    }
+
+    private static int ageOf(Object obj) {
+        return HeapImpl.getHeapImpl().getObjectAge(obj);
+    }
+
+    private static int tenuringThreshold() {
+        return HeapImpl.getHeapImpl().getYoungGeneration().getTenuringThreshold();
+    }
+
+    private static Object[] newObject() {
+        Object[] result = new Object[]{"survivor", new int[]{42}};
+        holder = result;
+        return result;
+    }
+
+    private static void assertIntact(Object[] obj) {
+        Assert.assertEquals("survivor", obj[0]);
+        Assert.assertEquals(42, ((int[]) obj[1])[0]);
+    }
+
+    @Test
+    public void testAgesUntilMaxSurvivorSpaces() {
+        /* The survivor spaces stay far below the target, so the threshold is never lowered. */
+        RuntimeOptions.set(OPTION, 100);
+        int max = HeapPolicy.getMaxSurvivorSpaces();
+        Assert.assertEquals(max, tenuringThreshold());
+
+        Object[] obj = newObject();
+        Assert.assertEquals(0, ageOf(obj));
+        for (int age = 1; age <= max; age++) {
+            collect();
+            obj = holder;
+            assertIntact(obj);
+            Assert.assertEquals("an object that survives a collection moves to the next survivor space", age, ageOf(obj));
+            Assert.assertEquals(max, tenuringThreshold());
+        }
+        collect();
+        obj = holder;
+        assertIntact(obj);
+        Assert.assertEquals("an object in the oldest survivor space is promoted", OLD, ageOf(obj));
+    }
+
+    @Test
+    public void testPromotesAtLoweredThreshold() {
+        /* Any survivor exceeds the target, so the threshold drops to the youngest age. */
+        RuntimeOptions.set(OPTION, 0);
+
+        Object[] obj = newObject();
+        collect();
+        obj = holder;
+        assertIntact(obj);
+        Assert.assertEquals(1, ageOf(obj));
+        Assert.assertEquals(1, tenuringThreshold());
+
+        collect();
+        obj = holder;
+        assertIntact(obj);
+        Assert.assertEquals("an object at the tenuring threshold is promoted", OLD, ageOf(obj));
+    }
+
+    @Test
+    public void testCompleteCollectionResetsThreshold() {
+        RuntimeOptions.set(OPTION, 0);
+
+        newObject();
+        collect();
+        Assert.assertEquals(1, tenuringThreshold());
+
+        Heap.getHeap().getGC().collectCompletely(GCCause.UnitTest);
+        Assert.assertEquals("a complete collection promotes all survivors", OLD, ageOf(holder));
+        Assert.assertEquals("the threshold must not stay lowered after the survivor spaces were emptied", HeapPolicy.getMaxSurvivorSpaces(), tenuringThreshold());
+    }
+}
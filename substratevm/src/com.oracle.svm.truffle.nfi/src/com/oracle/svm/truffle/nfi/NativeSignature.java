@@ -39,6 +39,8 @@ import org.graalvm.nativeimage.PinnedObject;
 import org.graalvm.nativeimage.StackValue;
 import org.graalvm.nativeimage.UnmanagedMemory;
 import org.graalvm.nativeimage.c.CContext;
+import org.graalvm.nativeimage.c.function.CFunctionPointer;
+import org.graalvm.nativeimage.c.function.InvokeCFunctionPointer;
 import org.graalvm.nativeimage.c.struct.CFieldAddress;
 import org.graalvm.nativeimage.c.struct.CStruct;
 import org.graalvm.nativeimage.c.struct.SizeOf;
@@ -151,6 +153,122 @@ final class NativeSignature {
         }
     }
 
+    /**
+     * Calls functions with a direct-callable signature (integer or pointer arguments and return
+     * value, at most {@code LibFFISignature.MAX_DIRECT_CALL_ARGS} arguments) without going through
+     * libffi. Unlike {@link ExecuteHelper}, this is not a Truffle boundary, so a call with a
+     * constant signature is compiled to a plain C call with a Java-to-native transition.
+     */
+    static class DirectCallHelper {
+
+        interface DirectCall0 extends CFunctionPointer {
+            @InvokeCFunctionPointer
+            long invoke();
+        }
+
+        interface DirectCall1 extends CFunctionPointer {
+            @InvokeCFunctionPointer
+            long invoke(long arg0);
+        }
+
+        interface DirectCall2 extends CFunctionPointer {
+            @InvokeCFunctionPointer
+            long invoke(long arg0, long arg1);
+        }
+
+        interface DirectCall3 extends CFunctionPointer {
+            @InvokeCFunctionPointer
+            long invoke(long arg0, long arg1, long arg2);
+        }
+
+        interface DirectCall4 extends CFunctionPointer {
+            @InvokeCFunctionPointer
+            long invoke(long arg0, long arg1, long arg2, long arg3);
+        }
+
+        interface DirectCall5 extends CFunctionPointer {
+            @InvokeCFunctionPointer
+            long invoke(long arg0, long arg1, long arg2, long arg3, long arg4);
+        }
+
+        interface DirectCall6 extends CFunctionPointer {
+            @InvokeCFunctionPointer
+            long invoke(long arg0, long arg1, long arg2, long arg3, long arg4, long arg5);
+        }
+
+        @SuppressWarnings("try")
+        static long execute(long functionPointer) {
+            long ret;
+            try (NativeErrnoContext mirror = new NativeErrnoContext()) {
+                ret = ((DirectCall0) WordFactory.pointer(functionPointer)).invoke();
+            }
+            return checkPendingException(ret);
+        }
+
+        @SuppressWarnings("try")
+        static long execute(long functionPointer, long arg0) {
+            long ret;
+            try (NativeErrnoContext mirror = new NativeErrnoContext()) {
+                ret = ((DirectCall1) WordFactory.pointer(functionPointer)).invoke(arg0);
+            }
+            return checkPendingException(ret);
+        }
+
+        @SuppressWarnings("try")
+        static long execute(long functionPointer, long arg0, long arg1) {
+            long ret;
+            try (NativeErrnoContext mirror = new NativeErrnoContext()) {
+                ret = ((DirectCall2) WordFactory.pointer(functionPointer)).invoke(arg0, arg1);
+            }
+            return checkPendingException(ret);
+        }
+
+        @SuppressWarnings("try")
+        static long execute(long functionPointer, long arg0, long arg1, long arg2) {
+            long ret;
+            try (NativeErrnoContext mirror = new NativeErrnoContext()) {
+                ret = ((DirectCall3) WordFactory.pointer(functionPointer)).invoke(arg0, arg1, arg2);
+            }
+            return checkPendingException(ret);
+        }
+
+        @SuppressWarnings("try")
+        static long execute(long functionPointer, long arg0, long arg1, long arg2, long arg3) {
+            long ret;
+            try (NativeErrnoContext mirror = new NativeErrnoContext()) {
+                ret = ((DirectCall4) WordFactory.pointer(functionPointer)).invoke(arg0, arg1, arg2, arg3);
+            }
+            return checkPendingException(ret);
+        }
+
+        @SuppressWarnings("try")
+        static long execute(long functionPointer, long arg0, long arg1, long arg2, long arg3, long arg4) {
+            long ret;
+            try (NativeErrnoContext mirror = new NativeErrnoContext()) {
+                ret = ((DirectCall5) WordFactory.pointer(functionPointer)).invoke(arg0, arg1, arg2, arg3, arg4);
+            }
+            return checkPendingException(ret);
+        }
+
+        @SuppressWarnings("try")
+        static long execute(long functionPointer, long arg0, long arg1, long arg2, long arg3, long arg4, long arg5) {
+            long ret;
+            try (NativeErrnoContext mirror = new NativeErrnoContext()) {
+                ret = ((DirectCall6) WordFactory.pointer(functionPointer)).invoke(arg0, arg1, arg2, arg3, arg4, arg5);
+            }
+            return checkPendingException(ret);
+        }
+
+        private static long checkPendingException(long ret) {
+            Throwable pending = NativeClosure.pendingException.get();
+            if (pending != null) {
+                NativeClosure.pendingException.set(null);
+                throw rethrow(pending);
+            }
+            return ret;
+        }
+    }
+
     @SuppressWarnings({"unchecked"})
     private static <E extends Throwable> RuntimeException rethrow(Throwable ex) throws E {
         throw (E) ex;
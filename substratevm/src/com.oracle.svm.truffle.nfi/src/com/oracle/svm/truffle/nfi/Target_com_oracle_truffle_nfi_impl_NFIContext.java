@@ -24,6 +24,7 @@
  */
 package com.oracle.svm.truffle.nfi;
 
+import static com.oracle.svm.truffle.nfi.NativeSignature.DirectCallHelper;
 import static com.oracle.svm.truffle.nfi.NativeSignature.ExecuteHelper;
 
 import com.oracle.svm.core.snippets.KnownIntrinsics;
@@ -193,6 +194,54 @@ final class Target_com_oracle_truffle_nfi_impl_NFIContext {
         }
     }
 
+    @Substitute
+    @SuppressWarnings("static-method")
+    boolean supportsDirectCalls() {
+        return TruffleNFIFeature.Options.TruffleNFIDirectCalls.getValue();
+    }
+
+    @Substitute
+    @SuppressWarnings("static-method")
+    long executeDirect(long functionPointer) {
+        return DirectCallHelper.execute(functionPointer);
+    }
+
+    @Substitute
+    @SuppressWarnings("static-method")
+    long executeDirect(long functionPointer, long arg0) {
+        return DirectCallHelper.execute(functionPointer, arg0);
+    }
+
+    @Substitute
+    @SuppressWarnings("static-method")
+    long executeDirect(long functionPointer, long arg0, long arg1) {
+        return DirectCallHelper.execute(functionPointer, arg0, arg1);
+    }
+
+    @Substitute
+    @SuppressWarnings("static-method")
+    long executeDirect(long functionPointer, long arg0, long arg1, long arg2) {
+        return DirectCallHelper.execute(functionPointer, arg0, arg1, arg2);
+    }
+
+    @Substitute
+    @SuppressWarnings("static-method")
+    long executeDirect(long functionPointer, long arg0, long arg1, long arg2, long arg3) {
+        return DirectCallHelper.execute(functionPointer, arg0, arg1, arg2, arg3);
+    }
+
+    @Substitute
+    @SuppressWarnings("static-method")
+    long executeDirect(long functionPointer, long arg0, long arg1, long arg2, long arg3, long arg4) {
+        return DirectCallHelper.execute(functionPointer, arg0, arg1, arg2, arg3, arg4);
+    }
+
+    @Substitute
+    @SuppressWarnings("static-method")
+    long executeDirect(long functionPointer, long arg0, long arg1, long arg2, long arg3, long arg4, long arg5) {
+        return DirectCallHelper.execute(functionPointer, arg0, arg1, arg2, arg3, arg4, arg5);
+    }
+
     @Substitute
     private static void loadNFILib() {
         // do nothing, the NFI library is statically linked to the SVM image
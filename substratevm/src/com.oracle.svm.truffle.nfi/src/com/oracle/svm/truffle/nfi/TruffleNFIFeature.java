@@ -28,9 +28,11 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.function.BooleanSupplier;
 
+import org.graalvm.compiler.options.Option;
 import org.graalvm.nativeimage.hosted.Feature;
 import org.graalvm.nativeimage.ImageSingletons;
 
+import com.oracle.svm.core.option.RuntimeOptionKey;
 import com.oracle.svm.truffle.TruffleFeature;
 import com.oracle.truffle.nfi.NFILanguage;
 
@@ -43,6 +45,11 @@ import com.oracle.truffle.nfi.NFILanguage;
  */
 public final class TruffleNFIFeature implements Feature {
 
+    public static class Options {
+        @Option(help = "Call native functions with integer and pointer signatures directly instead of through libffi")//
+        public static final RuntimeOptionKey<Boolean> TruffleNFIDirectCalls = new RuntimeOptionKey<>(true);
+    }
+
     public static class IsEnabled implements BooleanSupplier {
         @Override
         public boolean getAsBoolean() {
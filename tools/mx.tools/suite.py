@@ -130,9 +130,10 @@ suite = {
             "dependencies" : [
                 "com.oracle.truffle.tools.profiler",
                 "truffle:TRUFFLE_TEST",
-                "mx:JUNIT"
+                "mx:JUNIT",
+                "mx:JMH_1_21",
             ],
-            "annotationProcessors" : ["truffle:TRUFFLE_DSL_PROCESSOR"],
+            "annotationProcessors" : ["truffle:TRUFFLE_DSL_PROCESSOR", "mx:JMH_1_21"],
             "checkstyle" : "com.oracle.truffle.tools.chromeinspector",
             "javaCompliance" : "8+",
             "workingSets" : "Tools",
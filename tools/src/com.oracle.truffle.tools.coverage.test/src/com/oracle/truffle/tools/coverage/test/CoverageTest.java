@@ -43,8 +43,11 @@ import com.oracle.truffle.api.CallTarget;
 import com.oracle.truffle.api.Truffle;
 import com.oracle.truffle.api.TruffleLanguage;
 import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
 import com.oracle.truffle.api.instrumentation.GenerateWrapper;
 import com.oracle.truffle.api.instrumentation.InstrumentableNode;
+import com.oracle.truffle.api.instrumentation.LoadSourceSectionEvent;
+import com.oracle.truffle.api.instrumentation.LoadSourceSectionListener;
 import com.oracle.truffle.api.instrumentation.ProbeNode;
 import com.oracle.truffle.api.instrumentation.ProvidedTags;
 import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
@@ -52,8 +55,10 @@ import com.oracle.truffle.api.instrumentation.StandardTags;
 import com.oracle.truffle.api.instrumentation.Tag;
 import com.oracle.truffle.api.instrumentation.test.InstrumentationTestLanguage;
 import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeUtil;
 import com.oracle.truffle.api.nodes.RootNode;
 import com.oracle.truffle.api.source.SourceSection;
+import com.oracle.truffle.api.test.polyglot.ProxyInstrument;
 import com.oracle.truffle.api.test.polyglot.ProxyLanguage;
 import com.oracle.truffle.tools.coverage.CoverageTracker;
 import com.oracle.truffle.tools.coverage.RootCoverage;
@@ -161,6 +166,115 @@ public final class CoverageTest {
         }
     }
 
+    @Test
+    public void testSampledCount() {
+        try (Context context = Context.newBuilder().in(System.in).out(out).err(err).build();
+                        CoverageTracker tracker = CoverageInstrument.getTracker(context.getEngine())) {
+            tracker.start(new CoverageTracker.Config(SourceSectionFilter.ANY, true, 4));
+            context.eval(defaultSource);
+            final SourceCoverage[] coverage = tracker.getCoverage();
+            Assert.assertEquals(1, coverage.length);
+            for (RootCoverage root : coverage[0].getRoots()) {
+                // Coverage stays exact when counts are sampled.
+                Assert.assertEquals(!"neverCalled".equals(root.getName()), root.isCovered());
+                if (root.isCovered()) {
+                    Assert.assertTrue(root.getCount() > 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDisarmCovered() throws InterruptedException {
+        final Source source = makeSource("ROOT(\n" +
+                        "DEFINE(foo,ROOT(BLOCK(STATEMENT,STATEMENT,STATEMENT,STATEMENT,STATEMENT,STATEMENT,\n" +
+                        "STATEMENT,STATEMENT,STATEMENT,STATEMENT,STATEMENT,STATEMENT))),\n" +
+                        "DEFINE(neverCalled,ROOT(BLOCK(STATEMENT,STATEMENT))),\n" +
+                        "LOOP(10, CALL(foo))\n" +
+                        ")");
+        // The root and the statements of foo and the outer root.
+        final int coveredNodes = 14;
+        final int minDisarmBatch = 8;
+        final List<Node> instrumentedNodes = new ArrayList<>();
+        ProxyInstrument instrument = new ProxyInstrument();
+        ProxyInstrument.setDelegate(instrument);
+        instrument.setOnCreate((env) -> {
+            env.getInstrumenter().attachLoadSourceSectionListener(SourceSectionFilter.newBuilder().tagIs(StandardTags.RootTag.class, StandardTags.StatementTag.class).build(),
+                            new LoadSourceSectionListener() {
+                                @Override
+                                public void onLoad(LoadSourceSectionEvent event) {
+                                    synchronized (instrumentedNodes) {
+                                        instrumentedNodes.add(event.getNode());
+                                    }
+                                }
+                            }, true);
+        });
+        try (Context context = Context.newBuilder().in(System.in).out(out).err(err).build();
+                        CoverageTracker tracker = CoverageInstrument.getTracker(context.getEngine())) {
+            context.getEngine().getInstruments().get(ProxyInstrument.ID).lookup(ProxyInstrument.Initialize.class);
+            tracker.start(new CoverageTracker.Config(SourceSectionFilter.ANY, false, 1, true));
+            context.eval(source);
+            assertDisarmedCoverage(tracker);
+            // Covered nodes are disarmed on another thread, and their probes drop the coverage
+            // nodes the next time they are executed.
+            final long deadline = System.currentTimeMillis() + 10000;
+            int remaining = countExecutionEventNodes(instrumentedNodes);
+            while (remaining > coveredNodes - minDisarmBatch && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                context.eval(source);
+                assertDisarmedCoverage(tracker);
+                remaining = countExecutionEventNodes(instrumentedNodes);
+            }
+            Assert.assertTrue("Covered nodes were not disarmed, " + remaining + " coverage nodes remain", remaining <= coveredNodes - minDisarmBatch);
+            // Executing again after the covered sections were disarmed must not lose coverage.
+            for (int i = 0; i < 3; i++) {
+                context.eval(source);
+                assertDisarmedCoverage(tracker);
+            }
+        }
+    }
+
+    private static void assertDisarmedCoverage(CoverageTracker tracker) {
+        final SourceCoverage[] coverage = tracker.getCoverage();
+        Assert.assertEquals(1, coverage.length);
+        Assert.assertEquals(3, coverage[0].getRoots().length);
+        for (RootCoverage root : coverage[0].getRoots()) {
+            switch (root.getName()) {
+                case "foo":
+                    assertCoverage(root, 12, 12, "foo", true);
+                    break;
+                case "neverCalled":
+                    assertCoverage(root, 2, 0, "neverCalled", false);
+                    break;
+                case "":
+                    assertCoverage(root, 0, 0, "", true);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Counts the execution event nodes in the probes of the given nodes, which are only coverage
+     * nodes as long as no other instrument attaches execution event nodes.
+     */
+    private static int countExecutionEventNodes(List<Node> instrumentedNodes) {
+        int count = 0;
+        synchronized (instrumentedNodes) {
+            for (Node node : instrumentedNodes) {
+                if (node.getParent() instanceof InstrumentableNode.WrapperNode) {
+                    ProbeNode probe = ((InstrumentableNode.WrapperNode) node.getParent()).getProbeNode();
+                    count += NodeUtil.findAllNodeInstances(probe, ExecutionEventNode.class).size();
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDisarmCoveredWithCount() {
+        new CoverageTracker.Config(SourceSectionFilter.ANY, true, 1, true);
+    }
+
     @Test
     public void testRootAndStatementInDifferentSources() {
         try (Context c = Context.newBuilder(RootAndStatementInDifferentSources.ID).in(System.in).out(out).err(err).build();
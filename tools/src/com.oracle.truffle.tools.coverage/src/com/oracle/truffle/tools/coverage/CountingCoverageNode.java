@@ -24,31 +24,95 @@
  */
 package com.oracle.truffle.tools.coverage;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.nodes.Node;
 import com.oracle.truffle.api.source.SourceSection;
 
+/**
+ * Counts the executions of a source section in a striped counter that is merged when it is read, so
+ * that threads executing the same section do not contend on a single memory location. With a
+ * sampling period of <code>n</code>, every <code>n</code>-th execution of the section on each thread
+ * is counted and weighted by <code>n</code>. Whether the section is covered is tracked separately,
+ * so it stays exact regardless of the sampling period.
+ */
 public class CountingCoverageNode extends AbstractCoverageNode {
 
-    private final AtomicLong count = new AtomicLong(0);
+    private final LongAdder count = new LongAdder();
+    private final int samplingPeriod;
+
+    /*
+     * The sampling decision is thread-local, so threads executing the same section do not contend
+     * on the countdown. The thread that created the node keeps its countdown in a field, other
+     * threads keep theirs in a thread local.
+     */
+    private final Thread cachedThread;
+    private int cachedThreadCountdown;
+    private final ThreadLocal<int[]> otherThreadCountdowns;
+    @CompilerDirectives.CompilationFinal private boolean seenOtherThreads;
+    @CompilerDirectives.CompilationFinal volatile boolean covered;
 
-    CountingCoverageNode(SourceSection sourceSection, Node instrumentedNode, boolean isRoot, boolean isStatement) {
+    CountingCoverageNode(SourceSection sourceSection, Node instrumentedNode, boolean isRoot, boolean isStatement, int samplingPeriod) {
         super(sourceSection, instrumentedNode, isRoot, isStatement);
+        this.samplingPeriod = samplingPeriod;
+        this.cachedThread = Thread.currentThread();
+        this.otherThreadCountdowns = samplingPeriod > 1 ? ThreadLocal.withInitial(() -> new int[1]) : null;
     }
 
     @Override
     boolean isCovered() {
-        return count.get() != 0;
+        return covered;
     }
 
     @Override
     protected void onEnter(VirtualFrame frame) {
-        this.count.incrementAndGet();
+        if (!covered) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            covered = true;
+        }
+        if (samplingPeriod == 1) {
+            count.increment();
+        } else if (seenOtherThreads) {
+            sampleSlow();
+        } else if (cachedThread == Thread.currentThread()) {
+            if (--cachedThreadCountdown <= 0) {
+                cachedThreadCountdown = samplingPeriod;
+                add(samplingPeriod);
+            }
+        } else {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            seenOtherThreads = true;
+            sampleSlow();
+        }
+    }
+
+    @TruffleBoundary
+    private void sampleSlow() {
+        if (cachedThread == Thread.currentThread()) {
+            if (--cachedThreadCountdown <= 0) {
+                cachedThreadCountdown = samplingPeriod;
+                count.add(samplingPeriod);
+            }
+        } else {
+            final int[] countdown = otherThreadCountdowns.get();
+            if (--countdown[0] <= 0) {
+                countdown[0] = samplingPeriod;
+                count.add(samplingPeriod);
+            }
+        }
+    }
+
+    @TruffleBoundary
+    private void add(int executions) {
+        count.add(executions);
     }
 
     long getCount() {
-        return count.get();
+        final long sum = count.sum();
+        // A covered section must not report a count of zero, even if no execution was sampled.
+        return covered && sum == 0 ? 1 : sum;
     }
 }
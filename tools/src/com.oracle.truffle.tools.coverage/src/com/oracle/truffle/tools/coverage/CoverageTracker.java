@@ -27,11 +27,15 @@ package com.oracle.truffle.tools.coverage;
 import static com.oracle.truffle.api.instrumentation.TruffleInstrument.Env;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.function.Function;
 
 import com.oracle.truffle.api.instrumentation.EventBinding;
@@ -53,6 +57,14 @@ public final class CoverageTracker implements AutoCloseable {
 
     private static final SourceSectionFilter DEFAULT_FILTER = SourceSectionFilter.newBuilder().includeInternal(false).build();
 
+    /**
+     * The minimum number of sections that must be newly covered before the instrumentation of
+     * covered sections is removed. Above it, the instrumentation is removed whenever the number of
+     * covered sections doubles, so the number of re-instrumentations is logarithmic in the number of
+     * sections.
+     */
+    private static final int MIN_DISARM_BATCH = 8;
+
     static {
         CoverageInstrument.setFactory(new Function<Env, CoverageTracker>() {
             @Override
@@ -72,6 +84,12 @@ public final class CoverageTracker implements AutoCloseable {
     private EventBinding<LoadSourceSectionListener> loadedRootsBinding;
     private EventBinding<ExecutionEventNodeFactory> coveredBinding;
     private EventBinding<LoadSourceSectionListener> loadedStatementBinding;
+    private final Set<Node> disarmedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int coveredSinceDisarm;
+    private boolean disarmScheduled;
+    private Timer disarmThread;
+    private Config config;
+    private SourceSectionFilter executionFilter;
 
     private CoverageTracker(Env env) {
         this.env = env;
@@ -108,11 +126,13 @@ public final class CoverageTracker implements AutoCloseable {
         return sectionCoverage;
     }
 
-    private static AbstractCoverageNode makeCoverageNode(EventContext context, Config config) {
+    private AbstractCoverageNode makeCoverageNode(EventContext context) {
         final boolean isRoot = context.hasTag(StandardTags.RootTag.class);
         final boolean isStatement = context.hasTag(StandardTags.StatementTag.class);
-        if (config.count) {
-            return new CountingCoverageNode(context.getInstrumentedSourceSection(), context.getInstrumentedNode(), isRoot, isStatement);
+        if (config.disarmCovered) {
+            return new DisarmingCoverageNode(context.getInstrumentedSourceSection(), context.getInstrumentedNode(), isRoot, isStatement, this);
+        } else if (config.count) {
+            return new CountingCoverageNode(context.getInstrumentedSourceSection(), context.getInstrumentedNode(), isRoot, isStatement, config.countSamplingPeriod);
         } else {
             return new BooleanCoverageNode(context.getInstrumentedSourceSection(), context.getInstrumentedNode(), isRoot, isStatement);
         }
@@ -139,6 +159,7 @@ public final class CoverageTracker implements AutoCloseable {
         }
         clearData();
         tracking = true;
+        this.config = config;
         final Instrumenter instrumenter = env.getInstrumenter();
         instrument(config, instrumenter);
     }
@@ -147,6 +168,76 @@ public final class CoverageTracker implements AutoCloseable {
         this.loadedRoots.clear();
         this.loadedStatements.clear();
         this.coverageNodes.clear();
+        this.disarmedNodes.clear();
+        this.coveredSinceDisarm = 0;
+    }
+
+    /**
+     * Called by a {@link DisarmingCoverageNode} when it is first covered. This only counts the
+     * newly covered nodes. Once a batch is complete, the instrumentation is removed on the disarming
+     * thread, so the executing thread neither waits for it nor changes bindings while it executes
+     * an instrumented node.
+     */
+    void onCovered() {
+        synchronized (this) {
+            coveredSinceDisarm++;
+            if (!tracking || disarmScheduled || coveredSinceDisarm < Math.max(MIN_DISARM_BATCH, disarmedNodes.size())) {
+                return;
+            }
+            disarmScheduled = true;
+            if (disarmThread == null) {
+                disarmThread = new Timer("Coverage disarming thread", true);
+            }
+            disarmThread.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    disarmCovered();
+                }
+            }, 0);
+        }
+    }
+
+    /**
+     * Replaces the execution binding with one that does not instrument covered nodes. The new
+     * binding is attached before the old one is disposed, so no execution is missed in between.
+     * Executing threads pick up the change the next time they enter an affected probe. The nodes of
+     * the old binding that are covered are kept to report their coverage, the others are superseded
+     * by the nodes of the new binding.
+     */
+    private void disarmCovered() {
+        final EventBinding<ExecutionEventNodeFactory> oldBinding;
+        final List<AbstractCoverageNode> oldNodes;
+        synchronized (this) {
+            if (!tracking) {
+                disarmScheduled = false;
+                return;
+            }
+            oldBinding = coveredBinding;
+            oldNodes = new ArrayList<>(coverageNodes);
+            for (AbstractCoverageNode coverageNode : oldNodes) {
+                if (coverageNode.isCovered()) {
+                    disarmedNodes.add(coverageNode.instrumentedNode);
+                }
+            }
+            coveredSinceDisarm = 0;
+        }
+        final EventBinding<ExecutionEventNodeFactory> newBinding = attachExecution(env.getInstrumenter());
+        oldBinding.dispose();
+        synchronized (this) {
+            disarmScheduled = false;
+            if (!tracking) {
+                newBinding.dispose();
+                return;
+            }
+            coveredBinding = newBinding;
+            final Map<AbstractCoverageNode, Boolean> superseded = new IdentityHashMap<>();
+            for (AbstractCoverageNode coverageNode : oldNodes) {
+                if (!coverageNode.isCovered()) {
+                    superseded.put(coverageNode, Boolean.TRUE);
+                }
+            }
+            coverageNodes.removeIf(superseded::containsKey);
+        }
     }
 
     /**
@@ -161,6 +252,10 @@ public final class CoverageTracker implements AutoCloseable {
             throw new IllegalStateException("Coverage tracker is not tracking");
         }
         tracking = false;
+        if (disarmThread != null) {
+            disarmThread.cancel();
+            disarmThread = null;
+        }
         disposeBindings();
     }
 
@@ -254,24 +349,31 @@ public final class CoverageTracker implements AutoCloseable {
         }
         instrumentLoadedRoots(instrumenter, f);
         instrumentLoadedStatements(instrumenter, f);
-        instrumentExecution(config, instrumenter, f);
+        executionFilter = SourceSectionFilter.newBuilder().tagIs(StandardTags.RootTag.class, StandardTags.StatementTag.class).and(f).build();
+        coveredBinding = attachExecution(instrumenter);
 
     }
 
-    private void instrumentExecution(Config config, Instrumenter instrumenter, SourceSectionFilter f) {
-        final SourceSectionFilter filter = SourceSectionFilter.newBuilder().tagIs(StandardTags.RootTag.class, StandardTags.StatementTag.class).and(f).build();
-        coveredBinding = instrumenter.attachExecutionEventFactory(filter, new ExecutionEventNodeFactory() {
+    private EventBinding<ExecutionEventNodeFactory> attachExecution(Instrumenter instrumenter) {
+        return instrumenter.attachExecutionEventFactory(executionFilter, new ExecutionEventNodeFactory() {
             @Override
             public ExecutionEventNode create(EventContext context) {
-                final AbstractCoverageNode coverageNode = makeCoverageNode(context, config);
-                addCoverageNode(coverageNode);
-                return coverageNode;
+                return createCoverageNode(context);
             }
         });
     }
 
-    private synchronized void addCoverageNode(AbstractCoverageNode coverageNode) {
+    private synchronized AbstractCoverageNode createCoverageNode(EventContext context) {
+        /*
+         * Keyed by the instrumented node rather than its source section, as different nodes, e.g.
+         * a root and its body statement, may share a source section but not their coverage.
+         */
+        if (disarmedNodes.contains(context.getInstrumentedNode())) {
+            return null;
+        }
+        final AbstractCoverageNode coverageNode = makeCoverageNode(context);
         coverageNodes.add(coverageNode);
+        return coverageNode;
     }
 
     private void instrumentLoadedStatements(Instrumenter instrumenter, SourceSectionFilter f) {
@@ -326,17 +428,54 @@ public final class CoverageTracker implements AutoCloseable {
     /**
      * Configuration for the {@link CoverageTracker}. Specifies the {@link SourceSectionFilter
      * filter} for which {@link SourceSection source sections} to include in tracking as well as
-     * whether to keep track of how many times a particular source section was executed.
-     * 
+     * whether to keep track of how many times a particular source section was executed, and
+     * optionally the period at which executions are sampled when counting. Alternatively, the
+     * instrumentation of source sections can be removed once they are covered, so that the overhead
+     * of collecting coverage converges to zero as the covered part of the program grows.
+     *
      * @since 19.3.0
      */
     public static class Config {
         private final SourceSectionFilter sourceSectionFilter;
         private final boolean count;
+        private final int countSamplingPeriod;
+        private final boolean disarmCovered;
 
         public Config(SourceSectionFilter sourceSectionFilter, boolean count) {
+            this(sourceSectionFilter, count, 1);
+        }
+
+        /**
+         * Creates a configuration that, when counting, counts every
+         * <code>countSamplingPeriod</code>-th execution of a source section and weights it by
+         * <code>countSamplingPeriod</code>. Coverage itself is always exact.
+         *
+         * @since 20.2
+         */
+        public Config(SourceSectionFilter sourceSectionFilter, boolean count, int countSamplingPeriod) {
+            this(sourceSectionFilter, count, countSamplingPeriod, false);
+        }
+
+        /**
+         * Creates a configuration that, if <code>disarmCovered</code> is <code>true</code>, removes
+         * the instrumentation of source sections once they are covered. The instrumentation is
+         * removed in batches on a separate thread, each time the number of covered sections has
+         * grown enough to pay for re-instrumenting the loaded code. Counting requires the instrumentation to stay in
+         * place, so <code>disarmCovered</code> cannot be combined with <code>count</code>.
+         *
+         * @since 20.2
+         */
+        public Config(SourceSectionFilter sourceSectionFilter, boolean count, int countSamplingPeriod, boolean disarmCovered) {
+            if (countSamplingPeriod < 1) {
+                throw new IllegalArgumentException(String.format("Invalid count sampling period %s.", countSamplingPeriod));
+            }
+            if (count && disarmCovered) {
+                throw new IllegalArgumentException("Counting cannot be combined with removing the instrumentation of covered sections.");
+            }
             this.sourceSectionFilter = sourceSectionFilter;
             this.count = count;
+            this.countSamplingPeriod = countSamplingPeriod;
+            this.disarmCovered = disarmCovered;
         }
     }
 }
@@ -73,6 +73,10 @@ public class CoverageInstrument extends TruffleInstrument {
     static final OptionKey<Boolean> ENABLED = new OptionKey<>(false);
     @Option(help = "Keep count of each element's coverage (default: false).", category = OptionCategory.USER, stability = OptionStability.STABLE)
     static final OptionKey<Boolean> Count = new OptionKey<>(false);
+    @Option(help = "Count only every N-th execution of each element and scale the counts by N. Reduces the cost of counting in multi-threaded programs, at the price of approximate counts (default: 1).", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL)
+    static final OptionKey<Integer> CountSamplingPeriod = new OptionKey<>(1);
+    @Option(help = "Remove the instrumentation of elements once they are covered, so that the overhead converges to zero. Cannot be combined with Count. (default: false)", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL)
+    static final OptionKey<Boolean> DisarmCovered = new OptionKey<>(false);
     @Option(name = "Output", help = "Can be: human readable 'histogram' (per file coverage summary) or 'detailed' (per line coverage summary), machine readable 'json', tool compliant 'lcov'. (default: histogram)",
             category = OptionCategory.USER, stability = OptionStability.STABLE)
     static final OptionKey<Output> OUTPUT = new OptionKey<>(Output.HISTOGRAM, CLI_OUTPUT_TYPE);
@@ -164,7 +168,7 @@ public class CoverageInstrument extends TruffleInstrument {
         final OptionValues options = env.getOptions();
         enabled = ENABLED.getValue(options);
         if (enabled) {
-            tracker.start(new CoverageTracker.Config(getSourceSectionFilter(options), Count.getValue(options)));
+            tracker.start(new CoverageTracker.Config(getSourceSectionFilter(options), Count.getValue(options), CountSamplingPeriod.getValue(options), DisarmCovered.getValue(options)));
         }
     }
 
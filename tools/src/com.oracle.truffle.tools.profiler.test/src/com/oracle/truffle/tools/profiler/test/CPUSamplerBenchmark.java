@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.profiler.test;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oracle.truffle.api.instrumentation.test.InstrumentationTestLanguage;
+import com.oracle.truffle.tools.profiler.CPUSampler;
+
+/**
+ * Compares the overhead of the CPU sampler on a call intensive program, without a sampler, with
+ * the shadow stack and when sampling by polling.
+ */
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class CPUSamplerBenchmark {
+
+    private static final String CODE = "ROOT(\n" +
+                    "  DEFINE(foo, ROOT(STATEMENT(EXPRESSION))),\n" +
+                    "  DEFINE(bar, ROOT(BLOCK(STATEMENT, LOOP(100, CALL(foo))))),\n" +
+                    "  DEFINE(baz, ROOT(BLOCK(STATEMENT, LOOP(100, CALL(bar))))),\n" +
+                    "  CALL(baz)\n" +
+                    ")";
+
+    @Param({"none", "shadowStack", "polling"}) public String sampling;
+
+    private Context context;
+    private Source source;
+    private CPUSampler sampler;
+
+    @Setup
+    public void setup() {
+        source = Source.newBuilder(InstrumentationTestLanguage.ID, CODE, "CPUSamplerBenchmark").buildLiteral();
+        context = Context.create();
+        if (!"none".equals(sampling)) {
+            sampler = CPUSampler.find(context.getEngine());
+            synchronized (sampler) {
+                sampler.setSampleByPolling("polling".equals(sampling));
+                sampler.setPeriod(10);
+                sampler.setCollecting(true);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (sampler != null) {
+            sampler.close();
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public void execute() {
+        context.eval(source);
+    }
+}
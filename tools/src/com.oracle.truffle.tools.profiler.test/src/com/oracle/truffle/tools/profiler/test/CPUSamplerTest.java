@@ -146,6 +146,67 @@ public class CPUSamplerTest extends AbstractProfilerTest {
         Assert.assertTrue(children.size() == 0);
     }
 
+    @Test
+    public void testSampleByPolling() {
+        sampler.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+        sampler.setSampleByPolling(true);
+        sampler.setCollecting(true);
+        for (int i = 0; i < executionCount; i++) {
+            eval(defaultSourceForSampling);
+        }
+        sampler.setCollecting(false);
+
+        Assert.assertTrue(sampler.isSampleByPolling());
+        Assert.assertNotEquals(0, sampler.getSampleCount());
+        Collection<ProfilerNode<CPUSampler.Payload>> children = sampler.getRootNodes();
+        Assert.assertEquals(1, children.size());
+        ProfilerNode<CPUSampler.Payload> program = children.iterator().next();
+        Assert.assertEquals("", program.getRootName());
+        checkTimeline(program.getPayload());
+        for (ProfilerNode<CPUSampler.Payload> child : program.getChildren()) {
+            Assert.assertTrue(child.getRootName(), "baz".equals(child.getRootName()) || "bar".equals(child.getRootName()));
+            checkTimeline(child.getPayload());
+        }
+    }
+
+    final Source busySourceForSampling = makeSource("ROOT(" +
+                    "DEFINE(busy,ROOT(STATEMENT))," +
+                    "LOOP(1000, CALL(busy))" +
+                    ")");
+
+    final Source sleepingSourceForSampling = makeSource("ROOT(" +
+                    "DEFINE(sleeping,ROOT(SLEEP(10)))," +
+                    "LOOP(30, CALL(sleeping))" +
+                    ")");
+
+    @Test
+    public void testSampleByPollingSamplesAllThreads() throws InterruptedException {
+        sampler.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+        sampler.setSampleByPolling(true);
+        sampler.setCollecting(true);
+        // The busy thread polls far more often than the sleeping one, it must not serve all
+        // sample requests alone.
+        AtomicBoolean done = new AtomicBoolean();
+        Thread busy = new Thread(() -> {
+            while (!done.get()) {
+                eval(busySourceForSampling);
+            }
+        });
+        busy.start();
+        try {
+            eval(sleepingSourceForSampling);
+        } finally {
+            done.set(true);
+            busy.join();
+        }
+        sampler.setCollecting(false);
+
+        Map<Thread, Collection<ProfilerNode<CPUSampler.Payload>>> threads = sampler.getThreadToNodesMap();
+        Assert.assertFalse(threads.get(busy).isEmpty());
+        Assert.assertNotNull(threads.get(Thread.currentThread()));
+        Assert.assertFalse(threads.get(Thread.currentThread()).isEmpty());
+    }
+
     final Source defaultRecursiveSourceForSampling = makeSource("ROOT(" +
                     "DEFINE(rfoo,ROOT(BLOCK(RECURSIVE_CALL(foo, 10),SLEEP(1))))," +
                     "DEFINE(rbar,ROOT(BLOCK(STATEMENT,LOOP(10, CALL(foo)))))," +
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.profiler.test;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags.RootTag;
+import com.oracle.truffle.api.instrumentation.StandardTags.StatementTag;
+import com.oracle.truffle.api.instrumentation.test.InstrumentationTestLanguage;
+import com.oracle.truffle.tools.profiler.CPUTracer;
+
+/**
+ * Compares the overhead of the CPU tracer on a statement intensive program executed by several
+ * threads in a shared context, without a tracer, with exact counts and with sampled counts. Run it
+ * with <code>-t 1</code> and with the default thread count to compare how the counters scale.
+ */
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class CPUTracerBenchmark {
+
+    private static final String CODE = "ROOT(\n" +
+                    "  DEFINE(foo, ROOT(STATEMENT(EXPRESSION))),\n" +
+                    "  DEFINE(bar, ROOT(BLOCK(STATEMENT, LOOP(100, CALL(foo))))),\n" +
+                    "  DEFINE(baz, ROOT(BLOCK(STATEMENT, LOOP(100, CALL(bar))))),\n" +
+                    "  CALL(baz)\n" +
+                    ")";
+
+    @Param({"none", "exact", "sampled"}) public String counting;
+
+    private Context context;
+    private Source source;
+    private CPUTracer tracer;
+
+    @Setup
+    public void setup() {
+        source = Source.newBuilder(InstrumentationTestLanguage.ID, CODE, "CPUTracerBenchmark").buildLiteral();
+        context = Context.create();
+        if (!"none".equals(counting)) {
+            tracer = CPUTracer.find(context.getEngine());
+            synchronized (tracer) {
+                tracer.setFilter(SourceSectionFilter.newBuilder().tagIs(RootTag.class, StatementTag.class).build());
+                tracer.setCountSamplingPeriod("sampled".equals(counting) ? 64 : 1);
+                tracer.setCollecting(true);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (tracer != null) {
+            tracer.close();
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public void execute() {
+        context.eval(source);
+    }
+}
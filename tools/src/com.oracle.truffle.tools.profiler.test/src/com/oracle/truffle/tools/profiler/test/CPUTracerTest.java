@@ -157,6 +157,105 @@ public class CPUTracerTest extends AbstractProfilerTest {
                         expectedCountMap);
     }
 
+    @Test
+    public void testMultiThreadedCount() throws InterruptedException {
+        final int threadCount = 4;
+        final int executionCount = 100;
+        synchronized (tracer) {
+            tracer.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+        }
+        tracer.setCollecting(true);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < executionCount; j++) {
+                    eval(defaultSource);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final Map<String, Long> expectedCountMap = new HashMap<>();
+        expectedCountMap.put("baz", 1L);
+        expectedCountMap.put("bar", 11L);
+        expectedCountMap.put("foo", 110L);
+        expectedCountMap.put("", 1L);
+        for (CPUTracer.Payload payload : tracer.getPayloads()) {
+            Assert.assertEquals(payload.getRootName() + " count not correct",
+                            threadCount * executionCount * expectedCountMap.get(payload.getRootName()), payload.getCount());
+        }
+    }
+
+    @Test
+    public void testCountSamplingPeriod() {
+        final int period = 8;
+        synchronized (tracer) {
+            tracer.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+            tracer.setCountSamplingPeriod(period);
+            Assert.assertEquals(period, tracer.getCountSamplingPeriod());
+        }
+        tracer.setCollecting(true);
+        final int executionCount = 100;
+        for (int i = 0; i < executionCount; i++) {
+            eval(defaultSource);
+        }
+        final Map<String, Long> expectedCountMap = new HashMap<>();
+        expectedCountMap.put("baz", 1L);
+        expectedCountMap.put("bar", 11L);
+        expectedCountMap.put("foo", 110L);
+        expectedCountMap.put("", 1L);
+        for (CPUTracer.Payload payload : tracer.getPayloads()) {
+            Assert.assertEquals(0, payload.getCount() % period);
+            // Every period-th execution is counted, starting with the first one.
+            final long expected = executionCount * expectedCountMap.get(payload.getRootName());
+            Assert.assertEquals(payload.getRootName() + " count not correct", (expected + period - 1) / period * period, payload.getCount());
+        }
+        tracer.setCollecting(false);
+        try {
+            tracer.setCountSamplingPeriod(0);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMultiThreadedCountSamplingPeriod() throws InterruptedException {
+        final int period = 8;
+        final int threadCount = 4;
+        final int executionCount = 100;
+        synchronized (tracer) {
+            tracer.setFilter(NO_INTERNAL_ROOT_TAG_FILTER);
+            tracer.setCountSamplingPeriod(period);
+        }
+        tracer.setCollecting(true);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < executionCount; j++) {
+                    eval(defaultSource);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final Map<String, Long> expectedCountMap = new HashMap<>();
+        expectedCountMap.put("baz", 1L);
+        expectedCountMap.put("bar", 11L);
+        expectedCountMap.put("foo", 110L);
+        expectedCountMap.put("", 1L);
+        for (CPUTracer.Payload payload : tracer.getPayloads()) {
+            // Each thread counts every period-th of its own executions, starting with the first one.
+            final long expectedPerThread = executionCount * expectedCountMap.get(payload.getRootName());
+            Assert.assertEquals(payload.getRootName() + " count not correct",
+                            threadCount * ((expectedPerThread + period - 1) / period * period), payload.getCount());
+        }
+    }
+
     // Works only assuming unique root names in counters
     // This is, for example, not true for statement tracing
     private void executeAndCheckRootNameCounters(Source recursiveSource,
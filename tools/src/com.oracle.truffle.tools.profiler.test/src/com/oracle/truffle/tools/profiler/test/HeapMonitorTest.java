@@ -36,6 +36,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.Source;
 import org.junit.Assert;
 import org.junit.Before;
@@ -168,6 +170,36 @@ public class HeapMonitorTest extends AbstractProfilerTest {
 
     }
 
+    @Test
+    public void testAllocationsOfDisposedThreads() throws InterruptedException {
+        final int contexts = 5;
+        final int threads = 4;
+        final int evaluations = 10;
+        try (Engine engine = Engine.create()) {
+            HeapMonitor engineMonitor = HeapMonitor.find(engine);
+            engineMonitor.setCollecting(true);
+            for (int i = 0; i < contexts; i++) {
+                // Closing the context disposes its threads, which drains their buffers.
+                try (Context threadsContext = Context.newBuilder().engine(engine).build()) {
+                    Thread[] executing = new Thread[threads];
+                    for (int j = 0; j < threads; j++) {
+                        executing[j] = new Thread(() -> {
+                            for (int k = 0; k < evaluations; k++) {
+                                threadsContext.eval(oneAllocationSource);
+                            }
+                        });
+                        executing[j].start();
+                    }
+                    for (Thread thread : executing) {
+                        thread.join();
+                    }
+                }
+                assertEquals((i + 1) * threads * evaluations, engineMonitor.takeSummary().getTotalInstances());
+            }
+            engineMonitor.close();
+        }
+    }
+
     private static void requireAllocations(AtomicInteger allocations, int number) throws InterruptedException {
         allocations.set(0);
         while (allocations.get() < number) {
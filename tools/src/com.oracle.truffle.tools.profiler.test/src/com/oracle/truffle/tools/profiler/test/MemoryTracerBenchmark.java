@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.profiler.test;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oracle.truffle.api.instrumentation.test.InstrumentationTestLanguage;
+import com.oracle.truffle.tools.profiler.HeapMonitor;
+import com.oracle.truffle.tools.profiler.MemoryTracer;
+
+/**
+ * Compares the overhead of the heap monitor and of the memory tracer, recording every allocation
+ * and sampling allocations, on an allocation intensive program executed by several threads in a
+ * shared context.
+ */
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MemoryTracerBenchmark {
+
+    private static final String CODE = "ROOT(\n" +
+                    "  DEFINE(foo, ROOT(BLOCK(ALLOCATION, ALLOCATION))),\n" +
+                    "  DEFINE(bar, ROOT(BLOCK(STATEMENT, LOOP(100, CALL(foo))))),\n" +
+                    "  CALL(bar)\n" +
+                    ")";
+
+    @Param({"none", "heapMonitor", "tracer", "sampledTracer"}) public String profiling;
+
+    private Context context;
+    private Source source;
+    private HeapMonitor monitor;
+    private MemoryTracer tracer;
+
+    @Setup
+    public void setup() {
+        source = Source.newBuilder(InstrumentationTestLanguage.ID, CODE, "MemoryTracerBenchmark").buildLiteral();
+        context = Context.create();
+        if ("heapMonitor".equals(profiling)) {
+            monitor = HeapMonitor.find(context.getEngine());
+            monitor.setCollecting(true);
+        } else if (!"none".equals(profiling)) {
+            tracer = MemoryTracer.find(context.getEngine());
+            synchronized (tracer) {
+                tracer.setSamplingInterval("sampledTracer".equals(profiling) ? 64 : 0);
+                tracer.setCollecting(true);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (monitor != null) {
+            monitor.close();
+        }
+        if (tracer != null) {
+            tracer.close();
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public void execute() {
+        context.eval(source);
+    }
+}
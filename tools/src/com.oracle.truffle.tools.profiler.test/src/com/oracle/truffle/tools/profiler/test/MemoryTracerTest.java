@@ -127,6 +127,34 @@ public class MemoryTracerTest extends AbstractProfilerTest {
         Assert.assertFalse(tracer.hasData());
     }
 
+    @Test
+    public void testSampledAllocations() {
+        final String allocationsSource = "ROOT(DEFINE(foo,ROOT(ALLOCATION)),LOOP(1000, CALL(foo)))";
+
+        synchronized (tracer) {
+            tracer.setSamplingInterval(10);
+            Assert.assertEquals(10, tracer.getSamplingInterval());
+        }
+        tracer.setCollecting(true);
+        eval(makeSource(allocationsSource));
+
+        // Each allocation reports one byte, so about one in ten allocations is recorded.
+        long recorded = 0;
+        for (ProfilerNode<MemoryTracer.Payload> node : tracer.getRootNodes()) {
+            recorded += node.getPayload().getTotalAllocations();
+        }
+        Assert.assertTrue("No allocation was sampled", recorded > 0);
+        Assert.assertTrue("Too many allocations were sampled: " + recorded, recorded < 500);
+
+        tracer.setCollecting(false);
+        try {
+            tracer.setSamplingInterval(-1);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testOneAllocationInRootRecursive() {
         final String oneAllocationSource = "ROOT(" + "DEFINE(foo,ROOT(BLOCK(STATEMENT,RECURSIVE_CALL(foo, 10))))," + "DEFINE(bar,ROOT(BLOCK(STATEMENT,LOOP(10, CALL(foo)))))," +
@@ -65,6 +65,10 @@ import com.oracle.truffle.tools.profiler.impl.ProfilerToolFactory;
  * intervals, i.e. the state of the stack is copied and saved into trees of {@linkplain ProfilerNode
  * nodes}, which represent the profile of the execution.
  * <p>
+ * Alternatively, the sampler can {@link #setSampleByPolling(boolean) sample by polling}. In that
+ * mode no shadow stack is kept; instead, the stack of each thread is walked by the thread itself
+ * when it enters or exits an instrumented node while a sample is due.
+ * <p>
  * Usage example: {@codesnippet CPUSamplerSnippets#example}
  *
  * @since 0.30
@@ -211,7 +215,10 @@ public final class CPUSampler implements Closeable {
 
     private TimerTask samplerTask;
 
+    private boolean sampleByPolling = false;
+
     private volatile ShadowStack shadowStack;
+    private volatile PollingStackSampler pollingSampler;
     private volatile EventBinding<?> stacksBinding;
 
     private final Map<Thread, ProfilerNode<Payload>> rootNodes = new HashMap<>();
@@ -302,6 +309,30 @@ public final class CPUSampler implements Closeable {
         this.mode = mode;
     }
 
+    /**
+     * Sets whether stacks are captured by polling instead of being read from a shadow stack. At
+     * every sampling period, each thread walks and records its own stack the next time it enters
+     * or exits an instrumented node. Instead of pushing and popping a shadow stack entry, the
+     * instrumented nodes only check a per-thread flag. Samples are attributed to the nearest
+     * instrumented node boundary, and threads that do not reach an instrumented node during a
+     * period, e.g. because they are blocked, are not sampled in that period.
+     *
+     * @param sampleByPolling whether to sample by polling
+     * @since 20.2
+     */
+    public synchronized void setSampleByPolling(boolean sampleByPolling) {
+        enterChangeConfig();
+        this.sampleByPolling = sampleByPolling;
+    }
+
+    /**
+     * @return whether stacks are captured by polling instead of being read from a shadow stack.
+     * @since 20.2
+     */
+    public synchronized boolean isSampleByPolling() {
+        return sampleByPolling;
+    }
+
     /**
      * Sets the sampling period i.e. the time between two samples of the shadow stack are taken.
      *
@@ -536,20 +567,34 @@ public final class CPUSampler implements Closeable {
      * are unmodifiable and represent atomic snapshots of the stack at the time when this method was
      * invoked. Only active threads are sampled. A thread is active if it has at least one entry on
      * the stack. The sampling is initialized if this method is invoked for the first time or
-     * reinitialized if the configuration changes.
+     * reinitialized if the configuration changes. When {@link #setSampleByPolling(boolean)
+     * sampling by polling}, the most recently captured stack of each thread is returned and a
+     * new capture is requested.
      *
      * @since 19.0
      */
     public Map<Thread, List<StackTraceEntry>> takeSample() {
-        ShadowStack localShadowStack = shadowStack;
-        if (localShadowStack == null) {
-            localShadowStack = initializeShadowStack();
+        if (shadowStack == null && pollingSampler == null) {
+            initializeStacks();
         }
         if (delaySamplingUntilNonInternalLangInit && !nonInternalLanguageContextInitialized) {
             return Collections.emptyMap();
         }
-        assert localShadowStack != null;
         Map<Thread, List<StackTraceEntry>> stacks = new HashMap<>();
+        PollingStackSampler localPollingSampler = pollingSampler;
+        if (localPollingSampler != null) {
+            for (Entry<Thread, StackTraceEntry[]> entry : localPollingSampler.getLastStacks().entrySet()) {
+                final List<StackTraceEntry> stackTraceEntries = Arrays.asList(entry.getValue().clone());
+                Collections.reverse(stackTraceEntries);
+                stacks.put(entry.getKey(), Collections.unmodifiableList(stackTraceEntries));
+            }
+            localPollingSampler.requestSample();
+            return Collections.unmodifiableMap(stacks);
+        }
+        ShadowStack localShadowStack = shadowStack;
+        if (localShadowStack == null) {
+            return Collections.emptyMap();
+        }
         for (ShadowStack.ThreadLocalStack stack : localShadowStack.getStacks()) {
             if (stack.hasStackOverflowed()) {
                 stackOverflowed = true;
@@ -574,18 +619,22 @@ public final class CPUSampler implements Closeable {
         return converted;
     }
 
-    private synchronized ShadowStack initializeShadowStack() {
-        ShadowStack localShadowStack = shadowStack;
-        if (localShadowStack == null) {
+    private synchronized void initializeStacks() {
+        if (shadowStack == null && pollingSampler == null) {
             assert stacksBinding == null;
             SourceSectionFilter f = this.filter;
             if (f == null) {
                 f = DEFAULT_FILTER;
             }
-            this.shadowStack = localShadowStack = new ShadowStack(stackLimit, f, env.getInstrumenter(), TruffleLogger.getLogger(CPUSamplerInstrument.ID));
-            this.stacksBinding = this.shadowStack.install(env.getInstrumenter(), combine(f, mode), mode == Mode.EXCLUDE_INLINED_ROOTS);
+            TruffleLogger logger = TruffleLogger.getLogger(CPUSamplerInstrument.ID);
+            if (sampleByPolling) {
+                this.pollingSampler = new PollingStackSampler(stackLimit, f, env.getInstrumenter(), logger);
+                this.stacksBinding = this.pollingSampler.install(combine(f, mode), mode == Mode.EXCLUDE_INLINED_ROOTS);
+            } else {
+                this.shadowStack = new ShadowStack(stackLimit, f, env.getInstrumenter(), logger);
+                this.stacksBinding = this.shadowStack.install(env.getInstrumenter(), combine(f, mode), mode == Mode.EXCLUDE_INLINED_ROOTS);
+            }
         }
-        return localShadowStack;
     }
 
     private void resetSampling() {
@@ -599,7 +648,7 @@ public final class CPUSampler implements Closeable {
             samplerThread = new Timer("Sampling thread", true);
         }
         this.stackOverflowed = false;
-        initializeShadowStack();
+        initializeStacks();
         this.samplerTask = new SamplingTimerTask();
         this.samplerThread.schedule(samplerTask, delay, period);
     }
@@ -637,16 +686,15 @@ public final class CPUSampler implements Closeable {
     }
 
     private void invalidateStack() {
-        ShadowStack localShadowStack = this.shadowStack;
-        if (localShadowStack != null) {
+        if (this.shadowStack != null || this.pollingSampler != null) {
             synchronized (this) {
-                localShadowStack = this.shadowStack;
-                if (localShadowStack != null) {
+                if (this.shadowStack != null || this.pollingSampler != null) {
                     if (stacksBinding != null) {
                         stacksBinding.dispose();
                         stacksBinding = null;
                     }
                     shadowStack = null;
+                    pollingSampler = null;
                 } else {
                     assert stacksBinding == null;
                 }
@@ -663,19 +711,24 @@ public final class CPUSampler implements Closeable {
             }
             long timestamp = System.currentTimeMillis();
             boolean sampleTaken = false;
+            PollingStackSampler localPollingSampler = pollingSampler;
+            if (localPollingSampler != null) {
+                // Samples captured since the last period each count as one sample.
+                for (PollingStackSampler.CapturedStack stack : localPollingSampler.drainStacks()) {
+                    if (sample(stack.getStack(), stack.getTimestamp(), getThreadNode(stack.getThread()))) {
+                        samplesTaken.incrementAndGet();
+                    }
+                }
+                if (localPollingSampler.hasStackOverflowed()) {
+                    stackOverflowed = true;
+                }
+                localPollingSampler.requestSample();
+                return;
+            }
             ShadowStack localShadowStack = shadowStack;
             if (localShadowStack != null) {
                 for (ShadowStack.ThreadLocalStack stack : localShadowStack.getStacks()) {
-                    ProfilerNode<Payload> threadNode;
-                    synchronized (CPUSampler.this) {
-                        threadNode = rootNodes.computeIfAbsent(stack.getThread(), new Function<Thread, ProfilerNode<Payload>>() {
-                            @Override
-                            public ProfilerNode<Payload> apply(Thread thread) {
-                                return new ProfilerNode<>();
-                            }
-                        });
-                    }
-                    sampleTaken |= sample(stack, timestamp, threadNode);
+                    sampleTaken |= sample(stack, timestamp, getThreadNode(stack.getThread()));
                 }
             }
             if (sampleTaken) {
@@ -683,6 +736,17 @@ public final class CPUSampler implements Closeable {
             }
         }
 
+        private ProfilerNode<Payload> getThreadNode(Thread thread) {
+            synchronized (CPUSampler.this) {
+                return rootNodes.computeIfAbsent(thread, new Function<Thread, ProfilerNode<Payload>>() {
+                    @Override
+                    public ProfilerNode<Payload> apply(Thread t) {
+                        return new ProfilerNode<>();
+                    }
+                });
+            }
+        }
+
         boolean sample(ShadowStack.ThreadLocalStack stack, long timestamp, ProfilerNode<Payload> threadNode) {
             if (stack.hasStackOverflowed()) {
                 stackOverflowed = true;
@@ -692,7 +756,10 @@ public final class CPUSampler implements Closeable {
                 // nothing on the stack
                 return false;
             }
-            StackTraceEntry[] stackFrames = stack.getStack();
+            return sample(stack.getStack(), timestamp, threadNode);
+        }
+
+        boolean sample(StackTraceEntry[] stackFrames, long timestamp, ProfilerNode<Payload> threadNode) {
             if (stackFrames == null || stackFrames.length == 0) {
                 return false;
             }
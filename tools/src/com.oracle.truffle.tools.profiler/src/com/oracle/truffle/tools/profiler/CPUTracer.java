@@ -30,12 +30,15 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
 
 import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.frame.VirtualFrame;
 import com.oracle.truffle.api.instrumentation.EventBinding;
 import com.oracle.truffle.api.instrumentation.EventContext;
@@ -58,7 +61,10 @@ import com.oracle.truffle.tools.profiler.impl.ProfilerToolFactory;
  * framework}.
  * <p>
  * The tracer counts how many times each of the elements of interest (e.g. functions, statements,
- * etc.) are executed.
+ * etc.) are executed. Counts are kept in striped counters that are merged when they are read, so
+ * that threads executing the same element do not contend on a single memory location. The
+ * {@link #setCountSamplingPeriod(int) count sampling period} further reduces the cost of counting
+ * by only counting every n-th execution of an element.
  * <p>
  * Usage example: {@codesnippet CPUTracerSnippets#example}
  *
@@ -80,6 +86,8 @@ public final class CPUTracer implements Closeable {
 
     private SourceSectionFilter filter = null;
 
+    private int countSamplingPeriod = 1;
+
     private EventBinding<?> activeBinding;
 
     private final Map<SourceSection, Payload> payloadMap = new ConcurrentHashMap<>();
@@ -139,6 +147,31 @@ public final class CPUTracer implements Closeable {
         return filter;
     }
 
+    /**
+     * Sets the count sampling period of the tracer. With a period of <code>n</code>, every
+     * <code>n</code>-th execution of an element on each thread is counted and weighted by
+     * <code>n</code>, so counts are estimates rather than exact values. The default period of
+     * <code>1</code> counts every execution.
+     *
+     * @param period the count sampling period, must be positive
+     * @since 20.2
+     */
+    public synchronized void setCountSamplingPeriod(int period) {
+        verifyConfigAllowed();
+        if (period < 1) {
+            throw new IllegalArgumentException(String.format("Invalid count sampling period %s.", period));
+        }
+        this.countSamplingPeriod = period;
+    }
+
+    /**
+     * @return the count sampling period of the tracer
+     * @since 20.2
+     */
+    public synchronized int getCountSamplingPeriod() {
+        return countSamplingPeriod;
+    }
+
     /**
      * @return All the payloads the tracer has gathered as an unmodifiable collection
      * @since 0.30
@@ -189,10 +222,11 @@ public final class CPUTracer implements Closeable {
         if (f == null) {
             f = DEFAULT_FILTER;
         }
+        final int period = this.countSamplingPeriod;
         this.activeBinding = env.getInstrumenter().attachExecutionEventFactory(f, new ExecutionEventNodeFactory() {
             @Override
             public ExecutionEventNode create(EventContext context) {
-                return new CounterNode(getCounter(context));
+                return new CounterNode(getCounter(context), period);
             }
         });
     }
@@ -218,8 +252,8 @@ public final class CPUTracer implements Closeable {
 
         private final StackTraceEntry location;
 
-        private long countInterpreted;
-        private long countCompiled;
+        private final LongAdder countInterpreted = new LongAdder();
+        private final LongAdder countCompiled = new LongAdder();
 
         Payload(StackTraceEntry location) {
             this.location = location;
@@ -259,7 +293,7 @@ public final class CPUTracer implements Closeable {
          * @since 0.30
          */
         public long getCountCompiled() {
-            return countCompiled;
+            return countCompiled.sum();
         }
 
         /**
@@ -267,7 +301,7 @@ public final class CPUTracer implements Closeable {
          * @since 0.30
          */
         public long getCountInterpreted() {
-            return countInterpreted;
+            return countInterpreted.sum();
         }
 
         /**
@@ -275,24 +309,81 @@ public final class CPUTracer implements Closeable {
          * @since 0.30
          */
         public long getCount() {
-            return countCompiled + countInterpreted;
+            return countCompiled.sum() + countInterpreted.sum();
+        }
+
+        void increment(boolean interpreted) {
+            if (interpreted) {
+                countInterpreted.increment();
+            } else {
+                countCompiled.increment();
+            }
+        }
+
+        @TruffleBoundary
+        void add(boolean interpreted, int count) {
+            if (interpreted) {
+                countInterpreted.add(count);
+            } else {
+                countCompiled.add(count);
+            }
         }
     }
 
     private static class CounterNode extends ExecutionEventNode {
 
         private final Payload payload;
+        private final int samplingPeriod;
 
-        CounterNode(Payload payload) {
+        /*
+         * The sampling decision is thread-local, so threads executing the same element do not
+         * contend on the countdown. The thread that created the node keeps its countdown in a
+         * field, other threads keep theirs in a thread local.
+         */
+        private final Thread cachedThread;
+        private int cachedThreadCountdown;
+        private final ThreadLocal<int[]> otherThreadCountdowns;
+        @CompilationFinal private boolean seenOtherThreads;
+
+        CounterNode(Payload payload, int samplingPeriod) {
             this.payload = payload;
+            this.samplingPeriod = samplingPeriod;
+            this.cachedThread = Thread.currentThread();
+            this.otherThreadCountdowns = samplingPeriod > 1 ? ThreadLocal.withInitial(() -> new int[1]) : null;
         }
 
         @Override
         protected void onEnter(VirtualFrame frame) {
-            if (CompilerDirectives.inInterpreter()) {
-                payload.countInterpreted++;
+            final boolean interpreted = CompilerDirectives.inInterpreter();
+            if (samplingPeriod == 1) {
+                payload.increment(interpreted);
+            } else if (seenOtherThreads) {
+                sampleSlow(interpreted);
+            } else if (cachedThread == Thread.currentThread()) {
+                if (--cachedThreadCountdown <= 0) {
+                    cachedThreadCountdown = samplingPeriod;
+                    payload.add(interpreted, samplingPeriod);
+                }
+            } else {
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                seenOtherThreads = true;
+                sampleSlow(interpreted);
+            }
+        }
+
+        @TruffleBoundary
+        private void sampleSlow(boolean interpreted) {
+            if (cachedThread == Thread.currentThread()) {
+                if (--cachedThreadCountdown <= 0) {
+                    cachedThreadCountdown = samplingPeriod;
+                    payload.add(interpreted, samplingPeriod);
+                }
             } else {
-                payload.countCompiled++;
+                final int[] countdown = otherThreadCountdowns.get();
+                if (--countdown[0] <= 0) {
+                    countdown[0] = samplingPeriod;
+                    payload.add(interpreted, samplingPeriod);
+                }
             }
         }
 
@@ -51,6 +51,7 @@ import com.oracle.truffle.api.instrumentation.AllocationListener;
 import com.oracle.truffle.api.instrumentation.AllocationReporter;
 import com.oracle.truffle.api.instrumentation.ContextsListener;
 import com.oracle.truffle.api.instrumentation.EventBinding;
+import com.oracle.truffle.api.instrumentation.ThreadsListener;
 import com.oracle.truffle.api.instrumentation.TruffleInstrument;
 import com.oracle.truffle.api.interop.InteropLibrary;
 import com.oracle.truffle.api.interop.UnsupportedMessageException;
@@ -65,6 +66,10 @@ import com.oracle.truffle.tools.profiler.impl.HeapMonitorInstrument;
  * The {@link HeapMonitor} only tracks allocations while the heap monitor is
  * {@link #setCollecting(boolean) collecting} data. This means that allocations that were performed
  * while the heap monitor was not collecting data are not tracked.
+ * <p>
+ * Each thread buffers the allocations it reports separately, so allocating threads do not contend
+ * with each other. The buffers are merged into the summaries when a summary is taken or when the
+ * thread is disposed.
  *
  * <p>
  * Usage example: {@link HeapMonitorSnippets#example}
@@ -82,7 +87,11 @@ public final class HeapMonitor implements Closeable {
     private final TruffleInstrument.Env env;
 
     private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
-    private final ConcurrentLinkedQueue<ObjectWeakReference> newReferences = new ConcurrentLinkedQueue<>();
+    /*
+     * The per-thread buffers of references to allocations that are not yet part of the summaries.
+     * A buffer is removed when its thread is disposed, so short-lived threads do not accumulate.
+     */
+    private final Map<Thread, ConcurrentLinkedQueue<ObjectWeakReference>> newReferences = new ConcurrentHashMap<>();
     private final ConcurrentLinkedQueue<ObjectWeakReference> processedReferences = new ConcurrentLinkedQueue<>();
     private final Map<LanguageInfo, Map<String, HeapSummary>> summaryData = new LinkedHashMap<>();
     private Thread referenceThread;
@@ -125,6 +134,31 @@ public final class HeapMonitor implements Closeable {
 
             }
         }, true);
+        env.getInstrumenter().attachThreadsListener(new ThreadsListener() {
+            @Override
+            public void onThreadInitialized(TruffleContext context, Thread thread) {
+
+            }
+
+            @Override
+            public void onThreadDisposed(TruffleContext context, Thread thread) {
+                ConcurrentLinkedQueue<ObjectWeakReference> references = newReferences.remove(thread);
+                if (references != null) {
+                    synchronized (summaryData) {
+                        processNewReferences(references);
+                    }
+                }
+            }
+        }, false);
+    }
+
+    private ConcurrentLinkedQueue<ObjectWeakReference> getThreadNewReferences() {
+        Thread thread = Thread.currentThread();
+        ConcurrentLinkedQueue<ObjectWeakReference> references = newReferences.get(thread);
+        if (references == null) {
+            references = newReferences.computeIfAbsent(thread, k -> new ConcurrentLinkedQueue<>());
+        }
+        return references;
     }
 
     private void resetMonitor() {
@@ -253,20 +287,27 @@ public final class HeapMonitor implements Closeable {
 
     private void processNewReferences() {
         synchronized (summaryData) {
-            ObjectWeakReference reference;
-            while ((reference = newReferences.poll()) != null) {
-                HeapSummary summary = getSummary(summaryData, reference.language, reference.metaObject);
-                summary.totalInstances++;
-                summary.aliveInstances++;
-                long bytesDiff = reference.computeBytesDiff();
-                summary.totalBytes += bytesDiff;
-                summary.aliveBytes += bytesDiff;
-                reference.processed = true;
-                processedReferences.add(reference);
+            for (ConcurrentLinkedQueue<ObjectWeakReference> references : newReferences.values()) {
+                processNewReferences(references);
             }
         }
     }
 
+    private void processNewReferences(ConcurrentLinkedQueue<ObjectWeakReference> references) {
+        assert Thread.holdsLock(summaryData);
+        ObjectWeakReference reference;
+        while ((reference = references.poll()) != null) {
+            HeapSummary summary = getSummary(summaryData, reference.language, reference.metaObject);
+            summary.totalInstances++;
+            summary.aliveInstances++;
+            long bytesDiff = reference.computeBytesDiff();
+            summary.totalBytes += bytesDiff;
+            summary.aliveBytes += bytesDiff;
+            reference.processed = true;
+            processedReferences.add(reference);
+        }
+    }
+
     private static HeapSummary getSummary(Map<LanguageInfo, Map<String, HeapSummary>> summaries, LanguageInfo language, String metaObject) {
         Map<String, HeapSummary> summaryMap = summaries.computeIfAbsent(language, k -> new LinkedHashMap<>());
         return summaryMap.computeIfAbsent(metaObject, k -> new HeapSummary());
@@ -314,8 +355,10 @@ public final class HeapMonitor implements Closeable {
      * @since 19.0
      */
     public boolean hasData() {
-        if (!newReferences.isEmpty()) {
-            return true;
+        for (ConcurrentLinkedQueue<ObjectWeakReference> references : newReferences.values()) {
+            if (!references.isEmpty()) {
+                return true;
+            }
         }
         synchronized (summaryData) {
             if (!summaryData.isEmpty()) {
@@ -362,7 +405,11 @@ public final class HeapMonitor implements Closeable {
             } while ((reference = (ObjectWeakReference) referenceQueue.poll()) != null);
             // note that ConcurrentLinkedQueue actually supports doing this
             // the iterator does not throw a ConcurrentModificationException
-            newReferences.removeAll(collectedNewReferences);
+            if (!collectedNewReferences.isEmpty()) {
+                for (ConcurrentLinkedQueue<ObjectWeakReference> references : newReferences.values()) {
+                    references.removeAll(collectedNewReferences);
+                }
+            }
             processedReferences.removeAll(collectedProcessedReferences);
         }
     }
@@ -383,7 +430,7 @@ public final class HeapMonitor implements Closeable {
             if (initializedLanguages.containsKey(language)) {
                 String metaInfo = getMetaObjectString(language, object);
                 if (metaInfo != null) {
-                    newReferences.add(new ObjectWeakReference(object, referenceQueue, language, metaInfo.intern(), event.getOldSize(), event.getNewSize()));
+                    getThreadNewReferences().add(new ObjectWeakReference(object, referenceQueue, language, metaInfo.intern(), event.getOldSize(), event.getNewSize()));
                 }
             }
         }
@@ -31,6 +31,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -44,6 +46,7 @@ import com.oracle.truffle.api.TruffleLogger;
 import com.oracle.truffle.api.instrumentation.AllocationEvent;
 import com.oracle.truffle.api.instrumentation.AllocationEventFilter;
 import com.oracle.truffle.api.instrumentation.AllocationListener;
+import com.oracle.truffle.api.instrumentation.AllocationReporter;
 import com.oracle.truffle.api.instrumentation.EventBinding;
 import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
 import com.oracle.truffle.api.instrumentation.StandardTags;
@@ -64,7 +67,12 @@ import com.oracle.truffle.tools.profiler.impl.ProfilerToolFactory;
  * The tracer counts how many times each of the elements of interest (e.g. functions, statements,
  * etc.) allocates memory, as well as meta data about the allocated object. It keeps a shadow stack
  * during execution, and listens for {@link AllocationEvent allocation events}. On each event, the
- * allocation information is associated to the top of the stack.
+ * allocation information is associated to the top of the stack. Each thread records into its own
+ * call tree, and the trees are merged when the profile is read.
+ * <p>
+ * With a {@link #setSamplingInterval(long) sampling interval}, only one allocation in about every
+ * <code>interval</code> allocated bytes of a thread is recorded, which avoids the per-allocation
+ * cost of looking up meta objects and recording stacks.
  * <p>
  * NOTE: This profiler is still experimental with limited capabilities.
  * <p>
@@ -97,7 +105,9 @@ public final class MemoryTracer implements Closeable {
 
     private EventBinding<?> stacksBinding;
 
-    private final Map<Thread, ProfilerNode<Payload>> rootNodes = new HashMap<>();
+    private long samplingInterval = 0;
+
+    private final Map<Thread, ProfilerNode<Payload>> rootNodes = new ConcurrentHashMap<>();
 
     private boolean stackOverflowed = false;
 
@@ -124,7 +134,7 @@ public final class MemoryTracer implements Closeable {
         this.shadowStack = new ShadowStack(stackLimit, f, env.getInstrumenter(), TruffleLogger.getLogger(CPUTracerInstrument.ID));
         this.stacksBinding = this.shadowStack.install(env.getInstrumenter(), f, false);
 
-        this.activeBinding = env.getInstrumenter().attachAllocationListener(AllocationEventFilter.ANY, new Listener());
+        this.activeBinding = env.getInstrumenter().attachAllocationListener(AllocationEventFilter.ANY, new Listener(samplingInterval));
     }
 
     /**
@@ -169,7 +179,9 @@ public final class MemoryTracer implements Closeable {
     public synchronized Collection<ProfilerNode<Payload>> getRootNodes() {
         ProfilerNode<Payload> copy = new ProfilerNode<>();
         for (ProfilerNode<Payload> node : rootNodes.values()) {
-            copy.deepMergeChildrenFrom(node, mergePayload, payloadFactory);
+            synchronized (node) {
+                copy.deepMergeChildrenFrom(node, mergePayload, payloadFactory);
+            }
         }
         return copy.getChildren();
     }
@@ -182,7 +194,9 @@ public final class MemoryTracer implements Closeable {
         Map<Thread, Collection<ProfilerNode<Payload>>> returnValue = new HashMap<>();
         for (Map.Entry<Thread, ProfilerNode<Payload>> entry : rootNodes.entrySet()) {
             ProfilerNode<Payload> copy = new ProfilerNode<>();
-            copy.deepCopyChildrenFrom(entry.getValue(), copyPayload);
+            synchronized (entry.getValue()) {
+                copy.deepCopyChildrenFrom(entry.getValue(), copyPayload);
+            }
             returnValue.put(entry.getKey(), copy.getChildren());
         }
         return Collections.unmodifiableMap(returnValue);
@@ -224,9 +238,11 @@ public final class MemoryTracer implements Closeable {
      */
     public synchronized void clearData() {
         for (ProfilerNode<Payload> node : rootNodes.values()) {
-            Map<StackTraceEntry, ProfilerNode<Payload>> rootChildren = node.children;
-            if (rootChildren != null) {
-                rootChildren.clear();
+            synchronized (node) {
+                Map<StackTraceEntry, ProfilerNode<Payload>> rootChildren = node.children;
+                if (rootChildren != null) {
+                    rootChildren.clear();
+                }
             }
         }
     }
@@ -238,8 +254,10 @@ public final class MemoryTracer implements Closeable {
     public synchronized boolean hasData() {
         boolean hasData = false;
         for (ProfilerNode<Payload> node : rootNodes.values()) {
-            Map<StackTraceEntry, ProfilerNode<Payload>> rootChildren = node.children;
-            hasData |= (rootChildren != null && !rootChildren.isEmpty());
+            synchronized (node) {
+                Map<StackTraceEntry, ProfilerNode<Payload>> rootChildren = node.children;
+                hasData |= (rootChildren != null && !rootChildren.isEmpty());
+            }
         }
         return hasData;
     }
@@ -267,6 +285,35 @@ public final class MemoryTracer implements Closeable {
         this.stackLimit = stackLimit;
     }
 
+    /**
+     * @return the number of allocated bytes between two recorded allocations, or <code>0</code> if
+     *         every allocation is recorded
+     * @since 20.2
+     */
+    public synchronized long getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Sets the sampling interval of the tracer in bytes. With an interval greater than
+     * <code>0</code>, each thread records one allocation in about every <code>interval</code> bytes
+     * it allocates, instead of every allocation. The distance between two samples is randomized
+     * around the interval, so that regular allocation patterns are not systematically missed.
+     * Allocations of unknown size count as one byte. With sampling, the recorded allocations and
+     * their {@link Payload#getTotalAllocations() totals} are samples: the number of bytes they
+     * represent is about their count times the interval.
+     *
+     * @param interval the sampling interval in bytes, or <code>0</code> to record every allocation
+     * @since 20.2
+     */
+    public synchronized void setSamplingInterval(long interval) {
+        verifyConfigAllowed();
+        if (interval < 0) {
+            throw new IllegalArgumentException(String.format("Invalid sampling interval %s.", interval));
+        }
+        this.samplingInterval = interval;
+    }
+
     /**
      * @return was the shadow stack size insufficient for the execution.
      * @since 0.30
@@ -321,6 +368,17 @@ public final class MemoryTracer implements Closeable {
          */
         ThreadLocal<Boolean> gettingMetaObject = ThreadLocal.withInitial(() -> false);
 
+        /**
+         * The number of bytes each thread has left to allocate before its next sample.
+         */
+        final ThreadLocal<long[]> bytesUntilSample = new ThreadLocal<>();
+
+        private final long samplingInterval;
+
+        Listener(long samplingInterval) {
+            this.samplingInterval = samplingInterval;
+        }
+
         @Override
         public void onEnter(AllocationEvent event) {
         }
@@ -331,6 +389,9 @@ public final class MemoryTracer implements Closeable {
             if (gettingMetaObject.get()) {
                 return;
             }
+            if (samplingInterval > 0 && !takeSample(event)) {
+                return;
+            }
             ShadowStack.ThreadLocalStack stack = shadowStack.getStack(Thread.currentThread());
             if (stack == null || stack.getStackIndex() == -1) {
                 // nothing on the stack
@@ -360,19 +421,45 @@ public final class MemoryTracer implements Closeable {
             handleEvent(stack, info);
         }
 
+        private boolean takeSample(AllocationEvent event) {
+            long[] remaining = bytesUntilSample.get();
+            if (remaining == null) {
+                remaining = new long[]{nextSampleDistance()};
+                bytesUntilSample.set(remaining);
+            }
+            long size = event.getNewSize() == AllocationReporter.SIZE_UNKNOWN ? 1 : Math.max(event.getNewSize() - Math.max(event.getOldSize(), 0), 1);
+            remaining[0] -= size;
+            if (remaining[0] > 0) {
+                return false;
+            }
+            remaining[0] = nextSampleDistance();
+            return true;
+        }
+
+        /**
+         * Draws the distance to the next sample from an exponential distribution with the sampling
+         * interval as mean, like HotSpot's heap sampling.
+         */
+        private long nextSampleDistance() {
+            double u = ThreadLocalRandom.current().nextDouble();
+            return Math.max(1L, (long) (-Math.log(1.0 - u) * samplingInterval));
+        }
+
         boolean handleEvent(ShadowStack.ThreadLocalStack stack, AllocationEventInfo info) {
             StackTraceEntry[] locations = stack.getStack();
             if (locations == null) {
                 return false;
             }
-            synchronized (MemoryTracer.this) {
+            ProfilerNode<Payload> root = rootNodes.computeIfAbsent(Thread.currentThread(), new Function<Thread, ProfilerNode<Payload>>() {
+                @Override
+                public ProfilerNode<Payload> apply(Thread thread) {
+                    return new ProfilerNode<>();
+                }
+            });
+            // Each thread only updates its own tree, so this lock is only contended by readers.
+            synchronized (root) {
                 // now traverse the stack and reconstruct the call tree
-                ProfilerNode<Payload> treeNode = rootNodes.computeIfAbsent(Thread.currentThread(), new Function<Thread, ProfilerNode<Payload>>() {
-                    @Override
-                    public ProfilerNode<Payload> apply(Thread thread) {
-                        return new ProfilerNode<>();
-                    }
-                });
+                ProfilerNode<Payload> treeNode = root;
                 for (int i = 0; i < locations.length; i++) {
                     StackTraceEntry location = locations[i];
                     ProfilerNode<Payload> child = treeNode.findChild(location);
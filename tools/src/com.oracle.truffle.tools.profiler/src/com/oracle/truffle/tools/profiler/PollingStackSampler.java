@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+package com.oracle.truffle.tools.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.oracle.truffle.api.CompilerDirectives;
+import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleLogger;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.instrumentation.EventBinding;
+import com.oracle.truffle.api.instrumentation.EventContext;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNode;
+import com.oracle.truffle.api.instrumentation.ExecutionEventNodeFactory;
+import com.oracle.truffle.api.instrumentation.Instrumenter;
+import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.NodeCost;
+
+/**
+ * Stack sampling without a {@link ShadowStack}. Instead of pushing and popping stack entries on
+ * every call, the instrumented nodes only poll a per-thread sample request flag when they are
+ * entered or exited. A sample request sets the flag of every thread that has reached a poll so
+ * far, and each of these threads captures its own guest stack by
+ * {@link com.oracle.truffle.api.TruffleRuntime#iterateFrames walking the frames} at its next poll.
+ * <p>
+ * Samples are only taken at the polls, so time spent in long running nodes is attributed to the
+ * node that is entered or exited next. A thread that does not reach a poll between two requests,
+ * e.g., because it is blocked, is not sampled for the first of them.
+ */
+final class PollingStackSampler {
+
+    private final ConcurrentHashMap<Thread, ThreadState> threads = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<CapturedStack> capturedStacks = new ConcurrentLinkedQueue<>();
+    private final Map<Thread, StackTraceEntry[]> lastStacks = new ConcurrentHashMap<>();
+    private final int stackLimit;
+    private final SourceSectionFilter sourceSectionFilter;
+    private final Instrumenter instrumenter;
+    private final TruffleLogger logger;
+
+    private volatile boolean stackOverflowed;
+
+    PollingStackSampler(int stackLimit, SourceSectionFilter sourceSectionFilter, Instrumenter instrumenter, TruffleLogger logger) {
+        this.stackLimit = stackLimit;
+        this.sourceSectionFilter = sourceSectionFilter;
+        this.instrumenter = instrumenter;
+        this.logger = logger;
+    }
+
+    EventBinding<?> install(SourceSectionFilter filter, boolean compiledOnly) {
+        return instrumenter.attachExecutionEventFactory(filter, new ExecutionEventNodeFactory() {
+            public ExecutionEventNode create(EventContext context) {
+                Node instrumentedNode = context.getInstrumentedNode();
+                if (instrumentedNode.getSourceSection() == null) {
+                    logger.warning("Instrumented node " + instrumentedNode + " has null SourceSection.");
+                    return null;
+                }
+                return new SamplePollNode(PollingStackSampler.this, context, compiledOnly);
+            }
+        });
+    }
+
+    ThreadState getThreadState(Thread thread) {
+        ThreadState state = threads.get(thread);
+        if (state == null) {
+            state = threads.computeIfAbsent(thread, (t) -> new ThreadState());
+        }
+        return state;
+    }
+
+    /**
+     * Asks every live thread that has reached a poll to capture its stack at its next poll.
+     */
+    void requestSample() {
+        for (Iterator<Map.Entry<Thread, ThreadState>> iterator = threads.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<Thread, ThreadState> entry = iterator.next();
+            if (entry.getKey().isAlive()) {
+                entry.getValue().samplePending = true;
+            } else {
+                iterator.remove();
+                lastStacks.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the stacks captured since the last call.
+     */
+    List<CapturedStack> drainStacks() {
+        List<CapturedStack> stacks = new ArrayList<>();
+        CapturedStack stack;
+        while ((stack = capturedStacks.poll()) != null) {
+            stacks.add(stack);
+        }
+        return stacks;
+    }
+
+    /**
+     * Returns the most recently captured stack of each thread, with the outermost entry first.
+     */
+    Map<Thread, StackTraceEntry[]> getLastStacks() {
+        return Collections.unmodifiableMap(lastStacks);
+    }
+
+    boolean hasStackOverflowed() {
+        return stackOverflowed;
+    }
+
+    @TruffleBoundary
+    void capture(ThreadState state, StackTraceEntry top) {
+        state.samplePending = false;
+        ArrayList<StackTraceEntry> entries = new ArrayList<>();
+        entries.add(top);
+        addEnclosing(entries, top.getInstrumentedNode().getParent(), top.isCompiled() ? StackTraceEntry.STATE_COMPILED : StackTraceEntry.STATE_INTERPRETED);
+        Truffle.getRuntime().iterateFrames(frame -> {
+            Node callNode = frame.getCallNode();
+            if (callNode != null) {
+                addEnclosing(entries, callNode, frame.isVirtualFrame() ? StackTraceEntry.STATE_COMPILED : StackTraceEntry.STATE_INTERPRETED);
+            }
+            return entries.size() > stackLimit ? entries : null;
+        });
+        if (entries.size() > stackLimit) {
+            stackOverflowed = true;
+            return;
+        }
+        Collections.reverse(entries);
+        StackTraceEntry[] stack = entries.toArray(new StackTraceEntry[entries.size()]);
+        Thread thread = Thread.currentThread();
+        lastStacks.put(thread, stack);
+        capturedStacks.add(new CapturedStack(thread, System.currentTimeMillis(), stack));
+    }
+
+    private void addEnclosing(ArrayList<StackTraceEntry> entries, Node node, byte state) {
+        Node current = node;
+        while (current != null) {
+            if (sourceSectionFilter.includes(current) && current.getSourceSection() != null) {
+                entries.add(new StackTraceEntry(instrumenter, current, state));
+            }
+            current = current.getParent();
+        }
+    }
+
+    static final class ThreadState {
+
+        volatile boolean samplePending;
+    }
+
+    static final class CapturedStack {
+
+        private final Thread thread;
+        private final long timestamp;
+        private final StackTraceEntry[] stack;
+
+        CapturedStack(Thread thread, long timestamp, StackTraceEntry[] stack) {
+            this.thread = thread;
+            this.timestamp = timestamp;
+            this.stack = stack;
+        }
+
+        Thread getThread() {
+            return thread;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * The captured stack entries, with the outermost entry first.
+         */
+        StackTraceEntry[] getStack() {
+            return stack;
+        }
+    }
+
+    private static class SamplePollNode extends ExecutionEventNode {
+
+        private final PollingStackSampler sampler;
+        private final StackTraceEntry compiledLocation;
+        private final StackTraceEntry interpretedLocation;
+        private final boolean isAttachedToRootTag;
+        private final boolean ignoreInlinedRoots;
+
+        private final Thread cachedThread;
+        private final ThreadState cachedState;
+
+        @CompilationFinal private boolean seenOtherThreads;
+
+        SamplePollNode(PollingStackSampler sampler, EventContext context, boolean ignoreInlinedRoots) {
+            this.sampler = sampler;
+            this.interpretedLocation = new StackTraceEntry(sampler.instrumenter, context, StackTraceEntry.STATE_INTERPRETED);
+            this.compiledLocation = new StackTraceEntry(interpretedLocation, StackTraceEntry.STATE_COMPILED);
+            this.isAttachedToRootTag = context.hasTag(StandardTags.RootTag.class);
+            this.ignoreInlinedRoots = ignoreInlinedRoots;
+            this.cachedThread = Thread.currentThread();
+            this.cachedState = sampler.getThreadState(cachedThread);
+        }
+
+        @Override
+        protected void onEnter(VirtualFrame frame) {
+            poll();
+        }
+
+        @Override
+        protected void onReturnValue(VirtualFrame frame, Object result) {
+            poll();
+        }
+
+        @Override
+        protected void onReturnExceptional(VirtualFrame frame, Throwable exception) {
+            poll();
+        }
+
+        private void poll() {
+            if (CompilerDirectives.inCompiledCode() && ignoreInlinedRoots && isAttachedToRootTag && !CompilerDirectives.inCompilationRoot()) {
+                return;
+            }
+            StackTraceEntry location = CompilerDirectives.inInterpreter() ? interpretedLocation : compiledLocation;
+            if (seenOtherThreads) {
+                pollSlow(location);
+            } else if (cachedThread == Thread.currentThread()) {
+                if (cachedState.samplePending) {
+                    sampler.capture(cachedState, location);
+                }
+            } else {
+                CompilerDirectives.transferToInterpreterAndInvalidate();
+                seenOtherThreads = true;
+                pollSlow(location);
+            }
+        }
+
+        @TruffleBoundary
+        private void pollSlow(StackTraceEntry location) {
+            ThreadState state = sampler.getThreadState(Thread.currentThread());
+            if (state.samplePending) {
+                sampler.capture(state, location);
+            }
+        }
+
+        @Override
+        public NodeCost getCost() {
+            return NodeCost.NONE;
+        }
+    }
+}
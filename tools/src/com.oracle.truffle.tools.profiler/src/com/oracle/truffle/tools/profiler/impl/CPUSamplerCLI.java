@@ -91,6 +91,9 @@ class CPUSamplerCLI extends ProfilerCLI {
                     "'roots' - sample roots including inlined functions, 'statements' - sample all statements.", category = OptionCategory.USER, stability = OptionStability.STABLE)
     static final OptionKey<CPUSampler.Mode> MODE = new OptionKey<>(CPUSampler.Mode.EXCLUDE_INLINED_ROOTS, CLI_MODE_TYPE);
     // @formatter:om
+    @Option(name = "SampleByPolling", help = "Let each thread capture its own stack when it enters or exits an instrumented node instead of maintaining a shadow stack (default: false).", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Boolean> SAMPLE_BY_POLLING = new OptionKey<>(false);
+
     @Option(name = "Period", help = "Period in milliseconds to sample the stack.", category = OptionCategory.USER, stability = OptionStability.STABLE) //
     static final OptionKey<Long> SAMPLE_PERIOD = new OptionKey<>(1L);
 
@@ -113,6 +113,7 @@ public class CPUSamplerInstrument extends TruffleInstrument {
             sampler.setFilter(getSourceSectionFilter(env));
             sampler.setGatherSelfHitTimes(env.getOptions().get(GATHER_HIT_TIMES));
             sampler.setMode(env.getOptions().get(CPUSamplerCLI.MODE));
+            sampler.setSampleByPolling(env.getOptions().get(CPUSamplerCLI.SAMPLE_BY_POLLING));
             sampler.setCollecting(true);
         }
         env.registerService(sampler);
@@ -76,6 +76,9 @@ class CPUTracerCLI extends ProfilerCLI {
     @Option(name = "TraceInternal", help = "Trace internal elements (default:false).", category = OptionCategory.INTERNAL) //
     static final OptionKey<Boolean> TRACE_INTERNAL = new OptionKey<>(false);
 
+    @Option(name = "CountSamplingPeriod", help = "Count only every N-th execution of each element and scale the counts by N. Reduces the cost of counting in multi-threaded programs, at the price of approximate counts (default: 1).", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) //
+    static final OptionKey<Integer> COUNT_SAMPLING_PERIOD = new OptionKey<>(1);
+
     @Option(name = "FilterRootName", help = "Wildcard filter for program roots. (eg. Math.*, default:*).", category = OptionCategory.USER, stability = OptionStability.STABLE) //
     static final OptionKey<Object[]> FILTER_ROOT = new OptionKey<>(new Object[0], WILDCARD_FILTER_TYPE);
 
@@ -113,6 +113,7 @@ public class CPUTracerInstrument extends TruffleInstrument {
         if (enabled) {
             try {
                 tracer.setFilter(getSourceSectionFilter(env));
+                tracer.setCountSamplingPeriod(env.getOptions().get(CPUTracerCLI.COUNT_SAMPLING_PERIOD));
             } catch (IllegalArgumentException e) {
                 new PrintStream(env.err()).println(ID + " error: " + e.getMessage());
                 enabled = false;
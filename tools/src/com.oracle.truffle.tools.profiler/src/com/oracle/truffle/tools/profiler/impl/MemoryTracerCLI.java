@@ -30,6 +30,7 @@ import com.oracle.truffle.tools.profiler.MemoryTracer;
 import com.oracle.truffle.tools.profiler.ProfilerNode;
 import org.graalvm.options.OptionCategory;
 import org.graalvm.options.OptionKey;
+import org.graalvm.options.OptionStability;
 import org.graalvm.options.OptionType;
 
 import java.io.PrintStream;
@@ -85,6 +86,9 @@ class MemoryTracerCLI extends ProfilerCLI {
 
     @Option(name = "StackLimit", help = "Maximum number of maximum stack elements.", category = OptionCategory.USER) static final OptionKey<Integer> STACK_LIMIT = new OptionKey<>(10000);
 
+    @Option(name = "SamplingInterval", help = "Record only one allocation in about every N allocated bytes of a thread, 0 records every allocation (default:0).", category = OptionCategory.USER, stability = OptionStability.EXPERIMENTAL) static final OptionKey<Long> SAMPLING_INTERVAL = new OptionKey<>(
+                    0L);
+
     @Option(name = "TraceRoots", help = "Capture roots when tracing (default:true).", category = OptionCategory.USER) static final OptionKey<Boolean> TRACE_ROOTS = new OptionKey<>(true);
 
     @Option(name = "TraceStatements", help = "Capture statements when tracing (default:false).", category = OptionCategory.USER) static final OptionKey<Boolean> TRACE_STATEMENTS = new OptionKey<>(
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.api.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.benchmark.BytecodeInterpreterBenchmarkFactory.AddNodeGen;
+import com.oracle.truffle.api.benchmark.BytecodeInterpreterBenchmarkFactory.LessThanNodeGen;
+import com.oracle.truffle.api.dsl.GenerateBytecode;
+import com.oracle.truffle.api.dsl.GenerateBytecode.Operation;
+import com.oracle.truffle.api.dsl.NodeChild;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.FrameSlot;
+import com.oracle.truffle.api.frame.FrameSlotKind;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.ExplodeLoop;
+import com.oracle.truffle.api.nodes.LoopNode;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RepeatingNode;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/**
+ * Compares an AST interpreter built from specializing nodes, modeled after the nodes of
+ * SimpleLanguage, with a bytecode interpreter generated for the same operations. The program sums
+ * up the loop index a fixed number of times per loop iteration. The create benchmarks measure the
+ * cost of building the program; run them with <code>-prof gc</code> to compare the footprint.
+ */
+@State(Scope.Thread)
+public class BytecodeInterpreterBenchmark extends TruffleBenchmark {
+
+    private static final long LOOP_ITERATIONS = 1000L;
+    private static final int STATEMENTS = 10;
+
+    private final CallTarget astTarget = Truffle.getRuntime().createCallTarget(createAST());
+    private final CallTarget bytecodeTarget = Truffle.getRuntime().createCallTarget(createBytecode());
+
+    @Benchmark
+    public Object astInterpreter() {
+        return astTarget.call(LOOP_ITERATIONS);
+    }
+
+    @Benchmark
+    public Object bytecodeInterpreter() {
+        return bytecodeTarget.call(LOOP_ITERATIONS);
+    }
+
+    @Benchmark
+    public Object astCreate() {
+        return createAST();
+    }
+
+    @Benchmark
+    public Object bytecodeCreate() {
+        return createBytecode();
+    }
+
+    /*
+     * sum = 0; i = 0; while (i < n) { sum = sum + i; ... i = i + 1; } return sum;
+     */
+    static RootNode createAST() {
+        FrameDescriptor descriptor = new FrameDescriptor();
+        FrameSlot sum = descriptor.addFrameSlot("sum", FrameSlotKind.Object);
+        FrameSlot i = descriptor.addFrameSlot("i", FrameSlotKind.Object);
+
+        ExpressionNode[] body = new ExpressionNode[STATEMENTS + 1];
+        for (int s = 0; s < STATEMENTS; s++) {
+            body[s] = new WriteLocalNode(sum, AddNodeGen.create(new ReadLocalNode(sum), new ReadLocalNode(i)));
+        }
+        body[STATEMENTS] = new WriteLocalNode(i, AddNodeGen.create(new ReadLocalNode(i), new ConstantNode(1L)));
+
+        ExpressionNode[] statements = new ExpressionNode[]{
+                        new WriteLocalNode(sum, new ConstantNode(0L)),
+                        new WriteLocalNode(i, new ConstantNode(0L)),
+                        new WhileNode(LessThanNodeGen.create(new ReadLocalNode(i), new ArgumentNode(0)), new BlockNode(body)),
+                        new ReadLocalNode(sum)
+        };
+        return new ASTRootNode(descriptor, new BlockNode(statements));
+    }
+
+    static RootNode createBytecode() {
+        BytecodeRootNodeGen.Builder b = BytecodeRootNodeGen.newBuilder();
+        int sum = b.createLocal();
+        int i = b.createLocal();
+        b.beginStoreLocal(sum);
+        b.emitLoadConstant(0L);
+        b.endStoreLocal();
+        b.beginStoreLocal(i);
+        b.emitLoadConstant(0L);
+        b.endStoreLocal();
+
+        b.beginWhile();
+        b.beginLessThan();
+        b.emitLoadLocal(i);
+        b.emitLoadArgument(0);
+        b.endLessThan();
+        b.beginBlock();
+        for (int s = 0; s < STATEMENTS; s++) {
+            b.beginStoreLocal(sum);
+            b.beginAdd();
+            b.emitLoadLocal(sum);
+            b.emitLoadLocal(i);
+            b.endAdd();
+            b.endStoreLocal();
+        }
+        b.beginStoreLocal(i);
+        b.beginAdd();
+        b.emitLoadLocal(i);
+        b.emitLoadConstant(1L);
+        b.endAdd();
+        b.endStoreLocal();
+        b.endBlock();
+        b.endWhile();
+
+        b.beginReturn();
+        b.emitLoadLocal(sum);
+        b.endReturn();
+        return b.build(null);
+    }
+
+    @GenerateBytecode
+    abstract static class BytecodeRootNode extends RootNode {
+
+        protected BytecodeRootNode(TruffleLanguage<?> language, FrameDescriptor frameDescriptor) {
+            super(language, frameDescriptor);
+        }
+
+        @Operation
+        static final class Add {
+
+            @Specialization(rewriteOn = ArithmeticException.class)
+            static long doLong(long left, long right) {
+                return Math.addExact(left, right);
+            }
+
+            @Specialization
+            static double doDouble(double left, double right) {
+                return left + right;
+            }
+        }
+
+        @Operation
+        static final class LessThan {
+
+            @Specialization
+            static boolean doLong(long left, long right) {
+                return left < right;
+            }
+
+            @Specialization
+            static boolean doDouble(double left, double right) {
+                return left < right;
+            }
+        }
+    }
+
+    static final class ASTRootNode extends RootNode {
+
+        @Child private ExpressionNode body;
+
+        ASTRootNode(FrameDescriptor descriptor, ExpressionNode body) {
+            super(null, descriptor);
+            this.body = body;
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            return body.execute(frame);
+        }
+    }
+
+    abstract static class ExpressionNode extends Node {
+
+        abstract Object execute(VirtualFrame frame);
+
+    }
+
+    @NodeChild("left")
+    @NodeChild("right")
+    abstract static class AddNode extends ExpressionNode {
+
+        @Specialization(rewriteOn = ArithmeticException.class)
+        static long doLong(long left, long right) {
+            return Math.addExact(left, right);
+        }
+
+        @Specialization
+        static double doDouble(double left, double right) {
+            return left + right;
+        }
+    }
+
+    @NodeChild("left")
+    @NodeChild("right")
+    abstract static class LessThanNode extends ExpressionNode {
+
+        @Specialization
+        static boolean doLong(long left, long right) {
+            return left < right;
+        }
+
+        @Specialization
+        static boolean doDouble(double left, double right) {
+            return left < right;
+        }
+    }
+
+    static final class ConstantNode extends ExpressionNode {
+
+        private final Object value;
+
+        ConstantNode(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(VirtualFrame frame) {
+            return value;
+        }
+    }
+
+    static final class ArgumentNode extends ExpressionNode {
+
+        private final int index;
+
+        ArgumentNode(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Object execute(VirtualFrame frame) {
+            return frame.getArguments()[index];
+        }
+    }
+
+    static final class ReadLocalNode extends ExpressionNode {
+
+        private final FrameSlot slot;
+
+        ReadLocalNode(FrameSlot slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(VirtualFrame frame) {
+            return frame.getValue(slot);
+        }
+    }
+
+    static final class WriteLocalNode extends ExpressionNode {
+
+        private final FrameSlot slot;
+        @Child private ExpressionNode value;
+
+        WriteLocalNode(FrameSlot slot, ExpressionNode value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(VirtualFrame frame) {
+            frame.setObject(slot, value.execute(frame));
+            return null;
+        }
+    }
+
+    static final class BlockNode extends ExpressionNode {
+
+        @Children private final ExpressionNode[] statements;
+
+        BlockNode(ExpressionNode[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        @ExplodeLoop
+        Object execute(VirtualFrame frame) {
+            Object result = null;
+            for (ExpressionNode statement : statements) {
+                result = statement.execute(frame);
+            }
+            return result;
+        }
+    }
+
+    static final class WhileNode extends ExpressionNode {
+
+        @Child private LoopNode loop;
+
+        WhileNode(ExpressionNode condition, ExpressionNode body) {
+            this.loop = Truffle.getRuntime().createLoopNode(new WhileRepeatingNode(condition, body));
+        }
+
+        @Override
+        Object execute(VirtualFrame frame) {
+            loop.execute(frame);
+            return null;
+        }
+    }
+
+    static final class WhileRepeatingNode extends Node implements RepeatingNode {
+
+        @Child private ExpressionNode condition;
+        @Child private ExpressionNode body;
+
+        WhileRepeatingNode(ExpressionNode condition, ExpressionNode body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        public boolean executeRepeating(VirtualFrame frame) {
+            if (!(boolean) condition.execute(frame)) {
+                return false;
+            }
+            body.execute(frame);
+            return true;
+        }
+    }
+
+}
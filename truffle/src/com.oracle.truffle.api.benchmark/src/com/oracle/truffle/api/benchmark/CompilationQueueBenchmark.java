@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.api.benchmark;
+
+import org.graalvm.polyglot.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.impl.DefaultTruffleRuntime;
+import com.oracle.truffle.api.nodes.RootNode;
+
+/*
+ * Measures the time until a hot call target runs compiled while the compilation queue is filled
+ * with requests of lukewarm call targets that were queued before it. With the first-in-first-out
+ * queue the hot call target is compiled after all lukewarm ones, with the traversing queue
+ * (engine.TraversingCompilationQueue) it is selected as soon as a compiler thread is free. The
+ * queue options only exist for optimizing runtimes, the benchmark measures the interpreter
+ * otherwise.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+public class CompilationQueueBenchmark extends TruffleBenchmark {
+
+    private static final int LUKEWARM_TARGETS = 200;
+    private static final int COMPILATION_THRESHOLD = 100;
+    private static final int HOT_CALLS = 200_000;
+
+    @State(Scope.Thread)
+    public static class QueueState {
+
+        @Param({"false", "true"}) boolean traversing;
+
+        Context context;
+        CallTarget hot;
+
+        @Setup(Level.Invocation)
+        public void setup() {
+            if (Truffle.getRuntime() instanceof DefaultTruffleRuntime) {
+                context = Context.newBuilder().build();
+            } else {
+                context = Context.newBuilder().allowExperimentalOptions(true) //
+                                .option("engine.CompilerThreads", "1") //
+                                .option("engine.CompilationThreshold", String.valueOf(COMPILATION_THRESHOLD)) //
+                                .option("engine.TraversingCompilationQueue", String.valueOf(traversing)).build();
+            }
+            context.enter();
+            // each lukewarm call target queues its compilation, then never runs again
+            for (int i = 0; i < LUKEWARM_TARGETS; i++) {
+                CallTarget lukewarm = Truffle.getRuntime().createCallTarget(new SumRootNode());
+                for (int c = 0; c < COMPILATION_THRESHOLD; c++) {
+                    lukewarm.call(c);
+                }
+            }
+            hot = Truffle.getRuntime().createCallTarget(new SumRootNode());
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            context.leave();
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public long timeToPeak(QueueState state) {
+        CallTarget hot = state.hot;
+        long sum = 0;
+        for (int i = 0; i < HOT_CALLS; i++) {
+            sum += (long) hot.call(i);
+        }
+        return sum;
+    }
+
+    static final class SumRootNode extends RootNode {
+
+        SumRootNode() {
+            super(null);
+        }
+
+        @Override
+        public Object execute(VirtualFrame frame) {
+            int n = (int) frame.getArguments()[0] & 0xFF;
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += i * (long) i;
+            }
+            return sum;
+        }
+    }
+}
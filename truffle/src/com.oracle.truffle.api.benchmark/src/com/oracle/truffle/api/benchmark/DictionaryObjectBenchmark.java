@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.api.benchmark;
+
+import static com.oracle.truffle.api.benchmark.TruffleBenchmark.Defaults.FORKS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.Layout;
+import com.oracle.truffle.api.object.ObjectType;
+import com.oracle.truffle.api.object.Shape;
+
+/**
+ * Uses objects as large maps, with and without dictionary mode storage. Run with {@code -prof gc}
+ * to compare the allocation rates of the two modes.
+ */
+@State(Scope.Benchmark)
+public class DictionaryObjectBenchmark extends TruffleBenchmark {
+
+    private static final int PROPERTIES = 512;
+    private static final String DICTIONARY_THRESHOLD = "-Dtruffle.object.DictionaryThreshold=64";
+    private static final String[] KEYS = new String[PROPERTIES];
+
+    static {
+        for (int i = 0; i < PROPERTIES; i++) {
+            KEYS[i] = "k" + i;
+        }
+    }
+
+    private final Shape rootShape = Layout.createLayout().createShape(new ObjectType());
+
+    @Benchmark
+    public Object buildAndReadShapes() {
+        return buildAndRead();
+    }
+
+    @Benchmark
+    @Fork(value = FORKS, jvmArgsAppend = DICTIONARY_THRESHOLD)
+    public Object buildAndReadDictionary() {
+        return buildAndRead();
+    }
+
+    @Benchmark
+    public DynamicObject buildAndDeleteShapes() {
+        return buildAndDelete();
+    }
+
+    @Benchmark
+    @Fork(value = FORKS, jvmArgsAppend = DICTIONARY_THRESHOLD)
+    public DynamicObject buildAndDeleteDictionary() {
+        return buildAndDelete();
+    }
+
+    private Object buildAndRead() {
+        DynamicObject object = rootShape.newInstance();
+        for (int i = 0; i < PROPERTIES; i++) {
+            object.define(KEYS[i], i);
+        }
+        int sum = 0;
+        for (int i = 0; i < PROPERTIES; i++) {
+            sum += (int) object.get(KEYS[i]);
+        }
+        return sum;
+    }
+
+    private DynamicObject buildAndDelete() {
+        DynamicObject object = rootShape.newInstance();
+        for (int i = 0; i < PROPERTIES; i++) {
+            object.define(KEYS[i], i);
+        }
+        for (int i = 0; i < PROPERTIES; i += 2) {
+            object.delete(KEYS[i]);
+        }
+        return object;
+    }
+}
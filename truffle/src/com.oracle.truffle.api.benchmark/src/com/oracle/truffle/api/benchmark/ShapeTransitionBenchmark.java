@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.api.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.Layout;
+import com.oracle.truffle.api.object.ObjectType;
+import com.oracle.truffle.api.object.Shape;
+
+/**
+ * Builds objects by adding properties from one and from all available threads. The shape tree
+ * branches: objects take one of {@link #BRANCHES} paths through it, and every shape on a path also
+ * has a transition for a sibling property, so every shape has at least two successors and its
+ * transitions are kept in a transition map rather than in a single entry. After warmup every
+ * property addition is a lookup of an existing shape transition, so the multi-threaded variants
+ * measure how well transition map lookups scale across cores.
+ */
+@State(Scope.Benchmark)
+public class ShapeTransitionBenchmark extends TruffleBenchmark {
+
+    private static final int PROPERTIES = 16;
+    private static final int BRANCHES = 4;
+    private static final String[][] KEYS = new String[PROPERTIES][BRANCHES];
+    private static final String[] SIBLING_KEYS = new String[PROPERTIES];
+
+    static {
+        for (int i = 0; i < PROPERTIES; i++) {
+            for (int b = 0; b < BRANCHES; b++) {
+                KEYS[i][b] = "p" + i + "_" + b;
+            }
+            SIBLING_KEYS[i] = "s" + i;
+        }
+    }
+
+    private final Shape rootShape = Layout.createLayout().createShape(new ObjectType());
+
+    @Setup
+    public void setup() {
+        // every shape on a path gets a second successor
+        for (int path = 0; path < BRANCHES; path++) {
+            Shape shape = rootShape;
+            for (int i = 0; i < PROPERTIES; i++) {
+                shape.defineProperty(SIBLING_KEYS[i], i, 0);
+                shape = shape.defineProperty(key(path, i), i, 0);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PathState {
+        int next;
+
+        int nextPath() {
+            next = (next + 1) % BRANCHES;
+            return next;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public DynamicObject buildObjectSingleThread(PathState state) {
+        return buildObject(state.nextPath());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public DynamicObject buildObjectAllThreads(PathState state) {
+        return buildObject(state.nextPath());
+    }
+
+    /*
+     * The paths diverge at every property, e.g. path 1 adds p0_1, p1_2, p2_3, p3_0, ...
+     */
+    private static String key(int path, int property) {
+        return KEYS[property][(path + property) % BRANCHES];
+    }
+
+    private DynamicObject buildObject(int path) {
+        DynamicObject object = rootShape.newInstance();
+        for (int i = 0; i < PROPERTIES; i++) {
+            object.define(key(path, i), i);
+        }
+        return object;
+    }
+}
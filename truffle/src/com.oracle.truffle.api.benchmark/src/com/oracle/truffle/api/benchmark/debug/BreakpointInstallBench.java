@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.api.benchmark.debug;
+
+import java.net.URI;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.oracle.truffle.api.benchmark.TruffleBenchmark;
+import com.oracle.truffle.api.debug.Breakpoint;
+import com.oracle.truffle.api.debug.Debugger;
+import com.oracle.truffle.api.debug.DebuggerSession;
+
+/**
+ * Measures how long it takes to install and dispose a line breakpoint in one source, while many
+ * other sources have been loaded and executed.
+ */
+@State(Scope.Thread)
+public class BreakpointInstallBench extends TruffleBenchmark {
+
+    @Param({"100", "10000"}) public int loadedSources;
+
+    private Context context;
+    private DebuggerSession session;
+    private URI breakpointSource;
+
+    @Setup
+    public void setup() {
+        context = Context.create();
+        for (int i = 0; i < loadedSources; i++) {
+            String code = "ROOT(\n" +
+                            "  DEFINE(f" + i + ", ROOT(STATEMENT(EXPRESSION), STATEMENT(EXPRESSION))),\n" +
+                            "  CALL(f" + i + ")\n" +
+                            ")";
+            Source source = Source.newBuilder("instrumentation-test-language", code, "source" + i + ".itl").buildLiteral();
+            context.eval(source);
+            if (i == loadedSources / 2) {
+                breakpointSource = source.getURI();
+            }
+        }
+        Debugger debugger = context.getEngine().getInstruments().get("debugger").lookup(Debugger.class);
+        session = debugger.startSession(event -> {
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        context.close();
+    }
+
+    @Benchmark
+    public void installLineBreakpoint() {
+        Breakpoint breakpoint = Breakpoint.newBuilder(breakpointSource).lineIs(2).build();
+        session.install(breakpoint);
+        breakpoint.dispose();
+    }
+}
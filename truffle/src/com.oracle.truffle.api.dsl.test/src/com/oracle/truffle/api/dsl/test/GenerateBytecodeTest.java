@@ -0,0 +1,602 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.api.dsl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.TruffleLanguage;
+import com.oracle.truffle.api.dsl.Cached;
+import com.oracle.truffle.api.dsl.Fallback;
+import com.oracle.truffle.api.dsl.GenerateBytecode;
+import com.oracle.truffle.api.dsl.GenerateBytecode.Operation;
+import com.oracle.truffle.api.dsl.ImplicitCast;
+import com.oracle.truffle.api.dsl.Specialization;
+import com.oracle.truffle.api.dsl.TypeSystem;
+import com.oracle.truffle.api.dsl.TypeSystemReference;
+import com.oracle.truffle.api.dsl.UnsupportedSpecializationException;
+import com.oracle.truffle.api.frame.FrameDescriptor;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.nodes.Node;
+import com.oracle.truffle.api.nodes.RootNode;
+
+@SuppressWarnings("unused")
+public class GenerateBytecodeTest {
+
+    private static CallTarget createTarget(RootNode root) {
+        return Truffle.getRuntime().createCallTarget(root);
+    }
+
+    @GenerateBytecode
+    abstract static class CalcRootNode extends RootNode {
+
+        protected CalcRootNode(TruffleLanguage<?> language, FrameDescriptor frameDescriptor) {
+            super(language, frameDescriptor);
+        }
+
+        @Operation
+        static final class Add {
+
+            @Specialization(rewriteOn = ArithmeticException.class)
+            static long doLong(long left, long right) {
+                return Math.addExact(left, right);
+            }
+
+            @Specialization(replaces = "doLong")
+            static double doLongOverflow(long left, long right) {
+                return (double) left + (double) right;
+            }
+
+            @Specialization
+            static double doDouble(double left, double right) {
+                return left + right;
+            }
+
+            @Fallback
+            static String doFallback(Object left, Object right) {
+                return String.valueOf(left) + right;
+            }
+        }
+
+        @Operation
+        static final class LessThan {
+
+            @Specialization
+            static boolean doLong(long left, long right) {
+                return left < right;
+            }
+        }
+
+        @Operation
+        static final class ArgumentCount {
+
+            @Specialization
+            static int doDefault(VirtualFrame frame) {
+                return frame.getArguments().length;
+            }
+        }
+
+        @Operation
+        static final class TypeName {
+
+            @Specialization
+            static String doDefault(Object value) {
+                return value.getClass().getSimpleName() + " " + value;
+            }
+        }
+
+        @Operation
+        static final class Record {
+
+            @Specialization
+            static void doDefault(Object value) {
+                recorded.append(value).append(';');
+            }
+        }
+
+        static final StringBuilder recorded = new StringBuilder();
+    }
+
+    private static CalcRootNodeGen createAdd() {
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        b.beginAdd();
+        b.emitLoadArgument(0);
+        b.emitLoadArgument(1);
+        b.endAdd();
+        return (CalcRootNodeGen) b.build(null);
+    }
+
+    @Test
+    public void testQuickening() {
+        CalcRootNodeGen root = createAdd();
+        CallTarget target = createTarget(root);
+        assertTrue(root.dump(), root.dump().contains("Add\n"));
+
+        assertEquals(3L, target.call(1L, 2L));
+        assertTrue(root.dump(), root.dump().contains("Add.doLong\n"));
+    }
+
+    @Test
+    public void testRewriteOn() {
+        CalcRootNodeGen root = createAdd();
+        CallTarget target = createTarget(root);
+        assertEquals(3L, target.call(1L, 2L));
+        assertEquals((double) Long.MAX_VALUE + 1d, target.call(Long.MAX_VALUE, 1L));
+        assertTrue(root.dump(), root.dump().contains("Add.doLongOverflow\n"));
+        // doLong is excluded after it was replaced
+        assertEquals(3d, target.call(1L, 2L));
+    }
+
+    @Test
+    public void testReplaces() {
+        CalcRootNodeGen root = createAdd();
+        CallTarget target = createTarget(root);
+        assertEquals(3L, target.call(1L, 2L));
+        assertEquals(3.5d, target.call(1.5d, 2d));
+        // polymorphic operations are not quickened
+        assertTrue(root.dump(), root.dump().contains("Add\n"));
+        assertEquals(3L, target.call(1L, 2L));
+    }
+
+    @Test
+    public void testFallback() {
+        CalcRootNodeGen root = createAdd();
+        CallTarget target = createTarget(root);
+        assertEquals("a1", target.call("a", 1L));
+        assertEquals(3L, target.call(1L, 2L));
+        assertEquals("a1", target.call("a", 1L));
+    }
+
+    @Test
+    public void testUnsupported() {
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        b.beginLessThan();
+        b.emitLoadArgument(0);
+        b.emitLoadArgument(1);
+        b.endLessThan();
+        CallTarget target = createTarget(b.build(null));
+        assertEquals(true, target.call(1L, 2L));
+        try {
+            target.call("a", 2L);
+            fail();
+        } catch (UnsupportedSpecializationException e) {
+            assertEquals(2, e.getSuppliedValues().length);
+            assertEquals("a", e.getSuppliedValues()[0]);
+        }
+        assertEquals(false, target.call(2L, 1L));
+    }
+
+    @Test
+    public void testFrame() {
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        b.emitArgumentCount();
+        CallTarget target = createTarget(b.build(null));
+        assertEquals(0, target.call());
+        assertEquals(3, target.call(1, 2, 3));
+    }
+
+    @Test
+    public void testBlock() {
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        b.beginBlock();
+        b.emitLoadConstant(1L);
+        b.emitLoadConstant(2L);
+        b.endBlock();
+        assertEquals(2L, createTarget(b.build(null)).call());
+
+        b = CalcRootNodeGen.newBuilder();
+        b.beginBlock();
+        b.endBlock();
+        assertEquals(null, createTarget(b.build(null)).call());
+
+        b = CalcRootNodeGen.newBuilder();
+        assertEquals(null, createTarget(b.build(null)).call());
+    }
+
+    @Test
+    public void testIfThenElse() {
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        int result = b.createLocal();
+        b.beginIfThenElse();
+        b.beginLessThan();
+        b.emitLoadArgument(0);
+        b.emitLoadArgument(1);
+        b.endLessThan();
+        b.beginStoreLocal(result);
+        b.emitLoadConstant("then");
+        b.endStoreLocal();
+        b.beginStoreLocal(result);
+        b.emitLoadConstant("else");
+        b.endStoreLocal();
+        b.endIfThenElse();
+        b.emitLoadLocal(result);
+        CallTarget target = createTarget(b.build(null));
+        assertEquals("then", target.call(1L, 2L));
+        assertEquals("else", target.call(2L, 1L));
+    }
+
+    @Test
+    public void testIfThenReturn() {
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        b.beginIfThen();
+        b.beginLessThan();
+        b.emitLoadArgument(0);
+        b.emitLoadArgument(1);
+        b.endLessThan();
+        b.beginReturn();
+        b.emitLoadConstant("less");
+        b.endReturn();
+        b.endIfThen();
+        b.emitLoadConstant("greater or equal");
+        CallTarget target = createTarget(b.build(null));
+        assertEquals("less", target.call(1L, 2L));
+        assertEquals("greater or equal", target.call(2L, 1L));
+    }
+
+    @Test
+    public void testWhile() {
+        // sum = 0; i = 0; while (i < n) { sum = sum + i; record(i); i = i + 1; } sum
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        int sum = b.createLocal();
+        int i = b.createLocal();
+        b.beginStoreLocal(sum);
+        b.emitLoadConstant(0L);
+        b.endStoreLocal();
+        b.beginStoreLocal(i);
+        b.emitLoadConstant(0L);
+        b.endStoreLocal();
+        b.beginWhile();
+        b.beginLessThan();
+        b.emitLoadLocal(i);
+        b.emitLoadArgument(0);
+        b.endLessThan();
+        b.beginBlock();
+        b.beginStoreLocal(sum);
+        b.beginAdd();
+        b.emitLoadLocal(sum);
+        b.emitLoadLocal(i);
+        b.endAdd();
+        b.endStoreLocal();
+        b.beginRecord();
+        b.emitLoadLocal(i);
+        b.endRecord();
+        b.beginStoreLocal(i);
+        b.beginAdd();
+        b.emitLoadLocal(i);
+        b.emitLoadConstant(1L);
+        b.endAdd();
+        b.endStoreLocal();
+        b.endBlock();
+        b.endWhile();
+        b.emitLoadLocal(sum);
+        CallTarget target = createTarget(b.build(null));
+
+        CalcRootNode.recorded.setLength(0);
+        assertEquals(0L, target.call(0L));
+        assertEquals("", CalcRootNode.recorded.toString());
+        assertEquals(10L, target.call(5L));
+        assertEquals("0;1;2;3;4;", CalcRootNode.recorded.toString());
+        assertEquals(4950L, target.call(100L));
+        // more back-edges than the loop count report interval
+        assertEquals(4999950000L, target.call(100000L));
+    }
+
+    private static CallTarget createTypeName(boolean lessThan) {
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        b.beginTypeName();
+        if (lessThan) {
+            b.beginLessThan();
+        } else {
+            b.beginAdd();
+        }
+        b.emitLoadArgument(0);
+        b.emitLoadArgument(1);
+        if (lessThan) {
+            b.endLessThan();
+        } else {
+            b.endAdd();
+        }
+        b.endTypeName();
+        return createTarget(b.build(null));
+    }
+
+    @Test
+    public void testPrimitiveStack() {
+        CallTarget add = createTypeName(false);
+        CallTarget lessThan = createTypeName(true);
+        for (int i = 0; i < 2; i++) {
+            // the second call executes the quickened instructions
+            assertEquals("Long 3", add.call(1L, 2L));
+            assertEquals("Boolean true", lessThan.call(1L, 2L));
+        }
+        assertEquals("String a2", add.call("a", 2L));
+        assertEquals("Long 3", add.call(1L, 2L));
+        assertEquals("Double 3.5", add.call(1.5d, 2d));
+    }
+
+    @Test
+    public void testPrimitiveLocals() {
+        // local = arg0 + arg1; local < arg1
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        int local = b.createLocal();
+        b.beginStoreLocal(local);
+        b.beginAdd();
+        b.emitLoadArgument(0);
+        b.emitLoadArgument(1);
+        b.endAdd();
+        b.endStoreLocal();
+        b.beginLessThan();
+        b.emitLoadLocal(local);
+        b.emitLoadArgument(1);
+        b.endLessThan();
+        CallTarget target = createTarget(b.build(null));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(false, target.call(1L, 2L));
+            assertEquals(true, target.call(-3L, 2L));
+        }
+    }
+
+    @Test
+    public void testTypedOperandsRewriteOn() {
+        // (arg0 + arg1) + (arg0 + arg1)
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        b.beginAdd();
+        for (int i = 0; i < 2; i++) {
+            b.beginAdd();
+            b.emitLoadArgument(0);
+            b.emitLoadArgument(1);
+            b.endAdd();
+        }
+        b.endAdd();
+        CalcRootNodeGen root = (CalcRootNodeGen) b.build(null);
+        CallTarget target = createTarget(root);
+        assertEquals(6L, target.call(1L, 2L));
+        assertEquals(6L, target.call(1L, 2L));
+        // the quickened instruction reads the long operands from the stack and overflows
+        assertEquals(2d * Long.MAX_VALUE, target.call(Long.MAX_VALUE - 1, 1L));
+        assertTrue(root.dump(), root.dump().contains("Add.doLongOverflow\n"));
+        assertEquals(6d, target.call(1L, 2L));
+    }
+
+    @Test
+    public void testBuilderErrors() {
+        CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+        b.beginAdd();
+        b.emitLoadConstant(1L);
+        try {
+            b.endAdd();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Operation Add expected 2 operands but got 1.", e.getMessage());
+        }
+
+        b = CalcRootNodeGen.newBuilder();
+        b.beginAdd();
+        try {
+            b.endLessThan();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Unexpected end of operation LessThan.", e.getMessage());
+        }
+
+        b = CalcRootNodeGen.newBuilder();
+        b.beginAdd();
+        try {
+            b.beginRecord();
+            b.emitLoadConstant(1L);
+            b.endRecord();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Operand 0 of operation Add does not produce a value.", e.getMessage());
+        }
+
+        b = CalcRootNodeGen.newBuilder();
+        b.beginBlock();
+        try {
+            b.build(null);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Operation Block is not ended.", e.getMessage());
+        }
+
+        b = CalcRootNodeGen.newBuilder();
+        try {
+            b.emitLoadLocal(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid local 0.", e.getMessage());
+        }
+
+        b = CalcRootNodeGen.newBuilder();
+        b.build(null);
+        try {
+            b.emitLoadConstant(1L);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("The builder was already used to build a root node.", e.getMessage());
+        }
+    }
+
+    @TypeSystem
+    static class ImplicitLongTypes {
+
+        @ImplicitCast
+        static long castLong(int value) {
+            return value;
+        }
+    }
+
+    @GenerateBytecode
+    @TypeSystemReference(ImplicitLongTypes.class)
+    abstract static class ImplicitCastRootNode extends RootNode {
+
+        protected ImplicitCastRootNode(TruffleLanguage<?> language, FrameDescriptor frameDescriptor) {
+            super(language, frameDescriptor);
+        }
+
+        @Operation
+        static final class Add {
+
+            @Specialization
+            static long doLong(long left, long right) {
+                return left + right;
+            }
+        }
+    }
+
+    @Test
+    public void testImplicitCast() {
+        ImplicitCastRootNodeGen.Builder b = ImplicitCastRootNodeGen.newBuilder();
+        b.beginAdd();
+        b.emitLoadArgument(0);
+        b.emitLoadArgument(1);
+        b.endAdd();
+        CallTarget target = createTarget(b.build(null));
+        assertEquals(3L, target.call(1, 2));
+        assertEquals(3L, target.call(1L, 2));
+    }
+
+    @ExpectError("Classes annotated with @GenerateBytecode must extend com.oracle.truffle.api.nodes.RootNode.")
+    @GenerateBytecode
+    abstract static class ErrorNoRootNode extends Node {
+    }
+
+    @ExpectError("Classes annotated with @GenerateBytecode must declare a non-private constructor with the parameters (TruffleLanguage<?>, FrameDescriptor).")
+    @GenerateBytecode
+    abstract static class ErrorNoConstructor extends RootNode {
+
+        protected ErrorNoConstructor() {
+            super(null);
+        }
+    }
+
+    @ExpectError("No operations declared. Declare static inner classes annotated with @GenerateBytecode.Operation to specify operations.")
+    @GenerateBytecode
+    abstract static class ErrorNoOperations extends RootNode {
+
+        protected ErrorNoOperations(TruffleLanguage<?> language, FrameDescriptor frameDescriptor) {
+            super(language, frameDescriptor);
+        }
+    }
+
+    @GenerateBytecode
+    abstract static class ErrorOperations extends RootNode {
+
+        protected ErrorOperations(TruffleLanguage<?> language, FrameDescriptor frameDescriptor) {
+            super(language, frameDescriptor);
+        }
+
+        @ExpectError("Operation classes must be static.")
+        @Operation
+        final class NonStatic {
+
+            @Specialization
+            long doLong(long value) {
+                return value;
+            }
+        }
+
+        @ExpectError("The operation name 'Block' is reserved for a built-in operation. Rename the operation class.")
+        @Operation
+        static final class Block {
+        }
+
+        @ExpectError("Operations must declare at least one @Specialization method.")
+        @Operation
+        static final class NoSpecialization {
+        }
+
+        @Operation
+        static final class InvalidSpecializations {
+
+            @ExpectError("Specializations of bytecode operations must be static.")
+            @Specialization
+            long doInstance(long value) {
+                return value;
+            }
+
+            @ExpectError("The attribute 'guards' is not supported for specializations of bytecode operations.")
+            @Specialization(guards = "value > 0")
+            static int doGuard(int value) {
+                return value;
+            }
+
+            @ExpectError("All specializations of an operation must declare the same number of operands. Expected 1 but was 2.")
+            @Specialization
+            static int doTwoOperands(int left, int right) {
+                return left;
+            }
+
+            @ExpectError("The referenced specialization 'doUnknown' could not be found.")
+            @Specialization(replaces = "doUnknown")
+            static double doDouble(double value) {
+                return value;
+            }
+
+            @ExpectError("Cached parameters are not supported for specializations of bytecode operations.")
+            @Specialization
+            static String doCached(String value, @Cached("value") String cached) {
+                return value;
+            }
+        }
+
+        @Operation
+        static final class InvalidFallback {
+
+            @Specialization
+            static long doLong(long value) {
+                return value;
+            }
+
+            @ExpectError("Operands of @Fallback methods must be of type Object.")
+            @Fallback
+            static Object doFallback(String value) {
+                return value;
+            }
+        }
+    }
+
+}
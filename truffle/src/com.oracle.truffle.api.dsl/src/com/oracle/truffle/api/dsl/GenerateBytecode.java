@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.api.dsl;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a bytecode interpreter for a root node. Instead of building a tree of specializing
+ * nodes, one node object per operation, guest language operations are declared once as
+ * {@link Operation operation} classes nested in the annotated root node and programs are encoded
+ * as compact bytecode. The generated root node is called like the annotated class with a
+ * <code>Gen</code> suffix and executes the bytecode in a loop that is exploded during partial
+ * evaluation.
+ * <p>
+ * The annotated class must be an abstract subclass of
+ * {@link com.oracle.truffle.api.nodes.RootNode RootNode} that must not implement
+ * <code>execute(VirtualFrame)</code>. It must declare a non-private constructor with the parameters
+ * <code>(TruffleLanguage&lt;?&gt; language, FrameDescriptor frameDescriptor)</code>.
+ * <p>
+ * Every operation consumes the values produced by its operands and produces a value unless its
+ * specializations return <code>void</code>. Besides the declared operations, the following
+ * built-in operations are supported:
+ * <ul>
+ * <li><code>Block</code>: executes its operands in order and produces the value of the last
+ * operand, if any.
+ * <li><code>IfThen</code>, <code>IfThenElse</code>: the first operand must produce a
+ * {@link Boolean}, the values of the branches are discarded.
+ * <li><code>While</code>: executes the second operand while the first one produces
+ * <code>true</code>.
+ * <li><code>Return</code>: returns the value of its operand from the root node.
+ * <li><code>LoadConstant</code>, <code>LoadArgument</code>, <code>LoadLocal</code> and
+ * <code>StoreLocal</code>: access constants, frame arguments and locals created with
+ * <code>createLocal()</code>.
+ * </ul>
+ * Bytecode is created with the builder returned by the static <code>newBuilder()</code> method of
+ * the generated class. It provides a <code>begin</code> and <code>end</code> method for every
+ * operation with operands, and an <code>emit</code> method for every operation without operands.
+ * If the root node is completed without returning explicitly, it returns the value of its last
+ * operation, or <code>null</code> if that operation does not produce a value.
+ * <p>
+ * Each operation in the bytecode keeps its own set of active specializations, initially none.
+ * Specializations are activated on first execution and follow the same rules as for nodes:
+ * {@link Specialization#rewriteOn() rewriteOn} excludes a specialization if it throws,
+ * {@link Specialization#replaces() replaces} excludes the replaced specializations and a
+ * {@link Fallback} method is used if no specialization matches the operand types. Operand type
+ * checks and implicit casts are those of the {@link TypeSystemReference referenced type system}.
+ * An operation with a single active specialization is quickened, that is, its bytecode is
+ * rewritten to an instruction that only checks the types of that specialization.
+ * <p>
+ * Values are passed between operations on an operand stack that is local to the bytecode loop, so
+ * that partial evaluation can virtualize it. Primitive values produced by specializations are kept
+ * on that stack without boxing, locals are stored in frame slots. Iterations of <code>While</code>
+ * loops are reported with {@link com.oracle.truffle.api.nodes.LoopNode#reportLoopCount
+ * LoopNode.reportLoopCount}. On-stack replacement of bytecode loops is not supported.
+ * <p>
+ * <b>Example:</b>
+ *
+ * <pre>
+ * &#64;GenerateBytecode
+ * abstract static class CalcRootNode extends RootNode {
+ *
+ *     protected CalcRootNode(TruffleLanguage&lt;?&gt; language, FrameDescriptor frameDescriptor) {
+ *         super(language, frameDescriptor);
+ *     }
+ *
+ *     &#64;Operation
+ *     static final class Add {
+ *
+ *         &#64;Specialization(rewriteOn = ArithmeticException.class)
+ *         static long doLong(long left, long right) {
+ *             return Math.addExact(left, right);
+ *         }
+ *
+ *         &#64;Specialization
+ *         static double doDouble(double left, double right) {
+ *             return left + right;
+ *         }
+ *     }
+ * }
+ *
+ * CalcRootNodeGen.Builder b = CalcRootNodeGen.newBuilder();
+ * b.beginAdd();
+ * b.emitLoadArgument(0);
+ * b.emitLoadConstant(42L);
+ * b.endAdd();
+ * CallTarget target = Truffle.getRuntime().createCallTarget(b.build(language));
+ * </pre>
+ *
+ * Specializations of bytecode operations do not support guards, assumptions, limits or cached
+ * parameters. The only parameter that is not an operand is an optional leading
+ * {@link com.oracle.truffle.api.frame.VirtualFrame VirtualFrame}.
+ * <p>
+ * This annotation is experimental. It is not part of the supported Truffle API yet and may change
+ * or be removed without prior deprecation.
+ *
+ * @see Operation
+ * @since 20.2
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.TYPE})
+public @interface GenerateBytecode {
+
+    /**
+     * Declares an operation of a {@link GenerateBytecode bytecode interpreter}. The annotated class
+     * must be a static class nested in the root node that declares one or more static
+     * {@link Specialization specialization} methods and optionally a {@link Fallback} method. All
+     * of them must take the same number of operands and either all or none of them must return
+     * <code>void</code>. The simple name of the class is used to name the builder methods of the
+     * operation.
+     * <p>
+     * Experimental, like {@link GenerateBytecode}.
+     *
+     * @since 20.2
+     */
+    @Retention(RetentionPolicy.CLASS)
+    @Target({ElementType.TYPE})
+    @interface Operation {
+    }
+}
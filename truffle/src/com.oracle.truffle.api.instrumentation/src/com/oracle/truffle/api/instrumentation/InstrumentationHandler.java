@@ -123,6 +123,12 @@ final class InstrumentationHandler {
 
     final Collection<RootNode> loadedRoots = new WeakAsyncList<>(256);
     private final Collection<RootNode> executedRoots = new WeakAsyncList<>(64);
+    /*
+     * Indexes of loadedRoots and executedRoots by source, used to limit the roots visited when a
+     * binding with a source filter is attached or disposed.
+     */
+    private final RootIndex loadedRootsIndex = new RootIndex();
+    private final RootIndex executedRootsIndex = new RootIndex();
     private final Collection<AllocationReporter> allocationReporters = new WeakAsyncList<>(16);
 
     private final Collection<EventBinding.Source<?>> executionBindings = new EventBindingList<>(8);
@@ -193,6 +199,7 @@ final class InstrumentationHandler {
                     rootSources = null;
                 }
                 loadedRoots.add(root);
+                loadedRootsIndex.add(root);
                 // Do not invoke foreign code while holding a lock to avoid deadlocks.
                 if (rootSources != null) {
                     SourceList sourceList = sourcesListRef.get();
@@ -207,6 +214,7 @@ final class InstrumentationHandler {
             }
         } else {
             loadedRoots.add(root);
+            loadedRootsIndex.add(root);
         }
 
         // fast path no bindings attached
@@ -344,6 +352,7 @@ final class InstrumentationHandler {
                     rootSources = null;
                 }
                 executedRoots.add(root);
+                executedRootsIndex.add(root);
                 // Do not invoke foreign code while holding a lock to avoid deadlocks.
                 if (rootSources != null) {
                     SourceList sourceList = sourcesExecutedListRef.get();
@@ -358,6 +367,7 @@ final class InstrumentationHandler {
             }
         } else {
             executedRoots.add(root);
+            executedRootsIndex.add(root);
         }
 
         // fast path no bindings attached
@@ -461,7 +471,7 @@ final class InstrumentationHandler {
             visitorBuilder.addInsertWrapperOperationForBinding(VisitOperation.Scope.ONLY_ORIGINAL, binding);
             visitorBuilder.addInsertWrapperOperationForAllBindings(VisitOperation.Scope.ONLY_MATERIALIZED);
             visitorBuilder.addNotifyLoadedOperationForAllBindings(VisitOperation.Scope.ONLY_MATERIALIZED);
-            visitRoots(executedRoots, visitorBuilder.buildVisitor());
+            visitRoots(executedRootsIndex.findRoots(binding.getFilter(), executedRoots), visitorBuilder.buildVisitor());
         }
 
         if (TRACE) {
@@ -483,7 +493,7 @@ final class InstrumentationHandler {
                 visitorBuilder.addNotifyLoadedOperationForBinding(VisitOperation.Scope.ONLY_ORIGINAL, binding);
                 visitorBuilder.addNotifyLoadedOperationForAllBindings(VisitOperation.Scope.ONLY_MATERIALIZED);
                 visitorBuilder.addInsertWrapperOperationForAllBindings(VisitOperation.Scope.ONLY_MATERIALIZED);
-                visitRoots(loadedRoots, visitorBuilder.buildVisitor());
+                visitRoots(loadedRootsIndex.findRoots(binding.getFilter(), loadedRoots), visitorBuilder.buildVisitor());
             }
         }
 
@@ -504,7 +514,7 @@ final class InstrumentationHandler {
             visitorBuilder.addNotifyLoadedOperationForBinding(VisitOperation.Scope.ALL, binding);
             visitorBuilder.addNotifyLoadedOperationForAllBindings(VisitOperation.Scope.ONLY_MATERIALIZED);
             visitorBuilder.addInsertWrapperOperationForAllBindings(VisitOperation.Scope.ONLY_MATERIALIZED);
-            visitRoots(loadedRoots, visitorBuilder.buildVisitor());
+            visitRoots(loadedRootsIndex.findRoots(binding.getFilter(), loadedRoots), visitorBuilder.buildVisitor());
         }
 
         if (TRACE) {
@@ -759,7 +769,7 @@ final class InstrumentationHandler {
             if (sourceBinding.isExecutionEvent()) {
                 BindingsVisitorBuilder visitorBuilder = new BindingsVisitorBuilder();
                 visitorBuilder.addDisposeWrapperOperationForBinding(sourceBinding);
-                visitRoots(executedRoots, visitorBuilder.buildVisitor());
+                visitRoots(executedRootsIndex.findRoots(sourceBinding.getFilter(), executedRoots), visitorBuilder.buildVisitor());
             }
         } else if (binding instanceof EventBinding.Allocation) {
             EventBinding.Allocation<?> allocationBinding = (EventBinding.Allocation<?>) binding;
@@ -1193,6 +1203,10 @@ final class InstrumentationHandler {
 
             if (!RootNodeBits.isUninitialized(visitor.computingRootNodeBits)) {
                 RootNodeBits.set(visitor.root, visitor.computingRootNodeBits);
+                if (RootNodeBits.isSameSource(visitor.rootBits) && !RootNodeBits.isSameSource(visitor.computingRootNodeBits)) {
+                    loadedRootsIndex.onDifferentSource(visitor.root);
+                    executedRootsIndex.onDifferentSource(visitor.root);
+                }
             }
         }
 
@@ -2393,6 +2407,91 @@ final class InstrumentationHandler {
 
     }
 
+    /**
+     * An index of roots by the source of their root source section. A root can only be indexed once
+     * its {@link RootNodeBits} are initialized and tell that all of its source sections have the
+     * same source as the root. Roots that are not yet classified, or that contain nodes without a
+     * source section or with a different source, are returned for every lookup.
+     */
+    private static final class RootIndex {
+
+        private final Map<Source, Collection<RootNode>> rootsBySource = new WeakHashMap<>();
+        private final Collection<RootNode> unindexedRoots = new WeakAsyncList<>(16);
+        private Collection<RootNode> unclassifiedRoots = new WeakAsyncList<>(64);
+
+        synchronized void add(RootNode root) {
+            unclassifiedRoots.add(root);
+        }
+
+        /**
+         * Returns the roots that may contain nodes included by the filter. If the filter does not
+         * restrict sources, all roots are returned.
+         */
+        Collection<RootNode> findRoots(SourceSectionFilter filter, Collection<RootNode> allRoots) {
+            Source[] sources = filter.getReferencedSources();
+            if (sources == null) {
+                return allRoots;
+            }
+            // a root may be both indexed and unindexed if its source changed after indexing
+            Set<RootNode> roots = new LinkedHashSet<>();
+            synchronized (this) {
+                classifyRoots();
+                for (Source source : sources) {
+                    Collection<RootNode> sourceRoots = rootsBySource.get(source);
+                    if (sourceRoots != null) {
+                        addAll(roots, sourceRoots);
+                    }
+                }
+                addAll(roots, unindexedRoots);
+                addAll(roots, unclassifiedRoots);
+            }
+            return roots;
+        }
+
+        /**
+         * Called when a root that had only nodes of its own source was found to contain nodes of
+         * other sources.
+         */
+        synchronized void onDifferentSource(RootNode root) {
+            SourceSection sourceSection = root.getSourceSection();
+            if (sourceSection != null) {
+                Collection<RootNode> sourceRoots = rootsBySource.get(sourceSection.getSource());
+                if (sourceRoots != null && sourceRoots.contains(root)) {
+                    unindexedRoots.add(root);
+                }
+            }
+        }
+
+        private static void addAll(Set<RootNode> target, Collection<RootNode> roots) {
+            // AbstractAsyncCollection does not support size()
+            for (RootNode root : roots) {
+                target.add(root);
+            }
+        }
+
+        private void classifyRoots() {
+            assert Thread.holdsLock(this);
+            Collection<RootNode> pending = unclassifiedRoots;
+            unclassifiedRoots = new WeakAsyncList<>(64);
+            for (RootNode root : pending) {
+                int rootBits = RootNodeBits.get(root);
+                SourceSection sourceSection;
+                if (RootNodeBits.isUninitialized(rootBits)) {
+                    unclassifiedRoots.add(root);
+                } else if (RootNodeBits.isSameSource(rootBits) && (sourceSection = root.getSourceSection()) != null) {
+                    Collection<RootNode> sourceRoots = rootsBySource.get(sourceSection.getSource());
+                    if (sourceRoots == null) {
+                        sourceRoots = new WeakAsyncList<>(8);
+                        rootsBySource.put(sourceSection.getSource(), sourceRoots);
+                    }
+                    sourceRoots.add(root);
+                } else {
+                    unindexedRoots.add(root);
+                }
+            }
+        }
+    }
+
     private static final class SourceList {
 
         private final Collection<Source> list = new WeakAsyncList<>(16);
@@ -183,6 +183,26 @@ public final class SourceSectionFilter {
         return usedTags;
     }
 
+    /**
+     * Returns the sources that nodes must belong to in order to be included by this filter, or
+     * <code>null</code> if the filter does not restrict sources.
+     */
+    Source[] getReferencedSources() {
+        for (EventFilterExpression expression : expressions) {
+            if (expression instanceof EventFilterExpression.SourceIs) {
+                return ((EventFilterExpression.SourceIs) expression).sources;
+            } else if (expression instanceof EventFilterExpression.SourceSectionEquals) {
+                SourceSection[] sections = ((EventFilterExpression.SourceSectionEquals) expression).sourceSections;
+                Source[] sources = new Source[sections.length];
+                for (int i = 0; i < sections.length; i++) {
+                    sources[i] = sections[i].getSource();
+                }
+                return sources;
+            }
+        }
+        return null;
+    }
+
     boolean isSourceOnly() {
         for (EventFilterExpression eventFilterExpression : expressions) {
             if (!eventFilterExpression.isSourceOnly()) {
@@ -0,0 +1,1251 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.dsl.processor.bytecode;
+
+import static com.oracle.truffle.dsl.processor.generator.GeneratorUtils.createClass;
+import static com.oracle.truffle.dsl.processor.java.ElementUtils.modifiers;
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+
+import com.oracle.truffle.dsl.processor.AnnotationProcessor;
+import com.oracle.truffle.dsl.processor.ProcessorContext;
+import com.oracle.truffle.dsl.processor.generator.CodeTypeElementFactory;
+import com.oracle.truffle.dsl.processor.generator.GeneratorUtils;
+import com.oracle.truffle.dsl.processor.generator.TypeSystemCodeGenerator;
+import com.oracle.truffle.dsl.processor.java.ElementUtils;
+import com.oracle.truffle.dsl.processor.java.model.CodeAnnotationMirror;
+import com.oracle.truffle.dsl.processor.java.model.CodeAnnotationValue;
+import com.oracle.truffle.dsl.processor.java.model.CodeExecutableElement;
+import com.oracle.truffle.dsl.processor.java.model.CodeTree;
+import com.oracle.truffle.dsl.processor.java.model.CodeTreeBuilder;
+import com.oracle.truffle.dsl.processor.java.model.CodeTypeElement;
+import com.oracle.truffle.dsl.processor.java.model.CodeTypeMirror.ArrayCodeTypeMirror;
+import com.oracle.truffle.dsl.processor.java.model.CodeVariableElement;
+import com.oracle.truffle.dsl.processor.model.TypeSystemData;
+
+/**
+ * Generates a bytecode interpreter for a root node annotated with <code>GenerateBytecode</code>.
+ * <p>
+ * Every instruction is encoded as one <code>short</code> opcode, followed by at most one unsigned
+ * <code>short</code> operand. Values are passed between instructions on an operand stack that is
+ * local to the bytecode loop, so that partial evaluation can virtualize it. Locals are stored in
+ * frame slots. Instructions of declared operations use their operand as index into the state
+ * array, which contains the active specializations in the lower and the excluded specializations
+ * in the upper 16 bits. Whenever the state changes the opcode is rewritten to an instruction that
+ * is specific to the single active specialization, if there is one.
+ * <p>
+ * The operand stack consists of an <code>Object[]</code> and a <code>long[]</code> array.
+ * Primitive results of specializations are stored as raw bits in the <code>long[]</code> array,
+ * with a tag object of their kind in the <code>Object[]</code> array, so they are not boxed
+ * between instructions. Quickened instructions read their primitive operands without boxing if
+ * the stack entries have the expected tags. Compiled code loads and stores locals with the tag of
+ * their frame slot. Backward branches count loop iterations, which are reported to the runtime
+ * with <code>LoopNode.reportLoopCount</code>.
+ */
+public class BytecodeGenerator extends CodeTypeElementFactory<BytecodeData> {
+
+    private static final String[] BUILTIN_INSTRUCTIONS = {"POP", "LOAD_CONSTANT", "LOAD_ARGUMENT", "LOAD_LOCAL", "STORE_LOCAL", "BRANCH", "BRANCH_FALSE", "RETURN"};
+    private static final String[] BUILTIN_INSTRUCTION_NAMES = {"pop", "load.constant", "load.argument", "load.local", "store.local", "branch", "branch.false", "return"};
+
+    /* Kinds of primitive values, in the order in which the frame slot and stack tags are tested. */
+    private static final String[] PRIMITIVE_FRAME_KINDS = {"Int", "Long", "Double", "Boolean", "Byte", "Float"};
+
+    /*
+     * Number of loop back-edges after which the interpreter reports the loop count, so that the
+     * counter cannot overflow in long running loops.
+     */
+    private static final int LOOP_COUNT_REPORT_INTERVAL = 1 << 10;
+
+    private static final String OPERATION_BLOCK = "OPERATION_BLOCK";
+    private static final String OPERATION_IF_THEN = "OPERATION_IF_THEN";
+    private static final String OPERATION_IF_THEN_ELSE = "OPERATION_IF_THEN_ELSE";
+    private static final String OPERATION_WHILE = "OPERATION_WHILE";
+    private static final String OPERATION_RETURN = "OPERATION_RETURN";
+    private static final String OPERATION_STORE_LOCAL = "OPERATION_STORE_LOCAL";
+
+    private static final String[] BUILTIN_OPERATIONS = {OPERATION_BLOCK, OPERATION_IF_THEN, OPERATION_IF_THEN_ELSE, OPERATION_WHILE, OPERATION_RETURN, OPERATION_STORE_LOCAL};
+    private static final String[] BUILTIN_OPERATION_NAMES = {"Block", "IfThen", "IfThenElse", "While", "Return", "StoreLocal"};
+
+    private ProcessorContext context;
+    private BytecodeData model;
+    private TypeSystemData typeSystem;
+
+    @Override
+    public List<CodeTypeElement> create(ProcessorContext context1, AnnotationProcessor<?> processor, BytecodeData model1) {
+        if (model1.hasErrors()) {
+            return Collections.emptyList();
+        }
+        this.context = context1;
+        this.model = model1;
+        this.typeSystem = model.getTypeSystem();
+
+        TypeElement templateType = model.getTemplateType();
+        CodeTypeElement genClass = createClass(model, null, modifiers(FINAL), createGenTypeName(model), templateType.asType());
+        if (templateType.getModifiers().contains(PUBLIC)) {
+            genClass.getModifiers().add(PUBLIC);
+        }
+
+        short opcode = 0;
+        for (String instruction : BUILTIN_INSTRUCTIONS) {
+            genClass.add(createInstructionConstant(instruction, opcode++));
+        }
+        for (OperationData operation : model.getOperations()) {
+            genClass.add(createInstructionConstant(instructionName(operation, null), opcode++));
+            for (OperationSpecialization specialization : operation.getSpecializations()) {
+                genClass.add(createInstructionConstant(instructionName(operation, specialization), opcode++));
+            }
+        }
+
+        CodeVariableElement bc = genClass.add(new CodeVariableElement(modifiers(PRIVATE, FINAL), new ArrayCodeTypeMirror(context.getType(short.class)), "bc"));
+        setCompilationFinal(bc);
+        CodeVariableElement constants = genClass.add(new CodeVariableElement(modifiers(PRIVATE, FINAL), new ArrayCodeTypeMirror(context.getType(Object.class)), "constants"));
+        setCompilationFinal(constants);
+        CodeVariableElement states = genClass.add(new CodeVariableElement(modifiers(PRIVATE, FINAL), new ArrayCodeTypeMirror(context.getType(int.class)), "states"));
+        setCompilationFinal(states);
+        CodeVariableElement slots = genClass.add(new CodeVariableElement(modifiers(PRIVATE, FINAL), new ArrayCodeTypeMirror(types.FrameSlot), "slots"));
+        setCompilationFinal(slots);
+        genClass.add(new CodeVariableElement(modifiers(PRIVATE, FINAL), context.getType(int.class), "maxStackHeight"));
+        for (String kind : PRIMITIVE_FRAME_KINDS) {
+            CodeVariableElement tag = genClass.add(new CodeVariableElement(modifiers(PRIVATE, STATIC, FINAL), context.getType(Object.class), stackTag(kind)));
+            tag.createInitBuilder().startNew(context.getType(Object.class)).end();
+        }
+
+        genClass.add(createConstructor(genClass));
+        genClass.add(createExecute());
+        genClass.add(createExecuteBytecode());
+        genClass.add(createGetStackValue());
+        genClass.add(createLoadLocal());
+        genClass.add(createStoreLocal());
+        for (OperationData operation : model.getOperations()) {
+            genClass.add(createExecuteOperation(operation, null));
+            for (OperationSpecialization specialization : operation.getSpecializations()) {
+                genClass.add(createExecuteOperation(operation, specialization));
+            }
+            if (operation.getFallback() != null) {
+                genClass.add(createFallbackGuard(operation));
+            }
+            genClass.add(createSpecialize(operation));
+            genClass.add(createExclude(operation));
+            genClass.add(createQuicken(operation));
+        }
+        genClass.add(createDump());
+
+        CodeTypeElement builderClass = new BuilderFactory(genClass).create();
+        genClass.add(builderClass);
+
+        CodeExecutableElement newBuilder = genClass.add(new CodeExecutableElement(modifiers(PUBLIC, STATIC), builderClass.asType(), "newBuilder"));
+        newBuilder.createBuilder().startReturn().startNew(builderClass.asType()).end().end();
+
+        return Arrays.asList(genClass);
+    }
+
+    static String createGenTypeName(BytecodeData model) {
+        return ElementUtils.getSimpleName(model.getTemplateType()) + "Gen";
+    }
+
+    private static String instructionName(OperationData operation, OperationSpecialization specialization) {
+        String name = "OP_" + ElementUtils.createConstantName(operation.getName());
+        if (specialization != null) {
+            name += "__" + ElementUtils.createConstantName(specialization.getName());
+        }
+        return name;
+    }
+
+    private static String executeMethodName(OperationData operation, OperationSpecialization specialization) {
+        String name = "execute" + operation.getName();
+        if (specialization != null) {
+            name += "_" + specialization.getName();
+        }
+        return name;
+    }
+
+    private static String activeMask(OperationSpecialization specialization) {
+        return "0x" + Integer.toHexString(1 << specialization.getIndex());
+    }
+
+    private static String excludedMask(OperationSpecialization specialization) {
+        return "0x" + Integer.toHexString(1 << (specialization.getIndex() + BytecodeParser.MAX_SPECIALIZATIONS));
+    }
+
+    /**
+     * Returns the index expression of the operand stack entry at the given offset relative to the
+     * current stack pointer.
+     */
+    private static String stackIndex(int offset) {
+        if (offset == 0) {
+            return "sp";
+        } else if (offset < 0) {
+            return "sp - " + (-offset);
+        } else {
+            return "sp + " + offset;
+        }
+    }
+
+    /**
+     * Returns the name of the constant that tags operand stack entries whose value of the given
+     * kind is stored in the primitive array.
+     */
+    private static String stackTag(String kind) {
+        return "TAG_" + kind.toUpperCase();
+    }
+
+    /**
+     * Returns the expression that converts the raw bits of a primitive stack entry to a value of
+     * the given kind.
+     */
+    private static String decodePrimitive(String kind, String bits) {
+        switch (kind) {
+            case "Int":
+                return "(int) " + bits;
+            case "Long":
+                return bits;
+            case "Double":
+                return "Double.longBitsToDouble(" + bits + ")";
+            case "Boolean":
+                return bits + " != 0";
+            case "Byte":
+                return "(byte) " + bits;
+            case "Float":
+                return "Float.intBitsToFloat((int) " + bits + ")";
+            default:
+                throw new AssertionError(kind);
+        }
+    }
+
+    /**
+     * Creates the statements that push the given primitive value of the given kind to the operand
+     * stack entry with the given index.
+     */
+    private static void storePrimitive(CodeTreeBuilder b, String kind, String index, CodeTree value) {
+        b.startStatement().string("primitives[" + index + "] = ");
+        switch (kind) {
+            case "Int":
+            case "Long":
+            case "Byte":
+                b.tree(value);
+                break;
+            case "Double":
+                b.startStaticCall(ProcessorContext.getInstance().getType(Double.class), "doubleToRawLongBits").tree(value).end();
+                break;
+            case "Boolean":
+                b.tree(value).string(" ? 1L : 0L");
+                break;
+            case "Float":
+                b.startStaticCall(ProcessorContext.getInstance().getType(Float.class), "floatToRawIntBits").tree(value).end();
+                break;
+            default:
+                throw new AssertionError(kind);
+        }
+        b.end();
+        b.statement("stack[" + index + "] = " + stackTag(kind));
+    }
+
+    private static int stackEffect(OperationData operation) {
+        return (operation.isVoid() ? 0 : 1) - operation.getOperandCount();
+    }
+
+    private CodeVariableElement createInstructionConstant(String name, short opcode) {
+        return new CodeVariableElement(modifiers(PRIVATE, STATIC, FINAL), context.getType(short.class), name, String.valueOf(opcode));
+    }
+
+    private static void setCompilationFinal(CodeVariableElement field) {
+        CodeAnnotationMirror annotation = new CodeAnnotationMirror(ProcessorContext.getInstance().getTypes().CompilerDirectives_CompilationFinal);
+        annotation.setElementValue(annotation.findExecutableElement("dimensions"), new CodeAnnotationValue(1));
+        field.getAnnotationMirrors().add(annotation);
+    }
+
+    private CodeExecutableElement createConstructor(CodeTypeElement genClass) {
+        ExecutableElement superConstructor = model.getConstructor();
+        CodeExecutableElement constructor = new CodeExecutableElement(modifiers(PRIVATE), null, genClass.getSimpleName().toString());
+        constructor.addParameter(new CodeVariableElement(superConstructor.getParameters().get(0).asType(), "language"));
+        constructor.addParameter(new CodeVariableElement(superConstructor.getParameters().get(1).asType(), "frameDescriptor"));
+        constructor.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(short.class)), "bc"));
+        constructor.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(Object.class)), "constants"));
+        constructor.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(int.class)), "states"));
+        constructor.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(types.FrameSlot), "slots"));
+        constructor.addParameter(new CodeVariableElement(context.getType(int.class), "maxStackHeight"));
+        CodeTreeBuilder builder = constructor.createBuilder();
+        builder.statement("super(language, frameDescriptor)");
+        for (String field : Arrays.asList("bc", "constants", "states", "slots", "maxStackHeight")) {
+            builder.statement("this." + field + " = " + field);
+        }
+        return constructor;
+    }
+
+    private CodeExecutableElement createExecute() {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PUBLIC), context.getType(Object.class), "execute");
+        method.addParameter(new CodeVariableElement(types.VirtualFrame, "frame"));
+        method.createBuilder().startReturn().startCall("executeBytecode").string("frame").end().end();
+        return method;
+    }
+
+    private CodeExecutableElement createExecuteBytecode() {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PRIVATE), context.getType(Object.class), "executeBytecode");
+        method.addParameter(new CodeVariableElement(types.VirtualFrame, "frame"));
+        CodeAnnotationMirror explodeLoop = new CodeAnnotationMirror(types.ExplodeLoop);
+        explodeLoop.setElementValue(explodeLoop.findExecutableElement("kind"),
+                        new CodeAnnotationValue(ElementUtils.findVariableElement(types.ExplodeLoop_LoopExplosionKind, "MERGE_EXPLODE")));
+        method.getAnnotationMirrors().add(explodeLoop);
+
+        CodeTreeBuilder b = method.createBuilder();
+        b.statement("Object[] stack = new Object[maxStackHeight]");
+        b.statement("long[] primitives = new long[maxStackHeight]");
+        b.statement("int bci = 0");
+        b.statement("int sp = 0");
+        b.statement("int loopCount = 0");
+        b.startTryBlock();
+        b.startWhile().string("true").end().startBlock();
+        b.startStatement().startStaticCall(types.CompilerAsserts, "partialEvaluationConstant").string("bci").end().end();
+        b.startStatement().startStaticCall(types.CompilerAsserts, "partialEvaluationConstant").string("sp").end().end();
+        b.startSwitch().string("bc[bci]").end().startBlock();
+
+        b.startCase().string("POP").end().startCaseBlock();
+        b.statement("sp = sp - 1");
+        b.statement("bci = bci + 1");
+        b.statement("continue");
+        b.end();
+
+        b.startCase().string("LOAD_CONSTANT").end().startCaseBlock();
+        b.statement("stack[sp] = constants[bc[bci + 1] & 0xFFFF]");
+        b.statement("sp = sp + 1");
+        b.statement("bci = bci + 2");
+        b.statement("continue");
+        b.end();
+
+        b.startCase().string("LOAD_ARGUMENT").end().startCaseBlock();
+        b.statement("stack[sp] = frame.getArguments()[bc[bci + 1] & 0xFFFF]");
+        b.statement("sp = sp + 1");
+        b.statement("bci = bci + 2");
+        b.statement("continue");
+        b.end();
+
+        b.startCase().string("LOAD_LOCAL").end().startCaseBlock();
+        b.statement("loadLocal(frame, slots[bc[bci + 1] & 0xFFFF], stack, primitives, sp)");
+        b.statement("sp = sp + 1");
+        b.statement("bci = bci + 2");
+        b.statement("continue");
+        b.end();
+
+        b.startCase().string("STORE_LOCAL").end().startCaseBlock();
+        b.statement("storeLocal(frame, stack, primitives, sp - 1, slots[bc[bci + 1] & 0xFFFF])");
+        b.statement("sp = sp - 1");
+        b.statement("bci = bci + 2");
+        b.statement("continue");
+        b.end();
+
+        b.startCase().string("BRANCH").end().startCaseBlock();
+        b.statement("int target = bc[bci + 1] & 0xFFFF");
+        b.startIf().string("target <= bci && ").startStaticCall(types.CompilerDirectives, "inInterpreter").end().string(" && ++loopCount >= " + LOOP_COUNT_REPORT_INTERVAL).end().startBlock();
+        b.startStatement().startStaticCall(types.LoopNode, "reportLoopCount").string("this").string("loopCount").end().end();
+        b.statement("loopCount = 0");
+        b.end();
+        b.statement("bci = target");
+        b.statement("continue");
+        b.end();
+
+        b.startCase().string("BRANCH_FALSE").end().startCaseBlock();
+        b.statement("sp = sp - 1");
+        b.startIf().string("stack[sp] == " + stackTag("Boolean") + " ? " + decodePrimitive("Boolean", "primitives[sp]") + " : (boolean) stack[sp]").end().startBlock();
+        b.statement("bci = bci + 2");
+        b.end().startElseBlock();
+        b.statement("bci = bc[bci + 1] & 0xFFFF");
+        b.end();
+        b.statement("continue");
+        b.end();
+
+        b.startCase().string("RETURN").end().startCaseBlock();
+        b.startReturn().string("getStackValue(stack, primitives, sp - 1)").end();
+        b.end();
+
+        for (OperationData operation : model.getOperations()) {
+            List<OperationSpecialization> quickened = new ArrayList<>();
+            quickened.add(null);
+            quickened.addAll(operation.getSpecializations());
+            for (OperationSpecialization specialization : quickened) {
+                b.startCase().string(instructionName(operation, specialization)).end().startCaseBlock();
+                b.startStatement().tree(createOperationCall(executeMethodName(operation, specialization))).end();
+                int stackEffect = stackEffect(operation);
+                if (stackEffect > 0) {
+                    b.statement("sp = sp + " + stackEffect);
+                } else if (stackEffect < 0) {
+                    b.statement("sp = sp - " + (-stackEffect));
+                }
+                b.statement("bci = bci + 2");
+                b.statement("continue");
+                b.end();
+            }
+        }
+
+        b.caseDefault().startCaseBlock();
+        b.tree(GeneratorUtils.createTransferToInterpreterAndInvalidate());
+        b.startThrow().startNew(context.getType(IllegalStateException.class)).string("\"Invalid opcode \" + bc[bci] + \" at index \" + bci + \".\"").end().end();
+        b.end();
+
+        b.end(); // switch
+        b.end(); // while
+        b.end().startFinallyBlock();
+        b.startIf().string("loopCount > 0").end().startBlock();
+        b.startStatement().startStaticCall(types.LoopNode, "reportLoopCount").string("this").string("loopCount").end().end();
+        b.end();
+        b.end();
+        return method;
+    }
+
+    /**
+     * Creates the method that returns the value of an operand stack entry, boxing it if it is
+     * stored in the primitive array.
+     */
+    private CodeExecutableElement createGetStackValue() {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PRIVATE, STATIC), context.getType(Object.class), "getStackValue");
+        method.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(Object.class)), "stack"));
+        method.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(long.class)), "primitives"));
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "index"));
+        CodeTreeBuilder b = method.createBuilder();
+        b.statement("Object value = stack[index]");
+        boolean elseIf = false;
+        for (String kind : PRIMITIVE_FRAME_KINDS) {
+            elseIf = b.startIf(elseIf);
+            b.string("value == " + stackTag(kind)).end().startBlock();
+            b.startReturn().string(decodePrimitive(kind, "primitives[index]")).end();
+            b.end();
+        }
+        b.startReturn().string("value").end();
+        return method;
+    }
+
+    /**
+     * Creates the method that pushes the value of a local to the operand stack. In compiled code
+     * primitive values keep the tag of their frame slot, so that they are not boxed. The interpreter
+     * loads the value as object, because frames that store primitive values boxed would otherwise
+     * unbox and box the value again.
+     */
+    private CodeExecutableElement createLoadLocal() {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PRIVATE, STATIC), context.getType(void.class), "loadLocal");
+        method.addParameter(new CodeVariableElement(types.VirtualFrame, "frame"));
+        method.addParameter(new CodeVariableElement(types.FrameSlot, "slot"));
+        method.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(Object.class)), "stack"));
+        method.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(long.class)), "primitives"));
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "index"));
+        CodeTreeBuilder b = method.createBuilder();
+        b.startIf().startStaticCall(types.CompilerDirectives, "inInterpreter").end().end().startBlock();
+        b.statement("stack[index] = frame.getValue(slot)");
+        b.end();
+        for (String kind : PRIMITIVE_FRAME_KINDS) {
+            b.startElseIf().string("frame.is" + kind + "(slot)").end().startBlock();
+            storePrimitive(b, kind, "index", CodeTreeBuilder.createBuilder().startStaticCall(types.FrameUtil, "get" + kind + "Safe").string("frame").string("slot").end().build());
+            b.end();
+        }
+        b.startElseBlock();
+        b.statement("stack[index] = frame.getValue(slot)");
+        b.end();
+        return method;
+    }
+
+    /**
+     * Creates the method that stores an operand stack entry in a local. In compiled code primitive
+     * values are stored with the typed frame accessors. The interpreter stores the value as object,
+     * like {@link #createLoadLocal() loadLocal} loads it.
+     */
+    private CodeExecutableElement createStoreLocal() {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PRIVATE, STATIC), context.getType(void.class), "storeLocal");
+        method.addParameter(new CodeVariableElement(types.VirtualFrame, "frame"));
+        method.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(Object.class)), "stack"));
+        method.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(long.class)), "primitives"));
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "index"));
+        method.addParameter(new CodeVariableElement(types.FrameSlot, "slot"));
+        CodeTreeBuilder b = method.createBuilder();
+        b.statement("Object value = stack[index]");
+        b.startIf().startStaticCall(types.CompilerDirectives, "inInterpreter").end().end().startBlock();
+        b.statement("frame.setObject(slot, getStackValue(stack, primitives, index))");
+        b.end();
+        for (String kind : PRIMITIVE_FRAME_KINDS) {
+            b.startElseIf().string("value == " + stackTag(kind)).end().startBlock();
+            b.statement("frame.set" + kind + "(slot, " + decodePrimitive(kind, "primitives[index]") + ")");
+            b.end();
+        }
+        b.startElseBlock();
+        b.statement("frame.setObject(slot, value)");
+        b.end();
+        return method;
+    }
+
+    /**
+     * Returns the name of the typed frame accessors for values of the given type, or
+     * <code>null</code> if values of the type are stored as objects.
+     */
+    private static String frameKind(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Boolean";
+            case BYTE:
+                return "Byte";
+            case INT:
+                return "Int";
+            case LONG:
+                return "Long";
+            case FLOAT:
+                return "Float";
+            case DOUBLE:
+                return "Double";
+            default:
+                return null;
+        }
+    }
+
+    private CodeExecutableElement createOperationMethod(String name) {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PRIVATE), context.getType(void.class), name);
+        method.addParameter(new CodeVariableElement(types.VirtualFrame, "frame"));
+        method.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(Object.class)), "stack"));
+        method.addParameter(new CodeVariableElement(new ArrayCodeTypeMirror(context.getType(long.class)), "primitives"));
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "bci"));
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "sp"));
+        return method;
+    }
+
+    private static CodeTree createOperationCall(String name) {
+        return CodeTreeBuilder.createBuilder().startCall(name).string("frame").string("stack").string("primitives").string("bci").string("sp").end().build();
+    }
+
+    private static void loadOperands(CodeTreeBuilder b, OperationData operation) {
+        int operandCount = operation.getOperandCount();
+        for (int i = 0; i < operandCount; i++) {
+            b.statement("Object operand" + i + " = getStackValue(stack, primitives, " + stackIndex(i - operandCount) + ")");
+        }
+    }
+
+    /**
+     * Creates the condition that checks the given state condition and whether the operand values
+     * are accepted by the types of the specialization.
+     */
+    private CodeTree createGuard(String stateCheck, OperationSpecialization specialization) {
+        CodeTreeBuilder b = CodeTreeBuilder.createBuilder();
+        String sep = "";
+        if (stateCheck != null) {
+            b.string(stateCheck);
+            sep = " && ";
+        }
+        List<TypeMirror> operandTypes = specialization.getOperandTypes();
+        for (int i = 0; i < operandTypes.size(); i++) {
+            TypeMirror type = operandTypes.get(i);
+            if (ElementUtils.isObject(type)) {
+                continue;
+            }
+            CodeTree value = CodeTreeBuilder.singleString("operand" + i);
+            b.string(sep);
+            if (typeSystem.hasImplicitSourceTypes(type)) {
+                b.tree(TypeSystemCodeGenerator.implicitCheckFlat(typeSystem, type, value, null));
+            } else {
+                b.tree(TypeSystemCodeGenerator.check(typeSystem, type, value));
+            }
+            sep = " && ";
+        }
+        if (sep.isEmpty()) {
+            b.string("true");
+        }
+        return b.build();
+    }
+
+    /**
+     * Returns whether the operands of the given specialization can be read from the primitive stack
+     * array, i.e. whether at least one operand is primitive and all other operands are objects.
+     */
+    private static boolean hasTypedOperands(OperationSpecialization specialization) {
+        boolean primitive = false;
+        for (TypeMirror type : specialization.getOperandTypes()) {
+            if (frameKind(type) != null) {
+                primitive = true;
+            } else if (!ElementUtils.isObject(type)) {
+                return false;
+            }
+        }
+        return primitive;
+    }
+
+    /**
+     * Creates the condition that checks whether the primitive operands of the specialization are
+     * stored on the operand stack with the tag of their type.
+     */
+    private static String createTypedGuard(OperationData operation, OperationSpecialization specialization) {
+        StringBuilder guard = new StringBuilder();
+        List<TypeMirror> operandTypes = specialization.getOperandTypes();
+        for (int i = 0; i < operandTypes.size(); i++) {
+            String kind = frameKind(operandTypes.get(i));
+            if (kind != null) {
+                guard.append(guard.length() == 0 ? "" : " && ").append("stack[").append(stackIndex(i - operation.getOperandCount())).append("] == ").append(stackTag(kind));
+            }
+        }
+        return guard.toString();
+    }
+
+    /**
+     * Creates the call of the given specialization and the store of its result. If
+     * <code>typed</code> is set, primitive operands are read from the primitive stack array,
+     * otherwise they are cast from the loaded operand values.
+     */
+    private void createCallSpecialization(CodeTreeBuilder b, OperationData operation, OperationSpecialization specialization, boolean typed) {
+        List<TypeMirror> operandTypes = specialization.getOperandTypes();
+        for (int i = 0; i < operandTypes.size(); i++) {
+            TypeMirror type = operandTypes.get(i);
+            String index = stackIndex(i - operation.getOperandCount());
+            if (ElementUtils.isObject(type)) {
+                if (typed) {
+                    b.statement("Object operand" + i + " = getStackValue(stack, primitives, " + index + ")");
+                }
+                continue;
+            }
+            CodeTree value = CodeTreeBuilder.singleString("operand" + i);
+            CodeTree cast;
+            if (typed) {
+                cast = CodeTreeBuilder.singleString(decodePrimitive(frameKind(type), "primitives[" + index + "]"));
+            } else if (typeSystem.hasImplicitSourceTypes(type)) {
+                cast = TypeSystemCodeGenerator.implicitCastFlat(typeSystem, type, value, null);
+            } else {
+                cast = TypeSystemCodeGenerator.cast(typeSystem, type, value);
+            }
+            b.declaration(type, "operand" + i + "_", cast);
+        }
+
+        boolean rewrite = !specialization.getRewriteOn().isEmpty();
+        if (rewrite) {
+            b.startTryBlock();
+        }
+        CodeTreeBuilder call = CodeTreeBuilder.createBuilder();
+        call.startStaticCall(operation.getType().asType(), specialization.getName());
+        if (specialization.isFrame()) {
+            call.string("frame");
+        }
+        for (int i = 0; i < operandTypes.size(); i++) {
+            call.string(ElementUtils.isObject(operandTypes.get(i)) ? "operand" + i : "operand" + i + "_");
+        }
+        call.end();
+        String resultKind = frameKind(specialization.getMethod().getReturnType());
+        String resultIndex = stackIndex(-operation.getOperandCount());
+        if (operation.isVoid()) {
+            b.statement(call.build());
+        } else if (resultKind != null) {
+            storePrimitive(b, resultKind, resultIndex, call.build());
+        } else {
+            b.startStatement().string("stack[" + resultIndex + "] = ").tree(call.build()).end();
+        }
+        b.returnStatement();
+        if (rewrite) {
+            b.end().startCatchBlock(specialization.getRewriteOn().toArray(new TypeMirror[0]), "ex");
+            b.tree(GeneratorUtils.createTransferToInterpreterAndInvalidate());
+            b.startStatement().startCall("exclude" + operation.getName()).string("bci").string(activeMask(specialization)).end().end();
+            b.startStatement().tree(createOperationCall(executeMethodName(operation, null))).end();
+            b.returnStatement();
+            b.end();
+        }
+    }
+
+    private CodeExecutableElement createExecuteOperation(OperationData operation, OperationSpecialization quickened) {
+        CodeExecutableElement method = createOperationMethod(executeMethodName(operation, quickened));
+        CodeTreeBuilder b = method.createBuilder();
+        if (quickened != null && hasTypedOperands(quickened)) {
+            b.startIf().string(createTypedGuard(operation, quickened)).end().startBlock();
+            createCallSpecialization(b, operation, quickened, true);
+            b.end();
+        }
+        loadOperands(b, operation);
+        if (quickened != null) {
+            b.startIf().tree(createGuard(null, quickened)).end().startBlock();
+            createCallSpecialization(b, operation, quickened, false);
+            b.end();
+        } else {
+            b.statement("int state = states[bc[bci + 1] & 0xFFFF]");
+            for (OperationSpecialization specialization : operation.getAllSpecializations()) {
+                String activeCheck = "(state & " + activeMask(specialization) + ") != 0";
+                if (specialization.isFallback()) {
+                    CodeTreeBuilder guard = CodeTreeBuilder.createBuilder();
+                    guard.startCall("fallbackGuard" + operation.getName()).string("state");
+                    for (int i = 0; i < operation.getOperandCount(); i++) {
+                        guard.string("operand" + i);
+                    }
+                    guard.end();
+                    b.startIf().string(activeCheck).string(" && ").tree(guard.build()).end().startBlock();
+                } else {
+                    b.startIf().tree(createGuard(activeCheck, specialization)).end().startBlock();
+                }
+                createCallSpecialization(b, operation, specialization, false);
+                b.end();
+            }
+        }
+        b.tree(GeneratorUtils.createTransferToInterpreterAndInvalidate());
+        b.startStatement().tree(createOperationCall("specialize" + operation.getName())).end();
+        return method;
+    }
+
+    private CodeExecutableElement createFallbackGuard(OperationData operation) {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PRIVATE, STATIC), context.getType(boolean.class), "fallbackGuard" + operation.getName());
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "state"));
+        for (int i = 0; i < operation.getOperandCount(); i++) {
+            method.addParameter(new CodeVariableElement(context.getType(Object.class), "operand" + i));
+        }
+        CodeTreeBuilder b = method.createBuilder();
+        for (OperationSpecialization specialization : operation.getSpecializations()) {
+            b.startIf().tree(createGuard("(state & " + excludedMask(specialization) + ") == 0", specialization)).end().startBlock();
+            b.startReturn().string("false").end();
+            b.end();
+        }
+        b.startReturn().string("true").end();
+        return method;
+    }
+
+    private CodeExecutableElement createSpecialize(OperationData operation) {
+        CodeExecutableElement method = createOperationMethod("specialize" + operation.getName());
+        CodeTreeBuilder b = method.createBuilder();
+        b.declaration(context.getType(Lock.class), "lock", "getLock()");
+        b.statement("lock.lock()");
+        b.startTryBlock();
+        b.statement("int stateIndex = bc[bci + 1] & 0xFFFF");
+        b.statement("int state = states[stateIndex]");
+        loadOperands(b, operation);
+        boolean elseIf = false;
+        for (OperationSpecialization specialization : operation.getSpecializations()) {
+            elseIf = b.startIf(elseIf);
+            b.tree(createGuard("(state & " + excludedMask(specialization) + ") == 0", specialization)).end().startBlock();
+            StringBuilder newState = new StringBuilder("state");
+            if (!specialization.getReplaces().isEmpty()) {
+                StringBuilder active = new StringBuilder();
+                StringBuilder excluded = new StringBuilder();
+                for (OperationSpecialization replaced : specialization.getReplaces()) {
+                    active.append(active.length() == 0 ? "" : " | ").append(activeMask(replaced));
+                    excluded.append(" | ").append(excludedMask(replaced));
+                }
+                newState = new StringBuilder("(state & ~(").append(active).append("))").append(excluded);
+            }
+            newState.append(" | ").append(activeMask(specialization));
+            b.statement("state = " + newState);
+            b.end();
+        }
+        b.startElseBlock();
+        OperationSpecialization fallback = operation.getFallback();
+        if (fallback != null) {
+            b.statement("state = state | " + activeMask(fallback));
+        } else {
+            b.startThrow().startNew(types.UnsupportedSpecializationException).string("this");
+            b.startNewArray(new ArrayCodeTypeMirror(types.Node), CodeTreeBuilder.singleString(String.valueOf(operation.getOperandCount()))).end();
+            for (int i = 0; i < operation.getOperandCount(); i++) {
+                b.string("operand" + i);
+            }
+            b.end().end();
+        }
+        b.end();
+        b.statement("states[stateIndex] = state");
+        b.startStatement().string("bc[bci] = ").startCall("quicken" + operation.getName()).string("state").end().end();
+        b.end().startFinallyBlock();
+        b.statement("lock.unlock()");
+        b.end();
+        b.startStatement().tree(createOperationCall(executeMethodName(operation, null))).end();
+        return method;
+    }
+
+    private CodeExecutableElement createExclude(OperationData operation) {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PRIVATE), context.getType(void.class), "exclude" + operation.getName());
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "bci"));
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "specialization"));
+        CodeTreeBuilder b = method.createBuilder();
+        b.declaration(context.getType(Lock.class), "lock", "getLock()");
+        b.statement("lock.lock()");
+        b.startTryBlock();
+        b.statement("int stateIndex = bc[bci + 1] & 0xFFFF");
+        b.statement("int state = (states[stateIndex] & ~specialization) | (specialization << " + BytecodeParser.MAX_SPECIALIZATIONS + ")");
+        b.statement("states[stateIndex] = state");
+        b.startStatement().string("bc[bci] = ").startCall("quicken" + operation.getName()).string("state").end().end();
+        b.end().startFinallyBlock();
+        b.statement("lock.unlock()");
+        b.end();
+        return method;
+    }
+
+    private CodeExecutableElement createQuicken(OperationData operation) {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PRIVATE, STATIC), context.getType(short.class), "quicken" + operation.getName());
+        method.addParameter(new CodeVariableElement(context.getType(int.class), "state"));
+        CodeTreeBuilder b = method.createBuilder();
+        b.startSwitch().string("state & 0xFFFF").end().startBlock();
+        for (OperationSpecialization specialization : operation.getSpecializations()) {
+            b.startCase().string(activeMask(specialization)).end().startCaseBlock();
+            b.startReturn().string(instructionName(operation, specialization)).end();
+            b.end();
+        }
+        b.caseDefault().startCaseBlock();
+        b.startReturn().string(instructionName(operation, null)).end();
+        b.end();
+        b.end();
+        return method;
+    }
+
+    private CodeExecutableElement createDump() {
+        CodeExecutableElement method = new CodeExecutableElement(modifiers(PUBLIC), context.getType(String.class), "dump");
+        CodeTreeBuilder b = method.createBuilder();
+        b.declaration(context.getType(StringBuilder.class), "sb", b.create().startNew(context.getType(StringBuilder.class)).end());
+        b.statement("int bci = 0");
+        b.startWhile().string("bci < bc.length").end().startBlock();
+        b.statement("sb.append(String.format(\"%4d \", bci))");
+        b.startSwitch().string("bc[bci]").end().startBlock();
+        for (int i = 0; i < BUILTIN_INSTRUCTIONS.length; i++) {
+            String instruction = BUILTIN_INSTRUCTIONS[i];
+            String text = BUILTIN_INSTRUCTION_NAMES[i];
+            b.startCase().string(instruction).end().startCaseBlock();
+            switch (instruction) {
+                case "POP":
+                case "RETURN":
+                    b.statement("sb.append(\"" + text + "\")");
+                    b.statement("bci = bci + 1");
+                    break;
+                case "LOAD_CONSTANT":
+                    b.statement("sb.append(\"" + text + " \").append(constants[bc[bci + 1] & 0xFFFF])");
+                    b.statement("bci = bci + 2");
+                    break;
+                default:
+                    b.statement("sb.append(\"" + text + " \").append(bc[bci + 1] & 0xFFFF)");
+                    b.statement("bci = bci + 2");
+                    break;
+            }
+            b.statement("break");
+            b.end();
+        }
+        for (OperationData operation : model.getOperations()) {
+            List<OperationSpecialization> quickened = new ArrayList<>();
+            quickened.add(null);
+            quickened.addAll(operation.getSpecializations());
+            for (OperationSpecialization specialization : quickened) {
+                String text = operation.getName() + (specialization != null ? "." + specialization.getName() : "");
+                b.startCase().string(instructionName(operation, specialization)).end().startCaseBlock();
+                b.statement("sb.append(\"" + text + "\")");
+                b.statement("bci = bci + 2");
+                b.statement("break");
+                b.end();
+            }
+        }
+        b.caseDefault().startCaseBlock();
+        b.statement("sb.append(\"invalid \").append(bc[bci])");
+        b.statement("bci = bci + 1");
+        b.statement("break");
+        b.end();
+        b.end(); // switch
+        b.statement("sb.append('\\n')");
+        b.end(); // while
+        b.startReturn().string("sb.toString()").end();
+        return method;
+    }
+
+    private final class BuilderFactory {
+
+        private final CodeTypeElement genClass;
+        private final List<String> operationNames = new ArrayList<>();
+        private final List<String> operationConstants = new ArrayList<>();
+        private CodeTypeElement builderClass;
+
+        BuilderFactory(CodeTypeElement genClass) {
+            this.genClass = genClass;
+            operationNames.addAll(Arrays.asList(BUILTIN_OPERATION_NAMES));
+            operationConstants.addAll(Arrays.asList(BUILTIN_OPERATIONS));
+            for (OperationData operation : model.getOperations()) {
+                operationNames.add(operation.getName());
+                operationConstants.add("OPERATION_" + ElementUtils.createConstantName(operation.getName()));
+            }
+        }
+
+        CodeTypeElement create() {
+            builderClass = createClass(model, null, modifiers(PUBLIC, STATIC, FINAL), "Builder", null);
+
+            for (int i = 0; i < operationConstants.size(); i++) {
+                builderClass.add(new CodeVariableElement(modifiers(PRIVATE, STATIC, FINAL), context.getType(int.class), operationConstants.get(i), String.valueOf(i)));
+            }
+            CodeVariableElement names = builderClass.add(new CodeVariableElement(modifiers(PRIVATE, STATIC, FINAL), new ArrayCodeTypeMirror(context.getType(String.class)), "OPERATION_NAMES"));
+            CodeTreeBuilder init = names.createInitBuilder();
+            init.string("{");
+            String sep = "";
+            for (String name : operationNames) {
+                init.string(sep).doubleQuote(name);
+                sep = ", ";
+            }
+            init.string("}");
+
+            addField(new ArrayCodeTypeMirror(context.getType(short.class)), "bc", "new short[64]");
+            addField(context.getType(int.class), "bci", null);
+            addField(new ArrayCodeTypeMirror(context.getType(Object.class)), "constants", "new Object[16]");
+            addField(context.getType(int.class), "numConstants", null);
+            addField(context.getType(int.class), "numStates", null);
+            addField(context.getType(int.class), "numLocals", null);
+            addField(context.getType(int.class), "stackHeight", null);
+            addField(context.getType(int.class), "maxStackHeight", null);
+            addField(new ArrayCodeTypeMirror(context.getType(int.class)), "operationKinds", "new int[8]");
+            addField(new ArrayCodeTypeMirror(context.getType(int.class)), "operationChildCounts", "new int[8]");
+            addField(new ArrayCodeTypeMirror(context.getType(int.class)), "operationData", "new int[8]");
+            addField(new ArrayCodeTypeMirror(context.getType(int.class)), "operationPatches", "new int[8]");
+            addField(new ArrayCodeTypeMirror(context.getType(boolean.class)), "operationValues", "new boolean[8]");
+            addField(context.getType(int.class), "operationSp", null);
+            addField(context.getType(boolean.class), "built", null);
+
+            CodeExecutableElement constructor = builderClass.add(new CodeExecutableElement(modifiers(PRIVATE), null, "Builder"));
+            constructor.createBuilder().statement("pushOperation(OPERATION_BLOCK)");
+
+            CodeExecutableElement createLocal = builderClass.add(new CodeExecutableElement(modifiers(PUBLIC), context.getType(int.class), "createLocal"));
+            CodeTreeBuilder b = createLocal.createBuilder();
+            b.statement("checkNotBuilt()");
+            b.startReturn().string("numLocals++").end();
+
+            createBuiltinOperations();
+            for (int i = 0; i < model.getOperations().size(); i++) {
+                createOperation(model.getOperations().get(i), operationConstants.get(BUILTIN_OPERATIONS.length + i));
+            }
+
+            builderClass.add(createBuild());
+            createHelpers();
+            return builderClass;
+        }
+
+        private void addField(TypeMirror type, String name, String init) {
+            CodeVariableElement field = new CodeVariableElement(modifiers(PRIVATE), type, name);
+            if (init != null) {
+                field.createInitBuilder().string(init);
+            }
+            builderClass.add(field);
+        }
+
+        private CodeExecutableElement addMethod(String name, CodeVariableElement... parameters) {
+            return builderClass.add(new CodeExecutableElement(modifiers(PUBLIC), context.getType(void.class), name, parameters));
+        }
+
+        private void createBuiltinOperations() {
+            CodeTreeBuilder b;
+
+            // operations with operands
+            for (int i = 0; i < BUILTIN_OPERATIONS.length; i++) {
+                String name = BUILTIN_OPERATION_NAMES[i];
+                String constant = BUILTIN_OPERATIONS[i];
+                boolean storeLocal = constant.equals(OPERATION_STORE_LOCAL);
+
+                CodeExecutableElement begin = storeLocal ? addMethod("begin" + name, new CodeVariableElement(context.getType(int.class), "local")) : addMethod("begin" + name);
+                b = begin.createBuilder();
+                if (storeLocal) {
+                    b.statement("checkLocal(local)");
+                }
+                b.statement("beforeChild()");
+                b.statement("pushOperation(" + constant + ")");
+                if (storeLocal) {
+                    b.statement("operationData[operationSp - 1] = local");
+                } else if (constant.equals(OPERATION_WHILE)) {
+                    b.statement("operationData[operationSp - 1] = bci");
+                }
+
+                b = addMethod("end" + name).createBuilder();
+                switch (constant) {
+                    case OPERATION_BLOCK:
+                        b.statement("int index = endOperation(" + constant + ", -1)");
+                        b.statement("afterChild(operationValues[index])");
+                        break;
+                    case OPERATION_IF_THEN:
+                        b.statement("int index = endOperation(" + constant + ", 2)");
+                        b.statement("patchBranch(operationPatches[index])");
+                        b.statement("afterChild(false)");
+                        break;
+                    case OPERATION_IF_THEN_ELSE:
+                        b.statement("int index = endOperation(" + constant + ", 3)");
+                        b.statement("patchBranch(operationPatches[index])");
+                        b.statement("afterChild(false)");
+                        break;
+                    case OPERATION_WHILE:
+                        b.statement("endOperation(" + constant + ", 2)");
+                        b.statement("afterChild(false)");
+                        break;
+                    case OPERATION_RETURN:
+                        b.statement("endOperation(" + constant + ", 1)");
+                        b.statement("emitInstruction(RETURN)");
+                        b.statement("updateStackHeight(-1)");
+                        b.statement("afterChild(false)");
+                        break;
+                    case OPERATION_STORE_LOCAL:
+                        b.statement("int index = endOperation(" + constant + ", 1)");
+                        b.statement("emitInstruction(STORE_LOCAL, operationData[index])");
+                        b.statement("updateStackHeight(-1)");
+                        b.statement("afterChild(false)");
+                        break;
+                    default:
+                        throw new AssertionError(constant);
+                }
+            }
+
+            // operations without operands
+            b = addMethod("emitLoadConstant", new CodeVariableElement(context.getType(Object.class), "value")).createBuilder();
+            b.statement("beforeChild()");
+            b.startIf().string("numConstants == constants.length").end().startBlock();
+            b.startStatement().string("constants = ").startStaticCall(context.getType(Arrays.class), "copyOf").string("constants").string("constants.length * 2").end().end();
+            b.end();
+            b.statement("constants[numConstants] = value");
+            b.statement("emitInstruction(LOAD_CONSTANT, numConstants++)");
+            b.statement("updateStackHeight(1)");
+            b.statement("afterChild(true)");
+
+            b = addMethod("emitLoadArgument", new CodeVariableElement(context.getType(int.class), "index")).createBuilder();
+            b.startIf().string("index < 0").end().startBlock();
+            b.startThrow().startNew(context.getType(IllegalArgumentException.class)).string("\"Invalid argument index \" + index + \".\"").end().end();
+            b.end();
+            b.statement("beforeChild()");
+            b.statement("emitInstruction(LOAD_ARGUMENT, index)");
+            b.statement("updateStackHeight(1)");
+            b.statement("afterChild(true)");
+
+            b = addMethod("emitLoadLocal", new CodeVariableElement(context.getType(int.class), "local")).createBuilder();
+            b.statement("checkLocal(local)");
+            b.statement("beforeChild()");
+            b.statement("emitInstruction(LOAD_LOCAL, local)");
+            b.statement("updateStackHeight(1)");
+            b.statement("afterChild(true)");
+        }
+
+        private void createOperation(OperationData operation, String constant) {
+            String instruction = instructionName(operation, null);
+            int operandCount = operation.getOperandCount();
+            int stackEffect = stackEffect(operation);
+            String produces = operation.isVoid() ? "false" : "true";
+            CodeTreeBuilder b;
+            if (operandCount == 0) {
+                b = addMethod("emit" + operation.getName()).createBuilder();
+                b.statement("beforeChild()");
+            } else {
+                b = addMethod("begin" + operation.getName()).createBuilder();
+                b.statement("beforeChild()");
+                b.statement("pushOperation(" + constant + ")");
+                b = addMethod("end" + operation.getName()).createBuilder();
+                b.statement("endOperation(" + constant + ", " + operandCount + ")");
+            }
+            b.statement("emitInstruction(" + instruction + ", numStates++)");
+            if (stackEffect != 0) {
+                b.statement("updateStackHeight(" + stackEffect + ")");
+            }
+            b.statement("afterChild(" + produces + ")");
+        }
+
+        private CodeExecutableElement createBuild() {
+            CodeExecutableElement method = new CodeExecutableElement(modifiers(PUBLIC), model.getTemplateType().asType(), "build");
+            method.addParameter(new CodeVariableElement(model.getConstructor().getParameters().get(0).asType(), "language"));
+            CodeTreeBuilder b = method.createBuilder();
+            b.statement("checkNotBuilt()");
+            b.startIf().string("operationSp != 1").end().startBlock();
+            b.startThrow().startNew(context.getType(IllegalStateException.class)).string("\"Operation \" + OPERATION_NAMES[operationKinds[operationSp - 1]] + \" is not ended.\"").end().end();
+            b.end();
+            b.startIf().string("!operationValues[0]").end().startBlock();
+            b.statement("emitLoadConstant(null)");
+            b.end();
+            b.statement("emitInstruction(RETURN)");
+            b.statement("built = true");
+
+            b.declaration(types.FrameDescriptor, "frameDescriptor", b.create().startNew(types.FrameDescriptor).end());
+            b.declaration(new ArrayCodeTypeMirror(types.FrameSlot), "slots", b.create().startNewArray(new ArrayCodeTypeMirror(types.FrameSlot), CodeTreeBuilder.singleString("numLocals")).end());
+            b.startFor().string("int i = 0; i < slots.length; i++").end().startBlock();
+            b.startStatement().string("slots[i] = frameDescriptor.addFrameSlot(\"local\" + i, ");
+            b.staticReference(types.FrameSlotKind, "Object").string(")").end();
+            b.end();
+            b.startReturn().startNew(genClass.asType()).string("language").string("frameDescriptor");
+            b.startStaticCall(context.getType(Arrays.class), "copyOf").string("bc").string("bci").end();
+            b.startStaticCall(context.getType(Arrays.class), "copyOf").string("constants").string("numConstants").end();
+            b.string("new int[numStates]").string("slots").string("maxStackHeight");
+            b.end().end();
+            return method;
+        }
+
+        private CodeExecutableElement addHelper(TypeMirror returnType, String name, CodeVariableElement... parameters) {
+            return builderClass.add(new CodeExecutableElement(modifiers(PRIVATE), returnType, name, parameters));
+        }
+
+        private CodeVariableElement intParameter(String name) {
+            return new CodeVariableElement(context.getType(int.class), name);
+        }
+
+        private void createHelpers() {
+            TypeMirror voidType = context.getType(void.class);
+            TypeMirror intType = context.getType(int.class);
+            TypeMirror illegalState = context.getType(IllegalStateException.class);
+            CodeTreeBuilder b;
+
+            b = addHelper(voidType, "checkNotBuilt").createBuilder();
+            b.startIf().string("built").end().startBlock();
+            b.startThrow().startNew(illegalState).doubleQuote("The builder was already used to build a root node.").end().end();
+            b.end();
+
+            b = addHelper(voidType, "checkLocal", intParameter("local")).createBuilder();
+            b.startIf().string("local < 0 || local >= numLocals").end().startBlock();
+            b.startThrow().startNew(context.getType(IllegalArgumentException.class)).string("\"Invalid local \" + local + \".\"").end().end();
+            b.end();
+
+            b = addHelper(voidType, "pushOperation", intParameter("kind")).createBuilder();
+            b.startIf().string("operationSp == operationKinds.length").end().startBlock();
+            for (String array : Arrays.asList("operationKinds", "operationChildCounts", "operationData", "operationPatches", "operationValues")) {
+                b.startStatement().string(array, " = ").startStaticCall(context.getType(Arrays.class), "copyOf").string(array).string("operationSp * 2").end().end();
+            }
+            b.end();
+            b.statement("operationKinds[operationSp] = kind");
+            b.statement("operationChildCounts[operationSp] = 0");
+            b.statement("operationData[operationSp] = 0");
+            b.statement("operationPatches[operationSp] = 0");
+            b.statement("operationValues[operationSp] = false");
+            b.statement("operationSp++");
+
+            b = addHelper(intType, "endOperation", intParameter("kind"), intParameter("operandCount")).createBuilder();
+            b.statement("checkNotBuilt()");
+            b.startIf().string("operationSp <= 1 || operationKinds[operationSp - 1] != kind").end().startBlock();
+            b.startThrow().startNew(illegalState).string("\"Unexpected end of operation \" + OPERATION_NAMES[kind] + \".\"").end().end();
+            b.end();
+            b.statement("int index = --operationSp");
+            b.startIf().string("operandCount != -1 && operationChildCounts[index] != operandCount").end().startBlock();
+            b.startThrow().startNew(illegalState).string(
+                            "\"Operation \" + OPERATION_NAMES[kind] + \" expected \" + operandCount + \" operands but got \" + operationChildCounts[index] + \".\"").end().end();
+            b.end();
+            b.startReturn().string("index").end();
+
+            b = addHelper(voidType, "beforeChild").createBuilder();
+            b.statement("checkNotBuilt()");
+            b.statement("int index = operationSp - 1");
+            b.startIf().string("operationKinds[index] == OPERATION_BLOCK && operationValues[index]").end().startBlock();
+            b.lineComment("discard the value of the previous operand");
+            b.statement("emitInstruction(POP)");
+            b.statement("updateStackHeight(-1)");
+            b.statement("operationValues[index] = false");
+            b.end();
+
+            b = addHelper(voidType, "afterChild", new CodeVariableElement(context.getType(boolean.class), "producesValue")).createBuilder();
+            b.statement("int index = operationSp - 1");
+            b.statement("int childIndex = operationChildCounts[index]++");
+            b.startSwitch().string("operationKinds[index]").end().startBlock();
+            b.startCase().string(OPERATION_BLOCK).end().startCaseBlock();
+            b.statement("operationValues[index] = producesValue");
+            b.statement("break");
+            b.end();
+            b.startCase().string(OPERATION_IF_THEN).end().startCaseBlock();
+            b.startIf().string("childIndex == 0").end().startBlock();
+            b.statement("checkValue(index, childIndex, producesValue)");
+            b.statement("operationPatches[index] = emitBranch(BRANCH_FALSE)");
+            b.end().startElseBlock();
+            b.statement("discardValue(producesValue)");
+            b.end();
+            b.statement("break");
+            b.end();
+            b.startCase().string(OPERATION_IF_THEN_ELSE).end().startCaseBlock();
+            b.startIf().string("childIndex == 0").end().startBlock();
+            b.statement("checkValue(index, childIndex, producesValue)");
+            b.statement("operationPatches[index] = emitBranch(BRANCH_FALSE)");
+            b.end().startElseIf().string("childIndex == 1").end().startBlock();
+            b.statement("discardValue(producesValue)");
+            b.statement("int branchEnd = emitBranch(BRANCH)");
+            b.statement("patchBranch(operationPatches[index])");
+            b.statement("operationPatches[index] = branchEnd");
+            b.end().startElseBlock();
+            b.statement("discardValue(producesValue)");
+            b.end();
+            b.statement("break");
+            b.end();
+            b.startCase().string(OPERATION_WHILE).end().startCaseBlock();
+            b.startIf().string("childIndex == 0").end().startBlock();
+            b.statement("checkValue(index, childIndex, producesValue)");
+            b.statement("operationPatches[index] = emitBranch(BRANCH_FALSE)");
+            b.end().startElseIf().string("childIndex == 1").end().startBlock();
+            b.statement("discardValue(producesValue)");
+            b.statement("emitInstruction(BRANCH, operationData[index])");
+            b.statement("patchBranch(operationPatches[index])");
+            b.end();
+            b.statement("break");
+            b.end();
+            b.caseDefault().startCaseBlock();
+            b.statement("checkValue(index, childIndex, producesValue)");
+            b.statement("break");
+            b.end();
+            b.end();
+
+            b = addHelper(voidType, "checkValue", intParameter("index"), intParameter("childIndex"), new CodeVariableElement(context.getType(boolean.class), "producesValue")).createBuilder();
+            b.startIf().string("!producesValue").end().startBlock();
+            b.startThrow().startNew(illegalState).string("\"Operand \" + childIndex + \" of operation \" + OPERATION_NAMES[operationKinds[index]] + \" does not produce a value.\"").end().end();
+            b.end();
+
+            b = addHelper(voidType, "discardValue", new CodeVariableElement(context.getType(boolean.class), "producesValue")).createBuilder();
+            b.startIf().string("producesValue").end().startBlock();
+            b.statement("emitInstruction(POP)");
+            b.statement("updateStackHeight(-1)");
+            b.end();
+
+            b = addHelper(voidType, "updateStackHeight", intParameter("delta")).createBuilder();
+            b.statement("stackHeight += delta");
+            b.statement("maxStackHeight = Math.max(maxStackHeight, stackHeight)");
+
+            b = addHelper(intType, "emitBranch", new CodeVariableElement(context.getType(short.class), "opcode")).createBuilder();
+            b.statement("emitInstruction(opcode, 0)");
+            b.startIf().string("opcode == BRANCH_FALSE").end().startBlock();
+            b.statement("updateStackHeight(-1)");
+            b.end();
+            b.startReturn().string("bci - 1").end();
+
+            b = addHelper(voidType, "patchBranch", intParameter("operandIndex")).createBuilder();
+            b.startIf().string("bci > 0xFFFF").end().startBlock();
+            b.startThrow().startNew(illegalState).doubleQuote("Bytecode size limit exceeded.").end().end();
+            b.end();
+            b.statement("bc[operandIndex] = (short) bci");
+
+            b = addHelper(voidType, "emitInstruction", new CodeVariableElement(context.getType(short.class), "opcode")).createBuilder();
+            b.startIf().string("bci == bc.length").end().startBlock();
+            b.startStatement().string("bc = ").startStaticCall(context.getType(Arrays.class), "copyOf").string("bc").string("bc.length * 2").end().end();
+            b.end();
+            b.statement("bc[bci++] = opcode");
+
+            b = addHelper(voidType, "emitInstruction", new CodeVariableElement(context.getType(short.class), "opcode"), intParameter("operand")).createBuilder();
+            b.startIf().string("operand < 0 || operand > 0xFFFF").end().startBlock();
+            b.startThrow().startNew(illegalState).doubleQuote("Bytecode operand limit exceeded.").end().end();
+            b.end();
+            b.statement("emitInstruction(opcode)");
+            b.statement("emitInstruction((short) operand)");
+        }
+
+    }
+
+}
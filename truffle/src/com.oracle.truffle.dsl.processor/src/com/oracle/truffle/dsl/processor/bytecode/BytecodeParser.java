@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.dsl.processor.bytecode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+
+import com.oracle.truffle.dsl.processor.java.ElementUtils;
+import com.oracle.truffle.dsl.processor.java.compiler.CompilerFactory;
+import com.oracle.truffle.dsl.processor.model.TypeSystemData;
+import com.oracle.truffle.dsl.processor.parser.AbstractParser;
+
+public class BytecodeParser extends AbstractParser<BytecodeData> {
+
+    /**
+     * Operations that are implemented by every generated bytecode interpreter.
+     */
+    static final List<String> BUILTIN_OPERATIONS = Arrays.asList("Block", "IfThen", "IfThenElse", "While", "Return",
+                    "LoadConstant", "LoadArgument", "LoadLocal", "StoreLocal");
+
+    /**
+     * The state of an operation keeps the active and the excluded specializations in two 16 bit
+     * halves.
+     */
+    static final int MAX_SPECIALIZATIONS = 16;
+
+    @Override
+    public DeclaredType getAnnotationType() {
+        return types.GenerateBytecode;
+    }
+
+    @Override
+    protected BytecodeData parse(Element element, List<AnnotationMirror> mirrors) {
+        if (mirrors.isEmpty()) {
+            return null;
+        }
+        TypeElement type = (TypeElement) element;
+        BytecodeData model = new BytecodeData(type, mirrors.iterator().next());
+
+        if (!ElementUtils.isAssignable(type.asType(), types.RootNode)) {
+            model.addError("Classes annotated with @%s must extend %s.", ElementUtils.getSimpleName(types.GenerateBytecode),
+                            ElementUtils.getQualifiedName(types.RootNode));
+            return model;
+        }
+        if (!type.getModifiers().contains(Modifier.ABSTRACT)) {
+            model.addError("Classes annotated with @%s must be abstract.", ElementUtils.getSimpleName(types.GenerateBytecode));
+            return model;
+        }
+        if (type.getEnclosingElement().getKind() != ElementKind.PACKAGE && !type.getModifiers().contains(Modifier.STATIC)) {
+            model.addError("Inner classes annotated with @%s must be static.", ElementUtils.getSimpleName(types.GenerateBytecode));
+            return model;
+        }
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            model.addError("Classes annotated with @%s must not be private.", ElementUtils.getSimpleName(types.GenerateBytecode));
+            return model;
+        }
+
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || constructor.getParameters().size() != 2) {
+                continue;
+            }
+            TypeMirror languageType = constructor.getParameters().get(0).asType();
+            TypeMirror frameDescriptorType = constructor.getParameters().get(1).asType();
+            if (ElementUtils.typeEquals(context.getEnvironment().getTypeUtils().erasure(languageType), context.getEnvironment().getTypeUtils().erasure(types.TruffleLanguage)) &&
+                            ElementUtils.typeEquals(frameDescriptorType, types.FrameDescriptor)) {
+                model.setConstructor(constructor);
+                break;
+            }
+        }
+        if (model.getConstructor() == null) {
+            model.addError("Classes annotated with @%s must declare a non-private constructor with the parameters (%s<?>, %s).",
+                            ElementUtils.getSimpleName(types.GenerateBytecode),
+                            types.TruffleLanguage.asElement().getSimpleName(),
+                            ElementUtils.getSimpleName(types.FrameDescriptor));
+            return model;
+        }
+
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getSimpleName().toString().equals("execute") && method.getParameters().size() == 1 && !method.getModifiers().contains(Modifier.ABSTRACT)) {
+                model.addError(method, "Classes annotated with @%s must not implement the execute method. It is implemented by the generated bytecode interpreter.",
+                                ElementUtils.getSimpleName(types.GenerateBytecode));
+                return model;
+            }
+        }
+
+        AnnotationMirror typeSystemMirror = ElementUtils.findAnnotationMirror(type, types.TypeSystemReference);
+        if (typeSystemMirror != null) {
+            TypeMirror typeSystemType = ElementUtils.getAnnotationValue(TypeMirror.class, typeSystemMirror, "value");
+            TypeSystemData typeSystem = (TypeSystemData) context.getTemplate(typeSystemType, true);
+            if (typeSystem == null) {
+                model.addError("The used type system '%s' is invalid. Fix errors in the type system first.", ElementUtils.getQualifiedName(typeSystemType));
+                return model;
+            }
+            model.setTypeSystem(typeSystem);
+        } else {
+            model.setTypeSystem(new TypeSystemData(context, type, null, true));
+        }
+
+        List<? extends Element> members = CompilerFactory.getCompiler(type).getEnclosedElementsInDeclarationOrder(type);
+        for (TypeElement operationType : ElementFilter.typesIn(members)) {
+            if (ElementUtils.findAnnotationMirror(operationType, types.GenerateBytecode_Operation) == null) {
+                continue;
+            }
+            model.getOperations().add(parseOperation(model, operationType));
+        }
+
+        if (model.getOperations().isEmpty()) {
+            model.addError("No operations declared. Declare static inner classes annotated with @%s.%s to specify operations.",
+                            ElementUtils.getSimpleName(types.GenerateBytecode), ElementUtils.getSimpleName(types.GenerateBytecode_Operation));
+        }
+        return model;
+    }
+
+    private OperationData parseOperation(BytecodeData model, TypeElement operationType) {
+        OperationData operation = new OperationData(model, operationType);
+        if (!operationType.getModifiers().contains(Modifier.STATIC)) {
+            operation.addError("Operation classes must be static.");
+            return operation;
+        }
+        if (operationType.getModifiers().contains(Modifier.PRIVATE)) {
+            operation.addError("Operation classes must not be private.");
+            return operation;
+        }
+        if (BUILTIN_OPERATIONS.contains(operation.getName())) {
+            operation.addError("The operation name '%s' is reserved for a built-in operation. Rename the operation class.", operation.getName());
+            return operation;
+        }
+
+        List<ExecutableElement> methods = ElementFilter.methodsIn(CompilerFactory.getCompiler(operationType).getEnclosedElementsInDeclarationOrder(operationType));
+        Map<String, OperationSpecialization> specializationNames = new HashMap<>();
+        for (ExecutableElement method : methods) {
+            AnnotationMirror specializationMirror = ElementUtils.findAnnotationMirror(method, types.Specialization);
+            AnnotationMirror fallbackMirror = ElementUtils.findAnnotationMirror(method, types.Fallback);
+            if (specializationMirror == null && fallbackMirror == null) {
+                continue;
+            }
+            OperationSpecialization specialization;
+            if (specializationMirror != null) {
+                specialization = new OperationSpecialization(operation, method, specializationMirror, false);
+                parseSpecializationAttributes(specialization, specializationMirror);
+            } else {
+                specialization = new OperationSpecialization(operation, method, fallbackMirror, true);
+            }
+            parseSignature(operation, specialization);
+
+            if (specializationNames.containsKey(specialization.getName())) {
+                specialization.addError("Specialization method names must be unique within an operation.");
+            }
+            specializationNames.put(specialization.getName(), specialization);
+
+            if (specialization.isFallback()) {
+                if (operation.getFallback() != null) {
+                    specialization.addError("Only one @%s method per operation is allowed.", ElementUtils.getSimpleName(types.Fallback));
+                    continue;
+                }
+                operation.setFallback(specialization);
+            } else {
+                operation.getSpecializations().add(specialization);
+            }
+        }
+
+        if (operation.getSpecializations().isEmpty()) {
+            operation.addError("Operations must declare at least one @%s method.", ElementUtils.getSimpleName(types.Specialization));
+            return operation;
+        }
+
+        List<OperationSpecialization> all = operation.getAllSpecializations();
+        if (all.size() > MAX_SPECIALIZATIONS) {
+            operation.addError("Operations must not declare more than %s specializations including the fallback.", MAX_SPECIALIZATIONS);
+            return operation;
+        }
+        for (int i = 0; i < all.size(); i++) {
+            all.get(i).setIndex(i);
+        }
+
+        for (OperationSpecialization specialization : operation.getSpecializations()) {
+            AnnotationValue replacesValue = ElementUtils.getAnnotationValue(specialization.getMessageAnnotation(), "replaces");
+            for (String replacedName : ElementUtils.getAnnotationValueList(String.class, specialization.getMessageAnnotation(), "replaces")) {
+                OperationSpecialization replaced = specializationNames.get(replacedName);
+                if (replaced == null || replaced.isFallback()) {
+                    specialization.addError(replacesValue, "The referenced specialization '%s' could not be found.", replacedName);
+                } else if (replaced == specialization) {
+                    specialization.addError(replacesValue, "A specialization cannot replace itself.");
+                } else {
+                    specialization.getReplaces().add(replaced);
+                }
+            }
+        }
+        return operation;
+    }
+
+    private void parseSpecializationAttributes(OperationSpecialization specialization, AnnotationMirror mirror) {
+        for (String name : Arrays.asList("guards", "assumptions", "limit", "insertBefore")) {
+            AnnotationValue value = ElementUtils.getAnnotationValue(mirror, name, false);
+            if (value != null) {
+                specialization.addError(value, "The attribute '%s' is not supported for specializations of bytecode operations.", name);
+            }
+        }
+        specialization.getRewriteOn().addAll(ElementUtils.getAnnotationValueList(TypeMirror.class, mirror, "rewriteOn"));
+    }
+
+    private void parseSignature(OperationData operation, OperationSpecialization specialization) {
+        ExecutableElement method = specialization.getMethod();
+        if (!method.getModifiers().contains(Modifier.STATIC)) {
+            specialization.addError("Specializations of bytecode operations must be static.");
+        }
+        if (method.getModifiers().contains(Modifier.PRIVATE)) {
+            specialization.addError("Specializations of bytecode operations must not be private.");
+        }
+        if (!method.getTypeParameters().isEmpty()) {
+            specialization.addError("Specializations of bytecode operations must not declare type parameters.");
+        }
+
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            VariableElement parameter = parameters.get(i);
+            if (isCachedParameter(parameter)) {
+                specialization.addError(parameter, "Cached parameters are not supported for specializations of bytecode operations.");
+                continue;
+            }
+            TypeMirror parameterType = parameter.asType();
+            if (i == 0 && ElementUtils.isAssignable(parameterType, types.Frame)) {
+                if (!ElementUtils.typeEquals(parameterType, types.VirtualFrame) && !ElementUtils.typeEquals(parameterType, types.Frame)) {
+                    specialization.addError(parameter, "Frame parameters must be of type %s.", ElementUtils.getSimpleName(types.VirtualFrame));
+                }
+                specialization.setFrame(true);
+                continue;
+            }
+            if (specialization.isFallback() && !ElementUtils.isObject(parameterType)) {
+                specialization.addError(parameter, "Operands of @%s methods must be of type Object.", ElementUtils.getSimpleName(types.Fallback));
+            }
+            specialization.getOperandTypes().add(parameterType);
+        }
+
+        for (TypeMirror thrownType : method.getThrownTypes()) {
+            if (ElementUtils.isAssignable(thrownType, context.getType(RuntimeException.class)) || ElementUtils.isAssignable(thrownType, context.getType(Error.class))) {
+                continue;
+            }
+            boolean rewritten = false;
+            for (TypeMirror rewriteOn : specialization.getRewriteOn()) {
+                if (ElementUtils.isAssignable(thrownType, rewriteOn)) {
+                    rewritten = true;
+                    break;
+                }
+            }
+            if (!rewritten) {
+                specialization.addError("The checked exception '%s' must be declared in rewriteOn.", ElementUtils.getSimpleName(thrownType));
+            }
+        }
+
+        int operandCount = specialization.getOperandTypes().size();
+        if (operation.getOperandCount() == -1) {
+            operation.setOperandCount(operandCount);
+            operation.setVoid(specialization.isVoid());
+        } else if (operation.getOperandCount() != operandCount) {
+            specialization.addError("All specializations of an operation must declare the same number of operands. Expected %s but was %s.", operation.getOperandCount(), operandCount);
+        } else if (operation.isVoid() != specialization.isVoid()) {
+            specialization.addError("Either all or none of the specializations of an operation must return void.");
+        }
+    }
+
+    private boolean isCachedParameter(VariableElement parameter) {
+        for (DeclaredType cachedType : Arrays.asList(types.Cached, types.CachedLibrary, types.CachedContext, types.CachedLanguage)) {
+            if (ElementUtils.findAnnotationMirror(parameter.getAnnotationMirrors(), cachedType) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.dsl.processor.bytecode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+
+import com.oracle.truffle.dsl.processor.model.MessageContainer;
+
+public final class OperationData extends MessageContainer {
+
+    private final BytecodeData bytecode;
+    private final TypeElement type;
+    private final List<OperationSpecialization> specializations = new ArrayList<>();
+    private OperationSpecialization fallback;
+    private int operandCount = -1;
+    private boolean isVoid;
+
+    public OperationData(BytecodeData bytecode, TypeElement type) {
+        this.bytecode = bytecode;
+        this.type = type;
+    }
+
+    public BytecodeData getBytecode() {
+        return bytecode;
+    }
+
+    public TypeElement getType() {
+        return type;
+    }
+
+    public String getName() {
+        return type.getSimpleName().toString();
+    }
+
+    public List<OperationSpecialization> getSpecializations() {
+        return specializations;
+    }
+
+    /**
+     * Returns the specializations followed by the fallback specialization, if any.
+     */
+    public List<OperationSpecialization> getAllSpecializations() {
+        List<OperationSpecialization> all = new ArrayList<>(specializations);
+        if (fallback != null) {
+            all.add(fallback);
+        }
+        return all;
+    }
+
+    public OperationSpecialization getFallback() {
+        return fallback;
+    }
+
+    public void setFallback(OperationSpecialization fallback) {
+        this.fallback = fallback;
+    }
+
+    public int getOperandCount() {
+        return operandCount;
+    }
+
+    public void setOperandCount(int operandCount) {
+        this.operandCount = operandCount;
+    }
+
+    public boolean isVoid() {
+        return isVoid;
+    }
+
+    public void setVoid(boolean isVoid) {
+        this.isVoid = isVoid;
+    }
+
+    @Override
+    public Element getMessageElement() {
+        return type;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected List<MessageContainer> findChildContainers() {
+        return (List<MessageContainer>) (List<?>) getAllSpecializations();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + getName() + "]";
+    }
+
+}
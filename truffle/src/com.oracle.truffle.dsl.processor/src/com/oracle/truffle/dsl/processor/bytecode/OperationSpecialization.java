@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.dsl.processor.bytecode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+import com.oracle.truffle.dsl.processor.model.MessageContainer;
+
+public final class OperationSpecialization extends MessageContainer {
+
+    private final OperationData operation;
+    private final ExecutableElement method;
+    private final AnnotationMirror annotation;
+    private final boolean fallback;
+    private final List<TypeMirror> operandTypes = new ArrayList<>();
+    private final List<TypeMirror> rewriteOn = new ArrayList<>();
+    private final List<OperationSpecialization> replaces = new ArrayList<>();
+    private boolean frame;
+    private int index;
+
+    public OperationSpecialization(OperationData operation, ExecutableElement method, AnnotationMirror annotation, boolean fallback) {
+        this.operation = operation;
+        this.method = method;
+        this.annotation = annotation;
+        this.fallback = fallback;
+    }
+
+    public OperationData getOperation() {
+        return operation;
+    }
+
+    public ExecutableElement getMethod() {
+        return method;
+    }
+
+    public String getName() {
+        return method.getSimpleName().toString();
+    }
+
+    public boolean isFallback() {
+        return fallback;
+    }
+
+    public List<TypeMirror> getOperandTypes() {
+        return operandTypes;
+    }
+
+    public List<TypeMirror> getRewriteOn() {
+        return rewriteOn;
+    }
+
+    public List<OperationSpecialization> getReplaces() {
+        return replaces;
+    }
+
+    public boolean isFrame() {
+        return frame;
+    }
+
+    public void setFrame(boolean frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * Returns the index of the state bit of this specialization.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public boolean isVoid() {
+        return method.getReturnType().getKind() == TypeKind.VOID;
+    }
+
+    @Override
+    public Element getMessageElement() {
+        return method;
+    }
+
+    @Override
+    public AnnotationMirror getMessageAnnotation() {
+        return annotation;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + operation.getName() + "." + getName() + "]";
+    }
+
+}
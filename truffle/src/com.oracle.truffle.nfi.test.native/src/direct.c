@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+#include <stdint.h>
+
+#include "common.h"
+
+/*
+ * Functions with integer and pointer signatures, which backends that support direct calls call
+ * without going through libffi. The narrow integer types check that arguments and return values
+ * are sign- or zero-extended correctly.
+ */
+
+static int64_t lastStored;
+
+#define GEN_DIRECT_CALL_TEST(name, type) \
+    \
+    EXPORT int64_t direct_widen_##name(type arg) { \
+        return arg; \
+    } \
+    \
+    EXPORT type direct_narrow_##name(int64_t arg) { \
+        return (type) arg; \
+    } \
+    \
+    EXPORT int64_t direct_sum_##name(type arg0, type arg1, type arg2, type arg3, type arg4, type arg5) { \
+        return (int64_t) arg0 + arg1 + arg2 + arg3 + arg4 + arg5; \
+    } \
+    \
+    EXPORT void *direct_offset_##name(void *ptr, type offset) { \
+        return (void *) ((intptr_t) ptr + offset); \
+    } \
+    \
+    EXPORT void direct_store_##name(type arg) { \
+        lastStored = arg; \
+    }
+
+EXPORT int64_t direct_load() {
+    return lastStored;
+}
+
+GEN_DIRECT_CALL_TEST(SINT8, int8_t)
+GEN_DIRECT_CALL_TEST(UINT8, uint8_t)
+GEN_DIRECT_CALL_TEST(SINT16, int16_t)
+GEN_DIRECT_CALL_TEST(UINT16, uint16_t)
+GEN_DIRECT_CALL_TEST(SINT32, int32_t)
+GEN_DIRECT_CALL_TEST(UINT32, uint32_t)
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.nfi.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.frame.VirtualFrame;
+import com.oracle.truffle.api.interop.InteropException;
+import com.oracle.truffle.api.interop.InteropLibrary;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
+import com.oracle.truffle.nfi.spi.types.NativeSimpleType;
+import com.oracle.truffle.nfi.test.interop.NativeVector;
+import com.oracle.truffle.tck.TruffleRunner;
+import com.oracle.truffle.tck.TruffleRunner.Inject;
+
+/**
+ * Tests signatures with integer and pointer arguments and integer, pointer or void return values.
+ * Backends that support direct calls, like the one of native images, call these without going
+ * through libffi, so the arguments and return values have to be sign- or zero-extended by the NFI
+ * itself.
+ */
+@RunWith(Parameterized.class)
+@Parameterized.UseParametersRunnerFactory(TruffleRunner.ParametersFactory.class)
+public class DirectCallNFITest extends NFITest {
+
+    public static final NativeSimpleType[] INTEGER_TYPES = {
+                    NativeSimpleType.SINT8, NativeSimpleType.UINT8,
+                    NativeSimpleType.SINT16, NativeSimpleType.UINT16,
+                    NativeSimpleType.SINT32, NativeSimpleType.UINT32
+    };
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        ArrayList<Object[]> ret = new ArrayList<>();
+        for (NativeSimpleType type : INTEGER_TYPES) {
+            ret.add(new Object[]{type});
+        }
+        return ret;
+    }
+
+    @Parameter(0) public NativeSimpleType type;
+
+    /**
+     * The smallest and the largest value of the type, and values next to the boundaries at which
+     * a wrong extension changes the result.
+     */
+    private long[] values() {
+        switch (type) {
+            case SINT8:
+                return new long[]{Byte.MIN_VALUE, -1, 0, 1, Byte.MAX_VALUE};
+            case UINT8:
+                return new long[]{0, 1, Byte.MAX_VALUE, Byte.MAX_VALUE + 1, 0xFF};
+            case SINT16:
+                return new long[]{Short.MIN_VALUE, -1, 0, 1, Short.MAX_VALUE};
+            case UINT16:
+                return new long[]{0, 1, Short.MAX_VALUE, Short.MAX_VALUE + 1, 0xFFFF};
+            case SINT32:
+                return new long[]{Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE};
+            case UINT32:
+                return new long[]{0, 1, Integer.MAX_VALUE, Integer.MAX_VALUE + 1L, 0xFFFF_FFFFL};
+            default:
+                throw new AssertionError(type.name());
+        }
+    }
+
+    private long mask() {
+        switch (type) {
+            case SINT8:
+            case UINT8:
+                return 0xFFL;
+            case SINT16:
+            case UINT16:
+                return 0xFFFFL;
+            default:
+                return 0xFFFF_FFFFL;
+        }
+    }
+
+    private static long asLong(Object value) {
+        Assert.assertTrue("fitsInLong", UNCACHED_INTEROP.fitsInLong(value));
+        try {
+            return UNCACHED_INTEROP.asLong(value);
+        } catch (UnsupportedMessageException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static long asPointer(Object value) {
+        Assert.assertTrue("isPointer", UNCACHED_INTEROP.isPointer(value));
+        try {
+            return UNCACHED_INTEROP.asPointer(value);
+        } catch (UnsupportedMessageException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    public class TestWidenNode extends SendExecuteNode {
+
+        public TestWidenNode() {
+            super("direct_widen_" + type, String.format("(%s):SINT64", type));
+        }
+    }
+
+    @Test
+    public void testWidenArgument(@Inject(TestWidenNode.class) CallTarget callTarget) {
+        for (long value : values()) {
+            Object ret = callTarget.call(value);
+            Assert.assertEquals("argument " + value, value, asLong(ret));
+        }
+    }
+
+    public class TestNarrowNode extends SendExecuteNode {
+
+        public TestNarrowNode() {
+            super("direct_narrow_" + type, String.format("(SINT64):%s", type));
+        }
+    }
+
+    @Test
+    public void testNarrowReturn(@Inject(TestNarrowNode.class) CallTarget callTarget) {
+        for (long value : values()) {
+            // the bits above the return type must not leak into the return value
+            long arg = (value & mask()) | (0x5A5A_5A5A_5A5A_5A5AL & ~mask());
+            Object ret = callTarget.call(arg);
+            Assert.assertEquals("return value for " + value, value, asLong(ret));
+        }
+    }
+
+    public class TestSumNode extends SendExecuteNode {
+
+        public TestSumNode() {
+            super("direct_sum_" + type, String.format("(%s, %s, %s, %s, %s, %s):SINT64", type, type, type, type, type, type));
+        }
+    }
+
+    @Test
+    public void testSixArguments(@Inject(TestSumNode.class) CallTarget callTarget) {
+        long[] values = values();
+        Object ret = callTarget.call(values[0], values[4], values[1], values[3], values[2], values[4]);
+        Assert.assertEquals(values[0] + values[4] + values[1] + values[3] + values[2] + values[4], asLong(ret));
+    }
+
+    public class TestOffsetNode extends SendExecuteNode {
+
+        public TestOffsetNode() {
+            super("direct_offset_" + type, String.format("(POINTER, %s):POINTER", type));
+        }
+    }
+
+    @Test
+    public void testPointerReturn(@Inject(TestOffsetNode.class) CallTarget callTarget) {
+        try (NativeVector vector = new NativeVector(new double[1])) {
+            vector.toNative();
+            long base = asPointer(vector);
+            for (long value : values()) {
+                Object ret = callTarget.call(vector, value);
+                Assert.assertEquals("offset " + value, base + value, asPointer(ret));
+            }
+        }
+    }
+
+    public class TestStoreNode extends NFITestRootNode {
+
+        final TruffleObject store = lookupAndBind("direct_store_" + type, String.format("(%s):VOID", type));
+        final TruffleObject load = lookupAndBind("direct_load", "():SINT64");
+
+        @Child InteropLibrary storeInterop = getInterop(store);
+        @Child InteropLibrary loadInterop = getInterop(load);
+        @Child InteropLibrary retInterop = getInterop();
+
+        @Override
+        public Object executeTest(VirtualFrame frame) throws InteropException {
+            Object ret = storeInterop.execute(store, frame.getArguments()[0]);
+            assertEquals(true, retInterop.isNull(ret));
+            return loadInterop.execute(load);
+        }
+    }
+
+    @Test
+    public void testVoidReturn(@Inject(TestStoreNode.class) CallTarget callTarget) {
+        for (long value : values()) {
+            Object ret = callTarget.call(value);
+            Assert.assertEquals("stored " + value, value, asLong(ret));
+        }
+    }
+}
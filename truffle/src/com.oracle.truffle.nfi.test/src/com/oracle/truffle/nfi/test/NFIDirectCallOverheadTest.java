@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.nfi.test;
+
+import java.util.Locale;
+
+import org.graalvm.nativeimage.ImageInfo;
+import org.graalvm.nativeimage.RuntimeOptions;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.Truffle;
+import com.oracle.truffle.api.interop.TruffleObject;
+import com.oracle.truffle.api.interop.UnsupportedMessageException;
+
+/**
+ * Compares the overhead of calling a trivial native function directly and through libffi, with the
+ * signatures of {@link NFICallBenchmark}. The libffi based backend on HotSpot never calls directly,
+ * so this only runs in a native image, where the {@code TruffleNFIDirectCalls} option decides
+ * which path a signature uses when it is bound. The floating point signature always goes through
+ * libffi, so its two numbers should match.
+ */
+public class NFIDirectCallOverheadTest extends NFITest {
+
+    private static final String DIRECT_CALLS_OPTION = "TruffleNFIDirectCalls";
+    private static final String[] TYPES = {"SINT32", "SINT64", "POINTER", "DOUBLE"};
+
+    private static final int WARMUP_CALLS = 200_000;
+    private static final int MEASURED_CALLS = 1_000_000;
+
+    private static CallTarget bind(String type, boolean directCalls) {
+        Boolean previous = RuntimeOptions.get(DIRECT_CALLS_OPTION);
+        RuntimeOptions.set(DIRECT_CALLS_OPTION, directCalls);
+        try {
+            String nfiType = type.toLowerCase(Locale.ROOT);
+            TruffleObject function = lookupAndBind("increment_" + type, "(" + nfiType + "):" + nfiType);
+            return Truffle.getRuntime().createCallTarget(new SendExecuteNode(function));
+        } finally {
+            RuntimeOptions.set(DIRECT_CALLS_OPTION, previous);
+        }
+    }
+
+    private static long asLong(Object value) throws UnsupportedMessageException {
+        return UNCACHED_INTEROP.isPointer(value) ? UNCACHED_INTEROP.asPointer(value) : UNCACHED_INTEROP.asLong(value);
+    }
+
+    private static double measure(String type, CallTarget target) throws UnsupportedMessageException {
+        Object argument = "DOUBLE".equals(type) ? (Object) 41.0 : (Object) 41L;
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            target.call(argument);
+        }
+        Object result = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            result = target.call(argument);
+        }
+        long elapsed = System.nanoTime() - start;
+        Assert.assertEquals(type, 42L, asLong(result));
+        return (double) elapsed / MEASURED_CALLS;
+    }
+
+    @Test
+    public void compareDirectAndLibFFICalls() throws UnsupportedMessageException {
+        Assume.assumeTrue("direct calls are only supported in a native image", ImageInfo.inImageRuntimeCode());
+        System.out.println("NFI call overhead (ns/call):");
+        System.out.println(String.format(Locale.ROOT, "  %-8s %10s %10s", "type", "direct", "libffi"));
+        for (String type : TYPES) {
+            double direct = measure(type, bind(type, true));
+            double libffi = measure(type, bind(type, false));
+            System.out.println(String.format(Locale.ROOT, "  %-8s %10.1f %10.1f", type, direct, libffi));
+        }
+    }
+}
@@ -41,6 +41,7 @@
 package com.oracle.truffle.nfi.impl;
 
 import com.oracle.truffle.api.CompilerAsserts;
+import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.nfi.impl.LibFFIType.Direction;
 import com.oracle.truffle.nfi.impl.NativeAllocation.FreeDestructor;
@@ -51,6 +52,12 @@ import java.util.List;
 
 final class LibFFISignature {
 
+    /**
+     * Maximum number of arguments of a direct native call. All of them have to fit in argument
+     * registers on every supported platform.
+     */
+    static final int MAX_DIRECT_CALL_ARGS = 6;
+
     public static LibFFISignature create(NFIContext context, NativeSignature signature) {
         LibFFISignature ret = new LibFFISignature(context, signature);
         NativeAllocation.getGlobalQueue().registerNativeAllocation(ret, new FreeDestructor(ret.cif));
@@ -65,6 +72,13 @@ final class LibFFISignature {
 
     private final int realArgCount;
 
+    /*
+     * Offsets of the arguments in the primitive argument buffer if this signature can be called
+     * without going through libffi (see isDirectCallable), null otherwise. Only backends that
+     * support direct calls create direct-callable signatures.
+     */
+    @CompilationFinal(dimensions = 1) private final int[] directArgOffsets;
+
     private final long cif;
 
     private final Direction allowedCallDirection;
@@ -135,11 +149,17 @@ final class LibFFISignature {
         int objCount = 0;
         int argCount = 0;
 
-        for (LibFFIType type : this.argTypes) {
+        boolean directCallable = context.supportsDirectCalls() && !signature.isVarargs() && argTypes.length <= MAX_DIRECT_CALL_ARGS && isDirectCallReturn(retType);
+        int[] argOffsets = new int[argTypes.length];
+
+        for (int i = 0; i < argTypes.length; i++) {
+            LibFFIType type = argTypes[i];
             int align = type.alignment;
             if (primSize % align != 0) {
                 primSize += align - (primSize % align);
             }
+            argOffsets[i] = primSize;
+            directCallable &= type instanceof LibFFIType.SimpleType && ((LibFFIType.SimpleType) type).isDirectCallArgument();
             primSize += type.size;
             objCount += type.objectCount;
             if (!type.injectedArgument) {
@@ -150,6 +170,28 @@ final class LibFFISignature {
         this.primitiveSize = primSize;
         this.objectCount = objCount;
         this.realArgCount = argCount;
+        this.directArgOffsets = directCallable ? argOffsets : null;
+    }
+
+    private static boolean isDirectCallReturn(LibFFIType type) {
+        if (type instanceof LibFFIType.VoidType) {
+            return true;
+        } else if (type instanceof LibFFIType.SimpleType) {
+            return ((LibFFIType.SimpleType) type).isDirectCallArgument();
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * A signature is direct-callable if the backend supports direct calls (see
+     * {@link NFIContext#supportsDirectCalls()}), and the signature has a fixed number of at most
+     * {@link #MAX_DIRECT_CALL_ARGS} integer or pointer arguments and returns an integer, a pointer
+     * or void. Such a signature is called with a plain C function call instead of through
+     * {@code ffi_call}.
+     */
+    boolean isDirectCallable() {
+        return directArgOffsets != null;
     }
 
     public NativeArgumentBuffer.Array prepareBuffer() {
@@ -174,7 +216,14 @@ final class LibFFISignature {
 
     public Object execute(NFIContext ctx, long functionPointer, NativeArgumentBuffer.Array argBuffer) {
         CompilerAsserts.partialEvaluationConstant(retType);
-        if (retType instanceof LibFFIType.ObjectType) {
+        if (isDirectCallable()) {
+            long ret = executeDirect(ctx, functionPointer, argBuffer);
+            if (retType instanceof LibFFIType.SimpleType) {
+                return ((LibFFIType.SimpleType) retType).fromPrimitive(ret);
+            } else {
+                return NativePointer.create(ctx.language, 0);
+            }
+        } else if (retType instanceof LibFFIType.ObjectType) {
             Object ret = ctx.executeObject(cif, functionPointer, argBuffer.prim, argBuffer.getPatchCount(), argBuffer.patches, argBuffer.objects);
             if (ret == null) {
                 return NativePointer.create(ctx.language, 0);
@@ -191,4 +240,32 @@ final class LibFFISignature {
             return retType.deserializeRet(retBuffer, ctx.language);
         }
     }
+
+    private long executeDirect(NFIContext ctx, long functionPointer, NativeArgumentBuffer.Array argBuffer) {
+        switch (directArgOffsets.length) {
+            case 0:
+                return ctx.executeDirect(functionPointer);
+            case 1:
+                return ctx.executeDirect(functionPointer, loadDirectArg(argBuffer, 0));
+            case 2:
+                return ctx.executeDirect(functionPointer, loadDirectArg(argBuffer, 0), loadDirectArg(argBuffer, 1));
+            case 3:
+                return ctx.executeDirect(functionPointer, loadDirectArg(argBuffer, 0), loadDirectArg(argBuffer, 1), loadDirectArg(argBuffer, 2));
+            case 4:
+                return ctx.executeDirect(functionPointer, loadDirectArg(argBuffer, 0), loadDirectArg(argBuffer, 1), loadDirectArg(argBuffer, 2), loadDirectArg(argBuffer, 3));
+            case 5:
+                return ctx.executeDirect(functionPointer, loadDirectArg(argBuffer, 0), loadDirectArg(argBuffer, 1), loadDirectArg(argBuffer, 2), loadDirectArg(argBuffer, 3),
+                                loadDirectArg(argBuffer, 4));
+            case 6:
+                return ctx.executeDirect(functionPointer, loadDirectArg(argBuffer, 0), loadDirectArg(argBuffer, 1), loadDirectArg(argBuffer, 2), loadDirectArg(argBuffer, 3),
+                                loadDirectArg(argBuffer, 4), loadDirectArg(argBuffer, 5));
+            default:
+                CompilerDirectives.transferToInterpreter();
+                throw new AssertionError("too many arguments for a direct call: " + directArgOffsets.length);
+        }
+    }
+
+    private long loadDirectArg(NativeArgumentBuffer.Array argBuffer, int index) {
+        return ((LibFFIType.SimpleType) argTypes[index]).loadDirectArgument(argBuffer, directArgOffsets[index]);
+    }
 }
@@ -299,6 +299,56 @@ abstract class LibFFIType {
             }
         }
 
+        /**
+         * Integer and pointer arguments are passed in general purpose registers, so they can be
+         * passed to a direct native call as a zero- or sign-extended {@code long}.
+         */
+        boolean isDirectCallArgument() {
+            switch (simpleType) {
+                case UINT8:
+                case SINT8:
+                case UINT16:
+                case SINT16:
+                case UINT32:
+                case SINT32:
+                case UINT64:
+                case SINT64:
+                case POINTER:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        long loadDirectArgument(NativeArgumentBuffer buffer, int offset) {
+            switch (simpleType) {
+                case UINT8:
+                    return buffer.getInt8(offset) & 0xFFL;
+                case SINT8:
+                    return buffer.getInt8(offset);
+                case UINT16:
+                    return buffer.getInt16(offset) & 0xFFFFL;
+                case SINT16:
+                    return buffer.getInt16(offset);
+                case UINT32:
+                    return buffer.getInt32(offset) & 0xFFFF_FFFFL;
+                case SINT32:
+                    return buffer.getInt32(offset);
+                case UINT64:
+                case SINT64:
+                    return buffer.getInt64(offset);
+                case POINTER:
+                    if (size == 4) {
+                        return buffer.getInt32(offset) & 0xFFFF_FFFFL;
+                    } else {
+                        return buffer.getInt64(offset);
+                    }
+                default:
+                    CompilerDirectives.transferToInterpreter();
+                    throw new AssertionError(simpleType.name());
+            }
+        }
+
         @Override
         public ClosureArgumentNode createClosureArgumentNode() {
             return new BufferClosureArgumentNode(this);
@@ -44,6 +44,7 @@ import java.util.HashMap;
 import java.util.function.Supplier;
 
 import com.oracle.truffle.api.CallTarget;
+import com.oracle.truffle.api.CompilerDirectives;
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.TruffleLanguage.Env;
@@ -294,6 +295,58 @@ class NFIContext {
         return executeObject(nativeContext, cif, functionPointer, primArgs, patchCount, patchOffsets, objArgs);
     }
 
+    /**
+     * Whether this backend can call functions with a
+     * {@linkplain LibFFISignature#isDirectCallable() direct-callable} signature using the
+     * {@code executeDirect} methods. The libffi based backend always uses {@code ffi_call}, so it
+     * never creates direct-callable signatures and the {@code executeDirect} methods are
+     * unreachable.
+     */
+    @SuppressWarnings("static-method")
+    boolean supportsDirectCalls() {
+        return false;
+    }
+
+    @SuppressWarnings({"static-method", "unused"})
+    long executeDirect(long functionPointer) {
+        throw directCallsNotSupported();
+    }
+
+    @SuppressWarnings({"static-method", "unused"})
+    long executeDirect(long functionPointer, long arg0) {
+        throw directCallsNotSupported();
+    }
+
+    @SuppressWarnings({"static-method", "unused"})
+    long executeDirect(long functionPointer, long arg0, long arg1) {
+        throw directCallsNotSupported();
+    }
+
+    @SuppressWarnings({"static-method", "unused"})
+    long executeDirect(long functionPointer, long arg0, long arg1, long arg2) {
+        throw directCallsNotSupported();
+    }
+
+    @SuppressWarnings({"static-method", "unused"})
+    long executeDirect(long functionPointer, long arg0, long arg1, long arg2, long arg3) {
+        throw directCallsNotSupported();
+    }
+
+    @SuppressWarnings({"static-method", "unused"})
+    long executeDirect(long functionPointer, long arg0, long arg1, long arg2, long arg3, long arg4) {
+        throw directCallsNotSupported();
+    }
+
+    @SuppressWarnings({"static-method", "unused"})
+    long executeDirect(long functionPointer, long arg0, long arg1, long arg2, long arg3, long arg4, long arg5) {
+        throw directCallsNotSupported();
+    }
+
+    private static AssertionError directCallsNotSupported() {
+        CompilerDirectives.transferToInterpreter();
+        return new AssertionError("should not reach here: direct native calls are not supported");
+    }
+
     @TruffleBoundary
     private static native void executeNative(long nativeContext, long cif, long functionPointer, byte[] primArgs, int patchCount, int[] patchOffsets, Object[] objArgs, byte[] ret);
 
@@ -178,6 +178,22 @@ abstract class NativeArgumentBuffer {
         getPrimBuffer().putLong(l);
     }
 
+    public byte getInt8(int offset) {
+        return getPrimBuffer().get(offset);
+    }
+
+    public short getInt16(int offset) {
+        return getPrimBuffer().getShort(offset);
+    }
+
+    public int getInt32(int offset) {
+        return getPrimBuffer().getInt(offset);
+    }
+
+    public long getInt64(int offset) {
+        return getPrimBuffer().getLong(offset);
+    }
+
     public float getFloat() {
         return getPrimBuffer().getFloat();
     }
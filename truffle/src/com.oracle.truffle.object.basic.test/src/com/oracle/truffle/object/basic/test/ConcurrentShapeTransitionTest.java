@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.object.basic.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.truffle.api.object.Layout;
+import com.oracle.truffle.api.object.ObjectType;
+import com.oracle.truffle.api.object.Shape;
+import com.oracle.truffle.object.basic.DefaultLayoutFactory;
+
+public class ConcurrentShapeTransitionTest {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 200;
+    private static final int SHARED_KEYS = 8;
+
+    private final Layout layout = new DefaultLayoutFactory().createLayout(Layout.newLayout());
+
+    /**
+     * Threads that add the same keys to the same shapes in parallel must agree on one successor
+     * per key, while threads that add different keys to the same shape must each get their own
+     * successor, which all remain reachable from the shared parent.
+     */
+    @Test
+    public void testOneSuccessorPerKey() throws Throwable {
+        for (int round = 0; round < ROUNDS; round++) {
+            Shape rootShape = layout.createShape(new ObjectType());
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            Shape[][] sharedChains = new Shape[THREADS][];
+            Shape[][] ownSuccessors = new Shape[THREADS][];
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int threadIndex = t;
+                Thread thread = new Thread(() -> {
+                    try {
+                        barrier.await();
+                        Shape[] chain = new Shape[SHARED_KEYS];
+                        Shape[] own = new Shape[SHARED_KEYS];
+                        Shape shape = rootShape;
+                        for (int k = 0; k < SHARED_KEYS; k++) {
+                            // a key only this thread adds, branching off the shared chain
+                            own[k] = shape.defineProperty("t" + threadIndex + "_" + k, k, 0);
+                            shape = shape.defineProperty("k" + k, k, 0);
+                            chain[k] = shape;
+                        }
+                        sharedChains[threadIndex] = chain;
+                        ownSuccessors[threadIndex] = own;
+                    } catch (InterruptedException | BrokenBarrierException | RuntimeException | AssertionError e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+
+            Shape parent = rootShape;
+            for (int k = 0; k < SHARED_KEYS; k++) {
+                Shape canonical = parent.defineProperty("k" + k, k, 0);
+                for (int t = 0; t < THREADS; t++) {
+                    Assert.assertSame("successor for k" + k, canonical, sharedChains[t][k]);
+                    Assert.assertSame("successor for t" + t + "_" + k, ownSuccessors[t][k], parent.defineProperty("t" + t + "_" + k, k, 0));
+                    Assert.assertSame(parent, ownSuccessors[t][k].getParent());
+                }
+                parent = canonical;
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2020, 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.object.basic.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.oracle.truffle.api.Assumption;
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.HiddenKey;
+import com.oracle.truffle.api.object.Layout;
+import com.oracle.truffle.api.object.ObjectType;
+import com.oracle.truffle.api.object.Shape;
+import com.oracle.truffle.object.BasicLayout;
+import com.oracle.truffle.object.ShapeImpl;
+
+@SuppressWarnings("deprecation")
+public class DictionaryModeTest {
+
+    private static final int THRESHOLD = 8;
+
+    private final Layout layout = BasicLayout.createLayoutImpl(Layout.newLayout(), THRESHOLD);
+    private final Shape rootShape = layout.createShape(new ObjectType());
+
+    private DynamicObject newObject(int propertyCount) {
+        DynamicObject object = layout.newInstance(rootShape);
+        for (int i = 0; i < propertyCount; i++) {
+            object.define("p" + i, i);
+        }
+        return object;
+    }
+
+    private static boolean isDictionary(DynamicObject object) {
+        return ((ShapeImpl) object.getShape()).isDictionary();
+    }
+
+    private static void assertValues(DynamicObject object, int propertyCount) {
+        assertEquals(propertyCount, object.getShape().getPropertyCount());
+        for (int i = 0; i < propertyCount; i++) {
+            assertEquals(i, object.get("p" + i));
+        }
+    }
+
+    @Test
+    public void testThresholdCrossing() {
+        DynamicObject object = newObject(THRESHOLD);
+        assertFalse(isDictionary(object));
+        assertValues(object, THRESHOLD);
+
+        object.define("p" + THRESHOLD, THRESHOLD);
+        assertTrue(isDictionary(object));
+        assertValues(object, THRESHOLD + 1);
+
+        for (int i = THRESHOLD + 1; i < 4 * THRESHOLD; i++) {
+            object.define("p" + i, i);
+        }
+        assertTrue(isDictionary(object));
+        assertValues(object, 4 * THRESHOLD);
+        assertEquals(4 * THRESHOLD, object.getShape().getKeyList().size());
+
+        // objects below the threshold keep sharing their shapes
+        assertSame(newObject(THRESHOLD).getShape(), newObject(THRESHOLD).getShape());
+        assertNotSame(newObject(THRESHOLD + 1).getShape(), newObject(THRESHOLD + 1).getShape());
+    }
+
+    @Test
+    public void testAddRemoveReplace() {
+        DynamicObject object = newObject(2 * THRESHOLD);
+        Shape shape = object.getShape();
+        Assumption validAssumption = shape.getValidAssumption();
+
+        object.define("added", "value");
+        Shape addedShape = object.getShape();
+        assertNotSame(shape, addedShape);
+        assertTrue(isDictionary(object));
+        assertTrue(validAssumption.isValid());
+        assertEquals("value", object.get("added"));
+        assertEquals(2 * THRESHOLD + 1, addedShape.getPropertyCount());
+
+        assertTrue(object.set("added", 42));
+        assertSame(addedShape, object.getShape());
+        assertEquals(42, object.get("added"));
+        assertTrue(object.set("p0", "p0"));
+        assertEquals("p0", object.get("p0"));
+
+        object.define("p1", 1, 3);
+        Shape replacedShape = object.getShape();
+        assertNotSame(addedShape, replacedShape);
+        assertEquals(3, replacedShape.getProperty("p1").getFlags());
+        assertEquals(0, addedShape.getProperty("p1").getFlags());
+        assertEquals(1, object.get("p1"));
+
+        assertTrue(object.delete("p2"));
+        Shape removedShape = object.getShape();
+        assertNotSame(replacedShape, removedShape);
+        assertFalse(object.containsKey("p2"));
+        assertNull(object.get("p2"));
+        assertFalse(object.set("p2", 2));
+        assertEquals(2 * THRESHOLD, removedShape.getPropertyCount());
+
+        object.define("p2", "again");
+        assertEquals("again", object.get("p2"));
+        for (int i = 3; i < 2 * THRESHOLD; i++) {
+            assertEquals(i, object.get("p" + i));
+        }
+    }
+
+    @Test
+    public void testShapesAreImmutable() {
+        DynamicObject object = newObject(2 * THRESHOLD);
+        Shape shape = object.getShape();
+        List<Object> keys = shape.getKeyList();
+
+        object.define("added", "value");
+        assertTrue(object.delete("p0"));
+        object.define("p1", 1, 3);
+
+        // the previous shape still describes the properties the object had
+        assertTrue(shape.isValid());
+        assertEquals(2 * THRESHOLD, shape.getPropertyCount());
+        assertEquals(keys, shape.getKeyList());
+        assertFalse(shape.hasProperty("added"));
+        assertTrue(shape.hasProperty("p0"));
+        assertEquals(0, shape.getProperty("p1").getFlags());
+
+        // a cache that guards on shape identity only stays correct
+        Map<Shape, List<Object>> membersCache = new HashMap<>();
+        for (int i = 0; i < 4 * THRESHOLD; i++) {
+            Shape current = object.getShape();
+            List<Object> cachedKeys = membersCache.computeIfAbsent(current, Shape::getKeyList);
+            assertEquals(current.getKeyList(), cachedKeys);
+            assertEquals(object.getShape().getPropertyCount(), cachedKeys.size());
+            object.define("k" + i, i);
+            assertFalse(membersCache.get(current).contains("k" + i));
+        }
+    }
+
+    @Test
+    public void testShapeTreeDoesNotGrow() {
+        DynamicObject object = newObject(THRESHOLD + 1);
+        ShapeImpl first = (ShapeImpl) object.getShape();
+        for (int i = THRESHOLD + 1; i < 64 * THRESHOLD; i++) {
+            object.define("p" + i, i);
+        }
+        ShapeImpl last = (ShapeImpl) object.getShape();
+        assertSame(first.getParent(), last.getParent());
+        assertEquals(first.getDepth(), last.getDepth());
+        assertValues(object, 64 * THRESHOLD);
+    }
+
+    @Test
+    public void testCopy() {
+        DynamicObject object = newObject(2 * THRESHOLD);
+        DynamicObject copy = object.copy(object.getShape());
+        assertTrue(isDictionary(copy));
+        assertSame(object.getShape(), copy.getShape());
+        assertValues(copy, 2 * THRESHOLD);
+
+        copy.define("p0", "copy");
+        copy.define("onlyInCopy", 1);
+        assertTrue(copy.delete("p1"));
+        object.define("onlyInOriginal", 2);
+
+        assertEquals(0, object.get("p0"));
+        assertEquals(1, object.get("p1"));
+        assertFalse(object.containsKey("onlyInCopy"));
+        assertEquals(2, object.get("onlyInOriginal"));
+
+        assertEquals("copy", copy.get("p0"));
+        assertFalse(copy.containsKey("p1"));
+        assertEquals(1, copy.get("onlyInCopy"));
+        assertFalse(copy.containsKey("onlyInOriginal"));
+    }
+
+    @Test
+    public void testHiddenKeys() {
+        HiddenKey before = new HiddenKey("before");
+        HiddenKey after = new HiddenKey("after");
+        DynamicObject object = layout.newInstance(rootShape);
+        object.define(before, "hidden before");
+        for (int i = 0; i < 2 * THRESHOLD; i++) {
+            object.define("p" + i, i);
+        }
+        assertTrue(isDictionary(object));
+        assertEquals("hidden before", object.get(before));
+        assertValues(object, 2 * THRESHOLD);
+
+        object.define(after, 1.5);
+        assertTrue(isDictionary(object));
+        assertEquals(1.5, object.get(after));
+        assertEquals("hidden before", object.get(before));
+        assertTrue(object.set(before, "changed"));
+        assertEquals("changed", object.get(before));
+        assertValues(object, 2 * THRESHOLD);
+        assertFalse(object.getShape().getKeyList().contains(before));
+        assertFalse(object.getShape().getKeyList().contains(after));
+
+        DynamicObject copy = object.copy(object.getShape());
+        assertEquals("changed", copy.get(before));
+        assertEquals(1.5, copy.get(after));
+
+        assertTrue(object.delete(before));
+        assertFalse(object.containsKey(before));
+        assertEquals(1.5, object.get(after));
+        assertValues(object, 2 * THRESHOLD);
+        object.define("more", "value");
+        assertEquals("value", object.get("more"));
+        assertEquals(1.5, object.get(after));
+
+        assertEquals("changed", copy.get(before));
+        assertValues(copy, 2 * THRESHOLD);
+    }
+}
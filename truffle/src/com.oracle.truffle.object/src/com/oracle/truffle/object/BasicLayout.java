@@ -47,12 +47,20 @@ import com.oracle.truffle.api.object.Layout;
 import com.oracle.truffle.api.object.Shape;
 
 public class BasicLayout extends DefaultLayout {
-    BasicLayout(EnumSet<ImplicitCast> allowedImplicitCasts, Class<? extends DynamicObject> dynamicObjectClass, LayoutStrategy strategy) {
-        super(allowedImplicitCasts, dynamicObjectClass, strategy);
+    BasicLayout(EnumSet<ImplicitCast> allowedImplicitCasts, Class<? extends DynamicObject> dynamicObjectClass, LayoutStrategy strategy, int dictionaryThreshold) {
+        super(allowedImplicitCasts, dynamicObjectClass, strategy, dictionaryThreshold);
     }
 
     public static LayoutImpl createLayoutImpl(Layout.Builder builder) {
-        return new BasicLayout(getAllowedImplicitCasts(builder), DynamicObjectBasic.class, DefaultStrategy.SINGLETON);
+        return createLayoutImpl(builder, ObjectStorageOptions.DictionaryThreshold);
+    }
+
+    /**
+     * Creates a layout whose objects switch to dictionary mode above the given number of
+     * properties, regardless of the {@code DictionaryThreshold} option.
+     */
+    public static LayoutImpl createLayoutImpl(Layout.Builder builder, int dictionaryThreshold) {
+        return new BasicLayout(getAllowedImplicitCasts(builder), DynamicObjectBasic.class, DefaultStrategy.SINGLETON, dictionaryThreshold);
     }
 
     @Override
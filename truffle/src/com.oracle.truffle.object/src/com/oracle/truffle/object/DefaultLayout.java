@@ -55,8 +55,8 @@ class DefaultLayout extends LayoutImpl {
     private final CoreLocation objectArrayLocation;
     private final CoreLocation primitiveArrayLocation;
 
-    DefaultLayout(EnumSet<ImplicitCast> allowedImplicitCasts, Class<? extends DynamicObject> dynamicObjectClass, LayoutStrategy strategy) {
-        super(allowedImplicitCasts, dynamicObjectClass, strategy);
+    DefaultLayout(EnumSet<ImplicitCast> allowedImplicitCasts, Class<? extends DynamicObject> dynamicObjectClass, LayoutStrategy strategy, int dictionaryThreshold) {
+        super(allowedImplicitCasts, dynamicObjectClass, strategy, dictionaryThreshold);
         assert dynamicObjectClass == DynamicObjectBasic.class;
         this.objectFields = DynamicObjectBasic.OBJECT_FIELD_LOCATIONS;
         this.primitiveFields = DynamicObjectBasic.PRIMITIVE_FIELD_LOCATIONS;
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.oracle.truffle.object;
+
+import java.util.Objects;
+
+import org.graalvm.collections.EconomicMap;
+
+import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
+import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.HiddenKey;
+import com.oracle.truffle.api.object.Location;
+import com.oracle.truffle.api.object.Property;
+
+/**
+ * Location of a property of an object in dictionary mode. The value is stored in a hash table that
+ * is itself stored in the hidden {@link #STORAGE_KEY} property of the object, so adding a property
+ * to the dictionary does not require any additional object storage.
+ *
+ * @see ShapeImpl#isDictionary()
+ */
+final class DictionaryLocation extends LocationImpl {
+
+    static final HiddenKey STORAGE_KEY = new HiddenKey("dictionary");
+
+    private final Object key;
+    private final Location storageLocation;
+
+    DictionaryLocation(Object key, Location storageLocation) {
+        this.key = key;
+        this.storageLocation = storageLocation;
+    }
+
+    @SuppressWarnings("unchecked")
+    private EconomicMap<Object, Object> getStorage(DynamicObject store) {
+        return (EconomicMap<Object, Object>) storageLocation.get(store, false);
+    }
+
+    /**
+     * Returns the hash table of an object in dictionary mode, without looking up any property.
+     */
+    @SuppressWarnings("unchecked")
+    static EconomicMap<Object, Object> getStorage(DynamicObject store, ShapeImpl shape) {
+        return (EconomicMap<Object, Object>) shape.getDictionaryStorageLocation().get(store, shape);
+    }
+
+    @TruffleBoundary
+    @Override
+    public Object get(DynamicObject store, boolean condition) {
+        return getStorage(store).get(key);
+    }
+
+    @TruffleBoundary
+    @Override
+    protected void setInternal(DynamicObject store, Object value) {
+        getStorage(store).put(key, value);
+    }
+
+    @TruffleBoundary
+    void remove(DynamicObject store) {
+        getStorage(store).removeKey(key);
+    }
+
+    @Override
+    public void accept(LocationVisitor locationVisitor) {
+        // no slots of its own, the storage is accounted for by the storage property
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, storageLocation);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!super.equals(obj)) {
+            return false;
+        }
+        DictionaryLocation other = (DictionaryLocation) obj;
+        return key.equals(other.key) && storageLocation.equals(other.storageLocation);
+    }
+
+    @Override
+    protected String getWhereString() {
+        return "[dictionary]";
+    }
+
+    /**
+     * Replaces the hash table of a copied dictionary mode object with a copy, so that the copy and
+     * the original do not share property values.
+     */
+    @TruffleBoundary
+    static void copyStorage(DynamicObject copy, ShapeImpl shape) {
+        assert shape.isDictionary();
+        Property storageProperty = shape.getProperty(STORAGE_KEY);
+        storageProperty.setInternal(copy, EconomicMap.create(getStorage(copy, shape)));
+    }
+}
@@ -220,6 +220,9 @@ public class DynamicObjectBasic extends DynamicObjectImpl {
         if (((ShapeImpl) currentShape).hasPrimitiveArray() && this.getPrimitiveStore(currentShape) != null) {
             clone.setPrimitiveStore(this.getPrimitiveStore(currentShape).clone(), currentShape);
         }
+        if (((ShapeImpl) currentShape).isDictionary()) {
+            clone.initDictionaryCopy((ShapeImpl) currentShape);
+        }
         return clone;
     }
 
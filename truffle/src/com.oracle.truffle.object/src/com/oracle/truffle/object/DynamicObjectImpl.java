@@ -42,6 +42,8 @@ package com.oracle.truffle.object;
 
 import java.util.Iterator;
 
+import org.graalvm.collections.EconomicMap;
+
 import com.oracle.truffle.api.CompilerDirectives.TruffleBoundary;
 import com.oracle.truffle.api.object.DynamicObject;
 import com.oracle.truffle.api.object.LocationFactory;
@@ -181,6 +183,14 @@ public abstract class DynamicObjectImpl extends DynamicObject implements Cloneab
     /** @since 0.17 or earlier */
     protected abstract DynamicObject cloneWithShape(Shape currentShape);
 
+    /**
+     * Gives a copy of an object in dictionary mode its own hash table, since the hash table is
+     * changed in place when properties are added or removed.
+     */
+    final void initDictionaryCopy(ShapeImpl shape) {
+        DictionaryLocation.copyStorage(this, shape);
+    }
+
     /** @since 0.17 or earlier */
     protected abstract void reshape(ShapeImpl newShape);
 
@@ -260,7 +270,14 @@ public abstract class DynamicObjectImpl extends DynamicObject implements Cloneab
     @Override
     @TruffleBoundary
     public Object get(Object key, Object defaultValue) {
-        Property existing = getShape().getProperty(key);
+        ShapeImpl shape = getShapeImpl();
+        if (shape.isDictionary()) {
+            EconomicMap<Object, Object> storage = DictionaryLocation.getStorage(this, shape);
+            if (storage.containsKey(key)) {
+                return storage.get(key);
+            }
+        }
+        Property existing = shape.getProperty(key);
         if (existing != null) {
             return existing.get(this, false);
         } else {
@@ -272,7 +289,15 @@ public abstract class DynamicObjectImpl extends DynamicObject implements Cloneab
     @Override
     @TruffleBoundary
     public boolean set(Object key, Object value) {
-        Property existing = getShape().getProperty(key);
+        ShapeImpl shape = getShapeImpl();
+        if (shape.isDictionary()) {
+            EconomicMap<Object, Object> storage = DictionaryLocation.getStorage(this, shape);
+            if (storage.containsKey(key)) {
+                storage.put(key, value);
+                return true;
+            }
+        }
+        Property existing = shape.getProperty(key);
         if (existing != null) {
             existing.setGeneric(this, value, null);
             return true;
@@ -61,13 +61,19 @@ public abstract class LayoutImpl extends Layout {
     /** @since 0.17 or earlier */
     protected final Class<? extends DynamicObject> clazz;
     private final int allowedImplicitCasts;
+    private final int dictionaryThreshold;
 
     /** @since 0.17 or earlier */
     protected LayoutImpl(EnumSet<ImplicitCast> allowedImplicitCasts, Class<? extends DynamicObject> clazz, LayoutStrategy strategy) {
+        this(allowedImplicitCasts, clazz, strategy, ObjectStorageOptions.DictionaryThreshold);
+    }
+
+    protected LayoutImpl(EnumSet<ImplicitCast> allowedImplicitCasts, Class<? extends DynamicObject> clazz, LayoutStrategy strategy, int dictionaryThreshold) {
         this.strategy = strategy;
         this.clazz = Objects.requireNonNull(clazz);
 
         this.allowedImplicitCasts = implicitCastFlags(allowedImplicitCasts);
+        this.dictionaryThreshold = dictionaryThreshold;
     }
 
     static int implicitCastFlags(EnumSet<ImplicitCast> allowedImplicitCasts) {
@@ -113,6 +119,14 @@ public abstract class LayoutImpl extends Layout {
         return (allowedImplicitCasts & INT_TO_LONG_FLAG) != 0;
     }
 
+    /**
+     * Number of properties above which an object switches to dictionary mode, or {@code 0} if
+     * dictionary mode is disabled.
+     */
+    public int getDictionaryThreshold() {
+        return dictionaryThreshold;
+    }
+
     /** @since 0.17 or earlier */
     protected abstract boolean hasObjectExtensionArray();
 
@@ -44,9 +44,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 
+import org.graalvm.collections.EconomicMap;
+
 import com.oracle.truffle.api.object.DynamicObject;
+import com.oracle.truffle.api.object.HiddenKey;
 import com.oracle.truffle.api.object.Location;
 import com.oracle.truffle.api.object.LocationFactory;
+import com.oracle.truffle.api.object.ObjectLocation;
 import com.oracle.truffle.api.object.Property;
 import com.oracle.truffle.api.object.Shape;
 import com.oracle.truffle.object.ShapeImpl.BaseAllocator;
@@ -104,6 +108,11 @@ public abstract class LayoutStrategy {
 
     protected ShapeImpl defineProperty(ShapeImpl oldShape, Object key, Object value, int propertyFlags, LocationFactory locationFactory, Property existing, int putFlags) {
         if (existing == null) {
+            if (oldShape.isDictionary() && !(key instanceof HiddenKey) && locationFactory == getDefaultLocationFactory()) {
+                Property property = Property.create(key, new DictionaryLocation(key, oldShape.getDictionaryStorageLocation()), propertyFlags);
+                oldShape.onPropertyTransition(property);
+                return oldShape.addDictionaryProperty(property);
+            }
             Location location = locationFactory.createLocation(oldShape, value);
             Property property = Property.create(key, location, propertyFlags);
             return oldShape.addProperty(property);
@@ -173,6 +182,9 @@ public abstract class LayoutStrategy {
     protected void objectDefineProperty(DynamicObjectImpl object, Object key, Object value, int flags, LocationFactory locationFactory, ShapeImpl currentShape) {
         ShapeImpl oldShape = currentShape;
         Property oldProperty = oldShape.getProperty(key);
+        if (oldProperty == null && shouldConvertToDictionary(oldShape, key, locationFactory)) {
+            oldShape = convertToDictionary(object, oldShape);
+        }
         ShapeImpl newShape = defineProperty(oldShape, key, value, flags, locationFactory, oldProperty, 0);
         if (oldShape == newShape) {
             assert oldProperty.equals(newShape.getProperty(key));
@@ -186,10 +198,74 @@ public abstract class LayoutStrategy {
     /** @since 0.17 or earlier */
     protected void objectRemoveProperty(DynamicObjectImpl object, Property property, ShapeImpl currentShape) {
         ShapeImpl oldShape = currentShape;
+        if (oldShape.isDictionary()) {
+            Location location = property.getLocation();
+            if (location instanceof DictionaryLocation) {
+                ((DictionaryLocation) location).remove(object);
+            } else if (location instanceof ObjectLocation && !location.isValue() && location.canStore(null)) {
+                // do not retain the value of a removed hidden property
+                property.setInternal(object, null);
+            }
+            ShapeImpl newShape = oldShape.removeProperty(property);
+            object.setShapeAndResize(oldShape, newShape);
+            return;
+        }
         ShapeImpl newShape = oldShape.removeProperty(property);
         reshapeAfterDelete(object, oldShape, newShape, ShapeImpl.findCommonAncestor(oldShape, newShape));
     }
 
+    private boolean shouldConvertToDictionary(ShapeImpl shape, Object key, LocationFactory locationFactory) {
+        int threshold = shape.getLayout().getDictionaryThreshold();
+        return threshold > 0 && shape.getPropertyCount() >= threshold && !shape.isDictionary() && !shape.isShared() &&
+                        !(key instanceof HiddenKey) && locationFactory == getDefaultLocationFactory();
+    }
+
+    /**
+     * Switch the object to dictionary mode: the values of all non-hidden properties are moved into
+     * a hash table stored in a single hidden property, and the remaining hidden properties are
+     * compacted into a fresh allocation, so that the object's extension arrays shrink accordingly.
+     */
+    private ShapeImpl convertToDictionary(DynamicObjectImpl object, ShapeImpl oldShape) {
+        List<Property> properties = oldShape.getPropertyListInternal(true);
+        EconomicMap<Object, Object> storage = EconomicMap.create(properties.size());
+        List<Property> hiddenProperties = new ArrayList<>();
+        List<Object> hiddenValues = new ArrayList<>();
+        for (Property property : properties) {
+            if (property.isHidden()) {
+                hiddenProperties.add(property);
+                hiddenValues.add(property.get(object, oldShape));
+            } else {
+                storage.put(property.getKey(), property.get(object, oldShape));
+            }
+        }
+
+        BaseAllocator allocator = createAllocator(oldShape.getLayout());
+        Location storageLocation = allocator.locationForValue(storage, false, true);
+        PropertyMap newPropertyMap = PropertyMap.empty();
+        for (Property property : properties) {
+            Property newProperty;
+            if (property.isHidden()) {
+                newProperty = property.relocate(allocator.moveLocation(property.getLocation()));
+            } else {
+                newProperty = property.relocate(new DictionaryLocation(property.getKey(), storageLocation));
+            }
+            newPropertyMap = newPropertyMap.putCopy(newProperty);
+        }
+        Property storageProperty = Property.create(DictionaryLocation.STORAGE_KEY, storageLocation, 0);
+        newPropertyMap = newPropertyMap.putCopy(storageProperty);
+
+        ShapeImpl newShape = oldShape.makeDictionaryShape(newPropertyMap, allocator);
+        object.setShapeAndResize(oldShape, newShape);
+        for (int i = 0; i < hiddenProperties.size(); i++) {
+            Property hiddenProperty = newShape.getProperty(hiddenProperties.get(i).getKey());
+            if (!hiddenProperty.getLocation().isValue()) {
+                hiddenProperty.setInternal(object, hiddenValues.get(i));
+            }
+        }
+        storageProperty.setInternal(object, storage);
+        return newShape;
+    }
+
     /** @since 0.17 or earlier */
     protected void reshapeAfterDelete(DynamicObjectImpl object, ShapeImpl oldShape, ShapeImpl newShape, ShapeImpl deletedParentShape) {
         DynamicObject original = object.cloneWithShape(oldShape);
@@ -228,8 +304,7 @@ public abstract class LayoutStrategy {
                 newShape = applyTransition(newShape, previous, true);
             }
 
-            shape.addIndirectTransition(transition, newShape);
-            return newShape;
+            return shape.addIndirectTransitionIfAbsent(transition, newShape);
         } else {
             return null;
         }
@@ -246,6 +321,9 @@ public abstract class LayoutStrategy {
         }
 
         shape.onPropertyTransition(oldProperty);
+        if (shape.isDictionary()) {
+            return shape.replaceDictionaryProperty(oldProperty, newProperty);
+        }
 
         Transition replacePropertyTransition = new Transition.DirectReplacePropertyTransition(oldProperty, newProperty);
         ShapeImpl cachedShape = shape.queryTransition(replacePropertyTransition);
@@ -258,7 +336,7 @@ public abstract class LayoutStrategy {
 
         assert newProperty.isSame(newShape.getProperty(newProperty.getKey())) : newShape.getProperty(newProperty.getKey());
 
-        shape.addDirectTransition(replacePropertyTransition, newShape);
+        newShape = shape.addDirectTransitionIfAbsent(replacePropertyTransition, newShape);
         if (!shape.isValid()) {
             newShape.invalidateValidAssumption();
             return ensureValid ? ensureValid(newShape) : newShape;
@@ -274,6 +352,9 @@ public abstract class LayoutStrategy {
     /** @since 0.17 or earlier */
     protected ShapeImpl addProperty(ShapeImpl shape, Property property, boolean ensureValid) {
         assert !(shape.hasProperty(property.getKey())) : "duplicate property " + property.getKey();
+        if (shape.isDictionary()) {
+            return shape.addDictionaryProperty(property);
+        }
 
         AddPropertyTransition addTransition = new AddPropertyTransition(property);
         ShapeImpl cachedShape = shape.queryTransition(addTransition);
@@ -283,8 +364,7 @@ public abstract class LayoutStrategy {
 
         ShapeImpl oldShape = ensureSpace(shape, property.getLocation());
 
-        ShapeImpl newShape = ShapeImpl.makeShapeWithAddedProperty(oldShape, addTransition);
-        oldShape.addDirectTransition(addTransition, newShape);
+        ShapeImpl newShape = oldShape.addDirectTransitionIfAbsent(addTransition, ShapeImpl.makeShapeWithAddedProperty(oldShape, addTransition));
         if (!oldShape.isValid()) {
             newShape.invalidateValidAssumption();
             return ensureValid ? ensureValid(newShape) : newShape;
@@ -333,8 +413,7 @@ public abstract class LayoutStrategy {
 
         ShapeImpl oldShape = ensureSpace(shape, layout.getPrimitiveArrayLocation());
         ShapeImpl newShape = ShapeImpl.makeShapeWithPrimitiveExtensionArray(oldShape, transition);
-        oldShape.addDirectTransition(transition, newShape);
-        return newShape;
+        return oldShape.addDirectTransitionIfAbsent(transition, newShape);
     }
 
     /**
@@ -70,6 +70,13 @@ public final class ObjectStorageOptions {
 
     static final boolean TriePropertyMap = booleanOption(OPTION_PREFIX + "TriePropertyMap", true);
 
+    /**
+     * Number of properties after which an object that is not shared switches to dictionary mode,
+     * where property values are kept in a hash table instead of object slots. {@code 0} disables
+     * dictionary mode.
+     */
+    static final int DictionaryThreshold = Integer.getInteger(OPTION_PREFIX + "DictionaryThreshold", 0);
+
     // Debug options (should be final)
     /** @since 0.17 or earlier */
     public static final boolean TraceReshape = booleanOption(OPTION_PREFIX + "TraceReshape", false);
@@ -75,6 +75,7 @@ import com.oracle.truffle.object.Transition.ObjectFlagsTransition;
 import com.oracle.truffle.object.Transition.ObjectTypeTransition;
 import com.oracle.truffle.object.Transition.PropertyTransition;
 import com.oracle.truffle.object.Transition.ShareShapeTransition;
+import com.oracle.truffle.object.Transition.ToDictionaryTransition;
 
 /**
  * Shape objects create a mapping of Property objects to indexes. The mapping of those indexes to an
@@ -145,6 +146,9 @@ public abstract class ShapeImpl extends Shape {
 
     private final Transition transitionFromParent;
 
+    /** Location of the hash table of {@linkplain #isDictionary() dictionary mode} shapes. */
+    private final Location dictionaryStorageLocation;
+
     private static final AtomicReferenceFieldUpdater<ShapeImpl, Object> TRANSITION_MAP_UPDATER = AtomicReferenceFieldUpdater.newUpdater(ShapeImpl.class, Object.class, "transitionMap");
     private static final AtomicReferenceFieldUpdater<ShapeImpl, Assumption> LEAF_ASSUMPTION_UPDATER = AtomicReferenceFieldUpdater.newUpdater(ShapeImpl.class, Assumption.class, "leafAssumption");
 
@@ -173,12 +177,18 @@ public abstract class ShapeImpl extends Shape {
         this.primitiveArrayCapacity = capacityFromSize(primitiveArraySize);
         this.hasPrimitiveArray = hasPrimitiveArray;
 
-        if (parent != null) {
+        if (transitionFromParent instanceof ToDictionaryTransition) {
+            this.propertyCount = ((ToDictionaryTransition) transitionFromParent).getPropertyCount();
+            this.depth = parent.depth + 1;
+            this.dictionaryStorageLocation = propertyMap.get(DictionaryLocation.STORAGE_KEY).getLocation();
+        } else if (parent != null) {
             this.propertyCount = makePropertyCount(parent, propertyMap);
             this.depth = parent.depth + 1;
+            this.dictionaryStorageLocation = parent.dictionaryStorageLocation;
         } else {
             this.propertyCount = 0;
             this.depth = 0;
+            this.dictionaryStorageLocation = null;
         }
 
         this.validAssumption = createValidAssumption();
@@ -320,20 +330,38 @@ public abstract class ShapeImpl extends Shape {
         return propertyMap;
     }
 
-    /** @since 0.17 or earlier */
+    /**
+     * Adds a transition to a successor shape, unless an equal transition to a live successor has
+     * already been added, e.g. by another thread.
+     *
+     * @since 0.17 or earlier
+     */
     public final void addDirectTransition(Transition transition, ShapeImpl next) {
-        assert next.getParent() == this && transition.isDirect();
-        addTransitionInternal(transition, next);
+        addDirectTransitionIfAbsent(transition, next);
     }
 
     /** @since 0.17 or earlier */
     public final void addIndirectTransition(Transition transition, ShapeImpl next) {
+        addIndirectTransitionIfAbsent(transition, next);
+    }
+
+    /**
+     * Adds a transition to a successor shape, unless an equal transition to a live successor has
+     * already been added, and returns the successor the transition leads to. Threads that race to
+     * add the same transition therefore agree on a single successor.
+     */
+    final ShapeImpl addDirectTransitionIfAbsent(Transition transition, ShapeImpl next) {
+        assert next.getParent() == this && transition.isDirect();
+        return addTransitionInternal(transition, next);
+    }
+
+    final ShapeImpl addIndirectTransitionIfAbsent(Transition transition, ShapeImpl next) {
         assert !isShared();
         assert next.getParent() != this && !transition.isDirect();
-        addTransitionInternal(transition, next);
+        return addTransitionInternal(transition, next);
     }
 
-    private void addTransitionInternal(Transition transition, ShapeImpl successor) {
+    private ShapeImpl addTransitionInternal(Transition transition, ShapeImpl successor) {
         Object prev;
         Object next;
         do {
@@ -346,17 +374,19 @@ public abstract class ShapeImpl extends Shape {
                 Transition exTra = entry.getKey();
                 ShapeImpl exSucc = entry.getValue();
                 if (exSucc != null) {
+                    if (exTra.equals(transition)) {
+                        return exSucc;
+                    }
                     next = newTransitionMap(exTra, exSucc, transition, successor);
                 } else {
                     next = newSingleEntry(transition, successor);
                 }
             } else {
-                next = addToTransitionMap(transition, successor, prev);
-            }
-            if (prev == next) {
-                break;
+                ShapeImpl existing = asTransitionMap(prev).putIfAbsent(transition, successor);
+                return existing != null ? existing : successor;
             }
         } while (!TRANSITION_MAP_UPDATER.compareAndSet(this, prev, next));
+        return successor;
     }
 
     private static Object newTransitionMap(Transition firstTransition, ShapeImpl firstShape, Transition secondTransition, ShapeImpl secondShape) {
@@ -366,13 +396,6 @@ public abstract class ShapeImpl extends Shape {
         return map;
     }
 
-    private static Object addToTransitionMap(Transition transition, ShapeImpl successor, Object prevMap) {
-        assert isTransitionMap(prevMap);
-        Map<Transition, ShapeImpl> map = asTransitionMap(prevMap);
-        map.put(transition, successor);
-        return map;
-    }
-
     private static Map<Transition, ShapeImpl> newTransitionMap() {
         return new TransitionMap<>();
     }
@@ -518,8 +541,7 @@ public abstract class ShapeImpl extends Shape {
 
         shapeCloneCount.inc();
 
-        newParent.addDirectTransition(from.transitionFromParent, newShape);
-        return newShape;
+        return newParent.addDirectTransitionIfAbsent(from.transitionFromParent, newShape);
     }
 
     /** @since 0.17 or earlier */
@@ -813,6 +835,9 @@ public abstract class ShapeImpl extends Shape {
         }
         onPropertyTransition(prop);
 
+        if (isDictionary()) {
+            return removeDictionaryProperty(prop);
+        }
         return layout.getStrategy().removeProperty(this, prop);
     }
 
@@ -965,8 +990,7 @@ public abstract class ShapeImpl extends Shape {
         }
 
         ShapeImpl newShape = createShape(layout, sharedData, this, newObjectType, propertyMap, transition, allocator(), flags);
-        addDirectTransition(transition, newShape);
-        return newShape;
+        return addDirectTransitionIfAbsent(transition, newShape);
     }
 
     @TruffleBoundary
@@ -980,8 +1004,7 @@ public abstract class ShapeImpl extends Shape {
 
         int newFlags = newObjectFlags | (flags & ~OBJECT_FLAGS_MASK);
         ShapeImpl newShape = createShape(layout, sharedData, this, objectType, propertyMap, transition, allocator(), newFlags);
-        addDirectTransition(transition, newShape);
-        return newShape;
+        return addDirectTransitionIfAbsent(transition, newShape);
     }
 
     /** @since 0.17 or earlier */
@@ -1062,8 +1085,73 @@ public abstract class ShapeImpl extends Shape {
         }
 
         ShapeImpl newShape = createShape(layout, sharedData, this, objectType, propertyMap, transition, allocator(), flags | SHARED_SHAPE);
-        addDirectTransition(transition, newShape);
-        return newShape;
+        return addDirectTransitionIfAbsent(transition, newShape);
+    }
+
+    /**
+     * Returns {@code true} if objects of this shape store their properties in a hash table rather
+     * than in individual object slots. Dictionary mode shapes are immutable like any other shape,
+     * but they are never added to the transition map, so each dictionary mode object has shapes of
+     * its own and adding, replacing or removing a property yields a new unregistered shape.
+     *
+     * @see DictionaryLocation
+     */
+    public final boolean isDictionary() {
+        return (flags & DICTIONARY_SHAPE) != 0;
+    }
+
+    final Location getDictionaryStorageLocation() {
+        assert isDictionary();
+        return dictionaryStorageLocation;
+    }
+
+    /**
+     * Create the initial dictionary mode shape of an object that was converted from this shape.
+     */
+    final ShapeImpl makeDictionaryShape(PropertyMap newPropertyMap, BaseAllocator newAllocator) {
+        assert !isDictionary() && !isShared();
+        return createShape(layout, sharedData, this, objectType, newPropertyMap, new ToDictionaryTransition(propertyCount), newAllocator, flags | DICTIONARY_SHAPE);
+    }
+
+    /**
+     * Adds a property to this dictionary mode shape. Properties stored in the hash table do not
+     * need an object slot, any other property, e.g. a property with a
+     * {@link com.oracle.truffle.api.object.HiddenKey hidden key}, is allocated one.
+     */
+    final ShapeImpl addDictionaryProperty(Property property) {
+        assert isDictionary() && !hasProperty(property.getKey());
+        BaseAllocator newAllocator = property.getLocation() instanceof DictionaryLocation ? allocator() : allocator().addLocation(property.getLocation());
+        return newDictionaryShape(propertyMap.putCopy(property), property.isHidden() ? propertyCount : propertyCount + 1, newAllocator);
+    }
+
+    /**
+     * Replaces a property of this dictionary mode shape.
+     */
+    final ShapeImpl replaceDictionaryProperty(Property oldProperty, Property newProperty) {
+        assert isDictionary() && hasProperty(oldProperty.getKey());
+        BaseAllocator newAllocator = newProperty.getLocation() instanceof DictionaryLocation ? allocator() : allocator().addLocation(newProperty.getLocation());
+        return newDictionaryShape(propertyMap.replaceCopy(oldProperty, newProperty), propertyCount, newAllocator);
+    }
+
+    /**
+     * Removes a property from this dictionary mode shape. Object slots of removed properties that
+     * are not stored in the hash table are not reclaimed.
+     */
+    final ShapeImpl removeDictionaryProperty(Property property) {
+        assert isDictionary() && hasProperty(property.getKey());
+        return newDictionaryShape(propertyMap.removeCopy(property), property.isHidden() ? propertyCount : propertyCount - 1, allocator());
+    }
+
+    /**
+     * Dictionary mode shapes that replace another one are all derived from the shape the object was
+     * converted from, so the shape tree does not grow with the number of changes.
+     */
+    private ShapeImpl newDictionaryShape(PropertyMap newPropertyMap, int newPropertyCount, BaseAllocator newAllocator) {
+        ShapeImpl base = this;
+        while (!(base.transitionFromParent instanceof ToDictionaryTransition)) {
+            base = base.parent;
+        }
+        return createShape(layout, sharedData, base.parent, objectType, newPropertyMap, new ToDictionaryTransition(newPropertyCount), newAllocator, flags);
     }
 
     /** Bits available to API users. */
@@ -1072,6 +1160,8 @@ public abstract class ShapeImpl extends Shape {
 
     /** Shared shape flag. */
     protected static final int SHARED_SHAPE = 1 << 16;
+    /** Dictionary mode shape flag. */
+    protected static final int DICTIONARY_SHAPE = 1 << 17;
 
     protected static int getObjectFlags(int flags) {
         return ((flags & OBJECT_FLAGS_MASK) >>> OBJECT_FLAGS_SHIFT);
@@ -327,4 +327,32 @@ public abstract class Transition {
             return String.format("objectFlags(%s)", getObjectFlags());
         }
     }
+
+    /**
+     * Conversion of an object to dictionary mode, or a change of a dictionary mode object. Each
+     * object gets its own dictionary shapes, so this transition is never added to the transition
+     * map. It records the property count of the resulting shape, which may differ from the parent
+     * shape by any number of properties.
+     */
+    static final class ToDictionaryTransition extends Transition {
+        private final int propertyCount;
+
+        ToDictionaryTransition(int propertyCount) {
+            this.propertyCount = propertyCount;
+        }
+
+        int getPropertyCount() {
+            return propertyCount;
+        }
+
+        @Override
+        public boolean isDirect() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "dictionary";
+        }
+    }
 }
@@ -45,21 +45,20 @@ import java.lang.ref.ReferenceQueue;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 
-import org.graalvm.collections.EconomicMap;
-import org.graalvm.collections.MapCursor;
-
 /**
- * A synchronized hash map with weakly referenced values. Cleared value references are expunged only
- * when the map is mutated.
+ * A concurrent hash map with weakly referenced values. Lookups do not lock, so that threads adding
+ * properties to objects of the same shape in parallel do not serialize on the transition map.
+ * Cleared value references are expunged only when the map is mutated.
  */
 final class TransitionMap<K, V> implements Map<K, V> {
-    private final EconomicMap<K, StrongKeyWeakValueEntry<K, V>> map;
+    private final ConcurrentHashMap<K, StrongKeyWeakValueEntry<K, V>> map;
     private final ReferenceQueue<V> queue;
 
     TransitionMap() {
-        this.map = EconomicMap.create();
+        this.map = new ConcurrentHashMap<>();
         this.queue = new ReferenceQueue<>();
     }
 
@@ -72,37 +71,52 @@ final class TransitionMap<K, V> implements Map<K, V> {
         return entry == null ? null : entry.get();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public V get(Object key) {
-        synchronized (queue) {
-            return getValue(map.get((K) key));
-        }
+        return getValue(map.get(key));
     }
 
     @Override
     public V put(K key, V value) {
-        synchronized (queue) {
-            expungeStaleEntries();
-            return getValue(map.put(key, new StrongKeyWeakValueEntry<>(key, value, queue)));
+        expungeStaleEntries();
+        return getValue(map.put(key, new StrongKeyWeakValueEntry<>(key, value, queue)));
+    }
+
+    /**
+     * Associates the value with the key unless the key maps to a value that has not been cleared.
+     * Returns that value, or {@code null} if the new value was associated.
+     */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        expungeStaleEntries();
+        StrongKeyWeakValueEntry<K, V> newEntry = new StrongKeyWeakValueEntry<>(key, value, queue);
+        while (true) {
+            StrongKeyWeakValueEntry<K, V> existing = map.putIfAbsent(key, newEntry);
+            if (existing == null) {
+                return null;
+            }
+            V existingValue = existing.get();
+            if (existingValue != null) {
+                return existingValue;
+            }
+            if (map.replace(key, existing, newEntry)) {
+                return null;
+            }
         }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public V remove(Object key) {
-        synchronized (queue) {
-            expungeStaleEntries();
-            return getValue(map.removeKey((K) key));
-        }
+        expungeStaleEntries();
+        return getValue(map.remove(key));
     }
 
     @SuppressWarnings("unchecked")
     private void expungeStaleEntries() {
         for (Reference<? extends V> x; (x = queue.poll()) != null;) {
             StrongKeyWeakValueEntry<K, V> ex = (StrongKeyWeakValueEntry<K, V>) x;
-            if (map.get(ex.getKey()) == ex) {
-                map.removeKey(ex.getKey());
+            // only remove the entry if it has not been replaced in the meantime
+            if (map.remove(ex.getKey(), ex)) {
                 ShapeImpl.shapeCacheExpunged.inc();
             }
         }
@@ -110,23 +124,18 @@ final class TransitionMap<K, V> implements Map<K, V> {
 
     @Override
     public void clear() {
-        synchronized (queue) {
-            while (queue.poll() != null) {
-                // clear out ref queue.
-            }
-            map.clear();
+        while (queue.poll() != null) {
+            // clear out ref queue.
         }
+        map.clear();
     }
 
     @Override
     public void forEach(BiConsumer<? super K, ? super V> consumer) {
-        synchronized (queue) {
-            MapCursor<K, StrongKeyWeakValueEntry<K, V>> cursor = map.getEntries();
-            while (cursor.advance()) {
-                V value = cursor.getValue().get();
-                if (value != null) {
-                    consumer.accept(cursor.getKey(), value);
-                }
+        for (StrongKeyWeakValueEntry<K, V> entry : map.values()) {
+            V value = entry.get();
+            if (value != null) {
+                consumer.accept(entry.getKey(), value);
             }
         }
     }
@@ -82,6 +82,8 @@ class GraalWasmDefaultTags:
     wasmtest = "wasmtest"
     wasmconstantspolicytest = "wasmconstantspolicytest"
     wasmconstantspolicyextratest = "wasmconstantspolicyextratest"
+    wasmlazybodiestest = "wasmlazybodiestest"
+    wasmlazybodiesextratest = "wasmlazybodiesextratest"
     wasmextratest = "wasmextratest"
     wasmbenchtest = "wasmbenchtest"
 
@@ -105,6 +107,14 @@ def graal_wasm_gate_runner(args, tasks):
         if t:
             unittest(["-Dwasmtest.storeConstantsPolicy=LARGE_ONLY", "CSuite"])
             unittest(["-Dwasmtest.storeConstantsPolicy=LARGE_ONLY", "WatSuite"])
+    with Task("LazyFunctionBodiesUnitTests", tasks, tags=[GraalWasmDefaultTags.wasmlazybodiestest]) as t:
+        if t:
+            unittest(["-Dwasmtest.watToWasmExecutable=" + os.path.join(wabt_dir, "wat2wasm"),
+                      "-Dwasmtest.lazyFunctionBodies=true", "WasmTestSuite"])
+    with Task("LazyFunctionBodiesExtraUnitTests", tasks, tags=[GraalWasmDefaultTags.wasmlazybodiesextratest]) as t:
+        if t:
+            unittest(["-Dwasmtest.lazyFunctionBodies=true", "CSuite"])
+            unittest(["-Dwasmtest.lazyFunctionBodies=true", "WatSuite"])
     # This is a gate used to test that all the benchmarks return the correct results. It does not upload anything,
     # and does not run on a dedicated machine.
     with Task("BenchTest", tasks, tags=[GraalWasmDefaultTags.wasmbenchtest]) as t:
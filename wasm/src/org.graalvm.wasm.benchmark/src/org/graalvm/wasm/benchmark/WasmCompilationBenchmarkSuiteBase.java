@@ -45,6 +45,7 @@ import org.graalvm.wasm.utils.cases.WasmCase;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -55,7 +56,8 @@ import java.io.IOException;
 
 /**
  * This benchmark base class runs a workload that compiles the given test case (but does not run
- * it). This is done by calling `Context.evaluate` on each source.
+ * it). This is done by calling `Context.evaluate` on each source. The workload is measured both
+ * with eagerly and with lazily parsed function bodies, to track the startup cost of parsing.
  */
 @Warmup(iterations = 2)
 @Measurement(iterations = 6)
@@ -66,6 +68,8 @@ public abstract class WasmCompilationBenchmarkSuiteBase {
         private Context context;
         private WasmCase benchmarkCase;
 
+        @Param({"false", "true"}) public String lazyFunctionBodies;
+
         abstract protected String benchmarkResource();
 
         @Setup(Level.Trial)
@@ -77,6 +81,8 @@ public abstract class WasmCompilationBenchmarkSuiteBase {
         public void setupInvocation() {
             final Context.Builder contextBuilder = Context.newBuilder("wasm");
             contextBuilder.option("wasm.Builtins", "testutil,env:emscripten,wasi_snapshot_preview1");
+            contextBuilder.allowExperimentalOptions(true);
+            contextBuilder.option("wasm.LazyFunctionBodies", lazyFunctionBodies);
             context = contextBuilder.build();
         }
 
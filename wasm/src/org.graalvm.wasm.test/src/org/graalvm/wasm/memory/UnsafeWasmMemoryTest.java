@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * The Universal Permissive License (UPL), Version 1.0
+ *
+ * Subject to the condition set forth below, permission is hereby granted to any
+ * person obtaining a copy of this software, associated documentation and/or
+ * data (collectively the "Software"), free of charge and under any and all
+ * copyright rights in the Software, and any and all patent rights owned or
+ * freely licensable by each licensor hereunder covering either (i) the
+ * unmodified Software as contributed to or provided by such licensor, or (ii)
+ * the Larger Works (as defined below), to deal in both
+ *
+ * (a) the Software, and
+ *
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if
+ * one is included with the Software each a "Larger Work" to which the Software
+ * is contributed by such licensors),
+ *
+ * without restriction, including without limitation the rights to copy, create
+ * derivative works of, display, perform, and distribute the Software and make,
+ * use, sell, offer for sale, import, export, have made, and have sold the
+ * Software and the Larger Work(s), and to sublicense the foregoing rights on
+ * either these or other terms.
+ *
+ * This license is subject to the following condition:
+ *
+ * The above copyright notice and either this complete permission notice or at a
+ * minimum a reference to the UPL must be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.graalvm.wasm.memory;
+
+import org.graalvm.wasm.MemoryRegistry;
+import org.graalvm.wasm.exception.WasmTrap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UnsafeWasmMemoryTest {
+    private static final long MAX_INITIAL_RESERVATION = UnsafeWasmMemory.MAX_INITIAL_RESERVATION;
+
+    @Test
+    public void testReservationIsCappedAtMaximum() {
+        final UnsafeWasmMemory memory = new UnsafeWasmMemory(1, 4);
+        try {
+            Assert.assertEquals(4 * WasmMemory.PAGE_SIZE, memory.reservedByteSize());
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void testReservationIsCappedForLargeMaximum() {
+        // A maximum of 65536 pages is 4 GiB, which must not be reserved up front.
+        final UnsafeWasmMemory memory = new UnsafeWasmMemory(1, 65536);
+        try {
+            Assert.assertEquals(WasmMemory.PAGE_SIZE + MAX_INITIAL_RESERVATION, memory.reservedByteSize());
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void testGrowKeepsContents() {
+        final UnsafeWasmMemory memory = new UnsafeWasmMemory(1, 65536);
+        try {
+            final long initialReservation = memory.reservedByteSize();
+            memory.store_i64(null, 0, 0x0123_4567_89ab_cdefL);
+            memory.store_i32(null, WasmMemory.PAGE_SIZE - 4, 42);
+
+            // Within the reservation.
+            Assert.assertTrue(memory.grow(3));
+            Assert.assertEquals(4, memory.pageSize());
+            Assert.assertEquals(initialReservation, memory.reservedByteSize());
+            Assert.assertEquals(0x0123_4567_89ab_cdefL, memory.load_i64(null, 0));
+            Assert.assertEquals(42, memory.load_i32(null, WasmMemory.PAGE_SIZE - 4));
+            Assert.assertEquals(0, memory.load_i64(null, memory.byteSize() - 8));
+            memory.store_i64(null, memory.byteSize() - 8, -1L);
+
+            // Beyond the reservation, which at least doubles it.
+            final long extraPages = initialReservation / WasmMemory.PAGE_SIZE;
+            final long lastAddress = memory.byteSize() - 8;
+            Assert.assertTrue(memory.grow(extraPages));
+            Assert.assertEquals(4 + extraPages, memory.pageSize());
+            Assert.assertTrue(memory.reservedByteSize() >= 2 * initialReservation);
+            Assert.assertEquals(0x0123_4567_89ab_cdefL, memory.load_i64(null, 0));
+            Assert.assertEquals(42, memory.load_i32(null, WasmMemory.PAGE_SIZE - 4));
+            Assert.assertEquals(-1L, memory.load_i64(null, lastAddress));
+            Assert.assertEquals(0, memory.load_i64(null, memory.byteSize() - 8));
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void testGrowBeyondMaximum() {
+        final UnsafeWasmMemory memory = new UnsafeWasmMemory(1, 3);
+        try {
+            Assert.assertTrue(memory.grow(2));
+            Assert.assertFalse(memory.grow(1));
+            Assert.assertEquals(3, memory.pageSize());
+            Assert.assertEquals(3 * WasmMemory.PAGE_SIZE, memory.reservedByteSize());
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void testDuplicate() {
+        final UnsafeWasmMemory memory = new UnsafeWasmMemory(2, 65536);
+        UnsafeWasmMemory duplicate = null;
+        try {
+            memory.store_i32(null, 8, 7);
+            memory.store_i32(null, memory.byteSize() - 4, 9);
+            duplicate = (UnsafeWasmMemory) memory.duplicate();
+
+            // A duplicate only reserves its current size.
+            Assert.assertEquals(memory.byteSize(), duplicate.reservedByteSize());
+            Assert.assertEquals(memory.pageSize(), duplicate.pageSize());
+            Assert.assertEquals(memory.maxPageSize(), duplicate.maxPageSize());
+            Assert.assertEquals(7, duplicate.load_i32(null, 8));
+            Assert.assertEquals(9, duplicate.load_i32(null, duplicate.byteSize() - 4));
+
+            // The duplicate does not share storage with the original.
+            duplicate.store_i32(null, 8, 11);
+            Assert.assertEquals(7, memory.load_i32(null, 8));
+
+            Assert.assertTrue(duplicate.grow(1));
+            Assert.assertEquals(3, duplicate.pageSize());
+            Assert.assertEquals(2, memory.pageSize());
+            Assert.assertEquals(11, duplicate.load_i32(null, 8));
+            Assert.assertEquals(9, duplicate.load_i32(null, 2 * WasmMemory.PAGE_SIZE - 4));
+            Assert.assertEquals(0, duplicate.load_i32(null, duplicate.byteSize() - 4));
+        } finally {
+            memory.close();
+            if (duplicate != null) {
+                duplicate.close();
+            }
+        }
+    }
+
+    @Test
+    public void testClose() {
+        final UnsafeWasmMemory memory = new UnsafeWasmMemory(1, 2);
+        memory.close();
+        Assert.assertEquals(0, memory.byteSize());
+        Assert.assertEquals(0, memory.reservedByteSize());
+        try {
+            memory.load_i32(null, 0);
+            Assert.fail("Accessing a closed memory must trap.");
+        } catch (WasmTrap e) {
+            // Expected.
+        }
+        // Closing twice has no effect.
+        memory.close();
+    }
+
+    @Test
+    public void testRegistryClosesMemoriesAndSnapshots() {
+        final MemoryRegistry registry = new MemoryRegistry();
+        final WasmMemory memory = new UnsafeWasmMemory(1, 2);
+        registry.allocateMemory(memory);
+        final WasmMemory snapshot = registry.registerSnapshot(memory.duplicate());
+        registry.close();
+        Assert.assertEquals(0, memory.byteSize());
+        Assert.assertEquals(0, snapshot.byteSize());
+    }
+}
@@ -244,6 +244,10 @@ public abstract class WasmSuiteBase extends WasmTestBase {
                 System.out.println("wasm.StoreConstantsPolicy: " + WasmTestOptions.STORE_CONSTANTS_POLICY);
             }
 
+            if (WasmTestOptions.LAZY_FUNCTION_BODIES) {
+                contextBuilder.option("wasm.LazyFunctionBodies", "true");
+            }
+
             contextBuilder.option("wasm.Builtins", includedExternalModules());
             String commandLineArgs = testCase.options().getProperty("command-line-args");
             if (commandLineArgs != null) {
@@ -94,6 +94,13 @@ public class BinaryParser extends BinaryStreamParser {
     // to track the current largest function index.
     private int moduleFunctionIndex;
 
+    /**
+     * Call sites in a function body that is parsed lazily, after linking. These call sites cannot
+     * be resolved by the linker anymore, so they are resolved right after parsing the body.
+     * {@code null} when parsing a whole module.
+     */
+    private ArrayList<Runnable> lazyCallsiteResolutions;
+
     BinaryParser(WasmLanguage language, WasmModule module, WasmContext context, byte[] data) {
         super(data);
         this.language = language;
@@ -264,16 +271,40 @@ public class BinaryParser extends BinaryStreamParser {
         for (int entry = 0; entry != numCodeEntries; ++entry) {
             rootNodes[entry] = createCodeEntry(moduleFunctionIndex + entry);
         }
+        final boolean lazyFunctionBodies = WasmOptions.LazyFunctionBodies.getValue(context.environment().getOptions());
         for (int entryIndex = 0; entryIndex != numCodeEntries; ++entryIndex) {
             int codeEntrySize = readUnsignedInt32();
             int startOffset = offset;
-            readCodeEntry(moduleFunctionIndex + entryIndex, rootNodes[entryIndex]);
+            if (lazyFunctionBodies) {
+                final int funcIndex = moduleFunctionIndex + entryIndex;
+                final WasmRootNode rootNode = rootNodes[entryIndex];
+                rootNode.setLazyBodyParser(() -> readCodeEntryLazily(funcIndex, rootNode, startOffset, codeEntrySize));
+                offset += codeEntrySize;
+            } else {
+                readCodeEntry(moduleFunctionIndex + entryIndex, rootNodes[entryIndex]);
+            }
             Assert.assertIntEqual(offset - startOffset, codeEntrySize, String.format("Code entry %d size is incorrect", entryIndex));
             context.linker().resolveCodeEntry(module, entryIndex);
         }
         moduleFunctionIndex += numCodeEntries;
     }
 
+    /**
+     * Parses the body of a function whose parsing was deferred until its first call (see
+     * {@link WasmOptions#LazyFunctionBodies}). A separate parser is used, so that bodies of
+     * different functions can be parsed independently of each other.
+     */
+    private void readCodeEntryLazily(int funcIndex, WasmRootNode rootNode, int startOffset, int codeEntrySize) {
+        final BinaryParser bodyParser = new BinaryParser(language, module, context, data);
+        bodyParser.offset = startOffset;
+        bodyParser.lazyCallsiteResolutions = new ArrayList<>();
+        bodyParser.readCodeEntry(funcIndex, rootNode);
+        Assert.assertIntEqual(bodyParser.offset - startOffset, codeEntrySize, String.format("Code entry of function %d size is incorrect", funcIndex));
+        for (Runnable resolution : bodyParser.lazyCallsiteResolutions) {
+            resolution.run();
+        }
+    }
+
     private WasmRootNode createCodeEntry(int funcIndex) {
         final WasmFunction function = module.symbolTable().function(funcIndex);
         WasmCodeEntry codeEntry = new WasmCodeEntry(function, data);
@@ -542,7 +573,12 @@ public class BinaryParser extends BinaryStreamParser {
                     // Therefore, the call node will be created lazily during linking,
                     // after the call target from the other module exists.
                     children.add(new WasmCallStubNode(function));
-                    context.linker().resolveCallsite(module, currentBlock, children.size() - 1, function);
+                    if (lazyCallsiteResolutions != null) {
+                        final int controlTableOffset = children.size() - 1;
+                        lazyCallsiteResolutions.add(() -> currentBlock.resolveCallNode(controlTableOffset));
+                    } else {
+                        context.linker().resolveCallsite(module, currentBlock, children.size() - 1, function);
+                    }
 
                     break;
                 }
@@ -40,6 +40,9 @@
  */
 package org.graalvm.wasm;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.oracle.truffle.api.CompilerDirectives.CompilationFinal;
 import org.graalvm.wasm.memory.WasmMemory;
 
@@ -48,6 +51,7 @@ public class MemoryRegistry {
 
     @CompilationFinal(dimensions = 1) private WasmMemory[] memories;
     private int numMemories;
+    private final List<WasmMemory> snapshots = new ArrayList<>();
 
     public MemoryRegistry() {
         this.memories = new WasmMemory[INITIAL_MEMORIES_SIZE];
@@ -78,4 +82,25 @@ public class MemoryRegistry {
         assert index < numMemories;
         return memories[index];
     }
+
+    /**
+     * Registers a duplicate of a memory, so that it is closed together with the memories.
+     */
+    public WasmMemory registerSnapshot(WasmMemory snapshot) {
+        snapshots.add(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Closes all memories and snapshots, which releases their storage.
+     */
+    public void close() {
+        for (int i = 0; i < numMemories; i++) {
+            memories[i].close();
+        }
+        for (WasmMemory snapshot : snapshots) {
+            snapshot.close();
+        }
+        snapshots.clear();
+    }
 }
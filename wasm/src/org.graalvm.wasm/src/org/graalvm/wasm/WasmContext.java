@@ -121,6 +121,13 @@ public final class WasmContext {
         return modules;
     }
 
+    /**
+     * Releases the native storage of the memories. The context is not used afterwards.
+     */
+    void close() {
+        memoryRegistry.close();
+    }
+
     void registerModule(WasmModule module) {
         if (modules.containsKey(module.name())) {
             throw new RuntimeException("Context already contains a module named '" + module.name() + "'.");
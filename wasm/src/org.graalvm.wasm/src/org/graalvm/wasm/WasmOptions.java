@@ -57,6 +57,9 @@ public class WasmOptions {
     @Option(help = "The stack size in kilobytes to use during async parsing, or zero to use defaults.", category = OptionCategory.USER, stability = OptionStability.STABLE)//
     public static final OptionKey<Integer> AsyncParsingStackSize = new OptionKey<>(0);
 
+    @Option(help = "Defer parsing and validation of function bodies until the first call of each function.", category = OptionCategory.EXPERT, stability = OptionStability.EXPERIMENTAL)//
+    public static final OptionKey<Boolean> LazyFunctionBodies = new OptionKey<>(false);
+
     public enum StoreConstantsPolicyEnum {
         ALL,
         LARGE_ONLY,
@@ -49,14 +49,40 @@ import org.graalvm.wasm.exception.WasmTrap;
 import org.graalvm.wasm.WasmTracing;
 import sun.misc.Unsafe;
 
+/**
+ * Linear memory backed by a native memory block.
+ * <p>
+ * The block is larger than the current size of the memory, so that growing the memory usually only
+ * zeroes the new pages (and thereby lets the operating system commit them), without moving or
+ * copying the existing contents. Up front, at most {@link #MAX_INITIAL_RESERVATION} bytes beyond
+ * the current size are reserved, and never more than the declared maximum size. When the memory
+ * outgrows the block, the block is resized with {@link Unsafe#reallocateMemory} to at least twice
+ * its size (again capped at the declared maximum), which for large blocks typically remaps the pages
+ * instead of copying them. The block is freed when the memory is {@linkplain #close() closed}.
+ */
 public class UnsafeWasmMemory extends WasmMemory {
+    /**
+     * The maximum number of bytes reserved beyond the initial size of the memory. Reserving the
+     * declared maximum instead would set aside up to 4 GiB per memory instance.
+     */
+    static final long MAX_INITIAL_RESERVATION = 1024L * PAGE_SIZE;
+
     private final Unsafe unsafe;
     private long startAddress;
     private long pageSize;
     private final long maxPageSize;
+    /**
+     * The size of the native memory block at {@link #startAddress}, in bytes. Only the first
+     * {@link #byteSize()} bytes of the block are part of the linear memory.
+     */
+    private long reservedByteSize;
     private final ConditionProfile outOfBoundsAccesses = ConditionProfile.create();
 
     public UnsafeWasmMemory(long initPageSize, long maxPageSize) {
+        this(initPageSize, maxPageSize, initPageSize * PAGE_SIZE + MAX_INITIAL_RESERVATION);
+    }
+
+    private UnsafeWasmMemory(long initPageSize, long maxPageSize, long reservationByteSize) {
         try {
             Field f = Unsafe.class.getDeclaredField("theUnsafe");
             f.setAccessible(true);
@@ -67,10 +93,36 @@ public class UnsafeWasmMemory extends WasmMemory {
         this.pageSize = initPageSize;
         this.maxPageSize = maxPageSize;
         long byteSize = byteSize();
-        this.startAddress = unsafe.allocateMemory(byteSize);
+        reserve(capToMaximum(reservationByteSize), byteSize);
         unsafe.setMemory(startAddress, byteSize, (byte) 0);
     }
 
+    private long capToMaximum(long byteSize) {
+        return maxPageSize >= 0 ? Math.min(byteSize, maxPageSize * PAGE_SIZE) : byteSize;
+    }
+
+    private void reserve(long reservationByteSize, long byteSize) {
+        if (reservationByteSize > byteSize) {
+            try {
+                this.startAddress = unsafe.allocateMemory(reservationByteSize);
+                this.reservedByteSize = reservationByteSize;
+                WasmTracing.trace("reserved %d bytes of memory for %d pages", reservationByteSize, pageSize);
+                return;
+            } catch (OutOfMemoryError e) {
+                // Fall back to allocating the initial size only.
+            }
+        }
+        this.startAddress = unsafe.allocateMemory(byteSize);
+        this.reservedByteSize = byteSize;
+    }
+
+    /**
+     * The size of the native memory block, in bytes.
+     */
+    long reservedByteSize() {
+        return reservedByteSize;
+    }
+
     @Override
     public void validateAddress(Node node, long address, long offset) {
         WasmTracing.trace("validating memory address: 0x%016X (%d)", address, address);
@@ -124,14 +176,15 @@ public class UnsafeWasmMemory extends WasmMemory {
             // Cannot grow the memory beyond maxPageSize bytes.
             return false;
         }
-        if (targetSize * PAGE_SIZE == byteSize()) {
+        if (extraPageSize == 0) {
             return true;
         }
-        long updatedStartAddress = unsafe.allocateMemory(targetSize);
-        unsafe.copyMemory(startAddress, updatedStartAddress, byteSize());
-        unsafe.setMemory(updatedStartAddress + byteSize(), targetSize - byteSize(), (byte) 0);
-        unsafe.freeMemory(startAddress);
-        startAddress = updatedStartAddress;
+        if (targetSize > reservedByteSize) {
+            final long reservation = Math.max(targetSize, capToMaximum(2 * reservedByteSize));
+            startAddress = unsafe.reallocateMemory(startAddress, reservation);
+            reservedByteSize = reservation;
+        }
+        unsafe.setMemory(startAddress + byteSize(), targetSize - byteSize(), (byte) 0);
         pageSize += extraPageSize;
         return true;
     }
@@ -331,8 +384,20 @@ public class UnsafeWasmMemory extends WasmMemory {
 
     @Override
     public WasmMemory duplicate() {
-        final UnsafeWasmMemory other = new UnsafeWasmMemory(pageSize, maxPageSize);
+        // Duplicates are snapshots, so they only reserve their current size.
+        final UnsafeWasmMemory other = new UnsafeWasmMemory(pageSize, maxPageSize, byteSize());
         unsafe.copyMemory(this.startAddress, other.startAddress, this.byteSize());
         return other;
     }
+
+    @Override
+    public void close() {
+        if (startAddress != 0) {
+            unsafe.freeMemory(startAddress);
+            startAddress = 0;
+            reservedByteSize = 0;
+            // Every later access is out of bounds.
+            pageSize = 0;
+        }
+    }
 }
@@ -133,6 +133,11 @@ public abstract class WasmMemory implements TruffleObject {
 
     public abstract WasmMemory duplicate();
 
+    /**
+     * Releases the storage of the memory. The memory has size zero afterwards.
+     */
+    public abstract void close();
+
     long[] view(long address, int length) {
         long[] chunk = new long[length / 8];
         for (long p = address; p < address + length; p += 8) {
@@ -64,6 +64,12 @@ public class WasmRootNode extends RootNode implements WasmNodeInterface {
     private final WasmCodeEntry codeEntry;
     @CompilationFinal private ContextReference<WasmContext> rawContextReference;
     @Child private WasmNode body;
+    /**
+     * Parses the body of this function on its first call, if parsing was deferred (see
+     * {@link org.graalvm.wasm.WasmOptions#LazyFunctionBodies}). The field is volatile, so that a
+     * thread that sees it cleared also sees the body and frame slots set by the parsing thread.
+     */
+    @CompilationFinal private volatile Runnable lazyBodyParser;
 
     public WasmRootNode(TruffleLanguage<?> language, WasmCodeEntry codeEntry) {
         super(language);
@@ -83,6 +89,18 @@ public class WasmRootNode extends RootNode implements WasmNodeInterface {
         this.body = insert(body);
     }
 
+    public void setLazyBodyParser(Runnable lazyBodyParser) {
+        this.lazyBodyParser = lazyBodyParser;
+    }
+
+    @CompilerDirectives.TruffleBoundary
+    private synchronized void parseLazyBody() {
+        if (lazyBodyParser != null) {
+            lazyBodyParser.run();
+            lazyBodyParser = null;
+        }
+    }
+
     @Override
     protected boolean isInstrumentable() {
         return false;
@@ -99,6 +117,12 @@ public class WasmRootNode extends RootNode implements WasmNodeInterface {
     public final Object execute(VirtualFrame frame) {
         final WasmContext context = contextReference().get();
         tryInitialize(context);
+        if (lazyBodyParser != null) {
+            CompilerDirectives.transferToInterpreterAndInvalidate();
+            parseLazyBody();
+            // The frame of this call was created before the body declared its frame slots.
+            return getCallTarget().call(frame.getArguments());
+        }
         return executeWithContext(frame, context);
     }
 